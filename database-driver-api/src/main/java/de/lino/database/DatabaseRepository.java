@@ -2,8 +2,14 @@ package de.lino.database;
 
 import de.lino.database.database.auth.Credentials;
 import de.lino.database.database.DatabaseProvider;
+import de.lino.database.database.DatabaseSection;
 import de.lino.database.database.DatabaseType;
+import de.lino.database.database.conversion.ConversionOptions;
+import de.lino.database.database.replication.Replication;
+import de.lino.database.database.replication.ReplicationOptions;
+import de.lino.database.database.tiered.TieringOptions;
 import de.lino.database.utils.Pair;
+import de.lino.database.utils.executor.ExecutorStrategy;
 import lombok.Getter;
 import lombok.SneakyThrows;
 import org.jetbrains.annotations.NotNull;
@@ -13,6 +19,8 @@ import org.jetbrains.annotations.UnmodifiableView;
 import java.util.List;
 import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * Central entry point for managing the pool of registered {@link DatabaseProvider} instances.
@@ -22,10 +30,12 @@ import java.util.concurrent.CompletableFuture;
  * installed itself via {@link #setInstance(DatabaseRepository)}. Implementations are responsible
  * for tracking
  * registered providers by numeric id, creating new providers for a given {@link DatabaseType}
- * and {@link Credentials}, and converting data between two registered providers.
+ * and {@link Credentials}, and converting or replicating data between two registered providers.
  * <p>
  * Every synchronous operation declared here has a corresponding {@code *Async} default method
- * that executes the same logic on the common {@link CompletableFuture} pool.
+ * that executes the same logic on the {@link ExecutorStrategy#defaultExecutor() default executor}
+ * of the installed {@link ExecutorStrategy} - the common {@link ForkJoinPool} unless another one
+ * was installed via {@link #setExecutorStrategy}.
  */
 public abstract class DatabaseRepository {
 
@@ -48,6 +58,65 @@ public abstract class DatabaseRepository {
         DatabaseRepository.instance = instance;
     }
 
+    /**
+     * The strategy every {@code *Async} default method of this repository, of every registered
+     * {@link DatabaseProvider} and of every one of their sections takes its executor from.
+     */
+    @Getter
+    private volatile @NotNull ExecutorStrategy executorStrategy = ExecutorStrategy.commonPool();
+
+    /**
+     * Installs the strategy every {@code *Async} default method takes its executor from, from
+     * now on; operations already submitted keep running on the previous strategy's executors.
+     *
+     * @param executorStrategy the strategy to install, e.g. {@link ExecutorStrategy#bulkheads(int)}
+     */
+    public void setExecutorStrategy(@NotNull ExecutorStrategy executorStrategy) {
+        this.executorStrategy = executorStrategy;
+    }
+
+    /**
+     * Resolves the executor the async operations of {@code provider} run on, through the installed
+     * repository's {@link ExecutorStrategy}.
+     *
+     * @param provider the provider the operation belongs to
+     * @return the provider's executor, or the common {@link ForkJoinPool} if no repository is
+     * installed
+     */
+    public static @NotNull Executor executorFor(@NotNull DatabaseProvider provider) {
+        final DatabaseRepository repository = instance;
+        return repository == null ? ForkJoinPool.commonPool() : repository.executorStrategy.executorFor(provider);
+    }
+
+    /**
+     * Resolves the executor the async operations of {@code section} run on: the one of the
+     * registered provider owning it, or the {@link ExecutorStrategy#defaultExecutor() default
+     * executor} if none does.
+     *
+     * @param section the section the operation belongs to
+     * @return the section's executor, or the common {@link ForkJoinPool} if no repository is
+     * installed
+     */
+    public static @NotNull Executor executorFor(@NotNull DatabaseSection section) {
+
+        final DatabaseRepository repository = instance;
+        if (repository == null) return ForkJoinPool.commonPool();
+
+        final ExecutorStrategy strategy = repository.executorStrategy;
+        return repository.findOwner(section).map(strategy::executorFor).orElseGet(strategy::defaultExecutor);
+    }
+
+    /**
+     * Finds the registered provider {@code section} belongs to, deciding which bulkhead its async
+     * operations run on. The default implementation finds none.
+     *
+     * @param section the section to look up
+     * @return the registered provider owning {@code section}, or empty if none does
+     */
+    protected Optional<DatabaseProvider> findOwner(@NotNull DatabaseSection section) {
+        return Optional.empty();
+    }
+
     /**
      * Get an unmodifiable list of all registered database.
      *
@@ -81,6 +150,43 @@ public abstract class DatabaseRepository {
      */
     public abstract Pair<DatabaseProvider, DatabaseProvider> convert(int sourceId, int targetId);
 
+    /**
+     * Convert the content of a specific database to another one, tuned by {@code options}:
+     * sections are streamed in chunks and converted in parallel, their progress is optionally
+     * checkpointed so a failed conversion resumes where it stopped when rerun, and throughput is
+     * optionally reported to a {@link de.lino.database.database.conversion.ConversionListener}.
+     *
+     * @param sourceId Id of the database that shall be used as a resource database
+     * @param targetId Id of the database that will be used as a destination database
+     * @param options  the conversion's parallelism, chunk size, checkpoint and progress listener
+     * @return a {@link Pair} of the two providers involved, the first one being the source, the
+     * second one being the destination
+     */
+    public abstract Pair<DatabaseProvider, DatabaseProvider> convert(int sourceId, int targetId, @NotNull ConversionOptions options);
+
+    /**
+     * Start keeping a specific database a continuously updated copy of another one: copy every
+     * section of the source to the target, as {@link #convert(int, int)} does, then poll the
+     * source for changes and apply every write and delete to the target in batches, until the
+     * returned {@link Replication} is closed.
+     *
+     * @param sourceId Id of the database that shall be replicated
+     * @param targetId Id of the database that will hold the copy
+     * @return the running replication, exposing its lag and throughput
+     */
+    public abstract Replication replicate(int sourceId, int targetId);
+
+    /**
+     * Start keeping a specific database a continuously updated copy of another one, tuned by
+     * {@code options}; see {@link #replicate(int, int)}.
+     *
+     * @param sourceId Id of the database that shall be replicated
+     * @param targetId Id of the database that will hold the copy
+     * @param options  the replication's poll interval, batch size and initial copy parallelism
+     * @return the running replication, exposing its lag and throughput
+     */
+    public abstract Replication replicate(int sourceId, int targetId, @NotNull ReplicationOptions options);
+
     /**
      * Get a specific database by id.
      *
@@ -100,6 +206,32 @@ public abstract class DatabaseRepository {
      */
     public abstract DatabaseProvider registerDatabaseProvider(int id, @NotNull DatabaseType databaseType, @NotNull Credentials credentials);
 
+    /**
+     * Register a new {@link DatabaseType#SHARDED sharded} database, partitioning every one of its
+     * sections across the already registered databases {@code shardIds} - each entry is stored on
+     * exactly one of them, chosen by consistent hashing of its id.
+     *
+     * @param id       Id of the sharded database
+     * @param shardIds ids of the registered databases to partition across, at least one
+     * @return the newly created and registered sharded {@link DatabaseProvider}
+     */
+    public abstract DatabaseProvider registerShardedDatabaseProvider(int id, int @NotNull ... shardIds);
+
+    /**
+     * Register a new {@link DatabaseType#TIERED tiered} database, layering the already registered
+     * database {@code fastId} - e.g. Redis - in front of the already registered database
+     * {@code durableId} - e.g. PostgreSQL. Reads are served by the fast database where it holds
+     * the entry, and fall back to the durable one otherwise; writes reach the durable database
+     * synchronously or in the background, as {@code options} says.
+     *
+     * @param id        Id of the tiered database
+     * @param fastId    id of the registered database to read from first
+     * @param durableId id of the registered database holding every entry durably
+     * @param options   the write mode and the fast database's TTL and size limits
+     * @return the newly created and registered tiered {@link DatabaseProvider}
+     */
+    public abstract DatabaseProvider registerTieredDatabaseProvider(int id, int fastId, int durableId, @NotNull TieringOptions options);
+
     /**
      * Shutdown a specific database and unregister it from the repository.
      *
@@ -116,7 +248,7 @@ public abstract class DatabaseRepository {
      */
     @UnmodifiableView
     public CompletableFuture<List<DatabaseProvider>> getDatabaseProviderPoolAsync() {
-        return CompletableFuture.supplyAsync(this::getDatabaseProviderPool);
+        return CompletableFuture.supplyAsync(this::getDatabaseProviderPool, this.executorStrategy.defaultExecutor());
     }
 
     /**
@@ -128,7 +260,7 @@ public abstract class DatabaseRepository {
      */
     @UnmodifiableView
     public CompletableFuture<List<DatabaseProvider>> getDatabaseProviderPoolAsync(@NotNull DatabaseType databaseType) {
-        return CompletableFuture.supplyAsync(() -> this.getDatabaseProviderPool(databaseType));
+        return CompletableFuture.supplyAsync(() -> this.getDatabaseProviderPool(databaseType), this.executorStrategy.defaultExecutor());
     }
 
     /**
@@ -137,7 +269,7 @@ public abstract class DatabaseRepository {
      * @return a {@link CompletableFuture} that completes once every database has been shut down
      */
     public CompletableFuture<Void> shutdownAsync() {
-        return CompletableFuture.runAsync(this::shutdown);
+        return CompletableFuture.runAsync(this::shutdown, this.executorStrategy.defaultExecutor());
     }
 
     /**
@@ -149,7 +281,45 @@ public abstract class DatabaseRepository {
      * destination providers
      */
     public CompletableFuture<Pair<DatabaseProvider, DatabaseProvider>> convertAsync(int sourceId, int targetId) {
-        return CompletableFuture.supplyAsync(() -> convert(sourceId, targetId));
+        return CompletableFuture.supplyAsync(() -> convert(sourceId, targetId), this.executorStrategy.defaultExecutor());
+    }
+
+    /**
+     * Execute the {@link #convert(int, int, ConversionOptions)} process async.
+     *
+     * @param sourceId Id of the database that shall be used as a resource database
+     * @param targetId Id of the database that will be used as a destination database
+     * @param options  the conversion's parallelism, chunk size, checkpoint and progress listener
+     * @return a {@link CompletableFuture} resolving to a {@link Pair} of the source and
+     * destination providers
+     */
+    public CompletableFuture<Pair<DatabaseProvider, DatabaseProvider>> convertAsync(int sourceId, int targetId, @NotNull ConversionOptions options) {
+        return CompletableFuture.supplyAsync(() -> convert(sourceId, targetId, options), this.executorStrategy.defaultExecutor());
+    }
+
+    /**
+     * Execute the {@link #replicate(int, int)} process async.
+     *
+     * @param sourceId Id of the database that shall be replicated
+     * @param targetId Id of the database that will hold the copy
+     * @return a {@link CompletableFuture} resolving to the running replication once its initial
+     * copy finished
+     */
+    public CompletableFuture<Replication> replicateAsync(int sourceId, int targetId) {
+        return CompletableFuture.supplyAsync(() -> replicate(sourceId, targetId), this.executorStrategy.defaultExecutor());
+    }
+
+    /**
+     * Execute the {@link #replicate(int, int, ReplicationOptions)} process async.
+     *
+     * @param sourceId Id of the database that shall be replicated
+     * @param targetId Id of the database that will hold the copy
+     * @param options  the replication's poll interval, batch size and initial copy parallelism
+     * @return a {@link CompletableFuture} resolving to the running replication once its initial
+     * copy finished
+     */
+    public CompletableFuture<Replication> replicateAsync(int sourceId, int targetId, @NotNull ReplicationOptions options) {
+        return CompletableFuture.supplyAsync(() -> replicate(sourceId, targetId, options), this.executorStrategy.defaultExecutor());
     }
 
     /**
@@ -161,7 +331,7 @@ public abstract class DatabaseRepository {
      */
     @SneakyThrows
     public CompletableFuture<Optional<DatabaseProvider>> findDatabaseProviderByIdAsync(int id) {
-        return CompletableFuture.supplyAsync(() -> findDatabaseProviderById(id));
+        return CompletableFuture.supplyAsync(() -> findDatabaseProviderById(id), this.executorStrategy.defaultExecutor());
     }
 
     /**
@@ -175,7 +345,34 @@ public abstract class DatabaseRepository {
      * {@link DatabaseProvider}
      */
     public CompletableFuture<DatabaseProvider> registerDatabaseProviderAsync(int id, @NotNull DatabaseType databaseType, @NotNull Credentials credentials) {
-        return CompletableFuture.supplyAsync(() -> registerDatabaseProvider(id, databaseType, credentials));
+        return CompletableFuture.supplyAsync(() -> registerDatabaseProvider(id, databaseType, credentials), this.executorStrategy.defaultExecutor());
+    }
+
+    /**
+     * Execute the {@link #registerShardedDatabaseProvider(int, int...)} process async.
+     *
+     * @param id       Id of the sharded database
+     * @param shardIds ids of the registered databases to partition across, at least one
+     * @return a {@link CompletableFuture} resolving to the newly created and registered sharded
+     * {@link DatabaseProvider}
+     */
+    public CompletableFuture<DatabaseProvider> registerShardedDatabaseProviderAsync(int id, int @NotNull ... shardIds) {
+        return CompletableFuture.supplyAsync(() -> registerShardedDatabaseProvider(id, shardIds), this.executorStrategy.defaultExecutor());
+    }
+
+    /**
+     * Execute the {@link #registerTieredDatabaseProvider(int, int, int, TieringOptions)} process
+     * async.
+     *
+     * @param id        Id of the tiered database
+     * @param fastId    id of the registered database to read from first
+     * @param durableId id of the registered database holding every entry durably
+     * @param options   the write mode and the fast database's TTL and size limits
+     * @return a {@link CompletableFuture} resolving to the newly created and registered tiered
+     * {@link DatabaseProvider}
+     */
+    public CompletableFuture<DatabaseProvider> registerTieredDatabaseProviderAsync(int id, int fastId, int durableId, @NotNull TieringOptions options) {
+        return CompletableFuture.supplyAsync(() -> registerTieredDatabaseProvider(id, fastId, durableId, options), this.executorStrategy.defaultExecutor());
     }
 
     /**
@@ -186,7 +383,7 @@ public abstract class DatabaseRepository {
      * down and unregistered
      */
     public CompletableFuture<DatabaseProvider> unregisterDatabaseProviderAsync(int id) {
-        return CompletableFuture.supplyAsync(() -> unregisterDatabaseProvider(id));
+        return CompletableFuture.supplyAsync(() -> unregisterDatabaseProvider(id), this.executorStrategy.defaultExecutor());
     }
 
 }
@@ -0,0 +1,30 @@
+package de.lino.database.database;
+
+import de.lino.database.database.entity.DatabaseEntry;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Collection;
+
+/**
+ * A {@link DatabaseSection} whose backend offers a bulk-ingest path faster than even a batched
+ * {@link #insertAll(Collection)} - e.g. PostgreSQL's {@code COPY}, MySQL's {@code LOAD DATA} or
+ * an unordered MongoDB {@code bulkWrite} - used by
+ * {@link de.lino.database.DatabaseRepository#convert(int, int)} whenever its target section
+ * supports it.
+ * <p>
+ * Unlike {@link #insertAll(Collection)}, a bulk insert does not check beforehand whether any of
+ * its ids are already taken: it is meant for loading entries into a section known not to hold
+ * them yet, such as a freshly created one. What happens to an entry whose id is taken anyway is
+ * up to the backend - it may be skipped, overwritten, or fail the batch.
+ */
+public interface BulkIngestSection extends DatabaseSection {
+
+    /**
+     * Insert several new json documents into the database through the backend's bulk-ingest
+     * path, without checking their ids beforehand.
+     *
+     * @param databaseEntries the entries to insert
+     */
+    void bulkInsert(@NotNull Collection<DatabaseEntry> databaseEntries);
+
+}
@@ -0,0 +1,34 @@
+package de.lino.database.database;
+
+import de.lino.database.database.entity.SectionChanges;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Optional;
+
+/**
+ * A {@link DatabaseSection} able to list what changed in it since a given
+ * {@link de.lino.database.utils.VersionClock version} - from the versions its backend stamps every
+ * written entry with and the tombstones every delete leaves - used by
+ * {@link de.lino.database.DatabaseRepository#replicate(int, int)} to tail a source section
+ * rather than rescanning it.
+ * <p>
+ * Versions of different writers are only as comparable as their wall clocks, so implementations
+ * re-fetch an overlap window below {@code version}: the same change may be listed by consecutive
+ * calls, and callers must apply changes idempotently.
+ */
+public interface ChangeStreamSection extends DatabaseSection {
+
+    /**
+     * List every entry written and every id deleted with a version newer than {@code version},
+     * minus this section's overlap window, read from the backend itself rather than from any
+     * in-memory view.
+     *
+     * @param version the {@link de.lino.database.utils.VersionClock#next() version} taken before
+     *                the caller's last complete read of this section
+     * @return the changes since {@code version}, or empty if they cannot be determined - because
+     * this section does not track changes, was cleared since, or {@code version} is older than its
+     * tombstone retention - and the caller has to read the whole section again instead
+     */
+    @NotNull Optional<SectionChanges> changesSince(long version);
+
+}
@@ -1,5 +1,6 @@
 package de.lino.database.database;
 
+import de.lino.database.DatabaseRepository;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.UnmodifiableView;
 
@@ -13,8 +14,9 @@ import java.util.concurrent.CompletableFuture;
  * <p>
  * A section roughly corresponds to a table, collection or directory depending on the concrete
  * database technology. Every synchronous operation declared here has a corresponding
- * {@code *Async} default method that executes the same logic on the common
- * {@link CompletableFuture} pool.
+ * {@code *Async} default method that executes the same logic on this provider's executor, as
+ * resolved by {@link DatabaseRepository#executorFor(DatabaseProvider)} through the installed
+ * {@link de.lino.database.utils.executor.ExecutorStrategy}.
  */
 public interface DatabaseProvider {
 
@@ -93,7 +95,7 @@ public interface DatabaseProvider {
      * @return a {@link CompletableFuture} that completes once the database has been shut down
      */
     default CompletableFuture<Void> shutdownAsync() {
-        return CompletableFuture.runAsync(this::shutdown);
+        return CompletableFuture.runAsync(this::shutdown, DatabaseRepository.executorFor(this));
     }
 
     /**
@@ -104,7 +106,7 @@ public interface DatabaseProvider {
      * {@link DatabaseSection}
      */
     default CompletableFuture<DatabaseSection> createSectionAsync(@NotNull String name) {
-        return CompletableFuture.supplyAsync(() -> createSection(name));
+        return CompletableFuture.supplyAsync(() -> createSection(name), DatabaseRepository.executorFor(this));
     }
 
     /**
@@ -114,7 +116,7 @@ public interface DatabaseProvider {
      * @return a {@link CompletableFuture} that completes once the section has been deleted
      */
     default CompletableFuture<Void> deleteSectionAsync(@NotNull String name) {
-        return CompletableFuture.runAsync(() -> deleteSection(name));
+        return CompletableFuture.runAsync(() -> deleteSection(name), DatabaseRepository.executorFor(this));
     }
 
     /**
@@ -125,7 +127,7 @@ public interface DatabaseProvider {
      * {@code false} otherwise
      */
     default CompletableFuture<Boolean> existsSectionAsync(@NotNull String name) {
-        return CompletableFuture.supplyAsync(() -> existsSection(name));
+        return CompletableFuture.supplyAsync(() -> existsSection(name), DatabaseRepository.executorFor(this));
     }
 
     /**
@@ -134,7 +136,7 @@ public interface DatabaseProvider {
      * @return a {@link CompletableFuture} resolving to an unmodifiable list of all sections
      */
     default CompletableFuture<List<DatabaseSection>> getSectionsAsync() {
-        return CompletableFuture.supplyAsync(this::getSections);
+        return CompletableFuture.supplyAsync(this::getSections, DatabaseRepository.executorFor(this));
     }
 
     /**
@@ -145,7 +147,7 @@ public interface DatabaseProvider {
      * matching {@link DatabaseSection}, or empty if none exists under the given name
      */
     default CompletableFuture<Optional<DatabaseSection>> getSectionAsync(@NotNull String name) {
-        return CompletableFuture.supplyAsync(() -> getSection(name));
+        return CompletableFuture.supplyAsync(() -> getSection(name), DatabaseRepository.executorFor(this));
     }
 
     /**
@@ -154,7 +156,7 @@ public interface DatabaseProvider {
      * @return a {@link CompletableFuture} that completes once every section has been removed
      */
     default CompletableFuture<Void> clearAsync() {
-        return CompletableFuture.runAsync(this::clear);
+        return CompletableFuture.runAsync(this::clear, DatabaseRepository.executorFor(this));
     }
 
     /**
@@ -163,7 +165,7 @@ public interface DatabaseProvider {
      * @return a {@link CompletableFuture} that completes once this database has been reloaded
      */
     default CompletableFuture<Void> reloadAsync() {
-        return CompletableFuture.runAsync(this::reload);
+        return CompletableFuture.runAsync(this::reload, DatabaseRepository.executorFor(this));
     }
 
 }
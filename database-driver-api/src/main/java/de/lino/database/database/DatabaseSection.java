@@ -1,12 +1,22 @@
 package de.lino.database.database;
 
+import de.lino.database.DatabaseRepository;
 import de.lino.database.database.entity.DatabaseEntry;
+import de.lino.database.database.exception.NoSuchEntryFound;
+import de.lino.database.json.JsonDocument;
+import de.lino.database.utils.expiry.ExpiryWheel;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.UnmodifiableView;
 
+import java.time.Duration;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 /**
  * Represents a single logical grouping of {@link DatabaseEntry} objects within a
@@ -14,7 +24,9 @@ import java.util.concurrent.CompletableFuture;
  * directory of JSON files) and exposes CRUD operations over its entries.
  * <p>
  * Every synchronous operation declared here has a corresponding {@code *Async} default method
- * that executes the same logic on the common {@link CompletableFuture} pool.
+ * that executes the same logic on this section's {@link #getExecutor() executor} - its provider's
+ * executor under the installed {@link de.lino.database.utils.executor.ExecutorStrategy}, unless
+ * an implementation provides a dedicated one.
  */
 public interface DatabaseSection {
 
@@ -32,6 +44,35 @@ public interface DatabaseSection {
      */
     void insert(@NotNull DatabaseEntry databaseEntry);
 
+    /**
+     * Insert a new json document into the database that expires - is deleted again - once
+     * {@code ttl} has elapsed, unless it was updated, upserted or deleted before; like Redis'
+     * {@code SET ... PX}, replacing an entry discards its time to live.
+     * <p>
+     * The default implementation calls {@link #insert(DatabaseEntry)} and schedules the deletion
+     * on the shared {@link ExpiryWheel}, to run on this section's {@link #getExecutor() executor}
+     * only if {@link #findEntryById(String)} still returns the very instance inserted. That expiry
+     * lives in this process only: it is lost on {@link #reload()}, and an entry whose inserting
+     * process stops before the deadline never expires. Implementations whose backend expires
+     * entries natively (e.g. Redis {@code PX}, MongoDB TTL indexes) override this to use it.
+     *
+     * @param databaseEntry the entry to insert
+     * @param ttl           how long the entry lives, must be positive
+     * @throws IllegalArgumentException if {@code ttl} is zero or negative
+     */
+    default void insert(@NotNull DatabaseEntry databaseEntry, @NotNull Duration ttl) {
+
+        if (ttl.isNegative() || ttl.isZero()) throw new IllegalArgumentException("@DatabaseSection.insert: The time to live must be positive");
+
+        this.insert(databaseEntry);
+        ExpiryWheel.getInstance().schedule(ttl, () -> CompletableFuture.runAsync(() -> this.expire(databaseEntry), this.getExecutor()).exceptionally(throwable -> {
+            System.err.println("Could not expire entry '" + databaseEntry.getId() + "' of section '" + this.getName() + "'");
+            throwable.printStackTrace();
+            return null;
+        }));
+
+    }
+
     /**
      * Update an existing json document from the database.
      *
@@ -39,6 +80,22 @@ public interface DatabaseSection {
      */
     void update(@NotNull DatabaseEntry databaseEntry);
 
+    /**
+     * Insert a json document into the database, or replace it if one already exists under the
+     * same id.
+     * <p>
+     * The default implementation checks {@link #exists(String)} and then calls either
+     * {@link #update(DatabaseEntry)} or {@link #insert(DatabaseEntry)}, which is neither atomic
+     * nor a single round trip; implementations whose backend offers a native single-statement
+     * upsert override this to use it instead.
+     *
+     * @param databaseEntry the entry to insert or replace
+     */
+    default void upsert(@NotNull DatabaseEntry databaseEntry) {
+        if (this.exists(databaseEntry.getId())) this.update(databaseEntry);
+        else this.insert(databaseEntry);
+    }
+
     /**
      * Delete an existing json document from the database.
      *
@@ -46,6 +103,43 @@ public interface DatabaseSection {
      */
     void delete(@NotNull String id);
 
+    /**
+     * Insert several new json documents into the database at once.
+     * <p>
+     * The default implementation simply calls {@link #insert(DatabaseEntry)} once per entry;
+     * implementations able to write many entries in a single round trip (e.g. JDBC batching)
+     * override this to do so.
+     *
+     * @param databaseEntries the entries to insert
+     */
+    default void insertAll(@NotNull Collection<DatabaseEntry> databaseEntries) {
+        databaseEntries.forEach(this::insert);
+    }
+
+    /**
+     * Update several existing json documents from the database at once.
+     * <p>
+     * The default implementation simply calls {@link #update(DatabaseEntry)} once per entry;
+     * implementations able to write many entries in a single round trip override this to do so.
+     *
+     * @param databaseEntries the entries to update
+     */
+    default void updateAll(@NotNull Collection<DatabaseEntry> databaseEntries) {
+        databaseEntries.forEach(this::update);
+    }
+
+    /**
+     * Delete several existing json documents from the database at once.
+     * <p>
+     * The default implementation simply calls {@link #delete(String)} once per id;
+     * implementations able to delete many entries in a single round trip override this to do so.
+     *
+     * @param ids primary keys
+     */
+    default void deleteAll(@NotNull Collection<String> ids) {
+        ids.forEach(this::delete);
+    }
+
     /**
      * Count all existing json documents.
      *
@@ -89,6 +183,25 @@ public interface DatabaseSection {
      */
     Optional<DatabaseEntry> findEntryById(@NotNull String id);
 
+    /**
+     * Find every json document whose field at a dotted path equals a value, e.g.
+     * {@code findByField("data.owner", "lino")}. The path is resolved from the document's root,
+     * via {@link JsonDocument#matches}.
+     * <p>
+     * The default implementation filters {@link #stream()} in memory; implementations able to
+     * filter on the server, ideally through an index, override this to do so.
+     *
+     * @param path  the dot-separated keys leading to the field, outermost first
+     * @param value the value the field must equal
+     * @return every matching entry
+     */
+    default List<DatabaseEntry> findByField(@NotNull String path, @NotNull Object value) {
+
+        try (final Stream<DatabaseEntry> stream = this.stream()) {
+            return stream.filter(databaseEntry -> databaseEntry.getDocument().matches(path, value)).toList();
+        }
+    }
+
     /**
      * Get an unmodifiable list of all database entities.
      *
@@ -97,6 +210,51 @@ public interface DatabaseSection {
     @UnmodifiableView
     List<DatabaseEntry> getEntries();
 
+    /**
+     * Get a sequential stream over all database entities, without materializing them into a list
+     * first.
+     * <p>
+     * Implementations backed by an in-memory view stream that view directly, without copying it;
+     * implementations reading straight from the backing store (e.g. a lazy SQL section) stream a
+     * forward-only cursor instead, so a scan over any number of entries runs in constant memory.
+     * Since such a stream may hold a database connection open until it is closed, always close it
+     * once done, e.g. via try-with-resources - or use {@link #forEachEntry(Consumer)}, which does so
+     * itself. The default implementation streams {@link #getEntries()}.
+     *
+     * @return a stream over all entries currently stored in this section
+     */
+    default Stream<DatabaseEntry> stream() {
+        return this.getEntries().stream();
+    }
+
+    /**
+     * Perform {@code consumer} once per database entity, in the same constant-memory fashion as
+     * {@link #stream()}, closing the underlying stream once done.
+     *
+     * @param consumer the action to perform per entry
+     */
+    default void forEachEntry(@NotNull Consumer<DatabaseEntry> consumer) {
+        try (final Stream<DatabaseEntry> stream = this.stream()) {
+            stream.forEach(consumer);
+        }
+    }
+
+    /**
+     * Get the executor every {@code *Async} method of this section runs its blocking operation
+     * on.
+     * <p>
+     * The default implementation returns the executor the installed
+     * {@link de.lino.database.utils.executor.ExecutorStrategy} assigns to the provider owning this
+     * section, via {@link DatabaseRepository#executorFor(DatabaseSection)} - the common
+     * {@link ForkJoinPool} unless another strategy was installed. Implementations owning a
+     * dedicated, bounded executor for their backend override this to return it instead.
+     *
+     * @return the executor to run async operations on
+     */
+    default Executor getExecutor() {
+        return DatabaseRepository.executorFor(this);
+    }
+
     /**
      * Execute the {@link #insert(DatabaseEntry)} process async.
      *
@@ -104,7 +262,18 @@ public interface DatabaseSection {
      * @return a {@link CompletableFuture} that completes once the entry has been inserted
      */
     default CompletableFuture<Void> insertAsync(@NotNull DatabaseEntry databaseEntry) {
-        return CompletableFuture.runAsync(() -> insert(databaseEntry));
+        return CompletableFuture.runAsync(() -> insert(databaseEntry), this.getExecutor());
+    }
+
+    /**
+     * Execute the {@link #insert(DatabaseEntry, Duration)} process async.
+     *
+     * @param databaseEntry the entry to insert
+     * @param ttl           how long the entry lives, must be positive
+     * @return a {@link CompletableFuture} that completes once the entry has been inserted
+     */
+    default CompletableFuture<Void> insertAsync(@NotNull DatabaseEntry databaseEntry, @NotNull Duration ttl) {
+        return CompletableFuture.runAsync(() -> insert(databaseEntry, ttl), this.getExecutor());
     }
 
     /**
@@ -114,7 +283,17 @@ public interface DatabaseSection {
      * @return a {@link CompletableFuture} that completes once the entry has been updated
      */
     default CompletableFuture<Void> updateAsync(@NotNull DatabaseEntry databaseEntry) {
-        return CompletableFuture.runAsync(() -> update(databaseEntry));
+        return CompletableFuture.runAsync(() -> update(databaseEntry), this.getExecutor());
+    }
+
+    /**
+     * Execute the {@link #upsert(DatabaseEntry)} process async.
+     *
+     * @param databaseEntry the entry to insert or replace
+     * @return a {@link CompletableFuture} that completes once the entry has been upserted
+     */
+    default CompletableFuture<Void> upsertAsync(@NotNull DatabaseEntry databaseEntry) {
+        return CompletableFuture.runAsync(() -> upsert(databaseEntry), this.getExecutor());
     }
 
     /**
@@ -124,7 +303,37 @@ public interface DatabaseSection {
      * @return a {@link CompletableFuture} that completes once the entry has been deleted
      */
     default CompletableFuture<Void> deleteAsync(@NotNull String id) {
-        return CompletableFuture.runAsync(() -> delete(id));
+        return CompletableFuture.runAsync(() -> delete(id), this.getExecutor());
+    }
+
+    /**
+     * Execute the {@link #insertAll(Collection)} process async.
+     *
+     * @param databaseEntries the entries to insert
+     * @return a {@link CompletableFuture} that completes once every entry has been inserted
+     */
+    default CompletableFuture<Void> insertAllAsync(@NotNull Collection<DatabaseEntry> databaseEntries) {
+        return CompletableFuture.runAsync(() -> insertAll(databaseEntries), this.getExecutor());
+    }
+
+    /**
+     * Execute the {@link #updateAll(Collection)} process async.
+     *
+     * @param databaseEntries the entries to update
+     * @return a {@link CompletableFuture} that completes once every entry has been updated
+     */
+    default CompletableFuture<Void> updateAllAsync(@NotNull Collection<DatabaseEntry> databaseEntries) {
+        return CompletableFuture.runAsync(() -> updateAll(databaseEntries), this.getExecutor());
+    }
+
+    /**
+     * Execute the {@link #deleteAll(Collection)} process async.
+     *
+     * @param ids primary keys
+     * @return a {@link CompletableFuture} that completes once every entry has been deleted
+     */
+    default CompletableFuture<Void> deleteAllAsync(@NotNull Collection<String> ids) {
+        return CompletableFuture.runAsync(() -> deleteAll(ids), this.getExecutor());
     }
 
     /**
@@ -134,7 +343,7 @@ public interface DatabaseSection {
      * this section
      */
     default CompletableFuture<Long> countAsync() {
-        return CompletableFuture.supplyAsync(this::count);
+        return CompletableFuture.supplyAsync(this::count, this.getExecutor());
     }
 
     /**
@@ -143,7 +352,7 @@ public interface DatabaseSection {
      * @return a {@link CompletableFuture} that completes once the section has been cleared
      */
     default CompletableFuture<Void> clearAsync() {
-        return CompletableFuture.runAsync(this::clear);
+        return CompletableFuture.runAsync(this::clear, this.getExecutor());
     }
 
     /**
@@ -154,7 +363,7 @@ public interface DatabaseSection {
      * {@code false} otherwise
      */
     default CompletableFuture<Boolean> existsAsync(@NotNull String id) {
-        return CompletableFuture.supplyAsync(() -> exists(id));
+        return CompletableFuture.supplyAsync(() -> exists(id), this.getExecutor());
     }
 
     /**
@@ -165,7 +374,18 @@ public interface DatabaseSection {
      * matching {@link DatabaseEntry}, or empty if none exists under the given id
      */
     default CompletableFuture<Optional<DatabaseEntry>> findEntryByIdAsync(@NotNull String id) {
-        return CompletableFuture.supplyAsync(() -> findEntryById(id));
+        return CompletableFuture.supplyAsync(() -> findEntryById(id), this.getExecutor());
+    }
+
+    /**
+     * Execute the {@link #findByField(String, Object)} process async.
+     *
+     * @param path  the dot-separated keys leading to the field, outermost first
+     * @param value the value the field must equal
+     * @return a {@link CompletableFuture} resolving to every matching entry
+     */
+    default CompletableFuture<List<DatabaseEntry>> findByFieldAsync(@NotNull String path, @NotNull Object value) {
+        return CompletableFuture.supplyAsync(() -> findByField(path, value), this.getExecutor());
     }
 
     /**
@@ -175,7 +395,7 @@ public interface DatabaseSection {
      * currently stored in this section
      */
     default CompletableFuture<List<DatabaseEntry>> getEntriesAsync() {
-        return CompletableFuture.supplyAsync(this::getEntries);
+        return CompletableFuture.supplyAsync(this::getEntries, this.getExecutor());
     }
 
     /**
@@ -184,7 +404,25 @@ public interface DatabaseSection {
      * @return a {@link CompletableFuture} that completes once this section has been reloaded
      */
     default CompletableFuture<Void> reloadAsync() {
-        return CompletableFuture.runAsync(this::reload);
+        return CompletableFuture.runAsync(this::reload, this.getExecutor());
+    }
+
+    /**
+     * Deletes {@code databaseEntry} once its time to live elapsed, unless it was replaced or
+     * deleted in the meantime.
+     *
+     * @param databaseEntry the entry inserted with a time to live
+     */
+    private void expire(@NotNull DatabaseEntry databaseEntry) {
+
+        if (this.findEntryById(databaseEntry.getId()).orElse(null) != databaseEntry) return;
+
+        try {
+            this.delete(databaseEntry.getId());
+        } catch (final NoSuchEntryFound ignored) {
+            // deleted concurrently
+        }
+
     }
 
 }
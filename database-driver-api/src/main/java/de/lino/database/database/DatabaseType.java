@@ -72,7 +72,21 @@ public enum DatabaseType {
     /**
      * Redis, accessed through the Jedis client.
      */
-    REDIS("redis", "com.redis.Driver");
+    REDIS("redis", "com.redis.Driver"),
+
+    /**
+     * A virtual database partitioning every section across several other registered databases;
+     * not backed by any driver of its own, and only registered via
+     * {@link de.lino.database.DatabaseRepository#registerShardedDatabaseProvider}.
+     */
+    SHARDED("sharded", "NULL"),
+
+    /**
+     * A virtual database layering a fast registered database over a durable one; not backed by
+     * any driver of its own, and only registered via
+     * {@link de.lino.database.DatabaseRepository#registerTieredDatabaseProvider}.
+     */
+    TIERED("tiered", "NULL");
 
     /**
      * The short identifier of this database type (e.g. used to compose JDBC URLs) and the fully
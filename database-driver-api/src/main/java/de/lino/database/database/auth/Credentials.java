@@ -52,6 +52,14 @@ public class Credentials {
      */
     private String database, fileRepository;
 
+    /**
+     * Optional, backend-specific tuning options (e.g. JDBC batch sizes), persisted under the
+     * {@code "options"} key of the configuration file. Missing from configuration files written
+     * by older versions, in which case it is simply empty and every backend falls back to its
+     * defaults; may also be filled in programmatically before the owning provider is registered.
+     */
+    private JsonDocument options;
+
     /**
      * Credentials configuration with automatic save process in JSON file
      * @param configDestination: configuration file where the credentials will be saved
@@ -74,6 +82,7 @@ public class Credentials {
             this.port = port;
             this.database = database;
             this.fileRepository = fileRepository.toString();
+            this.options = new JsonDocument();
 
             new JsonDocument()
                     .append("address", address)
@@ -82,6 +91,7 @@ public class Credentials {
                     .append("port", port)
                     .append("database", database)
                     .append("fileRepository", fileRepository.toString())
+                    .append("options", this.options)
                     .write(configDestination);
 
             return;
@@ -99,10 +109,15 @@ public class Credentials {
             this.database = jsonDocument.getString("database");
             this.fileRepository = jsonDocument.getString("fileRepository");
 
+            final JsonDocument options = jsonDocument.getMetaData("options");
+            this.options = options == null ? new JsonDocument() : options;
+
         } catch (final Exception exception) {
             exception.printStackTrace();
         }
 
+        if (this.options == null) this.options = new JsonDocument();
+
     }
 
     /**
@@ -0,0 +1,24 @@
+package de.lino.database.database.conversion;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Receives the progress of a running
+ * {@link de.lino.database.DatabaseRepository#convert(int, int, ConversionOptions) conversion},
+ * at most once per {@link ConversionOptions#getProgressInterval() progress interval} and once more
+ * when it finished. Called from the conversion's worker threads, one call at a time.
+ * <p>
+ * Being a {@link FunctionalInterface}, it is usually satisfied with a lambda, e.g.
+ * {@code progress -> System.out.println(progress.getRowsPerSecond() + " rows/s")}.
+ */
+@FunctionalInterface
+public interface ConversionListener {
+
+    /**
+     * Handles a progress report.
+     *
+     * @param progress the conversion's progress so far
+     */
+    void onProgress(@NotNull ConversionProgress progress);
+
+}
@@ -0,0 +1,113 @@
+package de.lino.database.database.conversion;
+
+import lombok.Getter;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.nio.file.Path;
+import java.time.Duration;
+
+/**
+ * The tuning options of a {@link de.lino.database.DatabaseRepository#convert(int, int, ConversionOptions)
+ * conversion}, configured through fluent setters, e.g.
+ * {@code new ConversionOptions().parallelism(8).checkpoint(Path.of("convert.json"))}. Every option
+ * is optional and falls back to the default documented on its field.
+ */
+@Getter
+public class ConversionOptions {
+
+    /**
+     * The number of sections converted in parallel, each by its own worker thread. {@code 4} by
+     * default.
+     */
+    private int parallelism = 4;
+
+    /**
+     * The number of entries buffered per target section before they are written at once, or
+     * {@code 0} to pick per target: larger chunks for targets with a
+     * {@link de.lino.database.database.BulkIngestSection bulk-ingest path}, smaller ones otherwise.
+     * {@code 0} by default.
+     */
+    private int chunkSize;
+
+    /**
+     * The file the progress of every section is checkpointed to after every chunk, or
+     * {@code null} to convert without checkpoints. If the file exists when the conversion starts,
+     * the conversion resumes from it: sections it marks complete are skipped, and sections it
+     * marks started are continued rather than recreated, skipping every entry the target already
+     * holds. The file is deleted once every section converted successfully. {@code null} by
+     * default.
+     */
+    private @Nullable Path checkpoint;
+
+    /**
+     * The listener progress is reported to, or {@code null} to report none - which also saves
+     * measuring every entry's serialized size. {@code null} by default.
+     */
+    private @Nullable ConversionListener listener;
+
+    /**
+     * How often progress is reported to the {@link #listener} at most. One second by default.
+     */
+    private @NotNull Duration progressInterval = Duration.ofSeconds(1);
+
+    /**
+     * Set the number of sections converted in parallel.
+     *
+     * @param parallelism the number of worker threads, at least one
+     * @return this options instance, for chaining
+     * @throws IllegalArgumentException if {@code parallelism} is less than one
+     */
+    public @NotNull ConversionOptions parallelism(int parallelism) {
+        if (parallelism < 1) throw new IllegalArgumentException("@ConversionOptions.parallelism: At least one worker is required");
+        this.parallelism = parallelism;
+        return this;
+    }
+
+    /**
+     * Set the number of entries written per chunk.
+     *
+     * @param chunkSize the chunk size, or {@code 0} to pick per target
+     * @return this options instance, for chaining
+     * @throws IllegalArgumentException if {@code chunkSize} is negative
+     */
+    public @NotNull ConversionOptions chunkSize(int chunkSize) {
+        if (chunkSize < 0) throw new IllegalArgumentException("@ConversionOptions.chunkSize: The chunk size must not be negative");
+        this.chunkSize = chunkSize;
+        return this;
+    }
+
+    /**
+     * Set the file progress is checkpointed to and resumed from.
+     *
+     * @param checkpoint the checkpoint file, or {@code null} to convert without checkpoints
+     * @return this options instance, for chaining
+     */
+    public @NotNull ConversionOptions checkpoint(@Nullable Path checkpoint) {
+        this.checkpoint = checkpoint;
+        return this;
+    }
+
+    /**
+     * Set the listener progress is reported to.
+     *
+     * @param listener the listener, or {@code null} to report none
+     * @return this options instance, for chaining
+     */
+    public @NotNull ConversionOptions listener(@Nullable ConversionListener listener) {
+        this.listener = listener;
+        return this;
+    }
+
+    /**
+     * Set how often progress is reported at most.
+     *
+     * @param progressInterval the minimum delay between two progress reports
+     * @return this options instance, for chaining
+     */
+    public @NotNull ConversionOptions progressInterval(@NotNull Duration progressInterval) {
+        this.progressInterval = progressInterval;
+        return this;
+    }
+
+}
@@ -0,0 +1,44 @@
+package de.lino.database.database.conversion;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.time.Duration;
+
+/**
+ * A snapshot of a running {@link de.lino.database.DatabaseRepository#convert(int, int, ConversionOptions)
+ * conversion}, handed to its {@link ConversionListener}.
+ *
+ * @param sectionsCompleted the number of target sections converted completely, including
+ *                          sections skipped because a previous run already converted them
+ * @param sectionsTotal     the number of target sections the source's sections map to
+ * @param entries           the number of entries written by this run so far
+ * @param bytes             the serialized size of every entry written by this run so far
+ * @param elapsed           the time since this run started
+ * @param finished          whether this is the final report of the run
+ */
+public record ConversionProgress(int sectionsCompleted, int sectionsTotal, long entries, long bytes, @NotNull Duration elapsed, boolean finished) {
+
+    /**
+     * The average write throughput of this run so far, in entries per second.
+     *
+     * @return the entries written per second, {@code 0} before any time has elapsed
+     */
+    public double getRowsPerSecond() {
+        return this.perSecond(this.entries);
+    }
+
+    /**
+     * The average write throughput of this run so far, in serialized bytes per second.
+     *
+     * @return the bytes written per second, {@code 0} before any time has elapsed
+     */
+    public double getBytesPerSecond() {
+        return this.perSecond(this.bytes);
+    }
+
+    private double perSecond(long amount) {
+        final long nanos = this.elapsed.toNanos();
+        return nanos <= 0 ? 0 : amount * 1_000_000_000D / nanos;
+    }
+
+}
@@ -0,0 +1,26 @@
+package de.lino.database.database.entity;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.List;
+
+/**
+ * The changes a {@link de.lino.database.database.ChangeStreamSection} lists since a given version.
+ * An id may appear in both lists if it was deleted and written again; it is to be applied by
+ * deleting first, then writing.
+ *
+ * @param written every entry inserted or updated, in its current state
+ * @param deleted the id of every entry deleted
+ */
+public record SectionChanges(@NotNull List<DatabaseEntry> written, @NotNull List<String> deleted) {
+
+    /**
+     * Checks whether nothing changed at all.
+     *
+     * @return {@code true} if both lists are empty
+     */
+    public boolean isEmpty() {
+        return this.written.isEmpty() && this.deleted.isEmpty();
+    }
+
+}
@@ -0,0 +1,48 @@
+package de.lino.database.database.replication;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * A running {@link de.lino.database.DatabaseRepository#replicate(int, int) replication}, keeping
+ * a target database a copy of a source database: after an initial copy of every section, it
+ * polls the source for changes every {@link ReplicationOptions#getPollInterval() poll interval}
+ * and applies them to the target, until {@link #close() closed}.
+ */
+public interface Replication extends AutoCloseable {
+
+    /**
+     * Get the id of the database replicated from.
+     *
+     * @return the source database's id
+     */
+    int getSourceId();
+
+    /**
+     * Get the id of the database replicated to.
+     *
+     * @return the target database's id
+     */
+    int getTargetId();
+
+    /**
+     * Get how far behind the source the target is, and how fast changes are applied.
+     *
+     * @return a snapshot of this replication's metrics
+     */
+    @NotNull ReplicationMetrics getMetrics();
+
+    /**
+     * Check whether this replication is still polling the source.
+     *
+     * @return {@code false} once {@link #close()} was called
+     */
+    boolean isRunning();
+
+    /**
+     * Stop polling the source, waiting for a poll in progress to finish. The target keeps every
+     * change applied so far.
+     */
+    @Override
+    void close();
+
+}
@@ -0,0 +1,33 @@
+package de.lino.database.database.replication;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.time.Duration;
+
+/**
+ * A snapshot of a {@link Replication}'s progress, as returned by {@link Replication#getMetrics()}.
+ *
+ * @param written   the number of entries written to the target since the initial copy
+ * @param deleted   the number of ids deleted from the target since the initial copy
+ * @param polls     the number of polls completed, successfully or not
+ * @param failures  the number of polls that failed, and were retried by the next one
+ * @param lag       how old the source state the target reflects is: the time since the start of
+ *                  the last successful poll (or of the initial copy), which bounds how far behind
+ *                  the source any read from the target may be
+ * @param lastPoll  how long the last completed poll took
+ * @param elapsed   the time since the initial copy finished
+ */
+public record ReplicationMetrics(long written, long deleted, long polls, long failures, @NotNull Duration lag, @NotNull Duration lastPoll, @NotNull Duration elapsed) {
+
+    /**
+     * The average rate changes were applied to the target at since the initial copy, in writes and
+     * deletes per second.
+     *
+     * @return the changes applied per second, {@code 0} before any time has elapsed
+     */
+    public double getChangesPerSecond() {
+        final long nanos = this.elapsed.toNanos();
+        return nanos <= 0 ? 0 : (this.written + this.deleted) * 1_000_000_000D / nanos;
+    }
+
+}
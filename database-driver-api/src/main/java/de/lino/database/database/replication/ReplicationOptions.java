@@ -0,0 +1,72 @@
+package de.lino.database.database.replication;
+
+import lombok.Getter;
+import org.jetbrains.annotations.NotNull;
+
+import java.time.Duration;
+
+/**
+ * The tuning options of a {@link de.lino.database.DatabaseRepository#replicate(int, int, ReplicationOptions)
+ * replication}, configured through fluent setters, e.g.
+ * {@code new ReplicationOptions().pollInterval(Duration.ofMillis(250))}. Every option is optional
+ * and falls back to the default documented on its field.
+ */
+@Getter
+public class ReplicationOptions {
+
+    /**
+     * The delay between the end of one poll of the source and the start of the next, which
+     * together with the poll's own duration bounds the target's lag. One second by default.
+     */
+    private @NotNull Duration pollInterval = Duration.ofSeconds(1);
+
+    /**
+     * The number of changed entries written to the target at once. {@code 1_000} by default.
+     */
+    private int batchSize = 1_000;
+
+    /**
+     * The number of sections copied in parallel by the initial copy. {@code 4} by default.
+     */
+    private int parallelism = 4;
+
+    /**
+     * Set the delay between two polls of the source.
+     *
+     * @param pollInterval the delay between the end of one poll and the start of the next
+     * @return this options instance, for chaining
+     * @throws IllegalArgumentException if {@code pollInterval} is not positive
+     */
+    public @NotNull ReplicationOptions pollInterval(@NotNull Duration pollInterval) {
+        if (pollInterval.isNegative() || pollInterval.isZero()) throw new IllegalArgumentException("@ReplicationOptions.pollInterval: The poll interval must be positive");
+        this.pollInterval = pollInterval;
+        return this;
+    }
+
+    /**
+     * Set the number of changed entries written to the target at once.
+     *
+     * @param batchSize the batch size, at least one
+     * @return this options instance, for chaining
+     * @throws IllegalArgumentException if {@code batchSize} is less than one
+     */
+    public @NotNull ReplicationOptions batchSize(int batchSize) {
+        if (batchSize < 1) throw new IllegalArgumentException("@ReplicationOptions.batchSize: The batch size must be at least one");
+        this.batchSize = batchSize;
+        return this;
+    }
+
+    /**
+     * Set the number of sections copied in parallel by the initial copy.
+     *
+     * @param parallelism the number of worker threads, at least one
+     * @return this options instance, for chaining
+     * @throws IllegalArgumentException if {@code parallelism} is less than one
+     */
+    public @NotNull ReplicationOptions parallelism(int parallelism) {
+        if (parallelism < 1) throw new IllegalArgumentException("@ReplicationOptions.parallelism: At least one worker is required");
+        this.parallelism = parallelism;
+        return this;
+    }
+
+}
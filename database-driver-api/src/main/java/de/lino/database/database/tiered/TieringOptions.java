@@ -0,0 +1,142 @@
+package de.lino.database.database.tiered;
+
+import lombok.Getter;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.time.Duration;
+
+/**
+ * The options of a {@link de.lino.database.DatabaseRepository#registerTieredDatabaseProvider
+ * tiered database}, configured through fluent setters, e.g.
+ * {@code new TieringOptions().writeMode(WriteMode.WRITE_BEHIND).ttl(Duration.ofMinutes(5))}.
+ * Every option is optional and falls back to the default documented on its field.
+ * <p>
+ * The {@link #ttl} and {@link #maxSize} limits are enforced by a
+ * {@link de.lino.database.utils.cache.Cache} per section tracking which entries the fast tier
+ * holds: an entry past its TTL is re-read from the durable tier on next access, and every
+ * {@link #sweepInterval} the entries the cache expired or evicted are removed from the fast tier.
+ */
+@Getter
+public class TieringOptions {
+
+    /**
+     * How writes reach the durable tier. {@link WriteMode#WRITE_THROUGH} by default.
+     */
+    private @NotNull WriteMode writeMode = WriteMode.WRITE_THROUGH;
+
+    /**
+     * How long an entry is served from the fast tier before it is re-read from the durable tier,
+     * or {@code null} for no limit. {@code null} by default.
+     */
+    private @Nullable Duration ttl;
+
+    /**
+     * The maximum number of entries the fast tier holds per section, or {@code -1} for no limit.
+     * {@code -1} by default.
+     */
+    private long maxSize = -1;
+
+    /**
+     * How often expired and evicted entries are removed from the fast tier. One minute by
+     * default.
+     */
+    private @NotNull Duration sweepInterval = Duration.ofMinutes(1);
+
+    /**
+     * How often writes queued in {@link WriteMode#WRITE_BEHIND} mode are flushed to the durable
+     * tier. One second by default.
+     */
+    private @NotNull Duration writeBehindInterval = Duration.ofSeconds(1);
+
+    /**
+     * Set how writes reach the durable tier.
+     *
+     * @param writeMode the write mode
+     * @return this options instance, for chaining
+     */
+    public @NotNull TieringOptions writeMode(@NotNull WriteMode writeMode) {
+        this.writeMode = writeMode;
+        return this;
+    }
+
+    /**
+     * Set how long an entry is served from the fast tier.
+     *
+     * @param ttl the time to live, or {@code null} for no limit
+     * @return this options instance, for chaining
+     */
+    public @NotNull TieringOptions ttl(@Nullable Duration ttl) {
+        this.ttl = ttl;
+        return this;
+    }
+
+    /**
+     * Set the maximum number of entries the fast tier holds per section.
+     *
+     * @param maxSize the size limit, or {@code -1} for no limit
+     * @return this options instance, for chaining
+     */
+    public @NotNull TieringOptions maxSize(long maxSize) {
+        this.maxSize = maxSize;
+        return this;
+    }
+
+    /**
+     * Set how often expired and evicted entries are removed from the fast tier.
+     *
+     * @param sweepInterval the delay between two sweeps
+     * @return this options instance, for chaining
+     * @throws IllegalArgumentException if {@code sweepInterval} is not positive
+     */
+    public @NotNull TieringOptions sweepInterval(@NotNull Duration sweepInterval) {
+        if (sweepInterval.isNegative() || sweepInterval.isZero()) throw new IllegalArgumentException("@TieringOptions.sweepInterval: The sweep interval must be positive");
+        this.sweepInterval = sweepInterval;
+        return this;
+    }
+
+    /**
+     * Set how often queued writes are flushed to the durable tier in
+     * {@link WriteMode#WRITE_BEHIND} mode.
+     *
+     * @param writeBehindInterval the delay between two flushes
+     * @return this options instance, for chaining
+     * @throws IllegalArgumentException if {@code writeBehindInterval} is not positive
+     */
+    public @NotNull TieringOptions writeBehindInterval(@NotNull Duration writeBehindInterval) {
+        if (writeBehindInterval.isNegative() || writeBehindInterval.isZero()) throw new IllegalArgumentException("@TieringOptions.writeBehindInterval: The write-behind interval must be positive");
+        this.writeBehindInterval = writeBehindInterval;
+        return this;
+    }
+
+    /**
+     * Checks whether the fast tier is bounded at all, and therefore has to be swept.
+     *
+     * @return {@code true} if a {@link #ttl} or a {@link #maxSize} is set
+     */
+    public boolean isBounded() {
+        return this.ttl != null || this.maxSize > 0;
+    }
+
+    /**
+     * How a tiered section's writes reach its durable tier.
+     */
+    public enum WriteMode {
+
+        /**
+         * Every write is applied to the durable tier first and to the fast tier after, both before
+         * it returns - a write that returned is durable.
+         */
+        WRITE_THROUGH,
+
+        /**
+         * Every write is applied to the fast tier and queued, and queued writes are flushed to the
+         * durable tier in batches every {@link TieringOptions#getWriteBehindInterval() write-behind interval},
+         * the latest write per id only. Writes return as fast as the fast tier does, but ones not
+         * flushed yet are lost if the process dies.
+         */
+        WRITE_BEHIND
+
+    }
+
+}
@@ -713,6 +713,39 @@ public class JsonDocument {
         return key != null && this.jsonObject.has(key);
     }
 
+    /**
+     * Looks up the element at the given dotted path through nested objects, e.g.
+     * {@code "data.owner.name"}.
+     *
+     * @param path the dot-separated keys to follow, outermost first
+     * @return the element at the path, or {@code null} if any key along it is absent or does not
+     * hold a JSON object
+     */
+    @Nullable
+    public JsonElement find(@NotNull String path) {
+
+        JsonElement element = this.jsonObject;
+        for (final String key : path.split("\\.")) {
+            if (!element.isJsonObject() || !element.getAsJsonObject().has(key)) return null;
+            element = element.getAsJsonObject().get(key);
+        }
+
+        return element;
+    }
+
+    /**
+     * Checks whether the element at the given dotted path (see {@link #find}) equals the given
+     * value, serialized through this document's {@link Gson} instance.
+     *
+     * @param path  the dot-separated keys to follow, outermost first
+     * @param value the value to compare with; {@code null} only matches an explicit JSON null
+     * @return {@code true} if the path exists and holds the given value
+     */
+    public boolean matches(@NotNull String path, @Nullable Object value) {
+        final JsonElement element = this.find(path);
+        return element != null && element.equals(value == null ? JsonNull.INSTANCE : this.gson.toJsonTree(value));
+    }
+
     /**
      * Returns the keys of all top-level entries of this document.
      *
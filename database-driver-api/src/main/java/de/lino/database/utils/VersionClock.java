@@ -0,0 +1,47 @@
+package de.lino.database.utils;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The clock backends stamp every written row with, so an incremental reload can fetch only the
+ * rows changed since its last high-water mark: versions are microseconds since the epoch, taken
+ * from the wall clock but strictly increasing within this JVM - two writes in the same
+ * microsecond, or a wall clock stepping backwards, still get ascending versions.
+ * <p>
+ * Versions of different JVMs are only as comparable as their wall clocks, which is why readers
+ * re-fetch a configurable overlap window below their high-water mark rather than trusting it
+ * exactly.
+ */
+public final class VersionClock {
+
+    /**
+     * The last version handed out by {@link #next()}.
+     */
+    private static final AtomicLong LAST = new AtomicLong();
+
+    private VersionClock() {
+    }
+
+    /**
+     * Hands out the next version: the current wall clock time in microseconds, or one more than
+     * the previous version if the wall clock has not advanced past it.
+     *
+     * @return a version greater than every one handed out before
+     */
+    public static long next() {
+        final long now = TimeUnit.MILLISECONDS.toMicros(System.currentTimeMillis());
+        return LAST.accumulateAndGet(now, (last, current) -> Math.max(last + 1, current));
+    }
+
+    /**
+     * Converts a wall clock time into the version scale, e.g. to compute a cutoff.
+     *
+     * @param millis milliseconds since the epoch
+     * @return the version the wall clock had at {@code millis}
+     */
+    public static long ofMillis(long millis) {
+        return TimeUnit.MILLISECONDS.toMicros(millis);
+    }
+
+}
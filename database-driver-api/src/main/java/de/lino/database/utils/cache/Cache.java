@@ -1,6 +1,7 @@
 package de.lino.database.utils.cache;
 
 import java.util.Map;
+import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
 
 /**
@@ -40,6 +41,16 @@ public interface Cache<ID, T> {
      */
     CompletableFuture<T> get(ID id);
 
+    /**
+     * Returns the entity for the given key if it is cached, loaded and not
+     * expired - without invoking the loader, storing anything or evicting
+     * other entries. Must never block.
+     *
+     * @param id key to look up, must not be {@code null}
+     * @return the cached entity, or empty if none is currently held
+     */
+    Optional<T> getIfPresent(ID id);
+
     /**
      * Writes a value directly into the cache, e.g. after a successful save,
      * bypassing the loader.
@@ -0,0 +1,233 @@
+package de.lino.database.utils.codec;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Arrays;
+
+/**
+ * A dependency-free implementation of the LZ4 block format behind {@link PayloadCodec#LZ4}: a
+ * greedy, single-pass compressor finding 4-byte matches through a hash table over a 64 KiB
+ * window, and a bounds-checked decompressor. Its output is readable by every other LZ4 block
+ * decoder, and vice versa.
+ */
+final class LZ4Block {
+
+    /**
+     * The shortest match the format can encode.
+     */
+    private static final int MIN_MATCH = 4;
+
+    /**
+     * The number of trailing bytes the format requires to be literals.
+     */
+    private static final int LAST_LITERALS = 5;
+
+    /**
+     * The minimum distance between the start of the last match and the end of the input.
+     */
+    private static final int MATCH_FIND_LIMIT = 12;
+
+    /**
+     * The largest offset a match may point back.
+     */
+    private static final int MAX_DISTANCE = 65_535;
+
+    /**
+     * The number of bits of the match finder's hash table index.
+     */
+    private static final int HASH_LOG = 12;
+
+    /**
+     * After how many consecutive misses the match finder starts skipping ahead faster, so
+     * incompressible input is passed over quickly.
+     */
+    private static final int SKIP_TRIGGER = 6;
+
+    private LZ4Block() {
+    }
+
+    /**
+     * Compresses {@code source} into a single LZ4 block.
+     *
+     * @param source the bytes to compress
+     * @return the compressed block
+     */
+    static byte @NotNull [] compress(byte @NotNull [] source) {
+
+        final int length = source.length;
+        final byte[] target = new byte[length + length / 255 + 16];
+        final int[] table = new int[1 << HASH_LOG];
+        Arrays.fill(table, -1);
+
+        int position = 0;
+        int anchor = 0;
+        int output = 0;
+
+        final int matchLimit = length - LAST_LITERALS;
+        final int findLimit = length - MATCH_FIND_LIMIT;
+
+        while (position < findLimit) {
+
+            final int sequence = readInt(source, position);
+            final int hash = hash(sequence);
+            int reference = table[hash];
+            table[hash] = position;
+
+            if (reference < 0 || position - reference > MAX_DISTANCE || readInt(source, reference) != sequence) {
+                position += 1 + ((position - anchor) >>> SKIP_TRIGGER);
+                continue;
+            }
+
+            while (position > anchor && reference > 0 && source[position - 1] == source[reference - 1]) {
+                position--;
+                reference--;
+            }
+
+            int matchLength = MIN_MATCH;
+            while (position + matchLength < matchLimit && source[position + matchLength] == source[reference + matchLength]) matchLength++;
+
+            output = writeSequence(target, output, source, anchor, position - anchor, position - reference, matchLength);
+
+            position += matchLength;
+            anchor = position;
+        }
+
+        output = writeLiterals(target, output, source, anchor, length - anchor);
+        return Arrays.copyOf(target, output);
+    }
+
+    /**
+     * Decompresses the LZ4 block of {@code sourceLength} bytes starting at {@code offset} of
+     * {@code source}.
+     *
+     * @param source       the bytes holding the compressed block
+     * @param offset       the index the compressed block starts at
+     * @param sourceLength the length of the compressed block
+     * @param length       the uncompressed length
+     * @return the decompressed bytes
+     * @throws IllegalStateException if the block is corrupt or does not decompress to exactly
+     *                               {@code length} bytes
+     */
+    static byte @NotNull [] decompress(byte @NotNull [] source, int offset, int sourceLength, int length) {
+
+        final byte[] target = new byte[length];
+        final int end = offset + sourceLength;
+
+        int position = offset;
+        int output = 0;
+
+        while (position < end) {
+
+            final int token = source[position++] & 0xFF;
+
+            int literals = token >>> 4;
+            if (literals == 15) {
+                int value;
+                do {
+                    if (position >= end) throw corrupt();
+                    value = source[position++] & 0xFF;
+                    literals += value;
+                } while (value == 255);
+            }
+
+            if (literals > end - position || literals > length - output) throw corrupt();
+            System.arraycopy(source, position, target, output, literals);
+            position += literals;
+            output += literals;
+
+            if (position == end) break;
+            if (end - position < 2) throw corrupt();
+
+            final int distance = (source[position] & 0xFF) | (source[position + 1] & 0xFF) << 8;
+            position += 2;
+            if (distance == 0 || distance > output) throw corrupt();
+
+            int matchLength = token & 0x0F;
+            if (matchLength == 15) {
+                int value;
+                do {
+                    if (position >= end) throw corrupt();
+                    value = source[position++] & 0xFF;
+                    matchLength += value;
+                } while (value == 255);
+            }
+
+            matchLength += MIN_MATCH;
+            if (matchLength > length - output) throw corrupt();
+
+            int from = output - distance;
+            for (int i = 0; i < matchLength; i++) target[output++] = target[from++];
+        }
+
+        if (output != length) throw corrupt();
+        return target;
+    }
+
+    /**
+     * Writes one sequence: its token, {@code literals} bytes of {@code source} starting at
+     * {@code anchor}, and a match of {@code matchLength} bytes {@code distance} bytes back.
+     *
+     * @return the index in {@code target} after the written sequence
+     */
+    private static int writeSequence(byte[] target, int output, byte[] source, int anchor, int literals, int distance, int matchLength) {
+
+        final int tokenIndex = output++;
+        final int extraMatch = matchLength - MIN_MATCH;
+
+        target[tokenIndex] = (byte) ((Math.min(literals, 15) << 4) | Math.min(extraMatch, 15));
+        if (literals >= 15) output = writeLength(target, output, literals - 15);
+
+        System.arraycopy(source, anchor, target, output, literals);
+        output += literals;
+
+        target[output++] = (byte) distance;
+        target[output++] = (byte) (distance >>> 8);
+
+        if (extraMatch >= 15) output = writeLength(target, output, extraMatch - 15);
+        return output;
+    }
+
+    /**
+     * Writes the final, literals-only sequence.
+     *
+     * @return the index in {@code target} after the written sequence
+     */
+    private static int writeLiterals(byte[] target, int output, byte[] source, int anchor, int literals) {
+
+        target[output++] = (byte) (Math.min(literals, 15) << 4);
+        if (literals >= 15) output = writeLength(target, output, literals - 15);
+
+        System.arraycopy(source, anchor, target, output, literals);
+        return output + literals;
+    }
+
+    /**
+     * Writes the remainder of a length that did not fit its token nibble, as a run of
+     * {@code 255} bytes followed by the rest.
+     *
+     * @return the index in {@code target} after the written length
+     */
+    private static int writeLength(byte[] target, int output, int remainder) {
+
+        while (remainder >= 255) {
+            target[output++] = (byte) 255;
+            remainder -= 255;
+        }
+
+        target[output++] = (byte) remainder;
+        return output;
+    }
+
+    private static int readInt(byte[] source, int index) {
+        return (source[index] & 0xFF) | (source[index + 1] & 0xFF) << 8 | (source[index + 2] & 0xFF) << 16 | (source[index + 3] & 0xFF) << 24;
+    }
+
+    private static int hash(int sequence) {
+        return (sequence * -1640531535) >>> (Integer.SIZE - HASH_LOG);
+    }
+
+    private static IllegalStateException corrupt() {
+        return new IllegalStateException("@LZ4Block.decompress: Corrupt payload");
+    }
+
+}
@@ -0,0 +1,174 @@
+package de.lino.database.utils.codec;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.Locale;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * The codec a backend applies to every serialized {@link de.lino.database.json.JsonDocument}
+ * payload before storing it - selected per provider via the {@code "codec"} option of its
+ * {@link de.lino.database.database.auth.Credentials#getOptions() options}.
+ * <p>
+ * Compressed payloads start with a single header byte naming their codec, followed by the
+ * uncompressed length as a 4-byte big-endian integer and the compressed body. Plain JSON always
+ * starts with <code>{</code> or whitespace, never with a header byte, so {@link #decode} reads
+ * payloads written by any codec - including rows stored before codecs existed - regardless of
+ * which codec is currently configured. Switching codecs therefore never requires migrating data.
+ */
+public enum PayloadCodec {
+
+    /**
+     * Stores payloads as plain UTF-8 JSON, without a header - the format every backend used
+     * before codecs existed.
+     */
+    NONE((byte) 0),
+
+    /**
+     * Compresses payloads with raw Deflate at the default level - the best ratio, at a moderate
+     * CPU cost.
+     */
+    DEFLATE((byte) 1),
+
+    /**
+     * Compresses payloads into the LZ4 block format - a lower ratio than {@link #DEFLATE}, but
+     * several times faster to compress and especially to decompress.
+     */
+    LZ4((byte) 2);
+
+    /**
+     * The number of bytes preceding the compressed body: the header byte and the uncompressed
+     * length.
+     */
+    private static final int HEADER_LENGTH = 1 + Integer.BYTES;
+
+    /**
+     * The header byte marking payloads compressed by this codec.
+     */
+    private final byte header;
+
+    PayloadCodec(byte header) {
+        this.header = header;
+    }
+
+    /**
+     * Looks up the codec named {@code name}, ignoring case.
+     *
+     * @param name the codec's name, e.g. {@code "deflate"}, or {@code null}
+     * @return the named codec, or {@link #NONE} if {@code name} is {@code null} or unknown
+     */
+    public static @NotNull PayloadCodec of(@Nullable String name) {
+
+        if (name == null) return NONE;
+
+        try {
+            return valueOf(name.trim().toUpperCase(Locale.ROOT));
+        } catch (final IllegalArgumentException exception) {
+            return NONE;
+        }
+    }
+
+    /**
+     * Encodes {@code payload} with this codec. A compressed payload that would not be smaller
+     * than {@code payload} itself is stored plain instead, so tiny documents never grow.
+     *
+     * @param payload the serialized document to encode
+     * @return the encoded payload, {@code payload} itself if stored plain
+     */
+    public byte @NotNull [] encode(byte @NotNull [] payload) {
+
+        if (this == NONE || payload.length == 0) return payload;
+
+        final byte[] body = this == DEFLATE ? deflate(payload) : LZ4Block.compress(payload);
+        if (body.length + HEADER_LENGTH >= payload.length) return payload;
+
+        return ByteBuffer.allocate(HEADER_LENGTH + body.length).put(this.header).putInt(payload.length).put(body).array();
+    }
+
+    /**
+     * Decodes {@code payload}, whichever codec wrote it.
+     *
+     * @param payload the stored payload to decode
+     * @return the serialized document, {@code payload} itself if it was stored plain
+     * @throws IllegalStateException if {@code payload} carries a codec header but is corrupt
+     */
+    public static byte @NotNull [] decode(byte @NotNull [] payload) {
+
+        if (payload.length < HEADER_LENGTH || (payload[0] != DEFLATE.header && payload[0] != LZ4.header))
+            return payload;
+
+        final int length = ByteBuffer.wrap(payload, 1, Integer.BYTES).getInt();
+        if (length < 0) throw new IllegalStateException("@PayloadCodec.decode: Corrupt payload header");
+
+        return payload[0] == DEFLATE.header
+                ? inflate(payload, HEADER_LENGTH, length)
+                : LZ4Block.decompress(payload, HEADER_LENGTH, payload.length - HEADER_LENGTH, length);
+    }
+
+    /**
+     * Compresses {@code payload} with raw Deflate.
+     *
+     * @param payload the bytes to compress
+     * @return the compressed bytes
+     */
+    private static byte @NotNull [] deflate(byte @NotNull [] payload) {
+
+        final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+
+        try {
+
+            deflater.setInput(payload);
+            deflater.finish();
+
+            final ByteArrayOutputStream outputStream = new ByteArrayOutputStream(Math.max(64, payload.length / 2));
+            final byte[] buffer = new byte[8192];
+            while (!deflater.finished()) outputStream.write(buffer, 0, deflater.deflate(buffer));
+
+            return outputStream.toByteArray();
+
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * Decompresses the raw Deflate body starting at {@code offset} of {@code payload}.
+     *
+     * @param payload the bytes holding the compressed body
+     * @param offset  the index the compressed body starts at
+     * @param length  the uncompressed length
+     * @return the decompressed bytes
+     * @throws IllegalStateException if the body is corrupt
+     */
+    private static byte @NotNull [] inflate(byte @NotNull [] payload, int offset, int length) {
+
+        final Inflater inflater = new Inflater(true);
+
+        try {
+
+            inflater.setInput(payload, offset, payload.length - offset);
+
+            final byte[] result = new byte[length];
+            int written = 0;
+            while (written < length) {
+                final int inflated = inflater.inflate(result, written, length - written);
+                if (inflated == 0 && (inflater.finished() || inflater.needsInput() || inflater.needsDictionary())) break;
+                written += inflated;
+            }
+
+            if (written != length) throw new IllegalStateException("@PayloadCodec.inflate: Truncated payload");
+            return result;
+
+        } catch (final DataFormatException exception) {
+            throw new IllegalStateException("@PayloadCodec.inflate: Corrupt payload", exception);
+        } finally {
+            inflater.end();
+        }
+    }
+
+}
@@ -0,0 +1,161 @@
+package de.lino.database.utils.executor;
+
+import com.google.common.collect.Maps;
+import de.lino.database.database.DatabaseProvider;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The {@link ExecutorStrategy} behind {@link ExecutorStrategy#bulkheads(int)} and
+ * {@link ExecutorStrategy#virtualThreads(int)}: one bulkhead per provider, created on first use
+ * and shut down once the provider is {@link #release released}.
+ * <p>
+ * With platform threads, a bulkhead is a pool of up to {@link #maxConcurrency} daemon threads,
+ * which time out when idle, in front of an unbounded queue. With virtual threads, every task gets
+ * a virtual thread of its own, which first acquires one of the bulkhead's
+ * {@link #maxConcurrency} permits - a waiting task parks its virtual thread, not a platform one.
+ */
+public class BulkheadExecutorStrategy implements ExecutorStrategy {
+
+    /**
+     * The maximum number of operations running concurrently per provider, {@code 0} for no limit
+     * with virtual threads.
+     */
+    private final int maxConcurrency;
+
+    /**
+     * Whether every task runs on a virtual thread of its own rather than a pooled platform thread.
+     */
+    private final boolean virtualThreads;
+
+    /**
+     * The bulkhead of every provider used so far, keyed by identity.
+     */
+    private final Map<DatabaseProvider, ExecutorService> bulkheads = Maps.newConcurrentMap();
+
+    /**
+     * The executor of the repository's own operations, a bulkhead like every provider's.
+     */
+    private final ExecutorService defaultExecutor;
+
+    /**
+     * Numbers the threads of every platform-thread bulkhead.
+     */
+    private final AtomicInteger counter = new AtomicInteger();
+
+    /**
+     * @param maxConcurrency the maximum number of operations running concurrently per provider,
+     *                       {@code 0} for no limit with virtual threads
+     * @param virtualThreads whether every task runs on a virtual thread of its own
+     * @throws IllegalArgumentException if {@code maxConcurrency} is negative, or zero with
+     *                                  platform threads
+     */
+    public BulkheadExecutorStrategy(int maxConcurrency, boolean virtualThreads) {
+
+        if (maxConcurrency < (virtualThreads ? 0 : 1)) throw new IllegalArgumentException("@BulkheadExecutorStrategy: Invalid maximum concurrency " + maxConcurrency);
+
+        this.maxConcurrency = maxConcurrency;
+        this.virtualThreads = virtualThreads;
+        this.defaultExecutor = this.newBulkhead();
+
+    }
+
+    @Override
+    public @NotNull Executor defaultExecutor() {
+        return this.defaultExecutor;
+    }
+
+    @Override
+    public @NotNull Executor executorFor(@NotNull DatabaseProvider provider) {
+        return this.bulkheads.computeIfAbsent(provider, key -> this.newBulkhead());
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Shuts the provider's bulkhead down, letting already queued operations finish.
+     */
+    @Override
+    public void release(@NotNull DatabaseProvider provider) {
+        final ExecutorService bulkhead = this.bulkheads.remove(provider);
+        if (bulkhead != null) bulkhead.shutdown();
+    }
+
+    /**
+     * Builds a single bulkhead.
+     *
+     * @return the built executor
+     */
+    private @NotNull ExecutorService newBulkhead() {
+
+        if (this.virtualThreads) {
+
+            final ExecutorService executorService = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("database-driver-bulkhead-", 0).factory());
+            if (this.maxConcurrency == 0) return executorService;
+
+            final Semaphore permits = new Semaphore(this.maxConcurrency);
+
+            return new AbstractExecutorService() {
+
+                @Override
+                public void execute(@NotNull Runnable command) {
+                    executorService.execute(() -> {
+                        permits.acquireUninterruptibly();
+                        try {
+                            command.run();
+                        } finally {
+                            permits.release();
+                        }
+                    });
+                }
+
+                @Override
+                public void shutdown() {
+                    executorService.shutdown();
+                }
+
+                @Override
+                public @NotNull List<Runnable> shutdownNow() {
+                    return executorService.shutdownNow();
+                }
+
+                @Override
+                public boolean isShutdown() {
+                    return executorService.isShutdown();
+                }
+
+                @Override
+                public boolean isTerminated() {
+                    return executorService.isTerminated();
+                }
+
+                @Override
+                public boolean awaitTermination(long timeout, @NotNull TimeUnit unit) throws InterruptedException {
+                    return executorService.awaitTermination(timeout, unit);
+                }
+
+            };
+        }
+
+        final ThreadPoolExecutor threadPoolExecutor = new ThreadPoolExecutor(this.maxConcurrency, this.maxConcurrency, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), runnable -> {
+            final Thread thread = new Thread(runnable, "database-driver-bulkhead-" + this.counter.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        threadPoolExecutor.allowCoreThreadTimeOut(true);
+        return threadPoolExecutor;
+    }
+
+}
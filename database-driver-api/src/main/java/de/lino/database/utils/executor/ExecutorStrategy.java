@@ -0,0 +1,103 @@
+package de.lino.database.utils.executor;
+
+import de.lino.database.database.DatabaseProvider;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Decides which {@link Executor} every {@code *Async} default method runs its blocking operation
+ * on, installed via {@link de.lino.database.DatabaseRepository#setExecutorStrategy}: the methods of
+ * a {@link DatabaseProvider} and of its {@link de.lino.database.database.DatabaseSection sections}
+ * on {@link #executorFor(DatabaseProvider) that provider's executor}, those of the
+ * {@link de.lino.database.DatabaseRepository} itself on the {@link #defaultExecutor()}.
+ * <p>
+ * Giving every provider its own, bounded executor - a bulkhead - keeps one slow backend from
+ * occupying every thread async calls to all other backends need, as happens on a shared pool.
+ * Sections owning a dedicated executor for their backend, such as SQL sections sized to their
+ * connection pool, keep using it regardless of the installed strategy.
+ */
+public interface ExecutorStrategy {
+
+    /**
+     * Get the executor the repository's own async operations, and those of sections no registered
+     * provider owns, run on.
+     *
+     * @return the default executor
+     */
+    @NotNull Executor defaultExecutor();
+
+    /**
+     * Get the executor every async operation of {@code provider} and its sections runs on.
+     *
+     * @param provider the registered provider the operation belongs to
+     * @return the provider's executor
+     */
+    @NotNull Executor executorFor(@NotNull DatabaseProvider provider);
+
+    /**
+     * Releases every resource held for {@code provider}, called once it was shut down and
+     * unregistered. The default implementation holds none.
+     *
+     * @param provider the provider unregistered
+     */
+    default void release(@NotNull DatabaseProvider provider) {
+    }
+
+    /**
+     * The strategy installed by default: every operation runs on the common {@link ForkJoinPool},
+     * shared by every provider.
+     *
+     * @return the shared-pool strategy
+     */
+    static @NotNull ExecutorStrategy commonPool() {
+        return CommonPoolStrategy.INSTANCE;
+    }
+
+    /**
+     * A strategy giving every provider a bulkhead of its own: a pool of at most
+     * {@code maxConcurrency} daemon threads per provider, whose queued tasks wait for that provider
+     * alone.
+     *
+     * @param maxConcurrency the maximum number of operations running concurrently per provider
+     * @return the bulkhead strategy
+     */
+    static @NotNull ExecutorStrategy bulkheads(int maxConcurrency) {
+        return new BulkheadExecutorStrategy(maxConcurrency, false);
+    }
+
+    /**
+     * A strategy running every operation on a virtual thread of its own, admitting at most
+     * {@code maxConcurrency} operations per provider at a time - or any number if
+     * {@code maxConcurrency} is {@code 0} - while further ones wait without occupying a platform
+     * thread.
+     *
+     * @param maxConcurrency the maximum number of operations running concurrently per provider,
+     *                       {@code 0} for no limit
+     * @return the virtual-thread strategy
+     */
+    static @NotNull ExecutorStrategy virtualThreads(int maxConcurrency) {
+        return new BulkheadExecutorStrategy(maxConcurrency, true);
+    }
+
+    /**
+     * The strategy behind {@link #commonPool()}.
+     */
+    enum CommonPoolStrategy implements ExecutorStrategy {
+
+        INSTANCE;
+
+        @Override
+        public @NotNull Executor defaultExecutor() {
+            return ForkJoinPool.commonPool();
+        }
+
+        @Override
+        public @NotNull Executor executorFor(@NotNull DatabaseProvider provider) {
+            return ForkJoinPool.commonPool();
+        }
+
+    }
+
+}
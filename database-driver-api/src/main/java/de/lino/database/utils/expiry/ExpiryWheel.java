@@ -0,0 +1,239 @@
+package de.lino.database.utils.expiry;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A hashed timing wheel firing the expiry of entries {@link
+ * de.lino.database.database.DatabaseSection#insert(de.lino.database.database.entity.DatabaseEntry,
+ * Duration) inserted with a time to live}: {@link #WHEEL_SIZE} buckets, one per
+ * {@link #TICK} - every scheduled task is dropped into the bucket its deadline falls in, together
+ * with the number of full rotations left until then, and every tick only looks at the one bucket
+ * it points to. Scheduling and cancelling are constant time, and the cost of a tick does not grow
+ * with the number of entries waiting to expire in other buckets - unlike scanning every cached
+ * entry for an elapsed deadline.
+ * <p>
+ * A task fires on the tick after its deadline, i.e. up to one {@link #TICK} late but never early.
+ * Every task runs on the wheel's single daemon thread, so tasks must only hand their work - e.g.
+ * the actual delete - off to an executor rather than block.
+ */
+public final class ExpiryWheel {
+
+    /**
+     * The resolution of the wheel.
+     */
+    public static final Duration TICK = Duration.ofMillis(100);
+
+    /**
+     * The number of buckets, a power of two; one rotation covers {@code WHEEL_SIZE * TICK}.
+     */
+    public static final int WHEEL_SIZE = 512;
+
+    /**
+     * The length of one tick, in nanoseconds.
+     */
+    private static final long TICK_NANOS = TICK.toNanos();
+
+    /**
+     * Every bucket, each only ever touched by the wheel's thread.
+     */
+    private final List<List<Timeout>> buckets;
+
+    /**
+     * Every task scheduled since the last tick, moved into its bucket by the wheel's thread.
+     */
+    private final Queue<Timeout> pending = new ConcurrentLinkedQueue<>();
+
+    /**
+     * The {@link System#nanoTime()} the wheel started at; tick {@code n} ends at
+     * {@code start + (n + 1) * TICK}.
+     */
+    private final long start;
+
+    /**
+     * The number of ticks the wheel has processed.
+     */
+    private long tick;
+
+    private ExpiryWheel() {
+
+        this.buckets = new ArrayList<>(WHEEL_SIZE);
+        for (int i = 0; i < WHEEL_SIZE; i++) this.buckets.add(new ArrayList<>());
+
+        this.start = System.nanoTime();
+
+        final Thread thread = new Thread(this::run, "database-driver-expiry");
+        thread.setDaemon(true);
+        thread.start();
+
+    }
+
+    /**
+     * Returns the wheel shared by every section, started on first use.
+     *
+     * @return the shared wheel
+     */
+    public static @NotNull ExpiryWheel getInstance() {
+        return Holder.INSTANCE;
+    }
+
+    /**
+     * Runs {@code task} on the wheel's thread once {@code delay} has elapsed, unless the returned
+     * {@link Timeout} was cancelled first.
+     *
+     * @param delay how long to wait; zero or negative fires on the next tick
+     * @param task  a short, non-blocking task
+     * @return a handle to cancel the task with
+     */
+    public @NotNull Timeout schedule(@NotNull Duration delay, @NotNull Runnable task) {
+
+        final Timeout timeout = new Timeout(System.nanoTime() + Math.max(0, delay.toNanos()), task);
+        this.pending.add(timeout);
+
+        return timeout;
+    }
+
+    /**
+     * The wheel's loop: sleeps until the current tick ends, moves every pending task into its
+     * bucket and fires the due tasks of the current bucket - forever, as the thread is a daemon.
+     */
+    private void run() {
+
+        while (true) {
+
+            final long deadline = this.start + (this.tick + 1) * TICK_NANOS;
+            long remaining;
+
+            while ((remaining = deadline - System.nanoTime()) > 0) LockSupport.parkNanos(this, remaining);
+
+            this.transferPending();
+            this.expire(this.buckets.get((int) (this.tick & (WHEEL_SIZE - 1))), deadline);
+            this.tick++;
+        }
+
+    }
+
+    /**
+     * Moves every task scheduled since the last tick into the bucket its deadline falls in.
+     */
+    private void transferPending() {
+
+        Timeout timeout;
+
+        while ((timeout = this.pending.poll()) != null) {
+
+            if (timeout.cancelled) continue;
+
+            final long due = Math.max(this.tick, (timeout.deadline - this.start) / TICK_NANOS);
+            timeout.rounds = (due - this.tick) / WHEEL_SIZE;
+
+            this.buckets.get((int) (due & (WHEEL_SIZE - 1))).add(timeout);
+        }
+
+    }
+
+    /**
+     * Fires every task of {@code bucket} whose deadline has passed and counts down the rotations
+     * of the others, dropping cancelled ones along the way.
+     *
+     * @param bucket   the bucket of the current tick
+     * @param deadline the end of the current tick
+     */
+    private void expire(@NotNull List<Timeout> bucket, long deadline) {
+
+        final Iterator<Timeout> iterator = bucket.iterator();
+
+        while (iterator.hasNext()) {
+
+            final Timeout timeout = iterator.next();
+
+            if (timeout.cancelled) {
+                iterator.remove();
+                continue;
+            }
+
+            if (timeout.rounds > 0 || timeout.deadline > deadline) {
+                timeout.rounds--;
+                continue;
+            }
+
+            iterator.remove();
+
+            try {
+                timeout.task.run();
+            } catch (final Throwable throwable) {
+                System.err.println("Could not run expiry task");
+                throwable.printStackTrace();
+            }
+        }
+
+    }
+
+    /**
+     * A task waiting on the wheel.
+     */
+    public static final class Timeout {
+
+        /**
+         * The {@link System#nanoTime()} the task is due at.
+         */
+        private final long deadline;
+
+        /**
+         * The task to run.
+         */
+        private final Runnable task;
+
+        /**
+         * The full rotations left before the task is due, only touched by the wheel's thread.
+         */
+        private long rounds;
+
+        /**
+         * Whether {@link #cancel()} was called.
+         */
+        private volatile boolean cancelled;
+
+        private Timeout(long deadline, @NotNull Runnable task) {
+            this.deadline = deadline;
+            this.task = task;
+        }
+
+        /**
+         * Prevents the task from running, unless it already did.
+         */
+        public void cancel() {
+            this.cancelled = true;
+        }
+
+        /**
+         * Returns how long is left until the task is due.
+         *
+         * @return the remaining delay, negative once due
+         */
+        public @NotNull Duration remaining() {
+            return Duration.ofNanos(this.deadline - System.nanoTime());
+        }
+
+    }
+
+    /**
+     * Holds the shared wheel, so its thread is only started on first use.
+     */
+    private static final class Holder {
+
+        /**
+         * The shared wheel.
+         */
+        private static final ExpiryWheel INSTANCE = new ExpiryWheel();
+
+    }
+
+}
@@ -1,10 +1,17 @@
 package de.lino.database;
 
+import com.google.common.collect.MapMaker;
 import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
 import de.lino.database.database.DatabaseProvider;
 import de.lino.database.database.DatabaseSection;
 import de.lino.database.database.DatabaseType;
 import de.lino.database.database.auth.Credentials;
+import de.lino.database.database.conversion.ConversionOptions;
+import de.lino.database.database.conversion.ProviderConversion;
+import de.lino.database.database.replication.ProviderReplication;
+import de.lino.database.database.replication.Replication;
+import de.lino.database.database.replication.ReplicationOptions;
 import de.lino.database.database.file.DefaultFileProvider;
 import de.lino.database.json.JsonDocument;
 import de.lino.database.database.nosql.csv.CSVDatabaseProvider;
@@ -12,6 +19,9 @@ import de.lino.database.database.nosql.json.JsonDatabaseProvider;
 import de.lino.database.database.nosql.mongodb.MongoDBDatabaseProvider;
 import de.lino.database.database.nosql.redis.RedisDatabaseProvider;
 import de.lino.database.database.nosql.rethinkdb.RethinkDBDatabaseProvider;
+import de.lino.database.database.sharded.ShardedDatabaseProvider;
+import de.lino.database.database.tiered.TieredDatabaseProvider;
+import de.lino.database.database.tiered.TieringOptions;
 import de.lino.database.database.sql.derby.ApacheDerbyDatabaseProvider;
 import de.lino.database.database.sql.h2db.H2DatabaseProvider;
 import de.lino.database.database.sql.mariadb.MariaDBDatabaseProvider;
@@ -25,10 +35,15 @@ import lombok.Getter;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.UnmodifiableView;
 
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 import java.util.concurrent.CompletableFuture;
+import java.util.function.Predicate;
 
 /**
  * The concrete, process-wide {@link DatabaseRepository}: tracks every registered
@@ -62,6 +77,25 @@ public class DatabaseRepositoryRegistry extends DatabaseRepository {
      */
     private final Map<Integer, Pair<DatabaseType, DatabaseProvider>> databaseProviders;
 
+    /**
+     * Every running {@link #replicate replication}, closed once its source or target is
+     * unregistered or the repository shuts down.
+     */
+    private final Set<Replication> replications;
+
+    /**
+     * The registered provider every section {@link #findOwner looked up} so far belongs to. Keyed
+     * weakly and by identity, so sections dropped by their provider are not kept alive by it.
+     */
+    private final Map<DatabaseSection, DatabaseProvider> sectionOwners;
+
+    /**
+     * The ids of the databases every registered sharded or tiered database is layered over, keyed
+     * by its own id. Its monitor also guards registering such a database against unregistering
+     * one of those it is layered over.
+     */
+    private final Map<Integer, Set<Integer>> layers;
+
     /**
      * Installs this instance as {@link DatabaseRepository}'s generated {@code getInstance()}
      * accessor and, as a side effect of constructing a {@link DefaultFileProvider}, installs the
@@ -77,6 +111,9 @@ public class DatabaseRepositoryRegistry extends DatabaseRepository {
         LOG_BYTES = logBytes;
 
         this.databaseProviders = Maps.newConcurrentMap();
+        this.replications = Sets.newConcurrentHashSet();
+        this.sectionOwners = new MapMaker().weakKeys().makeMap();
+        this.layers = new HashMap<>();
         new DefaultFileProvider();
 
     }
@@ -110,6 +147,8 @@ public class DatabaseRepositoryRegistry extends DatabaseRepository {
     @Override
     public void shutdown() {
 
+        this.closeReplications(replication -> true);
+
         this.databaseProviders.forEach((key, value) -> {
             try {
                 value.second().shutdown();
@@ -120,7 +159,13 @@ public class DatabaseRepositoryRegistry extends DatabaseRepository {
             }
         });
 
+        this.databaseProviders.values().forEach(pair -> this.getExecutorStrategy().release(pair.second()));
         this.databaseProviders.clear();
+        this.sectionOwners.clear();
+
+        synchronized (this.layers) {
+            this.layers.clear();
+        }
 
     }
 
@@ -136,16 +181,59 @@ public class DatabaseRepositoryRegistry extends DatabaseRepository {
     @Override
     public CompletableFuture<Void> shutdownAsync() {
 
+        this.closeReplications(replication -> true);
+
         final List<CompletableFuture<Void>> pending = this.databaseProviders.values().stream()
                 .map(databaseTypeDatabaseProviderPair -> databaseTypeDatabaseProviderPair.second().shutdownAsync())
                 .toList();
 
-        return CompletableFuture.allOf(pending.toArray(CompletableFuture[]::new)).thenRun(this.databaseProviders::clear);
+        return CompletableFuture.allOf(pending.toArray(CompletableFuture[]::new)).thenRun(() -> {
+            this.databaseProviders.values().forEach(pair -> this.getExecutorStrategy().release(pair.second()));
+            this.databaseProviders.clear();
+            this.sectionOwners.clear();
+
+            synchronized (this.layers) {
+                this.layers.clear();
+            }
+        });
 
     }
 
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Answers from {@link #sectionOwners} if {@code section} was looked up before, and otherwise
+     * scans every registered provider for one holding this very section instance under its name.
+     */
+    @Override
+    protected Optional<DatabaseProvider> findOwner(@NotNull final DatabaseSection section) {
+
+        final DatabaseProvider cached = this.sectionOwners.get(section);
+        if (cached != null) return Optional.of(cached);
+
+        for (final Pair<DatabaseType, DatabaseProvider> pair : this.databaseProviders.values()) {
+            if (pair.second().getSection(section.getName()).filter(candidate -> candidate == section).isEmpty()) continue;
+
+            this.sectionOwners.put(section, pair.second());
+            return Optional.of(pair.second());
+        }
+
+        return Optional.empty();
+    }
+
     @Override
     public Pair<DatabaseProvider, DatabaseProvider> convert(final int sourceId, final int targetId) {
+        return this.convert(sourceId, targetId, new ConversionOptions());
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Runs a {@link ProviderConversion} on worker threads of its own, blocking the caller until
+     * every section finished.
+     */
+    @Override
+    public Pair<DatabaseProvider, DatabaseProvider> convert(final int sourceId, final int targetId, @NotNull ConversionOptions options) {
 
         final Pair<DatabaseType, DatabaseProvider> sourcePair = this.databaseProviders.get(sourceId);
         if (sourcePair == null) throw new IllegalStateException("@DatabaseRepositoryRegistry.convert: Database Provider with id #" + sourceId + " does not exist");
@@ -157,26 +245,53 @@ public class DatabaseRepositoryRegistry extends DatabaseRepository {
         final DatabaseProvider source = sourcePair.second();
         final DatabaseProvider destination = targetPair.second();
 
-        source.getSections().forEach(section -> {
+        new ProviderConversion(sourceType, source, destination, options).run();
 
-            if (sourceType == DatabaseType.REDIS) {
+        System.out.println("Database Provider with id #" + sourceId + " (" + sourceType + ") successfully converted to database with id #" + targetId + " (" + targetPair.first() + ")");
+        return new Pair<>(source, destination);
+    }
+
+    @Override
+    public Replication replicate(final int sourceId, final int targetId) {
+        return this.replicate(sourceId, targetId, new ReplicationOptions());
+    }
 
-                final String sectionName = section.getName().split(":")[0];
-                final DatabaseSection databaseSection = destination.createSection(sectionName);
-                section.getEntries().forEach(databaseSection::insert);
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Runs the initial copy on the caller's thread, then hands polling to the returned
+     * {@link ProviderReplication}'s own daemon thread. The replication is closed automatically once
+     * its source or target is unregistered, or the repository shuts down.
+     */
+    @Override
+    public Replication replicate(final int sourceId, final int targetId, @NotNull ReplicationOptions options) {
 
-            } else {
+        if (sourceId == targetId) throw new IllegalArgumentException("@DatabaseRepositoryRegistry.replicate: Database Provider with id #" + sourceId + " cannot replicate to itself");
 
-                if (destination.existsSection(section.getName())) destination.deleteSection(section.getName());
-                final DatabaseSection databaseSection = destination.createSection(section.getName());
-                section.getEntries().forEach(databaseSection::insert);
+        final Pair<DatabaseType, DatabaseProvider> sourcePair = this.databaseProviders.get(sourceId);
+        if (sourcePair == null) throw new IllegalStateException("@DatabaseRepositoryRegistry.replicate: Database Provider with id #" + sourceId + " does not exist");
 
-            }
+        final Pair<DatabaseType, DatabaseProvider> targetPair = this.databaseProviders.get(targetId);
+        if (targetPair == null) throw new IllegalStateException("@DatabaseRepositoryRegistry.replicate: Database Provider with id #" + targetId + " does not exist");
 
-        });
+        final ProviderReplication replication = new ProviderReplication(sourceId, targetId, sourcePair.first(), sourcePair.second(), targetPair.second(), options);
+        this.replications.add(replication);
 
-        System.out.println("Database Provider with id #" + sourceId + " (" + sourceType + ") successfully converted to database with id #" + targetId + " (" + targetPair.first() + ")");
-        return new Pair<>(source, destination);
+        System.out.println("Database Provider with id #" + sourceId + " (" + sourcePair.first() + ") is now replicated to database with id #" + targetId + " (" + targetPair.first() + ")");
+        return replication;
+    }
+
+    /**
+     * Closes and forgets every running replication matching {@code filter}.
+     *
+     * @param filter selects the replications to close
+     */
+    private void closeReplications(@NotNull Predicate<Replication> filter) {
+        for (final Replication replication : List.copyOf(this.replications)) {
+            if (!filter.test(replication)) continue;
+            replication.close();
+            this.replications.remove(replication);
+        }
     }
 
     @Override
@@ -197,20 +312,126 @@ public class DatabaseRepositoryRegistry extends DatabaseRepository {
         return registered.second();
     }
 
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Resolves every shard id and builds the sharded database - creating its sections on every
+     * shard - before {@link #registerLayered registering} it, so no map lock is held meanwhile.
+     */
+    @Override
+    public DatabaseProvider registerShardedDatabaseProvider(final int id, final int @NotNull ... shardIds) {
+
+        if (shardIds.length == 0) throw new IllegalArgumentException("@DatabaseRepositoryRegistry.registerShardedDatabaseProvider: At least one shard is required");
+        if (this.databaseProviders.containsKey(id)) throw new IllegalStateException("@DatabaseRepositoryRegistry.registerShardedDatabaseProvider: Provider with id #" + id + " already exists");
+
+        final Map<Integer, DatabaseProvider> shards = new LinkedHashMap<>();
+        for (final int shardId : shardIds) {
+            if (shardId == id) throw new IllegalStateException("@DatabaseRepositoryRegistry.registerShardedDatabaseProvider: Provider with id #" + id + " cannot be its own shard");
+            shards.put(shardId, this.findDatabaseProviderById(shardId).orElseThrow(() -> new IllegalStateException("@DatabaseRepositoryRegistry.registerShardedDatabaseProvider: Database Provider with id #" + shardId + " does not exist")));
+        }
+
+        final DatabaseProvider registered = this.registerLayered(id, DatabaseType.SHARDED, shards, new ShardedDatabaseProvider(shards), "registerShardedDatabaseProvider");
+
+        System.out.println("Database Provider with id #" + id + " (" + DatabaseType.SHARDED + ") successfully registered across shards " + Arrays.toString(shardIds));
+        return registered;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Resolves both tiers and builds the tiered database before
+     * {@link #registerLayered registering} it, so no map lock is held meanwhile.
+     */
+    @Override
+    public DatabaseProvider registerTieredDatabaseProvider(final int id, final int fastId, final int durableId, @NotNull final TieringOptions options) {
+
+        if (fastId == durableId) throw new IllegalArgumentException("@DatabaseRepositoryRegistry.registerTieredDatabaseProvider: The fast and the durable tier must be different databases");
+        if (this.databaseProviders.containsKey(id)) throw new IllegalStateException("@DatabaseRepositoryRegistry.registerTieredDatabaseProvider: Provider with id #" + id + " already exists");
+        if (fastId == id || durableId == id) throw new IllegalStateException("@DatabaseRepositoryRegistry.registerTieredDatabaseProvider: Provider with id #" + id + " cannot be its own tier");
+
+        final DatabaseProvider fast = this.findDatabaseProviderById(fastId).orElseThrow(() -> new IllegalStateException("@DatabaseRepositoryRegistry.registerTieredDatabaseProvider: Database Provider with id #" + fastId + " does not exist"));
+        final DatabaseProvider durable = this.findDatabaseProviderById(durableId).orElseThrow(() -> new IllegalStateException("@DatabaseRepositoryRegistry.registerTieredDatabaseProvider: Database Provider with id #" + durableId + " does not exist"));
+
+        final Map<Integer, DatabaseProvider> tiers = new LinkedHashMap<>();
+        tiers.put(fastId, fast);
+        tiers.put(durableId, durable);
+
+        final DatabaseProvider registered = this.registerLayered(id, DatabaseType.TIERED, tiers, new TieredDatabaseProvider(fast, durable, options), "registerTieredDatabaseProvider");
+
+        System.out.println("Database Provider with id #" + id + " (" + DatabaseType.TIERED + ") successfully registered over #" + fastId + " (fast) and #" + durableId + " (durable)");
+        return registered;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Refuses to unregister a database a registered sharded or tiered database is still layered
+     * over, as that database would keep calling it after it shut down.
+     */
     @Override
     public DatabaseProvider unregisterDatabaseProvider(final int id) {
 
-        final Pair<DatabaseType, DatabaseProvider> pair = this.databaseProviders.remove(id);
-        if (pair == null) throw new IllegalStateException("@DatabaseRepositoryRegistry.unregisterDatabaseProvider: Database Provider with id #" + id + " does not exist");
+        final Pair<DatabaseType, DatabaseProvider> pair;
+
+        synchronized (this.layers) {
+
+            for (final Map.Entry<Integer, Set<Integer>> layer : this.layers.entrySet()) {
+                if (layer.getValue().contains(id))
+                    throw new IllegalStateException("@DatabaseRepositoryRegistry.unregisterDatabaseProvider: Database Provider with id #" + id + " is still used by database #" + layer.getKey() + ", which has to be unregistered first");
+            }
+
+            pair = this.databaseProviders.remove(id);
+            if (pair == null) throw new IllegalStateException("@DatabaseRepositoryRegistry.unregisterDatabaseProvider: Database Provider with id #" + id + " does not exist");
+
+            this.layers.remove(id);
+        }
+
+        this.closeReplications(replication -> replication.getSourceId() == id || replication.getTargetId() == id);
 
         final DatabaseProvider unregistered = pair.second();
         unregistered.shutdown();
+        this.sectionOwners.values().removeIf(owner -> owner == unregistered);
+        this.getExecutorStrategy().release(unregistered);
         System.out.println("Database Provider with id #" + id + " (" + pair.first() + ") successfully unregistered");
 
         return unregistered;
 
     }
 
+    /**
+     * Registers an already built sharded or tiered database under {@code id}, recording the
+     * databases it is layered over in {@link #layers}. Checks that {@code id} is still free and
+     * every one of {@code members} still registered under the same lock
+     * {@link #unregisterDatabaseProvider} takes, shutting {@code provider} down again otherwise.
+     *
+     * @param id           the id to register the database under
+     * @param databaseType {@link DatabaseType#SHARDED} or {@link DatabaseType#TIERED}
+     * @param members      the databases {@code provider} is layered over, keyed by id
+     * @param provider     the built database
+     * @param method       the registering method's name, for error messages
+     * @return {@code provider}
+     */
+    private @NotNull DatabaseProvider registerLayered(final int id, @NotNull final DatabaseType databaseType, @NotNull final Map<Integer, DatabaseProvider> members, @NotNull final DatabaseProvider provider, @NotNull final String method) {
+
+        synchronized (this.layers) {
+
+            for (final Map.Entry<Integer, DatabaseProvider> member : members.entrySet()) {
+                if (this.findDatabaseProviderById(member.getKey()).orElse(null) == member.getValue()) continue;
+                provider.shutdown();
+                throw new IllegalStateException("@DatabaseRepositoryRegistry." + method + ": Database Provider with id #" + member.getKey() + " does not exist");
+            }
+
+            if (this.databaseProviders.putIfAbsent(id, new Pair<>(databaseType, provider)) != null) {
+                provider.shutdown();
+                throw new IllegalStateException("@DatabaseRepositoryRegistry." + method + ": Provider with id #" + id + " already exists");
+            }
+
+            this.layers.put(id, Set.copyOf(members.keySet()));
+        }
+
+        return provider;
+    }
+
     /**
      * Constructs a fresh {@link DatabaseProvider} for {@code databaseType}, connected with
      * {@code credentials}. Extracted out of {@link #registerDatabaseProvider} so that method's
@@ -242,6 +463,9 @@ public class DatabaseRepositoryRegistry extends DatabaseRepository {
             case JSON -> new JsonDatabaseProvider(credentials);
             case CSV ->  new CSVDatabaseProvider(credentials);
 
+            case SHARDED -> throw new IllegalArgumentException("@DatabaseRepositoryRegistry.createProvider: Sharded databases are registered via registerShardedDatabaseProvider");
+            case TIERED -> throw new IllegalArgumentException("@DatabaseRepositoryRegistry.createProvider: Tiered databases are registered via registerTieredDatabaseProvider");
+
         };
     }
 
@@ -0,0 +1,36 @@
+package de.lino.database.database.change;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Collection;
+
+/**
+ * The change-notification channel a provider shares with every other instance connected to the
+ * same database: each local write is {@link #publish published}, and every change published by a
+ * peer is applied to the matching local {@link CoherentSection}, so every instance keeps serving
+ * current data from its in-memory sections without periodic full reloads.
+ * <p>
+ * Notifications only carry ids, never documents; receivers {@link CoherentSection#refresh
+ * re-read} every notified id from the database itself, so a late or duplicated notification can
+ * never roll an entry back to an older state.
+ */
+public interface ChangeFeed extends AutoCloseable {
+
+    /**
+     * Notifies every peer instance that entries of section {@code section} changed.
+     *
+     * @param section the name of the section written to
+     * @param ids     the ids written or deleted, or {@code null} if the whole section changed
+     *                (e.g. was cleared)
+     */
+    void publish(@NotNull String section, @Nullable Collection<String> ids);
+
+    /**
+     * Stops receiving notifications and releases every connection this feed holds. Publishing
+     * afterwards is a no-op.
+     */
+    @Override
+    void close();
+
+}
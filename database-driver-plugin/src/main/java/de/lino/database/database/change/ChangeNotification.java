@@ -0,0 +1,71 @@
+package de.lino.database.database.change;
+
+import com.google.gson.reflect.TypeToken;
+import de.lino.database.database.DatabaseSection;
+import de.lino.database.json.JsonDocument;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Function;
+
+/**
+ * A single message sent through a {@link ChangeFeed}, serialized as a small JSON document so
+ * every channel - PostgreSQL {@code NOTIFY} payloads, Redis pub/sub messages - carries the same
+ * format.
+ *
+ * @param origin  the id of the {@link ChangeFeed} instance that published it, so a feed can skip
+ *                its own notifications
+ * @param section the name of the section written to
+ * @param ids     the ids written or deleted, or {@code null} if the whole section changed
+ */
+public record ChangeNotification(@NotNull String origin, @NotNull String section, @Nullable List<String> ids) {
+
+    /**
+     * Serializes this notification.
+     *
+     * @return this notification as JSON text
+     */
+    public @NotNull String toJson() {
+        return new JsonDocument().append("origin", this.origin).append("section", this.section).append("ids", this.ids).toJson();
+    }
+
+    /**
+     * Parses a notification serialized by {@link #toJson()}.
+     *
+     * @param json the serialized notification
+     * @return the parsed notification, or empty if {@code json} is not one
+     */
+    public static @NotNull Optional<ChangeNotification> parse(@NotNull String json) {
+
+        try {
+
+            final JsonDocument document = new JsonDocument(json);
+            if (!document.contains("origin") || !document.contains("section")) return Optional.empty();
+
+            final List<String> ids = document.contains("ids") ? document.get("ids", new TypeToken<List<String>>() {}) : null;
+            return Optional.of(new ChangeNotification(document.getString("origin"), document.getString("section"), ids));
+
+        } catch (final RuntimeException exception) {
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Applies this notification to the matching local section: {@link CoherentSection#refresh
+     * refreshes} every notified id, or {@link DatabaseSection#reload() reloads} the section if
+     * the whole section changed or it cannot refresh single ids. Unknown sections are ignored.
+     *
+     * @param sections looks local sections up by name
+     */
+    public void apply(@NotNull Function<String, Optional<DatabaseSection>> sections) {
+
+        sections.apply(this.section).ifPresent(databaseSection -> {
+            if (this.ids != null && databaseSection instanceof CoherentSection coherentSection) this.ids.forEach(coherentSection::refresh);
+            else databaseSection.reload();
+        });
+
+    }
+
+}
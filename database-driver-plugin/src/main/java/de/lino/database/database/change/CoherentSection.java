@@ -0,0 +1,20 @@
+package de.lino.database.database.change;
+
+import de.lino.database.database.DatabaseSection;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * A {@link DatabaseSection} a {@link ChangeFeed} can apply peer changes to one id at a time,
+ * rather than through a full {@link #reload()}.
+ */
+public interface CoherentSection extends DatabaseSection {
+
+    /**
+     * Re-reads entry {@code id} from the database and applies its current state to this
+     * section's in-memory view: replacing it if it exists, dropping it otherwise.
+     *
+     * @param id the id a peer wrote or deleted
+     */
+    void refresh(@NotNull String id);
+
+}
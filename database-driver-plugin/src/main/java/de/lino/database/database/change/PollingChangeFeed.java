@@ -0,0 +1,64 @@
+package de.lino.database.database.change;
+
+import de.lino.database.database.DatabaseProvider;
+import de.lino.database.database.DatabaseSection;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The {@link ChangeFeed} of backends without a push channel: nothing is published, instead every
+ * section of the provider is {@link DatabaseSection#reload() reloaded} on a fixed interval. Only
+ * meant for sections reloading incrementally - where the rows' versions and tombstones are the
+ * change log, so each poll fetches just what changed since the previous one.
+ */
+public class PollingChangeFeed implements ChangeFeed {
+
+    /**
+     * The single background thread running every poll.
+     */
+    private final ScheduledExecutorService scheduler;
+
+    /**
+     * Starts polling every section of {@code databaseProvider} every {@code interval}.
+     *
+     * @param databaseProvider the provider whose sections to poll
+     * @param interval         the delay between the end of one poll and the start of the next
+     */
+    public PollingChangeFeed(@NotNull DatabaseProvider databaseProvider, @NotNull Duration interval) {
+
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            final Thread thread = new Thread(runnable, "database-driver-change-poll");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        this.scheduler.scheduleWithFixedDelay(() -> {
+
+            for (final DatabaseSection databaseSection : databaseProvider.getSections()) {
+                try {
+                    databaseSection.reload();
+                } catch (final RuntimeException exception) {
+                    exception.printStackTrace();
+                }
+            }
+
+        }, interval.toMillis(), interval.toMillis(), TimeUnit.MILLISECONDS);
+
+    }
+
+    @Override
+    public void publish(@NotNull String section, @Nullable Collection<String> ids) {
+    }
+
+    @Override
+    public void close() {
+        this.scheduler.shutdownNow();
+    }
+
+}
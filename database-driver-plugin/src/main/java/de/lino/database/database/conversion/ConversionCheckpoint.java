@@ -0,0 +1,138 @@
+package de.lino.database.database.conversion;
+
+import de.lino.database.json.JsonDocument;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * The persisted per-section progress of one {@link ProviderConversion}, kept as a
+ * {@link JsonDocument} file mapping every target section's name to its state - {@code "started"}
+ * or {@code "completed"} - and the number of entries written to it so far.
+ * <p>
+ * Every change is written through to the file immediately - to a temporary sibling first, which
+ * then atomically replaces the file - so a conversion killed at any point leaves an intact
+ * checkpoint at most one chunk behind the target. All methods are {@code synchronized}, as the
+ * conversion's workers update their sections concurrently.
+ */
+public class ConversionCheckpoint {
+
+    /**
+     * The state of a section some worker started writing to, but did not finish.
+     */
+    private static final String STARTED = "started";
+
+    /**
+     * The state of a section every entry was written for.
+     */
+    private static final String COMPLETED = "completed";
+
+    /**
+     * The file this checkpoint is persisted to.
+     */
+    private final Path path;
+
+    /**
+     * The temporary sibling of {@link #path} every change is written to before replacing it.
+     */
+    private final Path temporary;
+
+    /**
+     * The in-memory state of this checkpoint, one nested document per section.
+     */
+    private final JsonDocument sections;
+
+    /**
+     * Loads the checkpoint at {@code path}, or starts an empty one if there is no file yet.
+     *
+     * @param path the file to resume from and persist to
+     */
+    public ConversionCheckpoint(@NotNull Path path) {
+        this.path = path;
+        this.temporary = path.resolveSibling(path.getFileName() + ".tmp");
+        this.sections = Files.exists(path) ? JsonDocument.load(path) : new JsonDocument();
+    }
+
+    /**
+     * Checks whether a previous run converted {@code section} completely.
+     *
+     * @param section the target section's name
+     * @return {@code true} if the section can be skipped
+     */
+    public synchronized boolean isCompleted(@NotNull String section) {
+        return COMPLETED.equals(this.state(section));
+    }
+
+    /**
+     * Checks whether a previous run started, but did not finish, converting {@code section}.
+     *
+     * @param section the target section's name
+     * @return {@code true} if the section has to be resumed rather than recreated
+     */
+    public synchronized boolean isStarted(@NotNull String section) {
+        return STARTED.equals(this.state(section));
+    }
+
+    /**
+     * Records that writing to {@code section} began, or progressed to {@code entries} written
+     * entries.
+     *
+     * @param section the target section's name
+     * @param entries the number of entries written to the section so far
+     */
+    public synchronized void started(@NotNull String section, long entries) {
+        this.update(section, STARTED, entries);
+    }
+
+    /**
+     * Records that every entry of {@code section} was written.
+     *
+     * @param section the target section's name
+     * @param entries the number of entries written to the section
+     */
+    public synchronized void completed(@NotNull String section, long entries) {
+        this.update(section, COMPLETED, entries);
+    }
+
+    /**
+     * Reads the number of entries {@code section} had written as of the last checkpoint.
+     *
+     * @param section the target section's name
+     * @return the entries written, {@code 0} if the section was never started
+     */
+    public synchronized long entries(@NotNull String section) {
+        return this.sections.contains(section) ? this.sections.getMetaData(section).getLong("entries") : 0;
+    }
+
+    /**
+     * Deletes the checkpoint file, once the conversion it tracked has finished.
+     */
+    public synchronized void delete() {
+        try {
+            Files.deleteIfExists(this.path);
+        } catch (final IOException exception) {
+            exception.printStackTrace();
+        }
+    }
+
+    private String state(@NotNull String section) {
+        return this.sections.contains(section) ? this.sections.getMetaData(section).getString("state") : null;
+    }
+
+    private void update(@NotNull String section, @NotNull String state, long entries) {
+
+        this.sections.append(section, new JsonDocument("state", state).append("entries", entries));
+        if (!this.sections.write(this.temporary)) return;
+
+        try {
+            Files.move(this.temporary, this.path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (final IOException exception) {
+            exception.printStackTrace();
+        }
+
+    }
+
+}
@@ -0,0 +1,308 @@
+package de.lino.database.database.conversion;
+
+import de.lino.database.database.BulkIngestSection;
+import de.lino.database.database.DatabaseProvider;
+import de.lino.database.database.DatabaseSection;
+import de.lino.database.database.DatabaseType;
+import de.lino.database.database.entity.DatabaseEntry;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * One run of {@link de.lino.database.DatabaseRepository#convert(int, int, ConversionOptions)}:
+ * copies every section of a source provider into a destination provider, converting up to
+ * {@link ConversionOptions#getParallelism()} target sections at once on a pool of daemon worker
+ * threads owned by this run. Every target section is fed by the source sections
+ * {@link #targetName mapping to it} - one each, except for Redis sources in the per-key layout,
+ * whose keys are merged by prefix.
+ * <p>
+ * Every source section is streamed through {@link DatabaseSection#forEachEntry} and written in
+ * chunks shared by every source section of the same target - through the target's
+ * {@link BulkIngestSection#bulkInsert bulk-ingest path} if it has one - so no section is ever fully
+ * materialized in memory. If a {@link ConversionOptions#getCheckpoint() checkpoint} is configured,
+ * every target section's progress is persisted after every chunk: a rerun skips the target
+ * sections completed before, and continues the ones started before in place, skipping every entry
+ * they already hold instead of dropping it. Sections without a checkpoint are recreated on the
+ * target, as before.
+ * <p>
+ * A failing section does not stop the others; once every section finished, the first failure is
+ * rethrown with every further one attached as suppressed.
+ */
+public class ProviderConversion {
+
+    /**
+     * The number of entries buffered per target section before handing them to
+     * {@link DatabaseSection#insertAll} at once, unless {@link ConversionOptions#getChunkSize()}
+     * says otherwise - bounding memory use regardless of section size, while still letting
+     * batching targets write many entries per round trip.
+     */
+    private static final int CONVERT_CHUNK_SIZE = 1_000;
+
+    /**
+     * The number of entries buffered per target section supporting
+     * {@link BulkIngestSection bulk ingest} - larger than {@link #CONVERT_CHUNK_SIZE}, since a bulk
+     * load pays its fixed cost (e.g. a {@code COPY} round trip) once per chunk.
+     */
+    private static final int BULK_CHUNK_SIZE = 10_000;
+
+    /**
+     * The type of the source provider; Redis sources name their sections {@code <section>:<id>},
+     * and are merged into one target section per prefix.
+     */
+    private final DatabaseType sourceType;
+
+    /**
+     * The provider every section is read from.
+     */
+    private final DatabaseProvider source;
+
+    /**
+     * The provider every section is written to.
+     */
+    private final DatabaseProvider destination;
+
+    /**
+     * The options this run was started with.
+     */
+    private final ConversionOptions options;
+
+    /**
+     * The persisted progress of this run, or {@code null} if it runs without checkpoints.
+     */
+    private final @Nullable ConversionCheckpoint checkpoint;
+
+    /**
+     * The number of entries written by this run so far.
+     */
+    private final LongAdder entries = new LongAdder();
+
+    /**
+     * The serialized size of every entry written by this run so far, only measured if a
+     * {@link ConversionOptions#getListener() listener} is set.
+     */
+    private final LongAdder bytes = new LongAdder();
+
+    /**
+     * The number of target sections completed so far, including the ones skipped.
+     */
+    private final AtomicInteger sectionsCompleted = new AtomicInteger();
+
+    /**
+     * The {@link System#nanoTime()} before which no further intermediate progress is reported.
+     */
+    private final AtomicLong nextReport = new AtomicLong();
+
+    /**
+     * The {@link System#nanoTime()} this run started at.
+     */
+    private long started;
+
+    /**
+     * The number of target sections the source's sections map to.
+     */
+    private int sectionsTotal;
+
+    /**
+     * @param sourceType  the type of the source provider
+     * @param source      the provider to read every section from
+     * @param destination the provider to write every section to
+     * @param options     the options to run with
+     */
+    public ProviderConversion(@NotNull DatabaseType sourceType, @NotNull DatabaseProvider source, @NotNull DatabaseProvider destination, @NotNull ConversionOptions options) {
+        this.sourceType = sourceType;
+        this.source = source;
+        this.destination = destination;
+        this.options = options;
+        this.checkpoint = options.getCheckpoint() == null ? null : new ConversionCheckpoint(options.getCheckpoint());
+    }
+
+    /**
+     * Resolves the name of the target section a source section is copied into: its own name,
+     * except for Redis sources, whose {@code <section>:<id>} keys are merged by prefix.
+     *
+     * @param sourceType the type of the source provider
+     * @param section    the source section's name
+     * @return the target section's name
+     */
+    public static @NotNull String targetName(@NotNull DatabaseType sourceType, @NotNull String section) {
+        return sourceType == DatabaseType.REDIS ? section.split(":")[0] : section;
+    }
+
+    /**
+     * Converts every section, blocking until all of them finished.
+     *
+     * @throws IllegalStateException if any section failed to convert; the checkpoint, if any, is
+     *                               kept so a rerun resumes
+     */
+    public void run() {
+
+        final Map<String, List<DatabaseSection>> groups = new LinkedHashMap<>();
+        for (final DatabaseSection section : this.source.getSections())
+            groups.computeIfAbsent(targetName(this.sourceType, section.getName()), key -> new ArrayList<>()).add(section);
+
+        this.started = System.nanoTime();
+        this.sectionsTotal = groups.size();
+        this.nextReport.set(this.started);
+
+        final AtomicInteger counter = new AtomicInteger();
+        final ExecutorService executorService = Executors.newFixedThreadPool(Math.max(1, Math.min(this.options.getParallelism(), groups.size())), runnable -> {
+            final Thread thread = new Thread(runnable, "database-driver-convert-" + counter.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        final List<Throwable> failures = new ArrayList<>();
+
+        try {
+
+            final List<CompletableFuture<Void>> pending = groups.entrySet().stream()
+                    .map(group -> CompletableFuture.runAsync(() -> this.convert(group.getKey(), group.getValue()), executorService))
+                    .toList();
+
+            for (final CompletableFuture<Void> future : pending) {
+                try {
+                    future.join();
+                } catch (final CompletionException exception) {
+                    failures.add(exception.getCause() == null ? exception : exception.getCause());
+                }
+            }
+
+        } finally {
+            executorService.shutdown();
+        }
+
+        this.report(true);
+
+        if (!failures.isEmpty()) {
+            final IllegalStateException exception = new IllegalStateException("@DatabaseRepositoryRegistry.convert: " + failures.size() + " of " + this.sectionsTotal + " sections failed to convert", failures.get(0));
+            failures.stream().skip(1).forEach(exception::addSuppressed);
+            throw exception;
+        }
+
+        if (this.checkpoint != null) this.checkpoint.delete();
+
+    }
+
+    /**
+     * Converts a single target section, resuming or skipping it as its checkpoint says.
+     *
+     * @param name     the target section's name
+     * @param sections the source sections mapping to it
+     */
+    private void convert(@NotNull String name, @NotNull List<DatabaseSection> sections) {
+
+        if (this.checkpoint != null && this.checkpoint.isCompleted(name)) {
+            this.sectionsCompleted.incrementAndGet();
+            this.report(false);
+            return;
+        }
+
+        final boolean resumed = this.checkpoint != null && this.checkpoint.isStarted(name);
+
+        if (this.sourceType != DatabaseType.REDIS && !resumed && this.destination.existsSection(name)) this.destination.deleteSection(name);
+        final DatabaseSection target = this.destination.createSection(name);
+
+        final long written = this.copy(name, sections, target, resumed);
+        if (this.checkpoint != null) this.checkpoint.completed(name, written);
+
+        this.sectionsCompleted.incrementAndGet();
+        this.report(false);
+
+    }
+
+    /**
+     * Streams every entry of {@code sources} into {@code target} in chunks, checkpointing after
+     * every chunk.
+     *
+     * @param name    the target section's name, as checkpointed
+     * @param sources the sections to read every entry from
+     * @param target  the section to insert every entry into
+     * @param resumed whether a previous run started this section, so every entry {@code target}
+     *                already holds is skipped
+     * @return the number of entries written to the section, across every run
+     */
+    private long copy(@NotNull String name, @NotNull List<DatabaseSection> sources, @NotNull DatabaseSection target, boolean resumed) {
+
+        final int chunkSize = this.options.getChunkSize() > 0 ? this.options.getChunkSize() : target instanceof BulkIngestSection ? BULK_CHUNK_SIZE : CONVERT_CHUNK_SIZE;
+        final boolean measure = this.options.getListener() != null;
+
+        final List<DatabaseEntry> chunk = new ArrayList<>(chunkSize);
+        final long[] written = {this.checkpoint == null ? 0 : this.checkpoint.entries(name)};
+
+        if (this.checkpoint != null) this.checkpoint.started(name, written[0]);
+
+        for (final DatabaseSection source : sources) {
+
+            source.forEachEntry(databaseEntry -> {
+
+                if (resumed && target.exists(databaseEntry.getId())) return;
+
+                chunk.add(databaseEntry);
+                if (chunk.size() < chunkSize) return;
+
+                written[0] += this.write(name, target, chunk, written[0], measure);
+                chunk.clear();
+            });
+
+        }
+
+        if (!chunk.isEmpty()) written[0] += this.write(name, target, chunk, written[0], measure);
+
+        return written[0];
+    }
+
+    /**
+     * Writes one chunk, checkpoints it and reports the progress made.
+     *
+     * @return the number of entries written
+     */
+    private int write(@NotNull String name, @NotNull DatabaseSection target, @NotNull List<DatabaseEntry> chunk, long written, boolean measure) {
+
+        if (target instanceof BulkIngestSection bulkIngestSection) bulkIngestSection.bulkInsert(chunk);
+        else target.insertAll(chunk);
+
+        if (this.checkpoint != null) this.checkpoint.started(name, written + chunk.size());
+
+        this.entries.add(chunk.size());
+        if (measure) for (final DatabaseEntry databaseEntry : chunk) this.bytes.add(databaseEntry.getDocument().toBytes().length);
+
+        this.report(false);
+        return chunk.size();
+    }
+
+    /**
+     * Reports the current progress to the listener, if there is one - intermediate reports at
+     * most once per {@link ConversionOptions#getProgressInterval()}, the final one always.
+     *
+     * @param finished whether this is the final report of the run
+     */
+    private void report(boolean finished) {
+
+        final ConversionListener listener = this.options.getListener();
+        if (listener == null) return;
+
+        final long now = System.nanoTime();
+        final long next = this.nextReport.get();
+
+        if (!finished && (now - next < 0 || !this.nextReport.compareAndSet(next, now + this.options.getProgressInterval().toNanos()))) return;
+
+        synchronized (this) {
+            listener.onProgress(new ConversionProgress(this.sectionsCompleted.get(), this.sectionsTotal, this.entries.sum(), this.bytes.sum(), Duration.ofNanos(now - this.started), finished));
+        }
+
+    }
+
+}
@@ -13,6 +13,7 @@ import org.jetbrains.annotations.Nullable;
 import java.util.*;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.stream.Stream;
 
 /**
  * Default {@link EntityFactory} implementation: entities are grouped by an arbitrary {@code
@@ -88,10 +89,7 @@ public class DefaultEntityFactory implements EntityFactory {
 
             final DatabaseEntry entry = toGenericEntry(entity);
 
-            writes.add(CompletableFuture.runAsync(() -> {
-                if (section.exists(entry.getId())) section.update(entry);
-                else section.insert(entry);
-            }));
+            writes.add(section.upsertAsync(entry));
 
         }
 
@@ -127,7 +125,7 @@ public class DefaultEntityFactory implements EntityFactory {
                 if (!section.exists(entity.primaryKey())) return null;
                 section.delete(entity.primaryKey());
                 return entity;
-            }));
+            }, section.getExecutor()));
         }
 
         final List<Serialized> removed = deletes.stream()
@@ -167,12 +165,14 @@ public class DefaultEntityFactory implements EntityFactory {
             if (loaded != null) return Optional.of(uncheckedCast(loaded));
         }
 
-        return section.get().getEntries().stream()
-                .map(DefaultEntityFactory::fromGenericEntry)
-                .filter(Objects::nonNull)
-                .filter(entity -> entity.hasKey(key.toString()))
-                .findFirst()
-                .map(DefaultEntityFactory::uncheckedCast);
+        try (final Stream<DatabaseEntry> stream = section.get().stream()) {
+            return stream
+                    .map(DefaultEntityFactory::fromGenericEntry)
+                    .filter(Objects::nonNull)
+                    .filter(entity -> entity.hasKey(key.toString()))
+                    .findFirst()
+                    .map(DefaultEntityFactory::uncheckedCast);
+        }
 
     }
 
@@ -190,12 +190,15 @@ public class DefaultEntityFactory implements EntityFactory {
         final Optional<DatabaseSection> section = this.requireDatabase().getSection(type.name());
         if (section.isEmpty()) return List.of();
 
-        final List<Serialized> loaded = section.get().getEntries().stream()
-                .map(DefaultEntityFactory::fromGenericEntry)
-                .filter(Objects::nonNull)
-                .toList();
+        try (final Stream<DatabaseEntry> stream = section.get().stream()) {
 
-        return uncheckedCast(loaded);
+            final List<Serialized> loaded = stream
+                    .map(DefaultEntityFactory::fromGenericEntry)
+                    .filter(Objects::nonNull)
+                    .toList();
+
+            return uncheckedCast(loaded);
+        }
 
     }
 
@@ -5,6 +5,7 @@ import de.lino.database.database.auth.Credentials;
 import de.lino.database.json.file.FileProvider;
 import de.lino.database.database.DatabaseProvider;
 import de.lino.database.database.DatabaseSection;
+import de.lino.database.utils.codec.PayloadCodec;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.UnmodifiableView;
 
@@ -37,6 +38,18 @@ public class CSVDatabaseProvider implements DatabaseProvider {
      */
     private final Map<String, DatabaseSection> databaseSections;
 
+    /**
+     * The codec every section encodes its serialized documents with, read from the
+     * {@code "codec"} option - {@link PayloadCodec#NONE} by default.
+     */
+    private final PayloadCodec codec;
+
+    /**
+     * Whether every section skips reloading an unchanged file, read from the
+     * {@code "incrementalReload"} option - {@code false} by default.
+     */
+    private final boolean incrementalReload;
+
     /**
      * Loads every existing {@value #EXTENSION} file directly under {@code credentials}' file
      * repository as a {@link CSVDatabaseSection}.
@@ -48,6 +61,8 @@ public class CSVDatabaseProvider implements DatabaseProvider {
 
         this.repository = Path.of(credentials.getFileRepository());
         this.databaseSections = Maps.newConcurrentMap();
+        this.codec = PayloadCodec.of(credentials.getOptions().get("codec", String.class, null));
+        this.incrementalReload = credentials.getOptions().get("incrementalReload", Boolean.class, false);
 
         this.reload();
 
@@ -74,14 +89,14 @@ public class CSVDatabaseProvider implements DatabaseProvider {
 
         for (final File file : Objects.requireNonNull(files)) {
             final String name = file.getName().substring(0, file.getName().length() - EXTENSION.length());
-            this.databaseSections.put(name, new CSVDatabaseSection(name, file.toPath()));
+            this.databaseSections.put(name, new CSVDatabaseSection(name, file.toPath(), this.codec, this.incrementalReload));
         }
 
     }
 
     @Override
     public DatabaseSection createSection(@NotNull final String name) {
-        return this.databaseSections.computeIfAbsent(name, key -> new CSVDatabaseSection(key, this.repository.resolve(key + EXTENSION)));
+        return this.databaseSections.computeIfAbsent(name, key -> new CSVDatabaseSection(key, this.repository.resolve(key + EXTENSION), this.codec, this.incrementalReload));
     }
 
     @Override
@@ -8,6 +8,9 @@ import de.lino.database.json.JsonDocument;
 import de.lino.database.json.file.FileProvider;
 import de.lino.database.database.DatabaseSection;
 import de.lino.database.database.entity.DatabaseEntry;
+import de.lino.database.utils.codec.PayloadCodec;
+import de.lino.database.utils.expiry.ExpiryWheel;
+import lombok.AccessLevel;
 import lombok.Getter;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.UnmodifiableView;
@@ -17,10 +20,16 @@ import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
+import java.time.Duration;
 import java.util.Base64;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 /**
  * The {@link DatabaseSection} backing one CSV file, one row per entry as
@@ -31,6 +40,15 @@ import java.util.Optional;
  * writes do; since a CSV file has no notion of an in-place row update, {@link #update} and
  * {@link #delete} rewrite the whole file from {@link #entries} rather than editing a single line,
  * while {@link #insert} just appends.
+ * <p>
+ * If the {@code "incrementalReload"} option is enabled, {@link #reload} skips re-reading the file
+ * as long as its size and modification time still match the last time this section read or
+ * wrote it.
+ * <p>
+ * An entry {@link #insert(DatabaseEntry, Duration) inserted with a time to live} carries its
+ * deadline, in milliseconds since the epoch, as an optional third column - which every rewrite
+ * keeps. The shared {@link ExpiryWheel} drops the row at the deadline, and every reload drops the
+ * rows whose deadline passed while no section had the file loaded.
  */
 @Getter
 public class CSVDatabaseSection implements DatabaseSection {
@@ -51,18 +69,48 @@ public class CSVDatabaseSection implements DatabaseSection {
      */
     private final Map<String, DatabaseEntry> entries;
 
+    /**
+     * The codec every serialized document is encoded with before it is Base64-encoded.
+     */
+    private final PayloadCodec codec;
+
+    /**
+     * Whether {@link #reload} skips re-reading an unchanged {@link #file}.
+     */
+    private final boolean incremental;
+
+    /**
+     * The size and modification time {@link #file} had the last time this section read or wrote
+     * it, or {@code null} if unknown, in which case the next {@link #reload} always reads it.
+     */
+    @Getter(AccessLevel.NONE)
+    private volatile FileState fileState;
+
+    /**
+     * The deadline of every entry carrying a time to live, in milliseconds since the epoch, keyed
+     * by id. An expiry only drops its entry if the deadline it was scheduled for is still the one
+     * recorded here, so writes simply drop an entry's deadline rather than cancel its expiry.
+     */
+    @Getter(AccessLevel.NONE)
+    private final Map<String, Long> expiries;
+
     /**
      * Creates (if not already present) {@code file} and loads its existing rows into
      * {@link #entries}.
      *
-     * @param name this section's file name, without the {@code .csv} extension
-     * @param file the CSV file this section wraps
+     * @param name  this section's file name, without the {@code .csv} extension
+     * @param file  the CSV file this section wraps
+     * @param codec       the codec to encode every serialized document with
+     * @param incremental whether {@link #reload} skips re-reading an unchanged file
      */
-    public CSVDatabaseSection(@NotNull final String name, @NotNull final Path file) {
+    public CSVDatabaseSection(@NotNull final String name, @NotNull final Path file, @NotNull final PayloadCodec codec, final boolean incremental) {
 
         this.name = name;
         this.file = file;
+        this.codec = codec;
+        this.incremental = incremental;
         this.entries = Maps.newConcurrentMap();
+        this.expiries = Maps.newConcurrentMap();
 
         this.reload();
 
@@ -76,25 +124,58 @@ public class CSVDatabaseSection implements DatabaseSection {
      * changed or removed directly on disk since this section was constructed (e.g. a
      * backup restored while the application was already running) is picked up here
      * even though ordinary reads never touch the filesystem.
+     * <p>
+     * In {@link #incremental} mode, nothing is read if {@link #file}'s size and modification
+     * time are unchanged since this section last read or wrote it.
+     * <p>
+     * Rows whose deadline has passed are skipped, and the file is rewritten without them; every
+     * other deadline is scheduled, unless it already is.
      */
     @Override
     public void reload() {
 
         FileProvider.getInstance().createFile(this.file);
+
+        final FileState fileState = FileState.of(this.file);
+        if (this.incremental && fileState != null && fileState.equals(this.fileState)) return;
+
         this.entries.clear();
 
+        final long now = System.currentTimeMillis();
+        final Set<String> expiring = new HashSet<>();
+        boolean expired = false;
+
         for (final String line : readLines(this.file)) {
 
             if (line.isBlank()) continue;
 
             final int separator = line.indexOf(',');
+            final int deadline = line.indexOf(',', separator + 1);
             final String id = decode(line.substring(0, separator));
-            final byte[] data = Base64.getDecoder().decode(line.substring(separator + 1));
+            final byte[] data = Base64.getDecoder().decode(deadline < 0 ? line.substring(separator + 1) : line.substring(separator + 1, deadline));
+
+            if (deadline >= 0) {
 
-            this.entries.put(id, new DatabaseEntry(id, new JsonDocument(data)));
+                final long expiresAt = Long.parseLong(line.substring(deadline + 1).trim());
+
+                if (expiresAt <= now) {
+                    expired = true;
+                    continue;
+                }
+
+                expiring.add(id);
+                this.schedule(id, expiresAt);
+            }
+
+            this.entries.put(id, new DatabaseEntry(id, new JsonDocument(PayloadCodec.decode(data))));
 
         }
 
+        this.expiries.keySet().retainAll(expiring);
+
+        if (expired) this.rewrite();
+        else this.fileState = fileState;
+
     }
 
     @Override
@@ -104,6 +185,7 @@ public class CSVDatabaseSection implements DatabaseSection {
 
         try {
             Files.writeString(this.file, row(databaseEntry) + System.lineSeparator(), StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+            this.fileState = FileState.of(this.file);
         } catch (final IOException exception) {
             exception.printStackTrace();
         }
@@ -112,11 +194,42 @@ public class CSVDatabaseSection implements DatabaseSection {
 
     }
 
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Appends the entry's row with its deadline as third column, so a later reload drops it even
+     * if no section had the file loaded at the deadline.
+     */
+    @Override
+    public void insert(@NotNull final DatabaseEntry databaseEntry, @NotNull final Duration ttl) {
+
+        if (ttl.isNegative() || ttl.isZero()) throw new IllegalArgumentException("@CSVDatabaseSection.insert: The time to live must be positive");
+        if (this.entries.putIfAbsent(databaseEntry.getId(), databaseEntry) != null) throw new DataAlreadyExist(databaseEntry.getId());
+
+        this.schedule(databaseEntry.getId(), System.currentTimeMillis() + ttl.toMillis());
+
+        try {
+            Files.writeString(this.file, row(databaseEntry) + System.lineSeparator(), StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+            this.fileState = FileState.of(this.file);
+        } catch (final IOException exception) {
+            exception.printStackTrace();
+        }
+
+        DatabaseRepositoryRegistry.logBytes("The database entry contained %d Bytes", databaseEntry.getDocument());
+
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Drops the entry's deadline, if it has one.
+     */
     @Override
     public void update(@NotNull final DatabaseEntry databaseEntry) {
 
         if (!this.exists(databaseEntry.getId())) throw new NoSuchEntryFound(databaseEntry.getId());
 
+        this.expiries.remove(databaseEntry.getId());
         this.entries.put(databaseEntry.getId(), databaseEntry);
         this.rewrite();
 
@@ -130,6 +243,7 @@ public class CSVDatabaseSection implements DatabaseSection {
         if (!this.exists(id)) throw new NoSuchEntryFound(id);
 
         this.entries.remove(id);
+        this.expiries.remove(id);
         this.rewrite();
 
     }
@@ -142,6 +256,7 @@ public class CSVDatabaseSection implements DatabaseSection {
     @Override
     public void clear() {
         this.entries.clear();
+        this.expiries.clear();
         this.rewrite();
     }
 
@@ -160,6 +275,16 @@ public class CSVDatabaseSection implements DatabaseSection {
         return List.copyOf(this.entries.values());
     }
 
+    @Override
+    public Stream<DatabaseEntry> stream() {
+        return this.entries.values().stream();
+    }
+
+    @Override
+    public void forEachEntry(@NotNull Consumer<DatabaseEntry> consumer) {
+        this.entries.values().forEach(consumer);
+    }
+
     /**
      * Overwrites {@link #file} with one row per current entry of {@link #entries}.
      */
@@ -170,6 +295,7 @@ public class CSVDatabaseSection implements DatabaseSection {
 
         try {
             Files.writeString(this.file, builder.toString(), StandardCharsets.UTF_8);
+            this.fileState = FileState.of(this.file);
         } catch (final IOException exception) {
             exception.printStackTrace();
         }
@@ -177,14 +303,40 @@ public class CSVDatabaseSection implements DatabaseSection {
     }
 
     /**
-     * Builds {@code databaseEntry}'s CSV row: its Base64-encoded id, a comma, and its
-     * Base64-encoded serialized document.
+     * Records {@code expiresAt} as the deadline of {@code id} and schedules dropping its row on
+     * this section's executor then, unless that deadline is recorded already.
+     *
+     * @param id        primary key of the entry
+     * @param expiresAt the entry's deadline, in milliseconds since the epoch
+     */
+    private void schedule(@NotNull final String id, final long expiresAt) {
+
+        if (Objects.equals(this.expiries.put(id, expiresAt), expiresAt)) return;
+
+        ExpiryWheel.getInstance().schedule(Duration.ofMillis(expiresAt - System.currentTimeMillis()), () -> this.getExecutor().execute(() -> {
+
+            if (!this.expiries.remove(id, expiresAt)) return;
+
+            this.entries.remove(id);
+            this.rewrite();
+
+        }));
+    }
+
+    /**
+     * Builds {@code databaseEntry}'s CSV row: its Base64-encoded id, a comma, and its serialized
+     * document, encoded with {@link #codec} and then Base64-encoded - followed by a comma and its
+     * deadline if it has one.
      *
      * @param databaseEntry the entry to build a row for
      * @return the built row, without a trailing line terminator
      */
-    private static String row(@NotNull final DatabaseEntry databaseEntry) {
-        return encode(databaseEntry.getId()) + "," + Base64.getEncoder().encodeToString(databaseEntry.getDocument().toBytes());
+    private String row(@NotNull final DatabaseEntry databaseEntry) {
+
+        final String row = encode(databaseEntry.getId()) + "," + Base64.getEncoder().encodeToString(this.codec.encode(databaseEntry.getDocument().toBytes()));
+        final Long expiresAt = this.expiries.get(databaseEntry.getId());
+
+        return expiresAt == null ? row : row + "," + expiresAt;
     }
 
     /**
@@ -223,4 +375,29 @@ public class CSVDatabaseSection implements DatabaseSection {
         }
     }
 
+    /**
+     * The size and modification time of a file, compared by {@link #reload} to tell whether the
+     * file changed.
+     *
+     * @param size         the file's size in bytes
+     * @param lastModified the file's modification time, in milliseconds since the epoch
+     */
+    private record FileState(long size, long lastModified) {
+
+        /**
+         * Reads {@code file}'s current size and modification time.
+         *
+         * @param file the file to inspect
+         * @return the file's state, or {@code null} if it cannot be read
+         */
+        private static FileState of(@NotNull final Path file) {
+            try {
+                return new FileState(Files.size(file), Files.getLastModifiedTime(file).toMillis());
+            } catch (final IOException exception) {
+                return null;
+            }
+        }
+
+    }
+
 }
@@ -10,22 +10,41 @@ import de.lino.database.json.JsonDocument;
 import de.lino.database.json.file.FileProvider;
 import de.lino.database.database.DatabaseSection;
 import de.lino.database.database.entity.DatabaseEntry;
+import de.lino.database.utils.expiry.ExpiryWheel;
+import lombok.AccessLevel;
 import lombok.Getter;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.UnmodifiableView;
 
+import java.io.File;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.time.Duration;
 import java.util.*;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 /**
  * The {@link DatabaseSection} backing one directory of JSON files, one file per entry, named
  * {@code <id>.json}. Entries are cached in memory (loaded once in the constructor and kept in
  * sync on every write) so reads never touch the filesystem, only writes do.
+ * <p>
+ * If the {@code "incrementalReload"} option is enabled, {@link #reload} only re-parses the files
+ * modified since its previous run, and drops the entries whose files are gone.
+ * <p>
+ * An entry {@link #insert(DatabaseEntry, Duration) inserted with a time to live} stores its
+ * deadline in its file's top-level {@link #EXPIRES_AT} field, in milliseconds since the epoch.
+ * The shared {@link ExpiryWheel} deletes the file at the deadline, and every reload deletes the
+ * files whose deadline passed while no section had them loaded.
  */
 @Getter
 public class JsonDatabaseSection implements DatabaseSection {
 
+    /**
+     * The top-level field of an entry's file holding its deadline, if it has a time to live.
+     */
+    public static final String EXPIRES_AT = "expiresAt";
+
     /**
      * This section's directory name, relative to {@link Credentials}'s {@code getFileRepository()}.
      */
@@ -48,6 +67,33 @@ public class JsonDatabaseSection implements DatabaseSection {
      */
     private final Map<String, DatabaseEntry> entries;
 
+    /**
+     * Whether {@link #reload} only re-parses files modified since its previous run, read from
+     * the {@code "incrementalReload"} option, {@code false} by default.
+     */
+    private final boolean incremental;
+
+    /**
+     * How far before the previous reload's start an incremental reload still re-parses
+     * modified files, in milliseconds - covering coarse filesystem timestamps and writes racing
+     * the previous reload. Read from the {@code "incrementalOverlapMillis"} option, {@code 5000}
+     * by default.
+     */
+    private final long overlapMillis;
+
+    /**
+     * The wall clock time the previous {@link #reload} started at, {@code 0} before the first.
+     */
+    private volatile long lastReload;
+
+    /**
+     * The deadline of every entry carrying a time to live, in milliseconds since the epoch, keyed
+     * by id. An expiry only deletes its entry if the deadline it was scheduled for is still the
+     * one recorded here, so writes simply drop an entry's deadline rather than cancel its expiry.
+     */
+    @Getter(AccessLevel.NONE)
+    private final Map<String, Long> expiries;
+
     /**
      * Creates (if not already present) {@link #parent} and loads its existing entries into
      * {@link #entries}, via {@link #reload()}.
@@ -61,7 +107,10 @@ public class JsonDatabaseSection implements DatabaseSection {
         this.name = name;
         this.credentials = credentials;
         this.entries = Maps.newConcurrentMap();
+        this.expiries = Maps.newConcurrentMap();
         this.parent = Paths.get(credentials.getFileRepository(), name);
+        this.incremental = credentials.getOptions().get("incrementalReload", Boolean.class, false);
+        this.overlapMillis = credentials.getOptions().get("incrementalOverlapMillis", Long.class, 5_000L, value -> value >= 0);
 
         this.reload();
 
@@ -80,24 +129,57 @@ public class JsonDatabaseSection implements DatabaseSection {
      * directly in {@link #parent} (most commonly a filesystem-managed one such as macOS'
      * {@code .DS_Store}, dropped in by Finder the moment the folder is ever browsed) is
      * skipped rather than parsed as an entry, which would otherwise fail outright.
+     * <p>
+     * In {@link #incremental} mode, only files not loaded yet or modified since the previous
+     * reload (minus {@link #overlapMillis}) are parsed, and entries whose file disappeared are
+     * dropped. A file replaced by one carrying an older modification time - e.g. a backup
+     * restored with its original timestamps - is therefore only picked up by a non-incremental
+     * reload.
+     * <p>
+     * A parsed file whose {@link #EXPIRES_AT} deadline has passed is deleted instead of loaded;
+     * every other deadline is scheduled, unless it already is.
      */
     @Override
     public void reload() {
 
         FileProvider.getInstance().createDirectory(this.parent);
-        this.entries.clear();
 
-        Arrays.stream(Objects.requireNonNull(this.parent.toFile().listFiles((dir, name) -> name.endsWith(".json")))).forEach(path -> {
+        final long started = System.currentTimeMillis();
+        final long since = this.incremental && this.lastReload != 0 ? this.lastReload - this.overlapMillis : Long.MIN_VALUE;
+        final File[] files = Objects.requireNonNull(this.parent.toFile().listFiles((dir, name) -> name.endsWith(".json")));
+
+        if (since == Long.MIN_VALUE) this.entries.clear();
+
+        final Set<String> present = new HashSet<>();
+        Arrays.stream(files).forEach(path -> {
 
             final String id = path.getName().replace(".json", "");
+
+            if (this.entries.containsKey(id) && path.lastModified() < since) {
+                present.add(id);
+                return;
+            }
+
             final JsonDocument document = JsonDocument.load(path.toPath());
 
             if (!document.contains("data")) throw new NoSuchDataFound(id);
 
+            if (!document.contains(EXPIRES_AT)) this.expiries.remove(id);
+            else if (document.getLong(EXPIRES_AT) <= started) {
+                this.expiries.remove(id);
+                FileProvider.getInstance().deleteFile(path.toPath());
+                return;
+            } else this.schedule(id, document.getLong(EXPIRES_AT));
+
+            present.add(id);
             this.entries.put(id, new DatabaseEntry(id, document));
 
         });
 
+        this.entries.keySet().retainAll(present);
+        this.expiries.keySet().retainAll(present);
+        this.lastReload = started;
+
     }
 
     @Override
@@ -116,11 +198,41 @@ public class JsonDatabaseSection implements DatabaseSection {
 
     }
 
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Writes the entry's file with its {@link #EXPIRES_AT} deadline, so a later reload deletes it
+     * even if no section had it loaded at the deadline.
+     */
+    @Override
+    public void insert(@NotNull DatabaseEntry databaseEntry, @NotNull Duration ttl) {
+
+        if (ttl.isNegative() || ttl.isZero()) throw new IllegalArgumentException("@JsonDatabaseSection.insert: The time to live must be positive");
+        if (this.entries.putIfAbsent(databaseEntry.getId(), databaseEntry) != null) throw new DataAlreadyExist(databaseEntry.getId());
+
+        final long expiresAt = System.currentTimeMillis() + ttl.toMillis();
+
+        final JsonDocument document = new JsonDocument().append("id", databaseEntry.getId()).append("data", databaseEntry.getMetaData()).append(EXPIRES_AT, expiresAt);
+        document.write(Paths.get(this.parent.toString(), databaseEntry.getId()) + ".json");
+
+        this.schedule(databaseEntry.getId(), expiresAt);
+
+        DatabaseRepositoryRegistry.logBytes("The database entry contained %d Bytes", databaseEntry.getDocument());
+
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Drops the entry's {@link #EXPIRES_AT} deadline, if it has one.
+     */
     @Override
     public void update(@NotNull DatabaseEntry databaseEntry) {
 
         if (!this.exists(databaseEntry.getId())) throw new NoSuchEntryFound(databaseEntry.getId());
 
+        this.expiries.remove(databaseEntry.getId());
+
         if (databaseEntry.getDocument().contains("id")) {
 
             this.delete(databaseEntry.getId());
@@ -136,6 +248,7 @@ public class JsonDatabaseSection implements DatabaseSection {
                 .getDocument()
                 .append("id", databaseEntry.getId())
                 .append("data", data)
+                .remove(EXPIRES_AT)
                 .write(Paths.get(this.parent.toString(), databaseEntry.getId()) + ".json");
 
         this.entries.put(databaseEntry.getId(), databaseEntry);
@@ -151,6 +264,7 @@ public class JsonDatabaseSection implements DatabaseSection {
 
         FileProvider.getInstance().deleteFile(Paths.get(this.parent.toString(), id + ".json"));
         this.entries.remove(id);
+        this.expiries.remove(id);
 
     }
 
@@ -163,6 +277,7 @@ public class JsonDatabaseSection implements DatabaseSection {
     public void clear() {
         FileProvider.getInstance().deleteAllFilesInDirectory(this.parent);
         this.entries.clear();
+        this.expiries.clear();
     }
 
     @Override
@@ -180,4 +295,35 @@ public class JsonDatabaseSection implements DatabaseSection {
         return List.copyOf(this.entries.values());
     }
 
+    @Override
+    public Stream<DatabaseEntry> stream() {
+        return this.entries.values().stream();
+    }
+
+    @Override
+    public void forEachEntry(@NotNull Consumer<DatabaseEntry> consumer) {
+        this.entries.values().forEach(consumer);
+    }
+
+    /**
+     * Records {@code expiresAt} as the deadline of {@code id} and schedules deleting its file on
+     * this section's executor then, unless that deadline is recorded already.
+     *
+     * @param id        primary key of the entry
+     * @param expiresAt the entry's deadline, in milliseconds since the epoch
+     */
+    private void schedule(@NotNull String id, long expiresAt) {
+
+        if (Objects.equals(this.expiries.put(id, expiresAt), expiresAt)) return;
+
+        ExpiryWheel.getInstance().schedule(Duration.ofMillis(expiresAt - System.currentTimeMillis()), () -> this.getExecutor().execute(() -> {
+
+            if (!this.expiries.remove(id, expiresAt)) return;
+
+            FileProvider.getInstance().deleteFile(Paths.get(this.parent.toString(), id + ".json"));
+            this.entries.remove(id);
+
+        }));
+    }
+
 }
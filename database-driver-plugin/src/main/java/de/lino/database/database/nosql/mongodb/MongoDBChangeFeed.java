@@ -0,0 +1,228 @@
+package de.lino.database.database.nosql.mongodb;
+
+import com.mongodb.MongoCommandException;
+import com.mongodb.MongoException;
+import com.mongodb.client.ChangeStreamIterable;
+import com.mongodb.client.MongoCursor;
+import com.mongodb.client.MongoDatabase;
+import com.mongodb.client.model.changestream.ChangeStreamDocument;
+import com.mongodb.client.model.changestream.FullDocument;
+import de.lino.database.database.DatabaseProvider;
+import de.lino.database.database.DatabaseSection;
+import de.lino.database.database.change.ChangeFeed;
+import de.lino.database.database.change.CoherentSection;
+import de.lino.database.database.change.PollingChangeFeed;
+import org.bson.BsonDocument;
+import org.bson.Document;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.time.Duration;
+import java.util.Collection;
+
+/**
+ * The {@link ChangeFeed} of MongoDB databases, built on a database-wide change stream: MongoDB
+ * itself reports every write of every instance, so nothing needs to be published. A dedicated
+ * thread applies every inserted, updated or replaced document to its section, resuming after the
+ * last seen event if the stream breaks.
+ * <p>
+ * Delete events only carry a document's {@code _id}, so with incremental reloads the tombstone
+ * written alongside every delete is applied instead; without, the deleted id is refreshed if the
+ * collection is keyed by id - i.e. the {@code _id} is a string - and the affected section is
+ * {@link DatabaseSection#reload() reloaded} otherwise. Change streams need a replica
+ * set; on a standalone server this feed falls back to a {@link PollingChangeFeed}.
+ */
+public class MongoDBChangeFeed implements ChangeFeed {
+
+    /**
+     * The error code a standalone server rejects {@code $changeStream} with.
+     */
+    private static final int CHANGE_STREAMS_UNSUPPORTED = 40573;
+
+    /**
+     * The database whose change stream is watched.
+     */
+    private final MongoDatabase mongoDatabase;
+
+    /**
+     * The provider whose sections every change is applied to.
+     */
+    private final DatabaseProvider databaseProvider;
+
+    /**
+     * Whether every delete leaves a tombstone in {@link MongoDBDatabaseSection#TOMBSTONES}.
+     */
+    private final boolean tombstones;
+
+    /**
+     * The poll interval of the {@link #fallback} on standalone servers.
+     */
+    private final Duration pollInterval;
+
+    /**
+     * The currently open change stream, or {@code null} while reconnecting.
+     */
+    private volatile MongoCursor<ChangeStreamDocument<Document>> cursor;
+
+    /**
+     * The polling feed used instead on servers without change streams, or {@code null}.
+     */
+    private volatile ChangeFeed fallback;
+
+    /**
+     * Whether {@link #close()} was called.
+     */
+    private volatile boolean closed;
+
+    /**
+     * Starts watching {@code mongoDatabase}'s change stream.
+     *
+     * @param mongoDatabase    the database to watch
+     * @param databaseProvider the provider whose sections to apply every change to
+     * @param tombstones       whether every delete leaves a tombstone
+     * @param pollInterval     the poll interval to fall back to on standalone servers
+     */
+    public MongoDBChangeFeed(@NotNull MongoDatabase mongoDatabase, @NotNull DatabaseProvider databaseProvider, boolean tombstones, @NotNull Duration pollInterval) {
+
+        this.mongoDatabase = mongoDatabase;
+        this.databaseProvider = databaseProvider;
+        this.tombstones = tombstones;
+        this.pollInterval = pollInterval;
+
+        final Thread watcher = new Thread(this::watch, "database-driver-change-stream");
+        watcher.setDaemon(true);
+        watcher.start();
+
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * A no-op, since the change stream already reports every write.
+     */
+    @Override
+    public void publish(@NotNull String section, @Nullable Collection<String> ids) {
+    }
+
+    @Override
+    public void close() {
+
+        this.closed = true;
+
+        final MongoCursor<ChangeStreamDocument<Document>> cursor = this.cursor;
+        if (cursor != null) cursor.close();
+
+        final ChangeFeed fallback = this.fallback;
+        if (fallback != null) fallback.close();
+
+    }
+
+    /**
+     * The watcher loop: opens the change stream - resuming after the last seen event if any -
+     * and applies every event until {@link #close() closed}, reopening it after a second if it
+     * fails. Every section is reloaded after an event could not be resumed after.
+     */
+    private void watch() {
+
+        BsonDocument resumeToken = null;
+
+        while (!this.closed) {
+
+            try {
+
+                ChangeStreamIterable<Document> changeStream = this.mongoDatabase.watch().fullDocument(FullDocument.UPDATE_LOOKUP);
+                if (resumeToken != null) changeStream = changeStream.resumeAfter(resumeToken);
+
+                try (final MongoCursor<ChangeStreamDocument<Document>> cursor = changeStream.iterator()) {
+
+                    this.cursor = cursor;
+
+                    while (!this.closed && cursor.hasNext()) {
+                        final ChangeStreamDocument<Document> event = cursor.next();
+                        resumeToken = event.getResumeToken();
+                        this.apply(event);
+                    }
+                }
+
+            } catch (final MongoCommandException exception) {
+
+                if (this.closed) return;
+
+                if (exception.getErrorCode() == CHANGE_STREAMS_UNSUPPORTED) {
+                    System.out.println("MongoDB change streams need a replica set, polling for changes instead");
+                    this.fallback = new PollingChangeFeed(this.databaseProvider, this.pollInterval);
+                    if (this.closed) this.fallback.close();
+                    return;
+                }
+
+                exception.printStackTrace();
+                resumeToken = null;
+                this.databaseProvider.getSections().forEach(DatabaseSection::reload);
+
+            } catch (final MongoException | IllegalStateException exception) {
+
+                if (this.closed) return;
+                exception.printStackTrace();
+
+                try {
+                    Thread.sleep(1_000);
+                } catch (final InterruptedException interruptedException) {
+                    return;
+                }
+            }
+
+            this.cursor = null;
+        }
+
+    }
+
+    /**
+     * Applies a single change event to the section of the collection it happened in.
+     *
+     * @param event the change event to apply
+     */
+    private void apply(@NotNull ChangeStreamDocument<Document> event) {
+
+        if (event.getNamespace() == null) return;
+
+        final String collection = event.getNamespace().getCollectionName();
+        final Document document = event.getFullDocument();
+
+        if (collection.equals(MongoDBDatabaseSection.TOMBSTONES)) {
+            if (document != null) this.refresh(document.getString("section_name"), document.getString("id"));
+            return;
+        }
+
+        switch (event.getOperationType()) {
+            case INSERT, UPDATE, REPLACE -> {
+                if (document != null && document.getString("id") != null) this.refresh(collection, document.getString("id"));
+            }
+            case DELETE -> {
+                final BsonDocument key = event.getDocumentKey();
+                if (!this.tombstones) this.refresh(collection, key != null && key.isString("_id") ? key.getString("_id").getValue() : null);
+            }
+            default -> {
+            }
+        }
+
+    }
+
+    /**
+     * {@link CoherentSection#refresh Refreshes} entry {@code id} of section {@code section}, or
+     * reloads the whole section if {@code id} is {@code null}. Unknown sections are ignored.
+     *
+     * @param section the name of the section changed
+     * @param id      the id changed, or {@code null} if unknown
+     */
+    private void refresh(@Nullable String section, @Nullable String id) {
+
+        if (section == null) return;
+
+        this.databaseProvider.getSection(section).ifPresent(databaseSection -> {
+            if (id != null && databaseSection instanceof CoherentSection coherentSection) coherentSection.refresh(id);
+            else databaseSection.reload();
+        });
+
+    }
+
+}
@@ -7,15 +7,19 @@ import com.mongodb.client.MongoDatabase;
 import de.lino.database.database.auth.Credentials;
 import de.lino.database.database.DatabaseProvider;
 import de.lino.database.database.DatabaseSection;
+import de.lino.database.database.change.ChangeFeed;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import org.jetbrains.annotations.UnmodifiableView;
 
 import java.net.URLEncoder;
 import java.nio.charset.StandardCharsets;
 import java.text.MessageFormat;
+import java.time.Duration;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.TimeUnit;
 
 /**
  * The {@link DatabaseProvider} backed by a MongoDB database, each {@link DatabaseSection} a
@@ -29,7 +33,7 @@ public class MongoDBDatabaseProvider implements DatabaseProvider {
      * Collection names that are never exposed as a {@link DatabaseSection}, since they are
      * MongoDB-internal rather than application data.
      */
-    private static final List<String> FORBIDDEN = List.of("system.version", "system.users");
+    private static final List<String> FORBIDDEN = List.of("system.version", "system.users", MongoDBDatabaseSection.TOMBSTONES);
 
     /**
      * Every registered section, keyed by collection name.
@@ -46,6 +50,37 @@ public class MongoDBDatabaseProvider implements DatabaseProvider {
      */
     private final MongoDatabase mongoDatabase;
 
+    /**
+     * The number of documents every section's cursor fetches per round trip, read from the
+     * {@code "fetchSize"} option of the {@link Credentials} this database was created with,
+     * {@code 1000} by default.
+     */
+    private final int batchSize;
+
+    /**
+     * Whether every section versions its documents and reloads incrementally, read from the
+     * {@code "incrementalReload"} option, {@code false} by default.
+     */
+    private final boolean incrementalReload;
+
+    /**
+     * How far below its high-water mark an incremental reload re-fetches, in milliseconds, read
+     * from the {@code "incrementalOverlapMillis"} option, {@code 5000} by default.
+     */
+    private final long incrementalOverlapMillis;
+
+    /**
+     * How long tombstones are kept, in milliseconds, read from the
+     * {@code "tombstoneRetentionMinutes"} option, {@code 24} hours by default.
+     */
+    private final long tombstoneRetentionMillis;
+
+    /**
+     * The change stream keeping every section coherent with other instances connected to the
+     * same database, or {@code null} unless the {@code "changeFeed"} option is enabled.
+     */
+    private final @Nullable ChangeFeed changeFeed;
+
     /**
      * Connects to a MongoDB database with {@code credentials} and loads every existing,
      * non-{@link #FORBIDDEN} collection as a {@link MongoDBDatabaseSection}.
@@ -55,6 +90,10 @@ public class MongoDBDatabaseProvider implements DatabaseProvider {
     public MongoDBDatabaseProvider(@NotNull Credentials credentials) {
 
         this.databaseSections = Maps.newConcurrentMap();
+        this.batchSize = credentials.getOptions().get("fetchSize", Integer.class, 1_000, value -> value > 0);
+        this.incrementalReload = credentials.getOptions().get("incrementalReload", Boolean.class, false);
+        this.incrementalOverlapMillis = credentials.getOptions().get("incrementalOverlapMillis", Long.class, 5_000L, value -> value >= 0);
+        this.tombstoneRetentionMillis = TimeUnit.MINUTES.toMillis(credentials.getOptions().get("tombstoneRetentionMinutes", Long.class, 1_440L, value -> value > 0));
 
         this.mongoClient = MongoClients.create(MessageFormat.format(
                 "mongodb://{0}:{1}@{2}:{3}/{4}",
@@ -69,10 +108,15 @@ public class MongoDBDatabaseProvider implements DatabaseProvider {
 
         this.reload();
 
+        this.changeFeed = credentials.getOptions().get("changeFeed", Boolean.class, false)
+                ? new MongoDBChangeFeed(this.mongoDatabase, this, this.incrementalReload, Duration.ofMillis(credentials.getOptions().get("changeFeedPollMillis", Long.class, 1_000L, value -> value > 0)))
+                : null;
+
     }
 
     @Override
     public void shutdown() {
+        if (this.changeFeed != null) this.changeFeed.close();
         this.mongoClient.close();
         this.databaseSections.clear();
     }
@@ -91,14 +135,14 @@ public class MongoDBDatabaseProvider implements DatabaseProvider {
 
         for (String name : this.mongoDatabase.listCollectionNames()) {
             if (FORBIDDEN.contains(name)) continue;
-            this.databaseSections.put(name, new MongoDBDatabaseSection(this.mongoDatabase, name));
+            this.databaseSections.put(name, this.newSection(name));
         }
 
     }
 
     @Override
     public DatabaseSection createSection(@NotNull String name) {
-        return this.databaseSections.computeIfAbsent(name, key -> new MongoDBDatabaseSection(this.mongoDatabase, key));
+        return this.databaseSections.computeIfAbsent(name, key -> this.newSection(key));
     }
 
     @Override
@@ -128,4 +172,15 @@ public class MongoDBDatabaseProvider implements DatabaseProvider {
         this.databaseSections.clear();
     }
 
+    /**
+     * Creates the section wrapping collection {@code name}, configured from this database's
+     * options.
+     *
+     * @param name the collection name
+     * @return the loaded section
+     */
+    private @NotNull MongoDBDatabaseSection newSection(@NotNull String name) {
+        return new MongoDBDatabaseSection(this.mongoDatabase, name, this.batchSize, this.incrementalReload, this.incrementalOverlapMillis, this.tombstoneRetentionMillis);
+    }
+
 }
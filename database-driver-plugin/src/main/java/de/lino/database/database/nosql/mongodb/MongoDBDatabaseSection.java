@@ -1,32 +1,112 @@
 package de.lino.database.database.nosql.mongodb;
 
 import com.google.common.collect.Maps;
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.MongoException;
+import com.mongodb.bulk.BulkWriteError;
 import com.mongodb.client.MongoCollection;
 import com.mongodb.client.MongoDatabase;
+import com.mongodb.client.model.BulkWriteOptions;
+import com.mongodb.client.FindIterable;
+import com.mongodb.client.model.DeleteOneModel;
 import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.IndexOptions;
+import com.mongodb.client.model.Indexes;
+import com.mongodb.client.model.InsertOneModel;
+import com.mongodb.client.model.Projections;
+import com.mongodb.client.model.ReplaceOptions;
+import com.mongodb.client.model.UpdateOneModel;
+import com.mongodb.client.model.WriteModel;
 import de.lino.database.DatabaseRepositoryRegistry;
 import de.lino.database.database.exception.DataAlreadyExist;
 import de.lino.database.database.exception.NoSuchDataFound;
 import de.lino.database.database.exception.NoSuchEntryFound;
 import de.lino.database.json.JsonDocument;
+import de.lino.database.database.BulkIngestSection;
+import de.lino.database.database.ChangeStreamSection;
 import de.lino.database.database.DatabaseSection;
+import de.lino.database.database.change.CoherentSection;
 import de.lino.database.database.entity.DatabaseEntry;
+import de.lino.database.database.entity.SectionChanges;
+import de.lino.database.utils.VersionClock;
+import de.lino.database.utils.expiry.ExpiryWheel;
+import lombok.AccessLevel;
 import lombok.Getter;
 import org.bson.Document;
+import org.bson.conversions.Bson;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import org.jetbrains.annotations.UnmodifiableView;
 
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
  * The {@link DatabaseSection} backing one MongoDB collection. Entries are cached in memory
  * (loaded once in the constructor and kept in sync on every write) so reads never touch the
  * database, only writes do.
+ * <p>
+ * Collections holding no documents yet when the section is created store every entry under
+ * {@code _id = id}, so every write by id goes through the primary key index the server keeps
+ * anyway; collections written by older versions, keyed by generated object ids, get a unique
+ * index on {@code id} instead. Either way no write by id scans the collection.
+ * <p>
+ * If incremental reloads are enabled, every write stamps its document's {@code version} field
+ * via {@link VersionClock} and every delete leaves a tombstone in the shared {@link #TOMBSTONES}
+ * collection, so {@link #reload} only fetches the documents and tombstones newer than its
+ * {@link #highWaterMark high-water mark}. A {@link MongoDBChangeFeed} applies other instances'
+ * writes through {@link #refresh}.
+ * <p>
+ * Entries {@link #insert(DatabaseEntry, Duration) inserted with a time to live} carry an
+ * {@link #EXPIRES_AT} date covered by a TTL index, so the server deletes them itself; as its TTL
+ * monitor only runs about once a minute, expired documents are skipped on every read, and the
+ * cached copy of every document carrying the date is dropped on time by the shared
+ * {@link ExpiryWheel}.
  */
 @Getter
-public class MongoDBDatabaseSection implements DatabaseSection {
+public class MongoDBDatabaseSection implements CoherentSection, BulkIngestSection, ChangeStreamSection {
+
+    /**
+     * The collection every section records its deletes in when reloading incrementally, one
+     * document per deleted id - or a {@code null} id for a cleared section - stamped with the
+     * delete's version. Never loaded as a section itself.
+     */
+    public static final String TOMBSTONES = "database_tombstones";
+
+    /**
+     * The field holding the date a document inserted with a time to live expires at.
+     */
+    public static final String EXPIRES_AT = "expiresAt";
+
+    /**
+     * The server error code of a write violating a unique index.
+     */
+    private static final int DUPLICATE_KEY = 11_000;
+
+    /**
+     * The minimum time between two {@link #pruneTombstones() prunes} of this section's expired
+     * tombstones, in nanoseconds.
+     */
+    private static final long PRUNE_INTERVAL = TimeUnit.MINUTES.toNanos(1);
+
+    /**
+     * The options of every batch write: unordered, so the server applies its writes in parallel
+     * and does not stop at the first failure.
+     */
+    private static final BulkWriteOptions UNORDERED = new BulkWriteOptions().ordered(false);
 
     /**
      * This section's collection name.
@@ -44,17 +124,90 @@ public class MongoDBDatabaseSection implements DatabaseSection {
      */
     private final MongoCollection<Document> collection;
 
+    /**
+     * Whether {@link #collection} stores every entry under {@code _id = id}, decided when the
+     * section is created - see {@link #keyedById(MongoCollection)}.
+     */
+    @Getter(AccessLevel.NONE)
+    private final boolean keyedById;
+
+    /**
+     * The number of documents {@link #reload()}'s cursor fetches per round trip.
+     */
+    private final int batchSize;
+
+    /**
+     * The shared {@link #TOMBSTONES} collection, or {@code null} unless reloading incrementally,
+     * which is also how every method tells whether to version documents.
+     */
+    private final @Nullable MongoCollection<Document> tombstones;
+
+    /**
+     * How far below {@link #highWaterMark} an incremental reload re-fetches, in milliseconds.
+     */
+    private final long overlapMillis;
+
+    /**
+     * How long tombstones are kept, in milliseconds; a reload whose predecessor is older than
+     * this is a full one.
+     */
+    private final long retentionMillis;
+
+    /**
+     * The {@link VersionClock version} the last {@link #reload} started at, {@code 0} until the
+     * first reload and always unless reloading incrementally.
+     */
+    private volatile long highWaterMark;
+
+    /**
+     * The {@link System#nanoTime()} this section's expired tombstones were last
+     * {@link #pruneTombstones() pruned} at.
+     */
+    private volatile long prunedAt;
+
     /**
      * Loads {@code name}'s existing documents into {@link #entries}.
      *
      * @param mongoDatabase the database {@code name}'s collection belongs to
      * @param name          this section's collection name
+     * @param batchSize     the number of documents {@link #reload()}'s cursor fetches per round trip
      */
-    public MongoDBDatabaseSection(@NotNull MongoDatabase mongoDatabase, @NotNull String name) {
+    public MongoDBDatabaseSection(@NotNull MongoDatabase mongoDatabase, @NotNull String name, int batchSize) {
+        this(mongoDatabase, name, batchSize, false, 0, 0);
+    }
+
+    /**
+     * Loads {@code name}'s existing documents into {@link #entries}, after ensuring the TTL index
+     * on {@link #EXPIRES_AT} and, unless {@link #keyedById keyed by id}, a unique index on
+     * {@code id} - and indexing {@code name}'s {@code version} field and the
+     * {@link #TOMBSTONES} collection if {@code incremental}.
+     *
+     * @param mongoDatabase   the database {@code name}'s collection belongs to
+     * @param name            this section's collection name
+     * @param batchSize       the number of documents {@link #reload()}'s cursor fetches per round trip
+     * @param incremental     whether to version documents and reload incrementally
+     * @param overlapMillis   how far below its high-water mark an incremental reload re-fetches
+     * @param retentionMillis how long tombstones are kept
+     */
+    public MongoDBDatabaseSection(@NotNull MongoDatabase mongoDatabase, @NotNull String name, int batchSize, boolean incremental, long overlapMillis, long retentionMillis) {
 
         this.name = name;
         this.entries = Maps.newConcurrentMap();
         this.collection = mongoDatabase.getCollection(name);
+        this.keyedById = keyedById(this.collection);
+        this.batchSize = batchSize;
+        this.tombstones = incremental ? mongoDatabase.getCollection(TOMBSTONES) : null;
+        this.overlapMillis = overlapMillis;
+        this.retentionMillis = retentionMillis;
+        this.prunedAt = System.nanoTime() - PRUNE_INTERVAL;
+
+        this.collection.createIndex(Indexes.ascending(EXPIRES_AT), new IndexOptions().expireAfter(0L, TimeUnit.SECONDS));
+        if (!this.keyedById) this.indexId();
+
+        if (this.tombstones != null) {
+            this.collection.createIndex(Indexes.ascending("version"));
+            this.tombstones.createIndex(Indexes.ascending("section_name", "version"));
+        }
 
         this.reload();
 
@@ -64,22 +217,121 @@ public class MongoDBDatabaseSection implements DatabaseSection {
      * {@inheritDoc}
      * <p>
      * Discards {@link #entries} entirely and re-populates it from every document
-     * currently in {@link #collection}, the same scan the constructor itself runs.
+     * currently in {@link #collection}, the same scan the constructor itself runs, streaming
+     * them through a cursor fetching {@link #batchSize} documents per round trip.
+     * <p>
+     * When reloading incrementally, only the tombstones and documents newer than the
+     * {@link #highWaterMark} minus the overlap window are fetched and applied, in that order -
+     * falling back to a full reload on the first reload, once the last one is older than the
+     * tombstone retention, or after the collection was cleared. Either way, expired tombstones
+     * are {@link #pruneTombstones() pruned} afterwards.
      */
     @Override
     public void reload() {
 
+        final long version = this.tombstones != null ? VersionClock.next() : 0;
+        if (!this.reloadChanges()) this.reloadAll();
+
+        this.highWaterMark = version;
+        this.pruneTombstones();
+
+    }
+
+    /**
+     * Re-populates {@link #entries} from every document in {@link #collection}.
+     */
+    private void reloadAll() {
+
         this.entries.clear();
 
-        for (Document document : this.collection.find()) {
+        for (Document document : this.collection.find(unexpired()).batchSize(this.batchSize)) this.cache(document);
 
-            if (!document.containsKey("data")) throw new NoSuchDataFound(document.getString("id"));
+    }
 
-            final JsonDocument jsonDocument = new JsonDocument(document.toJson());
-            this.entries.put(document.getString("id"), new DatabaseEntry(document.getString("id"), new JsonDocument("data", jsonDocument.getMetaData("data"))));
+    /**
+     * Deletes this section's tombstones older than the retention when reloading incrementally,
+     * at most once per {@link #PRUNE_INTERVAL}, so frequent incremental reloads neither let
+     * {@link #TOMBSTONES} grow without bound nor delete from it every time.
+     */
+    private void pruneTombstones() {
 
+        final long now = System.nanoTime();
+        if (this.tombstones == null || now - this.prunedAt < PRUNE_INTERVAL) return;
+
+        this.prunedAt = now;
+        this.tombstones.deleteMany(Filters.and(Filters.eq("section_name", this.name), Filters.lt("version", VersionClock.ofMillis(System.currentTimeMillis() - this.retentionMillis))));
+
+    }
+
+    /**
+     * Applies every tombstone, then every document, changed since the {@link #highWaterMark}
+     * minus the overlap window to {@link #entries}.
+     *
+     * @return {@code true} if the changes were applied, {@code false} if a full reload is needed
+     * instead
+     */
+    private boolean reloadChanges() {
+
+        if (this.highWaterMark == 0) return false;
+
+        final Optional<List<String>> deleted = this.deletedSince(this.highWaterMark);
+        if (deleted.isEmpty()) return false;
+
+        deleted.get().forEach(this.entries::remove);
+        for (Document document : this.writtenSince(this.highWaterMark)) this.cache(document);
+
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Fetches every tombstone, then every document, with a version newer than {@code version}
+     * minus the overlap window. Always empty unless reloading incrementally, as only then are
+     * versions and tombstones recorded.
+     */
+    @Override
+    public @NotNull Optional<SectionChanges> changesSince(long version) {
+
+        final Optional<List<String>> deleted = this.deletedSince(version);
+        if (deleted.isEmpty()) return Optional.empty();
+
+        final List<DatabaseEntry> written = new ArrayList<>();
+        for (Document document : this.writtenSince(version)) written.add(read(document));
+
+        return Optional.of(new SectionChanges(written, deleted.get()));
+    }
+
+    /**
+     * Fetches the id of every tombstone newer than {@code version} minus the overlap window.
+     *
+     * @param version the version to fetch the tombstones since
+     * @return the deleted ids, or empty if a full reload is needed instead
+     */
+    private @NotNull Optional<List<String>> deletedSince(long version) {
+
+        if (this.tombstones == null) return Optional.empty();
+        if (VersionClock.next() - version > VersionClock.ofMillis(this.retentionMillis)) return Optional.empty();
+
+        final List<String> deleted = new ArrayList<>();
+
+        for (Document tombstone : this.tombstones.find(Filters.and(Filters.eq("section_name", this.name), Filters.gt("version", version - VersionClock.ofMillis(this.overlapMillis))))) {
+            final String id = tombstone.getString("id");
+            if (id == null) return Optional.empty();
+            deleted.add(id);
         }
 
+        return Optional.of(deleted);
+    }
+
+    /**
+     * Queries every unexpired document newer than {@code version} minus the overlap window.
+     *
+     * @param version the version to fetch the documents since
+     * @return the documents, fetched {@link #batchSize} per round trip
+     */
+    private @NotNull FindIterable<Document> writtenSince(long version) {
+        return this.collection.find(Filters.and(Filters.gt("version", version - VersionClock.ofMillis(this.overlapMillis)), unexpired())).batchSize(this.batchSize);
     }
 
     @Override
@@ -87,23 +339,116 @@ public class MongoDBDatabaseSection implements DatabaseSection {
 
         if (this.entries.putIfAbsent(databaseEntry.getId(), databaseEntry) != null) throw new DataAlreadyExist(databaseEntry.getId());
 
-        // databaseEntry.getDocument() is already the full "data"-enveloped document (see its
-        // own javadoc); appending it here as-is under another "data" key would double-wrap it,
-        // so its already-unwrapped getMetaData() is used instead, matching update() below.
-        final String json = new JsonDocument().append("id", databaseEntry.getId()).append("data", databaseEntry.getMetaData()).toJson();
-        this.collection.insertOne(new JsonDocument().getGson().fromJson(json, Document.class));
+        this.collection.insertOne(this.document(databaseEntry));
 
         DatabaseRepositoryRegistry.logBytes("The database entry contained %d Bytes", databaseEntry.getDocument());
 
     }
 
+    /**
+     * {@inheritDoc}
+     * <p>
+     * A single {@code insertOne} of a document carrying its {@link #EXPIRES_AT} date, which the
+     * collection's TTL index has the server delete - durably, and for every instance sharing the
+     * database - within about a minute of it; the cached copy is dropped on time.
+     */
+    @Override
+    public void insert(@NotNull DatabaseEntry databaseEntry, @NotNull Duration ttl) {
+
+        if (ttl.isNegative() || ttl.isZero()) throw new IllegalArgumentException("@MongoDBDatabaseSection.insert: The time to live must be positive");
+        if (this.entries.putIfAbsent(databaseEntry.getId(), databaseEntry) != null) throw new DataAlreadyExist(databaseEntry.getId());
+
+        final Date expiresAt = new Date(System.currentTimeMillis() + ttl.toMillis());
+
+        this.collection.insertOne(this.document(databaseEntry).append(EXPIRES_AT, expiresAt));
+        this.expireLocally(databaseEntry, expiresAt);
+
+        DatabaseRepositoryRegistry.logBytes("The database entry contained %d Bytes", databaseEntry.getDocument());
+
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * A single unordered {@code bulkWrite} of one {@code insertOne} per entry, which the server
+     * applies in parallel, not stopping at the first failure. A taken id is skipped, as it
+     * violates the unique index on {@code _id} or {@code id}, and keeps the document the
+     * collection already holds; every other failure is rethrown once the rest has been written.
+     * Only the entries the server accepted are put into {@link #entries}.
+     */
+    @Override
+    public void bulkInsert(@NotNull Collection<DatabaseEntry> databaseEntries) {
+
+        if (databaseEntries.isEmpty()) return;
+
+        final List<DatabaseEntry> ordered = List.copyOf(databaseEntries);
+        final List<InsertOneModel<Document>> models = ordered.stream().map(databaseEntry -> new InsertOneModel<>(this.document(databaseEntry))).toList();
+
+        MongoBulkWriteException failure = null;
+        final Set<Integer> rejected = new HashSet<>();
+
+        try {
+            this.collection.bulkWrite(models, UNORDERED);
+        } catch (final MongoBulkWriteException exception) {
+            exception.getWriteErrors().forEach(error -> rejected.add(error.getIndex()));
+            if (exception.getWriteConcernError() != null || exception.getWriteErrors().stream().anyMatch(error -> error.getCode() != DUPLICATE_KEY)) failure = exception;
+        }
+
+        for (int i = 0; i < ordered.size(); i++)
+            if (!rejected.contains(i)) this.entries.put(ordered.get(i).getId(), ordered.get(i));
+
+        if (failure != null) throw failure;
+
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Every id is reserved in {@link #entries} before anything is written, then every document is
+     * inserted through a single unordered {@code bulkWrite}. An entry the server rejected - e.g.
+     * one inserted by another instance meanwhile - is released again before its failure is
+     * rethrown.
+     */
+    @Override
+    public void insertAll(@NotNull Collection<DatabaseEntry> databaseEntries) {
+
+        final List<DatabaseEntry> reserved = new ArrayList<>(databaseEntries.size());
+
+        for (final DatabaseEntry databaseEntry : databaseEntries) {
+
+            if (this.entries.putIfAbsent(databaseEntry.getId(), databaseEntry) != null) {
+                reserved.forEach(entry -> this.entries.remove(entry.getId(), entry));
+                throw new DataAlreadyExist(databaseEntry.getId());
+            }
+
+            reserved.add(databaseEntry);
+        }
+
+        if (reserved.isEmpty()) return;
+
+        try {
+            this.collection.bulkWrite(reserved.stream().map(databaseEntry -> new InsertOneModel<>(this.document(databaseEntry))).toList(), UNORDERED);
+        } catch (final MongoBulkWriteException exception) {
+            exception.getWriteErrors().forEach(error -> this.entries.remove(reserved.get(error.getIndex()).getId(), reserved.get(error.getIndex())));
+            throw exception;
+        }
+
+        reserved.forEach(databaseEntry -> DatabaseRepositoryRegistry.logBytes("The database entry contained %d Bytes", databaseEntry.getDocument()));
+
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Unsets the document's {@link #EXPIRES_AT} date along the way, so an updated entry no
+     * longer expires.
+     */
     @Override
     public void update(@NotNull DatabaseEntry databaseEntry) {
 
         if (!this.exists(databaseEntry.getId())) throw new NoSuchEntryFound(databaseEntry.getId());
 
-        final String json = new JsonDocument().append("id", databaseEntry.getId()).append("data", databaseEntry.getMetaData()).toJson();
-        this.collection.updateOne(Filters.eq("id", databaseEntry.getId()), new Document("$set", new JsonDocument().getGson().fromJson(json, Document.class)));
+        this.collection.updateOne(this.byId(databaseEntry.getId()), this.updateDocument(databaseEntry));
 
         this.entries.put(databaseEntry.getId(), databaseEntry);
 
@@ -111,16 +456,80 @@ public class MongoDBDatabaseSection implements DatabaseSection {
 
     }
 
+    /**
+     * {@inheritDoc}
+     * <p>
+     * A single {@code replaceOne} with {@code upsert = true}, which inserts the document if no
+     * document matches its id and replaces it otherwise - dropping its {@link #EXPIRES_AT} date.
+     */
+    @Override
+    public void upsert(@NotNull DatabaseEntry databaseEntry) {
+
+        this.collection.replaceOne(this.byId(databaseEntry.getId()), this.document(databaseEntry), new ReplaceOptions().upsert(true));
+
+        this.entries.put(databaseEntry.getId(), databaseEntry);
+
+        DatabaseRepositoryRegistry.logBytes("The database entry contained %d Bytes", databaseEntry.getDocument());
+
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Every id is checked against {@link #entries} before anything is written, then every document
+     * is updated through a single unordered {@code bulkWrite}, unsetting its {@link #EXPIRES_AT}
+     * date like {@link #update}. Every update the server applied is cached even if others failed,
+     * whose failure is rethrown afterwards.
+     */
+    @Override
+    public void updateAll(@NotNull Collection<DatabaseEntry> databaseEntries) {
+
+        final List<DatabaseEntry> updated = List.copyOf(databaseEntries);
+        for (final DatabaseEntry databaseEntry : updated) if (!this.exists(databaseEntry.getId())) throw new NoSuchEntryFound(databaseEntry.getId());
+
+        this.bulkWrite(updated.stream().map(databaseEntry -> new UpdateOneModel<Document>(this.byId(databaseEntry.getId()), this.updateDocument(databaseEntry))).toList(), index -> {
+            this.entries.put(updated.get(index).getId(), updated.get(index));
+            DatabaseRepositoryRegistry.logBytes("The database entry contained %d Bytes", updated.get(index).getDocument());
+        });
+
+    }
+
     @Override
     public void delete(@NotNull String id) {
 
         if (!this.exists(id)) throw new NoSuchEntryFound(id);
 
-        this.collection.deleteOne(Filters.eq("id", id));
+        this.collection.deleteOne(this.byId(id));
+        this.tombstone(id);
         this.entries.remove(id);
 
     }
 
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Every id is checked against {@link #entries} before anything is deleted, then every document
+     * is deleted through a single unordered {@code bulkWrite}, and the tombstones of every delete
+     * the server applied are recorded through a single {@code insertMany} - even if other deletes
+     * failed, whose failure is rethrown afterwards.
+     */
+    @Override
+    public void deleteAll(@NotNull Collection<String> ids) {
+
+        final List<String> requested = List.copyOf(ids);
+        for (final String id : requested) if (!this.exists(id)) throw new NoSuchEntryFound(id);
+
+        final List<String> deleted = new ArrayList<>(requested.size());
+
+        try {
+            this.bulkWrite(requested.stream().map(id -> new DeleteOneModel<Document>(this.byId(id))).toList(), index -> deleted.add(requested.get(index)));
+        } finally {
+            this.tombstoneAll(deleted);
+            deleted.forEach(this.entries::remove);
+        }
+
+    }
+
     @Override
     public long count() {
         return this.entries.size();
@@ -129,6 +538,7 @@ public class MongoDBDatabaseSection implements DatabaseSection {
     @Override
     public void clear() {
         this.collection.deleteMany(new Document());
+        this.tombstone(null);
         this.entries.clear();
     }
 
@@ -147,4 +557,212 @@ public class MongoDBDatabaseSection implements DatabaseSection {
         return List.copyOf(this.entries.values());
     }
 
+    @Override
+    public Stream<DatabaseEntry> stream() {
+        return this.entries.values().stream();
+    }
+
+    @Override
+    public void forEachEntry(@NotNull Consumer<DatabaseEntry> consumer) {
+        this.entries.values().forEach(consumer);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Reads the document first, and only applies it to {@link #entries} if the entry there is
+     * still the one seen before the read, so a concurrent local write to the same id - which is
+     * stored before updating {@link #entries} - is never overwritten by an older state, and no
+     * lock is held during the round trip.
+     */
+    @Override
+    public void refresh(@NotNull String id) {
+
+        final DatabaseEntry before = this.entries.get(id);
+        final Document document = this.collection.find(Filters.and(this.byId(id), unexpired())).first();
+        final DatabaseEntry fetched = document == null ? null : read(document);
+
+        final DatabaseEntry applied = this.entries.compute(id, (key, current) -> current == before ? fetched : current);
+        if (fetched != null && applied == fetched) this.expireLocally(fetched, document.getDate(EXPIRES_AT));
+    }
+
+    /**
+     * Puts the entry stored as {@code document} into {@link #entries}, then schedules it to be
+     * dropped again if the document carries an {@link #EXPIRES_AT} date.
+     *
+     * @param document the stored document
+     */
+    private void cache(@NotNull Document document) {
+
+        final DatabaseEntry databaseEntry = read(document);
+
+        this.entries.put(databaseEntry.getId(), databaseEntry);
+        this.expireLocally(databaseEntry, document.getDate(EXPIRES_AT));
+
+    }
+
+    /**
+     * Schedules dropping the cached {@code databaseEntry} at {@code expiresAt}, unless it was
+     * replaced or removed from {@link #entries} before.
+     *
+     * @param databaseEntry the cached entry
+     * @param expiresAt     the date its document expires at, or {@code null} if it does not
+     */
+    private void expireLocally(@NotNull DatabaseEntry databaseEntry, @Nullable Date expiresAt) {
+        if (expiresAt != null) ExpiryWheel.getInstance().schedule(Duration.ofMillis(expiresAt.getTime() - System.currentTimeMillis()), () -> this.entries.remove(databaseEntry.getId(), databaseEntry));
+    }
+
+    /**
+     * Matches every document without an {@link #EXPIRES_AT} date or whose date lies ahead, i.e.
+     * every document not merely waiting for the TTL monitor.
+     *
+     * @return the filter
+     */
+    private static @NotNull Bson unexpired() {
+        return Filters.or(Filters.exists(EXPIRES_AT, false), Filters.gt(EXPIRES_AT, new Date()));
+    }
+
+    /**
+     * Sends {@code models} through a single unordered {@code bulkWrite}, then passes the position
+     * of every model the server applied to {@code applied} - also if others failed, before
+     * rethrowing their failure.
+     *
+     * @param models  the writes to send
+     * @param applied accepts the position in {@code models} of every applied write
+     */
+    private void bulkWrite(@NotNull List<? extends WriteModel<Document>> models, @NotNull IntConsumer applied) {
+
+        if (models.isEmpty()) return;
+
+        try {
+            this.collection.bulkWrite(models, UNORDERED);
+        } catch (final MongoBulkWriteException exception) {
+
+            final Set<Integer> failed = exception.getWriteErrors().stream().map(BulkWriteError::getIndex).collect(Collectors.toSet());
+            for (int i = 0; i < models.size(); i++) if (!failed.contains(i)) applied.accept(i);
+
+            throw exception;
+        }
+
+        for (int i = 0; i < models.size(); i++) applied.accept(i);
+
+    }
+
+    /**
+     * Matches the document storing entry {@code id}, through whichever unique index it is
+     * looked up by - see {@link #keyedById}.
+     *
+     * @param id the entry id
+     * @return the filter
+     */
+    private @NotNull Bson byId(@NotNull String id) {
+        return Filters.eq(this.keyedById ? "_id" : "id", id);
+    }
+
+    /**
+     * Builds the update {@link #update} and {@link #updateAll} apply: setting every field of
+     * {@code databaseEntry}'s document but the immutable {@code _id}, and unsetting its
+     * {@link #EXPIRES_AT} date.
+     *
+     * @param databaseEntry the entry to store
+     * @return the update document
+     */
+    private @NotNull Document updateDocument(@NotNull DatabaseEntry databaseEntry) {
+
+        final Document document = this.document(databaseEntry);
+        document.remove("_id");
+
+        return new Document("$set", document).append("$unset", new Document(EXPIRES_AT, ""));
+    }
+
+    /**
+     * Builds the document {@code databaseEntry} is stored as: its id - also as {@code _id} if
+     * {@link #keyedById keyed by id} - its data, and a fresh {@code version} when reloading
+     * incrementally.
+     *
+     * @param databaseEntry the entry to store
+     * @return the document to write
+     */
+    private @NotNull Document document(@NotNull DatabaseEntry databaseEntry) {
+
+        // databaseEntry.getDocument() is already the full "data"-enveloped document (see its
+        // own javadoc); appending it here as-is under another "data" key would double-wrap it,
+        // so its already-unwrapped getMetaData() is used instead.
+        final String json = new JsonDocument().append("id", databaseEntry.getId()).append("data", databaseEntry.getMetaData()).toJson();
+        final Document document = new JsonDocument().getGson().fromJson(json, Document.class);
+
+        if (this.keyedById) document.append("_id", databaseEntry.getId());
+        if (this.tombstones != null) document.append("version", VersionClock.next());
+        return document;
+    }
+
+    /**
+     * Records a tombstone for {@code id} in {@link #TOMBSTONES} when reloading incrementally.
+     *
+     * @param id the deleted id, or {@code null} if the whole collection was cleared
+     */
+    private void tombstone(@Nullable String id) {
+        if (this.tombstones != null) this.tombstones.insertOne(new Document("section_name", this.name).append("id", id).append("version", VersionClock.next()));
+    }
+
+    /**
+     * Records a tombstone for every id of {@code ids} in {@link #TOMBSTONES} through a single
+     * {@code insertMany} when reloading incrementally.
+     *
+     * @param ids the deleted ids
+     */
+    private void tombstoneAll(@NotNull Collection<String> ids) {
+        if (this.tombstones != null && !ids.isEmpty()) this.tombstones.insertMany(ids.stream().map(id -> new Document("section_name", this.name).append("id", id).append("version", VersionClock.next())).toList());
+    }
+
+    /**
+     * Ensures the unique index on {@code id} of a collection not {@link #keyedById keyed by id}.
+     * If the collection already holds duplicate ids, which the unique index would reject, a
+     * plain index is built instead, so lookups by id still never scan the collection.
+     */
+    private void indexId() {
+
+        try {
+            this.collection.createIndex(Indexes.ascending("id"), new IndexOptions().unique(true));
+        } catch (final MongoException exception) {
+
+            if (exception.getCode() != DUPLICATE_KEY) throw exception;
+
+            System.err.println("Collection " + this.name + " holds duplicate ids, indexing them without a unique index:");
+            exception.printStackTrace();
+
+            this.collection.createIndex(Indexes.ascending("id"));
+        }
+
+    }
+
+    /**
+     * Tells whether {@code collection} stores every entry under {@code _id = id}: true if it holds
+     * no documents yet, so every document written from now on is keyed that way, or if its first
+     * document is. Collections written by older versions keep their generated object ids.
+     *
+     * @param collection the collection to inspect
+     * @return whether {@code collection} is keyed by id
+     */
+    private static boolean keyedById(@NotNull MongoCollection<Document> collection) {
+
+        final Document first = collection.find().projection(Projections.include("id")).first();
+        return first == null || Objects.equals(first.get("_id"), first.get("id"));
+    }
+
+    /**
+     * Parses a stored document back into a {@link DatabaseEntry}.
+     *
+     * @param document the stored document
+     * @return the parsed entry
+     * @throws NoSuchDataFound if the document has no {@code data}
+     */
+    private static @NotNull DatabaseEntry read(@NotNull Document document) {
+
+        if (!document.containsKey("data")) throw new NoSuchDataFound(document.getString("id"));
+
+        final JsonDocument jsonDocument = new JsonDocument(document.toJson());
+        return new DatabaseEntry(document.getString("id"), new JsonDocument("data", jsonDocument.getMetaData("data")));
+    }
+
 }
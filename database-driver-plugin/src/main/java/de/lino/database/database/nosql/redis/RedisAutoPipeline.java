@@ -0,0 +1,194 @@
+package de.lino.database.database.nosql.redis;
+
+import org.jetbrains.annotations.NotNull;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.Pipeline;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Coalesces the single writes of every {@link RedisDatabaseSection} of one provider, issued
+ * concurrently from any number of threads, into shared pipelines: every write is queued, and a
+ * single daemon thread sends the queued writes through one {@link Pipeline} on one borrowed
+ * connection once {@link RedisOptions#getAutoPipelineCommands()} writes are queued, or
+ * {@link RedisOptions#getAutoPipelineInterval()} after the first of them was - whichever comes
+ * first.
+ * <p>
+ * {@link #execute} still blocks its caller until its write was acknowledged, so a write that
+ * returned is stored just like without auto-pipelining; what changes is that many threads share
+ * one round trip instead of paying one each. Writes are sent in the order they were queued.
+ */
+public class RedisAutoPipeline implements AutoCloseable {
+
+    /**
+     * The connection pool every pipeline borrows its connection from.
+     */
+    private final JedisPool jedisPool;
+
+    /**
+     * The maximum number of writes sent per pipeline.
+     */
+    private final int maxCommands;
+
+    /**
+     * How long the first queued write waits for others to share its pipeline, in nanoseconds.
+     */
+    private final long interval;
+
+    /**
+     * Every write not sent yet, in the order it was queued.
+     */
+    private final BlockingQueue<Write> queue = new LinkedBlockingQueue<>();
+
+    /**
+     * The single daemon thread sending every pipeline.
+     */
+    private final Thread flusher;
+
+    /**
+     * Whether {@link #close()} was called.
+     */
+    private volatile boolean closed;
+
+    /**
+     * Starts the thread sending queued writes through connections borrowed from
+     * {@code jedisPool}.
+     *
+     * @param jedisPool   the connection pool to borrow every pipeline's connection from
+     * @param maxCommands the maximum number of writes sent per pipeline
+     * @param interval    how long the first queued write waits for others to share its pipeline
+     */
+    public RedisAutoPipeline(@NotNull JedisPool jedisPool, int maxCommands, @NotNull Duration interval) {
+
+        this.jedisPool = jedisPool;
+        this.maxCommands = maxCommands;
+        this.interval = interval.toNanos();
+
+        this.flusher = new Thread(this::run, "database-driver-redis-auto-pipeline");
+        this.flusher.setDaemon(true);
+        this.flusher.start();
+
+    }
+
+    /**
+     * Queues {@code command} for the next shared pipeline and blocks until it was sent and
+     * acknowledged.
+     *
+     * @param command queues the write's commands on the shared pipeline
+     * @throws IllegalStateException if this auto-pipeline is closed
+     * @throws RuntimeException      the exception the shared pipeline failed with, if it did
+     */
+    public void execute(@NotNull Consumer<Pipeline> command) {
+
+        final Write write = new Write(command, new CompletableFuture<>());
+        this.queue.add(write);
+
+        if (this.closed && this.queue.remove(write)) throw new IllegalStateException("@RedisAutoPipeline.execute: The auto-pipeline is closed");
+
+        try {
+            write.done().join();
+        } catch (final CompletionException exception) {
+            if (exception.getCause() instanceof RuntimeException runtimeException) throw runtimeException;
+            throw exception;
+        }
+    }
+
+    /**
+     * Stops accepting writes and waits until every write already queued was sent.
+     */
+    @Override
+    public void close() {
+
+        this.closed = true;
+
+        try {
+            this.flusher.join();
+        } catch (final InterruptedException exception) {
+            Thread.currentThread().interrupt();
+        }
+
+        final List<Write> remaining = new ArrayList<>();
+        this.queue.drainTo(remaining);
+        remaining.forEach(write -> write.done().completeExceptionally(new IllegalStateException("@RedisAutoPipeline.close: The auto-pipeline is closed")));
+
+    }
+
+    /**
+     * The flusher loop: waits for a first write, gathers more until the pipeline is full or its
+     * interval elapsed, and sends them - until {@link #close() closed} and drained.
+     */
+    private void run() {
+
+        final List<Write> batch = new ArrayList<>(this.maxCommands);
+
+        while (!this.closed || !this.queue.isEmpty()) {
+
+            try {
+
+                final Write first = this.queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) continue;
+
+                batch.add(first);
+                final long deadline = System.nanoTime() + this.interval;
+
+                while (batch.size() < this.maxCommands) {
+
+                    final long remaining = deadline - System.nanoTime();
+                    final Write next = remaining > 0 ? this.queue.poll(remaining, TimeUnit.NANOSECONDS) : this.queue.poll();
+
+                    if (next == null) break;
+                    batch.add(next);
+                }
+
+                this.flush(batch);
+
+            } catch (final InterruptedException exception) {
+                batch.forEach(write -> write.done().completeExceptionally(exception));
+                return;
+            } finally {
+                batch.clear();
+            }
+        }
+
+    }
+
+    /**
+     * Sends {@code batch} through a single pipeline and completes every write with its outcome.
+     *
+     * @param batch the writes to send, in queue order
+     */
+    private void flush(@NotNull List<Write> batch) {
+
+        try (final Jedis jedis = this.jedisPool.getResource()) {
+
+            final Pipeline pipeline = jedis.pipelined();
+            batch.forEach(write -> write.command().accept(pipeline));
+            pipeline.sync();
+
+            batch.forEach(write -> write.done().complete(null));
+
+        } catch (final RuntimeException exception) {
+            batch.forEach(write -> write.done().completeExceptionally(exception));
+        }
+
+    }
+
+    /**
+     * One queued write.
+     *
+     * @param command queues the write's commands on the shared pipeline
+     * @param done    completed once the pipeline carrying the write was sent
+     */
+    private record Write(@NotNull Consumer<Pipeline> command, @NotNull CompletableFuture<Void> done) {
+    }
+
+}
@@ -0,0 +1,152 @@
+package de.lino.database.database.nosql.redis;
+
+import de.lino.database.database.DatabaseProvider;
+import de.lino.database.database.DatabaseSection;
+import de.lino.database.database.change.ChangeFeed;
+import de.lino.database.database.change.ChangeNotification;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.JedisPubSub;
+import redis.clients.jedis.exceptions.JedisException;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * The {@link ChangeFeed} of Redis databases, built on pub/sub: every write is {@code PUBLISH}ed
+ * on {@link #CHANNEL}, and a dedicated subscriber thread holding one pooled connection applies
+ * every peer's notifications to the local sections. Plain pub/sub rather than keyspace
+ * notifications, since those need server-side configuration and announce every key of the
+ * database, not just this driver's writes.
+ * <p>
+ * Messages published while the subscriber is disconnected are lost, so after every reconnect
+ * the subscriber {@link DatabaseSection#reload() reloads} every section.
+ */
+public class RedisChangeFeed implements ChangeFeed {
+
+    /**
+     * The channel every instance publishes and subscribes to.
+     */
+    public static final String CHANNEL = "database-driver:changes";
+
+    /**
+     * The connection pool messages are published through, and the subscriber's connection is
+     * borrowed from.
+     */
+    private final JedisPool jedisPool;
+
+    /**
+     * The provider whose sections messages are applied to.
+     */
+    private final DatabaseProvider databaseProvider;
+
+    /**
+     * This feed's id, sent along with every message so the subscriber skips its own.
+     */
+    private final String origin;
+
+    /**
+     * The current subscription, or {@code null} while disconnected.
+     */
+    private volatile JedisPubSub subscription;
+
+    /**
+     * Whether {@link #close()} was called.
+     */
+    private volatile boolean closed;
+
+    /**
+     * Starts subscribing to {@link #CHANNEL} through a connection borrowed from
+     * {@code jedisPool}.
+     *
+     * @param jedisPool        the connection pool to publish and subscribe through
+     * @param databaseProvider the provider whose sections to apply messages to
+     */
+    public RedisChangeFeed(@NotNull JedisPool jedisPool, @NotNull DatabaseProvider databaseProvider) {
+
+        this.jedisPool = jedisPool;
+        this.databaseProvider = databaseProvider;
+        this.origin = UUID.randomUUID().toString();
+
+        final Thread subscriber = new Thread(this::subscribe, "database-driver-change-subscriber");
+        subscriber.setDaemon(true);
+        subscriber.start();
+
+    }
+
+    @Override
+    public void publish(@NotNull String section, @Nullable Collection<String> ids) {
+
+        if (this.closed) return;
+
+        try (final Jedis jedis = this.jedisPool.getResource()) {
+            jedis.publish(CHANNEL, new ChangeNotification(this.origin, section, ids == null ? null : List.copyOf(ids)).toJson());
+        } catch (final JedisException exception) {
+            exception.printStackTrace();
+        }
+
+    }
+
+    @Override
+    public void close() {
+
+        this.closed = true;
+
+        final JedisPubSub subscription = this.subscription;
+        if (subscription != null && subscription.isSubscribed()) subscription.unsubscribe();
+
+    }
+
+    /**
+     * The subscriber loop: subscribes to {@link #CHANNEL} and applies every peer's message until
+     * {@link #close() closed}, resubscribing after a second if the connection fails.
+     */
+    private void subscribe() {
+
+        boolean reconnected = false;
+
+        while (!this.closed) {
+
+            final boolean catchUp = reconnected;
+            final JedisPubSub subscription = new JedisPubSub() {
+
+                @Override
+                public void onSubscribe(String channel, int subscribedChannels) {
+                    if (catchUp) RedisChangeFeed.this.databaseProvider.getSections().forEach(DatabaseSection::reload);
+                }
+
+                @Override
+                public void onMessage(String channel, String message) {
+                    ChangeNotification.parse(message)
+                            .filter(changeNotification -> !RedisChangeFeed.this.origin.equals(changeNotification.origin()))
+                            .ifPresent(changeNotification -> changeNotification.apply(RedisChangeFeed.this.databaseProvider::getSection));
+                }
+
+            };
+
+            this.subscription = subscription;
+
+            try (final Jedis jedis = this.jedisPool.getResource()) {
+                if (!this.closed) jedis.subscribe(subscription, CHANNEL);
+            } catch (final JedisException exception) {
+
+                if (this.closed) return;
+                exception.printStackTrace();
+
+                try {
+                    Thread.sleep(1_000);
+                } catch (final InterruptedException interruptedException) {
+                    return;
+                }
+            }
+
+            this.subscription = null;
+            reconnected = true;
+        }
+
+    }
+
+}
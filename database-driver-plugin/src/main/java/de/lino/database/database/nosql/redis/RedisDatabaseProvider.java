@@ -4,7 +4,9 @@ import com.google.common.collect.Maps;
 import de.lino.database.database.auth.Credentials;
 import de.lino.database.database.DatabaseProvider;
 import de.lino.database.database.DatabaseSection;
+import de.lino.database.database.change.ChangeFeed;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import org.jetbrains.annotations.UnmodifiableView;
 import redis.clients.jedis.Jedis;
 import redis.clients.jedis.JedisPool;
@@ -18,13 +20,19 @@ import java.util.Optional;
 
 /**
  * The {@link DatabaseProvider} backed by a Redis database, each {@link DatabaseSection} a
- * {@code "<name>:*"} key prefix via {@link RedisDatabaseSection}, all sharing this database's
+ * {@code "<name>:*"} key prefix - or, with the {@link RedisOptions#isHashLayout() hash layout},
+ * a hash registered in the {@link #SECTIONS} set - via {@link RedisDatabaseSection}, all sharing this database's
  * single {@link JedisPool}. {@link JedisPool} is itself thread-safe and designed for concurrent
  * multi-threaded use, so every method here is safe to call concurrently without additional
  * locking.
  */
 public class RedisDatabaseProvider implements DatabaseProvider {
 
+    /**
+     * The set holding the name of every section stored with the hash layout.
+     */
+    public static final String SECTIONS = "database-driver:sections";
+
     /**
      * The connection pool shared by this database and every {@link RedisDatabaseSection} it creates.
      */
@@ -35,6 +43,23 @@ public class RedisDatabaseProvider implements DatabaseProvider {
      */
     private final Map<String, DatabaseSection> databaseSections;
 
+    /**
+     * The Redis-specific options this database was created with, shared by every section.
+     */
+    private final RedisOptions options;
+
+    /**
+     * The queue coalescing every section's single writes into shared pipelines, or {@code null}
+     * unless the {@code "autoPipeline"} option is enabled.
+     */
+    private final @Nullable RedisAutoPipeline autoPipeline;
+
+    /**
+     * The pub/sub channel keeping every section coherent with other instances connected to the
+     * same database, or {@code null} unless the {@code "changeFeed"} option is enabled.
+     */
+    private final @Nullable ChangeFeed changeFeed;
+
     /**
      * Connects to a Redis database with {@code credentials} and loads every existing key prefix
      * as a {@link RedisDatabaseSection}.
@@ -44,6 +69,7 @@ public class RedisDatabaseProvider implements DatabaseProvider {
     public RedisDatabaseProvider(@NotNull Credentials credentials) {
 
         this.databaseSections = Maps.newConcurrentMap();
+        this.options = new RedisOptions(credentials.getOptions());
 
         final JedisPoolConfig jedisPoolConfig = new JedisPoolConfig();
         jedisPoolConfig.setMaxTotal(50);
@@ -60,12 +86,17 @@ public class RedisDatabaseProvider implements DatabaseProvider {
             this.jedisPool = new JedisPool(jedisPoolConfig, "redis://:" + credentials.getPassword() + "@" + credentials.getAddress() + ":" + credentials.getPort() + "/" + credentials.getDatabase());
         }
 
+        this.autoPipeline = this.options.isAutoPipeline() ? new RedisAutoPipeline(this.jedisPool, this.options.getAutoPipelineCommands(), this.options.getAutoPipelineInterval()) : null;
+        this.changeFeed = this.options.isChangeFeed() ? new RedisChangeFeed(this.jedisPool, this) : null;
+
         this.reload();
 
     }
 
     @Override
     public void shutdown() {
+        if (this.changeFeed != null) this.changeFeed.close();
+        if (this.autoPipeline != null) this.autoPipeline.close();
         this.jedisPool.close();
         this.databaseSections.clear();
     }
@@ -75,15 +106,27 @@ public class RedisDatabaseProvider implements DatabaseProvider {
      * <p>
      * Discards {@link #databaseSections} entirely and rebuilds it with a fresh
      * {@link RedisDatabaseSection} per key prefix currently scanned via
-     * {@link #jedisPool}, the same scan the constructor itself runs.
+     * {@link #jedisPool}, the same scan the constructor itself runs. With the hash layout, only
+     * the sections named in {@link #SECTIONS} are loaded, each with a single {@code HSCAN} of its
+     * own hash, rather than scanning the whole keyspace.
      */
     @Override
     public void reload() {
 
         this.databaseSections.clear();
 
+        if (this.options.isHashLayout()) {
+
+            try (final Jedis jedis = this.jedisPool.getResource()) {
+                for (final String name : jedis.smembers(SECTIONS))
+                    this.databaseSections.put(name, new RedisDatabaseSection(this.jedisPool, name, this.options, this.autoPipeline, this.changeFeed));
+            }
+
+            return;
+        }
+
         String cursor = "0";
-        final ScanParams scanParams = new ScanParams().match("*").count(100);
+        final ScanParams scanParams = new ScanParams().match("*").count(this.options.getScanCount());
 
         try (final Jedis jedis = this.jedisPool.getResource()) {
 
@@ -91,7 +134,7 @@ public class RedisDatabaseProvider implements DatabaseProvider {
 
                 final ScanResult<String> result = jedis.scan(cursor, scanParams);
                 for (String key : result.getResult())
-                    this.databaseSections.put(key, new RedisDatabaseSection(this.jedisPool, key));
+                    this.databaseSections.put(key, new RedisDatabaseSection(this.jedisPool, key, this.options, this.autoPipeline, this.changeFeed));
 
                 cursor = result.getCursor();
 
@@ -101,18 +144,51 @@ public class RedisDatabaseProvider implements DatabaseProvider {
 
     }
 
+    /**
+     * {@inheritDoc}
+     * <p>
+     * With the hash layout, the section is also added to {@link #SECTIONS}, so it is found on
+     * the next reload even while its hash is empty.
+     */
     @Override
     public DatabaseSection createSection(@NotNull String name) {
-        return this.databaseSections.computeIfAbsent(name, key -> new RedisDatabaseSection(this.jedisPool, key));
+
+        return this.databaseSections.computeIfAbsent(name, key -> {
+
+            if (this.options.isHashLayout()) {
+                try (final Jedis jedis = this.jedisPool.getResource()) {
+                    jedis.sadd(SECTIONS, key);
+                }
+            }
+
+            return new RedisDatabaseSection(this.jedisPool, key, this.options, this.autoPipeline, this.changeFeed);
+        });
     }
 
+    /**
+     * {@inheritDoc}
+     * <p>
+     * With the hash layout, a single {@code UNLINK} of the section's hash and its removal from
+     * {@link #SECTIONS}; with the key layout, every {@code "<name>*"} key is scanned and deleted.
+     */
     @Override
     public void deleteSection(@NotNull String name) {
 
+        if (this.options.isHashLayout()) {
+
+            try (final Jedis jedis = this.jedisPool.getResource()) {
+                jedis.unlink(name);
+                jedis.srem(SECTIONS, name);
+            }
+
+            this.databaseSections.remove(name);
+            return;
+        }
+
         try (final Jedis jedis = this.jedisPool.getResource()) {
 
             String cursor = "0";
-            final ScanParams scanParams = new ScanParams().match(name + "*").count(100);
+            final ScanParams scanParams = new ScanParams().match(name + "*").count(this.options.getScanCount());
 
             do {
 
@@ -148,8 +224,36 @@ public class RedisDatabaseProvider implements DatabaseProvider {
 
     @Override
     public void clear() {
+
         for (DatabaseSection databaseSection : this.getSections()) databaseSection.clear();
+
+        if (this.options.isHashLayout()) {
+            try (final Jedis jedis = this.jedisPool.getResource()) {
+                jedis.unlink(SECTIONS);
+            }
+        }
+
         this.databaseSections.clear();
+
+    }
+
+    /**
+     * Moves every entry stored with the key layout into the hash layout through a
+     * {@link RedisLayoutMigration}, then {@link #reload() reloads} every section from its hash.
+     * Safe to run again after an interruption, and while other instances still write with the
+     * key layout - their newer keys are moved by the next run.
+     *
+     * @return the number of entries moved
+     * @throws IllegalStateException if this database is not configured with the hash layout
+     */
+    public long migrateToHashLayout() {
+
+        if (!this.options.isHashLayout()) throw new IllegalStateException("@RedisDatabaseProvider.migrateToHashLayout: The \"layout\" option must be set to \"hash\" first");
+
+        final long moved = new RedisLayoutMigration(this.jedisPool, this.options).run();
+        this.reload();
+
+        return moved;
     }
 
 }
@@ -3,29 +3,51 @@ package de.lino.database.database.nosql.redis;
 import com.google.common.collect.Maps;
 import de.lino.database.DatabaseRepositoryRegistry;
 import de.lino.database.database.exception.DataAlreadyExist;
-import de.lino.database.database.exception.NoSuchDataFound;
 import de.lino.database.database.exception.NoSuchEntryFound;
 import de.lino.database.json.JsonDocument;
+import de.lino.database.database.BulkIngestSection;
 import de.lino.database.database.DatabaseSection;
+import de.lino.database.database.change.ChangeFeed;
+import de.lino.database.database.change.CoherentSection;
 import de.lino.database.database.entity.DatabaseEntry;
+import de.lino.database.utils.codec.PayloadCodec;
+import de.lino.database.utils.expiry.ExpiryWheel;
 import lombok.Getter;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import org.jetbrains.annotations.UnmodifiableView;
 import redis.clients.jedis.Jedis;
 import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
 import redis.clients.jedis.params.ScanParams;
+import redis.clients.jedis.params.SetParams;
 import redis.clients.jedis.resps.ScanResult;
 
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 /**
- * The {@link DatabaseSection} backing one Redis key prefix ({@code "<name>:<id>"} per entry).
- * Entries are cached in memory (loaded once in the constructor and kept in sync on every write)
- * so reads never touch Redis, only writes do.
+ * The {@link DatabaseSection} backing one Redis key prefix ({@code "<name>:<id>"} per entry) or,
+ * with the {@link RedisOptions#isHashLayout() hash layout}, one Redis hash named after the section
+ * ({@code HSET <name> <id> <payload>}). Entries are cached in memory (loaded once in the
+ * constructor and kept in sync on every write) so reads never touch Redis, only writes do. Batch
+ * writes are pipelined over a single connection; single writes go through the provider's
+ * {@link RedisAutoPipeline} if enabled. If a {@link RedisChangeFeed} is installed, every write is
+ * announced through it, and peers' writes are applied through {@link #refresh}.
+ * <p>
+ * With the key layout, entries {@link #insert(DatabaseEntry, Duration) inserted with a time to
+ * live} are stored with {@code SET ... PX}, so Redis itself expires them; the cached copy is
+ * dropped at the same deadline by the shared {@link ExpiryWheel}, which every reload and refresh
+ * re-arms from the key's {@code PTTL}.
  */
-public class RedisDatabaseSection implements DatabaseSection {
+public class RedisDatabaseSection implements CoherentSection, BulkIngestSection {
 
     /**
      * The connection pool shared with this section's owning {@link RedisDatabaseProvider} and
@@ -34,27 +56,52 @@ public class RedisDatabaseSection implements DatabaseSection {
     private final JedisPool jedisPool;
 
     /**
-     * This section's key prefix.
+     * This section's key prefix, or the name of its hash with the hash layout.
      */
     @Getter
     private final String name;
 
     /**
-     * Every entry currently under {@link #name}'s key prefix, keyed by id and kept in sync with
+     * Every entry currently under {@link #name}'s key prefix or in its hash, keyed by id and kept in sync with
      * Redis by every write method; the source of truth for every read method.
      */
     private final Map<String, DatabaseEntry> entries;
 
     /**
-     * Loads every existing {@code "<name>:*"} key into {@link #entries}.
+     * The options of the owning {@link RedisDatabaseProvider}, deciding how values are encoded
+     * and how reloads are batched.
+     */
+    private final RedisOptions options;
+
+    /**
+     * The provider's queue coalescing single writes into shared pipelines, or {@code null} if
+     * disabled.
+     */
+    private final @Nullable RedisAutoPipeline autoPipeline;
+
+    /**
+     * The channel every write is announced to peer instances through, or {@code null} if
+     * disabled.
+     */
+    private final @Nullable ChangeFeed changeFeed;
+
+    /**
+     * Loads every existing {@code "<name>:*"} key, or every field of the {@code <name>} hash,
+     * into {@link #entries}.
      *
-     * @param jedisPool the connection pool to run every command through
-     * @param name      this section's key prefix
+     * @param jedisPool    the connection pool to run every command through
+     * @param name         this section's key prefix
+     * @param options      the options of the owning provider
+     * @param autoPipeline the provider's queue to send single writes through, or {@code null}
+     * @param changeFeed   the channel to announce every write through, or {@code null}
      */
-    public RedisDatabaseSection(@NotNull final JedisPool jedisPool, @NotNull final String name) {
+    public RedisDatabaseSection(@NotNull final JedisPool jedisPool, @NotNull final String name, @NotNull final RedisOptions options, @Nullable final RedisAutoPipeline autoPipeline, @Nullable final ChangeFeed changeFeed) {
 
         this.name = name;
         this.jedisPool = jedisPool;
+        this.options = options;
+        this.autoPipeline = autoPipeline;
+        this.changeFeed = changeFeed;
         this.entries = Maps.newConcurrentMap();
 
         this.reload();
@@ -64,17 +111,29 @@ public class RedisDatabaseSection implements DatabaseSection {
     /**
      * {@inheritDoc}
      * <p>
-     * Discards {@link #entries} entirely and re-populates it from every
-     * {@code "<name>:*"} key currently scanned via {@link #jedisPool}, the same scan
-     * the constructor itself runs.
+     * Discards {@link #entries} entirely and re-populates it from Redis, the same way the
+     * constructor itself does. With the key layout, every {@code "<name>:*"} key is scanned, and
+     * scanned keys are buffered and fetched with one {@code MGET} per
+     * {@link RedisOptions#getPipelineDepth() pipeline depth} keys, so a reload costs
+     * O(keys / depth) value round trips rather than one per key; a key deleted between its
+     * {@code SCAN} and its {@code MGET} is simply skipped. With the hash layout, the section's
+     * hash is {@code HSCAN}ned, which returns every value along with its id.
+     * <p>
+     * Every key-layout key with a time to live has its cached copy scheduled to expire with it.
      */
     @Override
     public void reload() {
 
         this.entries.clear();
 
+        if (this.options.isHashLayout()) {
+            this.reloadHash();
+            return;
+        }
+
         String cursor = "0";
-        final ScanParams scanParams = new ScanParams().match(name + ":*").count(100);
+        final ScanParams scanParams = new ScanParams().match(this.name + ":*").count(this.options.getScanCount());
+        final List<String> pending = new ArrayList<>(this.options.getPipelineDepth());
 
         try (final Jedis jedis = jedisPool.getResource()) {
 
@@ -82,20 +141,77 @@ public class RedisDatabaseSection implements DatabaseSection {
 
                 final ScanResult<String> result = jedis.scan(cursor, scanParams);
 
-                for (String key : result.getResult()) {
-
-                    final byte[] data = jedis.get(key.getBytes());
-                    if (data == null) throw new NoSuchDataFound(key);
-
-                    final DatabaseEntry databaseEntry = new DatabaseEntry(key.replace(this.name + ":", ""), new JsonDocument(data));
-                    this.entries.put(databaseEntry.getId(), databaseEntry);
+                for (final String key : result.getResult()) {
+                    pending.add(key);
+                    if (pending.size() < this.options.getPipelineDepth()) continue;
 
+                    this.load(jedis, pending);
+                    pending.clear();
                 }
 
                 cursor = result.getCursor();
 
             } while (!cursor.equals("0"));
 
+            if (!pending.isEmpty()) this.load(jedis, pending);
+
+        }
+
+    }
+
+    /**
+     * Populates {@link #entries} from every field of this section's hash, {@code HSCAN}ning it
+     * {@link RedisOptions#getScanCount()} fields at a time.
+     */
+    private void reloadHash() {
+
+        byte[] cursor = ScanParams.SCAN_POINTER_START_BINARY;
+        final ScanParams scanParams = new ScanParams().count(this.options.getScanCount());
+
+        try (final Jedis jedis = jedisPool.getResource()) {
+
+            ScanResult<Map.Entry<byte[], byte[]>> result;
+
+            do {
+
+                result = jedis.hscan(this.name.getBytes(), cursor, scanParams);
+
+                for (final Map.Entry<byte[], byte[]> field : result.getResult()) {
+                    final DatabaseEntry databaseEntry = new DatabaseEntry(new String(field.getKey()), new JsonDocument(PayloadCodec.decode(field.getValue())));
+                    this.entries.put(databaseEntry.getId(), databaseEntry);
+                }
+
+                cursor = result.getCursorAsBytes();
+
+            } while (!result.isCompleteIteration());
+
+        }
+
+    }
+
+    /**
+     * Fetches the values of {@code keys} with a single {@code MGET}, pipelined with one
+     * {@code PTTL} per key, and puts every one still existing into {@link #entries} - scheduling
+     * it to expire if its key has a time to live.
+     *
+     * @param jedis the connection to fetch through
+     * @param keys  the scanned keys, all under this section's key prefix
+     */
+    private void load(@NotNull Jedis jedis, @NotNull List<String> keys) {
+
+        final Pipeline pipeline = jedis.pipelined();
+        final Response<List<byte[]>> values = pipeline.mget(keys.stream().map(String::getBytes).toArray(byte[][]::new));
+        final List<Response<Long>> ttls = keys.stream().map(pipeline::pttl).toList();
+        pipeline.sync();
+
+        for (int i = 0; i < keys.size(); i++) {
+
+            final byte[] data = values.get().get(i);
+            if (data == null) continue;
+
+            final DatabaseEntry databaseEntry = new DatabaseEntry(keys.get(i).substring(this.name.length() + 1), new JsonDocument(PayloadCodec.decode(data)));
+            this.entries.put(databaseEntry.getId(), databaseEntry);
+            this.expireLocally(databaseEntry, ttls.get(i).get());
         }
 
     }
@@ -105,30 +221,156 @@ public class RedisDatabaseSection implements DatabaseSection {
 
         if (this.entries.putIfAbsent(databaseEntry.getId(), databaseEntry) != null) throw new DataAlreadyExist(databaseEntry.getId());
 
-        final String key = this.name + ":" + databaseEntry.getId();
+        this.write(databaseEntry);
+        this.publish(List.of(databaseEntry.getId()));
 
-        // databaseEntry.getDocument() is already the full "data"-enveloped document (see its
-        // own javadoc); appending it here as-is under another "data" key would double-wrap it,
-        // so its already-unwrapped getMetaData() is used instead, matching update() below.
-        try (final Jedis jedis = jedisPool.getResource()) {
-            jedis.set(key.getBytes(), new JsonDocument().append("data", databaseEntry.getMetaData()).toBytes());
+        DatabaseRepositoryRegistry.logBytes("The database entry contained %d Bytes", databaseEntry.getDocument());
+
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * With the key layout, a single {@code SET ... PX}, so Redis expires the key itself - durably,
+     * and for every instance sharing the database - while the cached copy is dropped at the same
+     * deadline. Hash fields cannot carry a time to live of their own, so with the hash layout this
+     * falls back to the in-process expiry of the default implementation.
+     */
+    @Override
+    public void insert(@NotNull DatabaseEntry databaseEntry, @NotNull Duration ttl) {
+
+        if (this.options.isHashLayout()) {
+            CoherentSection.super.insert(databaseEntry, ttl);
+            return;
+        }
+
+        if (ttl.isNegative() || ttl.isZero()) throw new IllegalArgumentException("@RedisDatabaseSection.insert: The time to live must be positive");
+        if (this.entries.putIfAbsent(databaseEntry.getId(), databaseEntry) != null) throw new DataAlreadyExist(databaseEntry.getId());
+
+        final SetParams params = SetParams.setParams().px(ttl.toMillis());
+
+        if (this.autoPipeline != null) {
+            this.autoPipeline.execute(pipeline -> pipeline.set(this.key(databaseEntry.getId()), this.payload(databaseEntry), params));
+        } else {
+            try (final Jedis jedis = jedisPool.getResource()) {
+                jedis.set(this.key(databaseEntry.getId()), this.payload(databaseEntry), params);
+            }
         }
 
+        this.expireLocally(databaseEntry, ttl.toMillis());
+        this.publish(List.of(databaseEntry.getId()));
+
         DatabaseRepositoryRegistry.logBytes("The database entry contained %d Bytes", databaseEntry.getDocument());
 
     }
 
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Sends one {@code SET} - or {@code HSET} with the hash layout - per entry through a single
+     * connection's pipeline, paying one round trip per {@link RedisOptions#getPipelineDepth()
+     * pipeline depth} entries rather than one per entry. A taken id is simply overwritten.
+     */
+    @Override
+    public void bulkInsert(@NotNull Collection<DatabaseEntry> databaseEntries) {
+
+        if (databaseEntries.isEmpty()) return;
+
+        this.writeAll(databaseEntries);
+
+        databaseEntries.forEach(databaseEntry -> this.entries.put(databaseEntry.getId(), databaseEntry));
+        this.publish(databaseEntries.stream().map(DatabaseEntry::getId).toList());
+
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Every id is reserved in {@link #entries} first - if any of them is already taken, every id
+     * reserved so far is released again and nothing is written - then every entry is sent through
+     * a single connection's pipeline, one round trip per {@link RedisOptions#getPipelineDepth()
+     * pipeline depth} entries.
+     */
+    @Override
+    public void insertAll(@NotNull Collection<DatabaseEntry> databaseEntries) {
+
+        if (databaseEntries.isEmpty()) return;
+
+        final List<String> reserved = new ArrayList<>(databaseEntries.size());
+
+        for (final DatabaseEntry databaseEntry : databaseEntries) {
+
+            if (this.entries.putIfAbsent(databaseEntry.getId(), databaseEntry) != null) {
+                reserved.forEach(this.entries::remove);
+                throw new DataAlreadyExist(databaseEntry.getId());
+            }
+
+            reserved.add(databaseEntry.getId());
+        }
+
+        try {
+            this.writeAll(databaseEntries);
+        } catch (final RuntimeException exception) {
+            reserved.forEach(this.entries::remove);
+            throw exception;
+        }
+
+        this.publish(reserved);
+
+        databaseEntries.forEach(databaseEntry -> DatabaseRepositoryRegistry.logBytes("The database entry contained %d Bytes", databaseEntry.getDocument()));
+
+    }
+
     @Override
     public void update(@NotNull DatabaseEntry databaseEntry) {
 
         if (!this.exists(databaseEntry.getId())) throw new NoSuchEntryFound(databaseEntry.getId());
 
-        final String key = this.name + ":" + databaseEntry.getId();
-        try (final Jedis jedis = jedisPool.getResource()) {
-            jedis.set(key.getBytes(), new JsonDocument().append("data", databaseEntry.getMetaData()).toBytes());
-        }
+        this.write(databaseEntry);
+
+        this.entries.put(databaseEntry.getId(), databaseEntry);
+        this.publish(List.of(databaseEntry.getId()));
+
+        DatabaseRepositoryRegistry.logBytes("The database entry contained %d Bytes", databaseEntry.getDocument());
+
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Every id is checked against {@link #entries} before anything is written, then every entry
+     * is sent through a single connection's pipeline, one round trip per
+     * {@link RedisOptions#getPipelineDepth() pipeline depth} entries.
+     */
+    @Override
+    public void updateAll(@NotNull Collection<DatabaseEntry> databaseEntries) {
+
+        if (databaseEntries.isEmpty()) return;
+
+        for (final DatabaseEntry databaseEntry : databaseEntries) if (!this.exists(databaseEntry.getId())) throw new NoSuchEntryFound(databaseEntry.getId());
+
+        this.writeAll(databaseEntries);
+
+        databaseEntries.forEach(databaseEntry -> this.entries.put(databaseEntry.getId(), databaseEntry));
+        this.publish(databaseEntries.stream().map(DatabaseEntry::getId).toList());
+
+        databaseEntries.forEach(databaseEntry -> DatabaseRepositoryRegistry.logBytes("The database entry contained %d Bytes", databaseEntry.getDocument()));
+
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * A plain {@code SET} or {@code HSET}, which already creates or replaces its key or field in
+     * a single round trip.
+     */
+    @Override
+    public void upsert(@NotNull DatabaseEntry databaseEntry) {
+
+        this.write(databaseEntry);
 
         this.entries.put(databaseEntry.getId(), databaseEntry);
+        this.publish(List.of(databaseEntry.getId()));
 
         DatabaseRepositoryRegistry.logBytes("The database entry contained %d Bytes", databaseEntry.getDocument());
 
@@ -139,32 +381,98 @@ public class RedisDatabaseSection implements DatabaseSection {
 
         if (!this.exists(id)) throw new NoSuchEntryFound(id);
 
-        final String key = this.name + ":" + id;
-        try (final Jedis jedis = jedisPool.getResource()) {
-            jedis.del(key.getBytes());
+        if (this.autoPipeline != null) {
+            this.autoPipeline.execute(pipeline -> {
+                if (this.options.isHashLayout()) pipeline.hdel(this.name.getBytes(), id.getBytes());
+                else pipeline.del(this.key(id));
+            });
+        } else {
+            try (final Jedis jedis = jedisPool.getResource()) {
+                if (this.options.isHashLayout()) jedis.hdel(this.name.getBytes(), id.getBytes());
+                else jedis.del(this.key(id));
+            }
         }
+
         this.entries.remove(id);
+        this.publish(List.of(id));
+
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Every id is checked against {@link #entries} before anything is deleted, then the ids are
+     * deleted over a single connection with one {@code DEL} - or {@code HDEL} with the hash
+     * layout - per {@link RedisOptions#getPipelineDepth() pipeline depth} ids.
+     */
+    @Override
+    public void deleteAll(@NotNull Collection<String> ids) {
+
+        if (ids.isEmpty()) return;
+
+        for (final String id : ids) if (!this.exists(id)) throw new NoSuchEntryFound(id);
+
+        final List<byte[]> keys = ids.stream().map(id -> this.options.isHashLayout() ? id.getBytes() : this.key(id)).toList();
+
+        try (final Jedis jedis = jedisPool.getResource()) {
+
+            for (int i = 0; i < keys.size(); i += this.options.getPipelineDepth()) {
+
+                final byte[][] chunk = keys.subList(i, Math.min(i + this.options.getPipelineDepth(), keys.size())).toArray(byte[][]::new);
+
+                if (this.options.isHashLayout()) jedis.hdel(this.name.getBytes(), chunk);
+                else jedis.del(chunk);
+            }
+        }
+
+        ids.forEach(this.entries::remove);
+        this.publish(ids);
 
     }
 
+    /**
+     * {@inheritDoc}
+     * <p>
+     * With the hash layout, a single {@code HLEN}, counting entries written by other instances
+     * too; with the key layout, the number of cached entries.
+     */
     @Override
     public long count() {
-        return this.entries.size();
+
+        if (!this.options.isHashLayout()) return this.entries.size();
+
+        try (final Jedis jedis = jedisPool.getResource()) {
+            return jedis.hlen(this.name.getBytes());
+        }
     }
 
+    /**
+     * {@inheritDoc}
+     * <p>
+     * With the hash layout, a single {@code UNLINK} of the section's hash, freed by Redis in the
+     * background; the section stays registered. With the key layout, one {@code DEL} of every
+     * cached key at once, rather than one round trip per entry via {@link #delete}.
+     */
     @Override
     public void clear() {
 
-        if (this.entries.isEmpty()) return;
+        if (this.options.isHashLayout()) {
+            try (final Jedis jedis = jedisPool.getResource()) {
+                jedis.unlink(this.name.getBytes());
+            }
+        } else {
 
-        // One DEL for every key at once, rather than one round trip per entry via delete().
-        final String[] keys = this.entries.keySet().stream().map(id -> this.name + ":" + id).toArray(String[]::new);
+            if (this.entries.isEmpty()) return;
 
-        try (final Jedis jedis = jedisPool.getResource()) {
-            jedis.del(keys);
+            final byte[][] keys = this.entries.keySet().stream().map(this::key).toArray(byte[][]::new);
+
+            try (final Jedis jedis = jedisPool.getResource()) {
+                jedis.del(keys);
+            }
         }
 
         this.entries.clear();
+        this.publish(null);
 
     }
 
@@ -183,4 +491,150 @@ public class RedisDatabaseSection implements DatabaseSection {
         return List.copyOf(this.entries.values());
     }
 
+    @Override
+    public Stream<DatabaseEntry> stream() {
+        return this.entries.values().stream();
+    }
+
+    @Override
+    public void forEachEntry(@NotNull Consumer<DatabaseEntry> consumer) {
+        this.entries.values().forEach(consumer);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Reads the key first, and only applies it to {@link #entries} if the entry there is still
+     * the one seen before the read, so a concurrent local write to the same id - which is stored
+     * before updating {@link #entries} - is never overwritten by an older state, and no lock is
+     * held during the round trip. With the key layout, the key's {@code PTTL} is read along with
+     * it, so an entry a peer inserted with a time to live expires here too.
+     */
+    @Override
+    public void refresh(@NotNull String id) {
+
+        final DatabaseEntry before = this.entries.get(id);
+        final DatabaseEntry fetched;
+        long ttl = -1;
+
+        try (final Jedis jedis = this.jedisPool.getResource()) {
+
+            if (this.options.isHashLayout()) {
+                final byte[] data = jedis.hget(this.name.getBytes(), id.getBytes());
+                fetched = data == null ? null : new DatabaseEntry(id, new JsonDocument(PayloadCodec.decode(data)));
+            } else {
+                final Pipeline pipeline = jedis.pipelined();
+                final Response<byte[]> data = pipeline.get(this.key(id));
+                final Response<Long> pttl = pipeline.pttl(this.key(id));
+                pipeline.sync();
+
+                fetched = data.get() == null ? null : new DatabaseEntry(id, new JsonDocument(PayloadCodec.decode(data.get())));
+                ttl = pttl.get();
+            }
+        }
+
+        final DatabaseEntry applied = this.entries.compute(id, (key, current) -> current == before ? fetched : current);
+        if (fetched != null && applied == fetched) this.expireLocally(fetched, ttl);
+    }
+
+    /**
+     * Schedules dropping the cached {@code databaseEntry} once its key expired in Redis, unless
+     * it was replaced or removed from {@link #entries} before.
+     *
+     * @param databaseEntry the cached entry
+     * @param ttl           the key's remaining time to live in milliseconds; negative if it has
+     *                      none
+     */
+    private void expireLocally(@NotNull DatabaseEntry databaseEntry, long ttl) {
+        if (ttl >= 0) ExpiryWheel.getInstance().schedule(Duration.ofMillis(ttl), () -> this.entries.remove(databaseEntry.getId(), databaseEntry));
+    }
+
+    /**
+     * Announces a write to peer instances through {@link #changeFeed}, if enabled.
+     *
+     * @param ids the ids written or deleted, or {@code null} if the whole section changed
+     */
+    private void publish(@Nullable Collection<String> ids) {
+        if (this.changeFeed != null) this.changeFeed.publish(this.name, ids);
+    }
+
+    /**
+     * Stores {@code databaseEntry} under its key, or in this section's hash: through the
+     * provider's {@link RedisAutoPipeline} if enabled, and on a connection of its own otherwise.
+     *
+     * @param databaseEntry the entry to store
+     */
+    private void write(@NotNull DatabaseEntry databaseEntry) {
+
+        if (this.autoPipeline != null) {
+            this.autoPipeline.execute(pipeline -> this.store(pipeline, databaseEntry));
+            return;
+        }
+
+        try (final Jedis jedis = jedisPool.getResource()) {
+            if (this.options.isHashLayout()) jedis.hset(this.name.getBytes(), databaseEntry.getId().getBytes(), this.payload(databaseEntry));
+            else jedis.set(this.key(databaseEntry.getId()), this.payload(databaseEntry));
+        }
+    }
+
+    /**
+     * Stores every entry of {@code databaseEntries} through the pipeline of a single borrowed
+     * connection, synchronizing every {@link RedisOptions#getPipelineDepth()} commands so the
+     * replies buffered at once stay bounded.
+     *
+     * @param databaseEntries the entries to store
+     */
+    private void writeAll(@NotNull Collection<DatabaseEntry> databaseEntries) {
+
+        try (final Jedis jedis = jedisPool.getResource()) {
+
+            final Pipeline pipeline = jedis.pipelined();
+            int queued = 0;
+
+            for (final DatabaseEntry databaseEntry : databaseEntries) {
+                this.store(pipeline, databaseEntry);
+                if (++queued % this.options.getPipelineDepth() == 0) pipeline.sync();
+            }
+
+            pipeline.sync();
+
+        }
+    }
+
+    /**
+     * Queues storing {@code databaseEntry} under its key, or in this section's hash, on
+     * {@code pipeline}.
+     *
+     * @param pipeline      the pipeline to queue the command on
+     * @param databaseEntry the entry to store
+     */
+    private void store(@NotNull Pipeline pipeline, @NotNull DatabaseEntry databaseEntry) {
+        if (this.options.isHashLayout()) pipeline.hset(this.name.getBytes(), databaseEntry.getId().getBytes(), this.payload(databaseEntry));
+        else pipeline.set(this.key(databaseEntry.getId()), this.payload(databaseEntry));
+    }
+
+    /**
+     * Builds the key {@code id} is stored under with the key layout.
+     *
+     * @param id the entry's id
+     * @return the bytes of {@code "<name>:<id>"}
+     */
+    private byte[] key(@NotNull String id) {
+        return (this.name + ":" + id).getBytes();
+    }
+
+    /**
+     * Serializes {@code databaseEntry} into the value stored under its key, encoded with the
+     * {@link RedisOptions#getCodec() configured codec}. {@link DatabaseEntry#getDocument()} is
+     * already the full {@code "data"}-enveloped document, so appending it under another
+     * {@code "data"} key would double-wrap it; its unwrapped {@link DatabaseEntry#getMetaData()}
+     * is enveloped instead.
+     *
+     * @param databaseEntry the entry to serialize
+     * @return the bytes to store
+     */
+    private byte[] payload(@NotNull DatabaseEntry databaseEntry) {
+        return this.options.getCodec().encode(new JsonDocument().append("data", databaseEntry.getMetaData()).toBytes());
+    }
+
 }
@@ -0,0 +1,121 @@
+package de.lino.database.database.nosql.redis;
+
+import org.jetbrains.annotations.NotNull;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.params.ScanParams;
+import redis.clients.jedis.resps.ScanResult;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Moves every entry stored with the key layout - one top-level {@code "<section>:<id>"} string key
+ * per entry - into the {@link RedisOptions#isHashLayout() hash layout}: field {@code <id>} of the
+ * hash {@code <section>}, with {@code <section>} added to the {@link RedisDatabaseProvider#SECTIONS}
+ * set. A key is split at its first {@code ':'}.
+ * <p>
+ * The keyspace is scanned {@link RedisOptions#getScanCount()} keys at a time, and every
+ * {@link RedisOptions#getPipelineDepth()} scanned keys are read with one {@code MGET} and moved
+ * with one pipeline of {@code HSET}s, {@code SADD}s and {@code UNLINK}s. Keys without a
+ * {@code ':'}, keys under the driver's own {@code "database-driver:"} namespace and keys not
+ * holding a string - e.g. hashes already migrated - are left alone, so an interrupted migration
+ * can simply be run again.
+ */
+public class RedisLayoutMigration {
+
+    /**
+     * The connection pool every command is run through.
+     */
+    private final JedisPool jedisPool;
+
+    /**
+     * The options deciding how many keys are scanned and moved per round trip.
+     */
+    private final RedisOptions options;
+
+    /**
+     * @param jedisPool the connection pool to run every command through
+     * @param options   the options deciding how many keys are scanned and moved per round trip
+     */
+    public RedisLayoutMigration(@NotNull JedisPool jedisPool, @NotNull RedisOptions options) {
+        this.jedisPool = jedisPool;
+        this.options = options;
+    }
+
+    /**
+     * Moves every key-layout entry into its section's hash, blocking until done.
+     *
+     * @return the number of entries moved
+     */
+    public long run() {
+
+        long moved = 0;
+        String cursor = "0";
+
+        final ScanParams scanParams = new ScanParams().match("*").count(this.options.getScanCount());
+        final List<String> pending = new ArrayList<>(this.options.getPipelineDepth());
+
+        try (final Jedis jedis = this.jedisPool.getResource()) {
+
+            do {
+
+                final ScanResult<String> result = jedis.scan(cursor, scanParams);
+
+                for (final String key : result.getResult()) {
+
+                    if (key.indexOf(':') <= 0 || key.startsWith("database-driver:")) continue;
+
+                    pending.add(key);
+                    if (pending.size() < this.options.getPipelineDepth()) continue;
+
+                    moved += this.move(jedis, pending);
+                    pending.clear();
+                }
+
+                cursor = result.getCursor();
+
+            } while (!cursor.equals("0"));
+
+            if (!pending.isEmpty()) moved += this.move(jedis, pending);
+
+        }
+
+        return moved;
+    }
+
+    /**
+     * Reads {@code keys} with a single {@code MGET} and moves every one holding a string into its
+     * section's hash through a single pipeline.
+     *
+     * @param jedis the connection to move through
+     * @param keys  the scanned keys, each containing a {@code ':'}
+     * @return the number of entries moved
+     */
+    private int move(@NotNull Jedis jedis, @NotNull List<String> keys) {
+
+        final List<byte[]> values = jedis.mget(keys.stream().map(String::getBytes).toArray(byte[][]::new));
+        final Pipeline pipeline = jedis.pipelined();
+
+        int moved = 0;
+
+        for (int i = 0; i < keys.size(); i++) {
+
+            final byte[] value = values.get(i);
+            if (value == null) continue;
+
+            final String key = keys.get(i);
+            final String section = key.substring(0, key.indexOf(':'));
+
+            pipeline.hset(section.getBytes(), key.substring(section.length() + 1).getBytes(), value);
+            pipeline.sadd(RedisDatabaseProvider.SECTIONS, section);
+            pipeline.unlink(key);
+            moved++;
+        }
+
+        pipeline.sync();
+        return moved;
+    }
+
+}
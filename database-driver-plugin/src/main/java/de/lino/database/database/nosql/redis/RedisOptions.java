@@ -0,0 +1,92 @@
+package de.lino.database.database.nosql.redis;
+
+import de.lino.database.database.auth.Credentials;
+import de.lino.database.json.JsonDocument;
+import de.lino.database.utils.codec.PayloadCodec;
+import lombok.Getter;
+import org.jetbrains.annotations.NotNull;
+
+import java.time.Duration;
+
+/**
+ * The Redis-specific tuning options of one {@link RedisDatabaseProvider}, read once from the
+ * {@link Credentials#getOptions() options} of the {@link Credentials} it was created with. Every
+ * option is optional: a missing or invalid value falls back to the default documented on its
+ * field, so configuration files written by older versions keep working unchanged.
+ */
+@Getter
+public class RedisOptions {
+
+    /**
+     * The codec every section encodes its stored values with. Read from the {@code "codec"}
+     * option, {@link PayloadCodec#NONE} by default.
+     */
+    private final PayloadCodec codec;
+
+    /**
+     * Whether every section is kept coherent with other instances connected to the same database
+     * through a {@link RedisChangeFeed}. Read from the {@code "changeFeed"} option, {@code false}
+     * by default.
+     */
+    private final boolean changeFeed;
+
+    /**
+     * The {@code COUNT} hint of every {@code SCAN}, i.e. roughly how many keys Redis returns per
+     * cursor round trip. Read from the {@code "scanCount"} option, {@code 1000} by default.
+     */
+    private final int scanCount;
+
+    /**
+     * The maximum number of keys a reload fetches per {@code MGET} round trip - scanned keys are
+     * buffered until this many are pending - and the maximum number of commands
+     * {@code insertAll}, {@code updateAll}, {@code deleteAll} and {@code bulkInsert} send per
+     * pipeline. Read from the {@code "pipelineDepth"} option, {@code 1000} by default.
+     */
+    private final int pipelineDepth;
+
+    /**
+     * Whether every section is stored as one Redis hash named after it, with every section's name
+     * kept in the {@link RedisDatabaseProvider#SECTIONS} set, rather than as one top-level
+     * {@code "<section>:<id>"} key per entry. Read from the {@code "layout"} option, {@code "hash"}
+     * for this layout, {@code "keys"} by default; existing data is moved over by
+     * {@link RedisDatabaseProvider#migrateToHashLayout()}.
+     */
+    private final boolean hashLayout;
+
+    /**
+     * Whether the single writes of every section are coalesced into shared pipelines by a
+     * {@link RedisAutoPipeline}. Read from the {@code "autoPipeline"} option, {@code false} by
+     * default.
+     */
+    private final boolean autoPipeline;
+
+    /**
+     * The maximum number of writes a {@link RedisAutoPipeline} sends per pipeline. Read from the
+     * {@code "autoPipelineCommands"} option, {@code 128} by default.
+     */
+    private final int autoPipelineCommands;
+
+    /**
+     * How long a {@link RedisAutoPipeline} holds the first write of a pipeline back for others to
+     * join it. Read from the {@code "autoPipelineMicros"} option, {@code 200} microseconds by
+     * default.
+     */
+    private final Duration autoPipelineInterval;
+
+    /**
+     * Reads every Redis option from {@code options}, falling back to its default if missing.
+     *
+     * @param options the {@link Credentials#getOptions() options} to read from
+     */
+    public RedisOptions(@NotNull JsonDocument options) {
+        this.codec = PayloadCodec.of(options.get("codec", String.class, null));
+        this.changeFeed = options.get("changeFeed", Boolean.class, false);
+        this.scanCount = options.get("scanCount", Integer.class, 1_000, value -> value > 0);
+        this.pipelineDepth = options.get("pipelineDepth", Integer.class, 1_000, value -> value > 0);
+        this.hashLayout = "hash".equalsIgnoreCase(options.get("layout", String.class, "keys"));
+        this.autoPipeline = options.get("autoPipeline", Boolean.class, false);
+        this.autoPipelineCommands = options.get("autoPipelineCommands", Integer.class, 128, value -> value > 0);
+        this.autoPipelineInterval = Duration.ofNanos(1_000 * options.get("autoPipelineMicros", Long.class, 200L, value -> value >= 0));
+    }
+
+}
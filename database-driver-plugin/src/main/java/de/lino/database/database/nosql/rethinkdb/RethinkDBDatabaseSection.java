@@ -24,6 +24,8 @@ import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 /**
  * The {@link DatabaseSection} backing one RethinkDB table. Entries are cached in memory (loaded
@@ -128,6 +130,22 @@ public class RethinkDBDatabaseSection implements DatabaseSection {
 
     }
 
+    /**
+     * {@inheritDoc}
+     * <p>
+     * A single {@code insert} with {@code conflict = "replace"}, which replaces the document
+     * already stored under the same primary key instead of failing.
+     */
+    @Override
+    public void upsert(@NotNull DatabaseEntry databaseEntry) {
+
+        this.table.insert(this.mapping(databaseEntry)).optArg("conflict", "replace").runNoReply(this.connection);
+        this.entries.put(databaseEntry.getId(), databaseEntry);
+
+        DatabaseRepositoryRegistry.logBytes("The database entry contained %d Bytes", databaseEntry.getDocument());
+
+    }
+
     @Override
     public void delete(@NotNull String id) {
 
@@ -164,6 +182,16 @@ public class RethinkDBDatabaseSection implements DatabaseSection {
         return List.copyOf(this.entries.values());
     }
 
+    @Override
+    public Stream<DatabaseEntry> stream() {
+        return this.entries.values().stream();
+    }
+
+    @Override
+    public void forEachEntry(@NotNull Consumer<DatabaseEntry> consumer) {
+        this.entries.values().forEach(consumer);
+    }
+
     private MapObject<Object, Object> mapping(@NotNull String id) {
         return RethinkDB.r.hashMap("id", id);
     }
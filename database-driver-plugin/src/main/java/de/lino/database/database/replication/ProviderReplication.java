@@ -0,0 +1,357 @@
+package de.lino.database.database.replication;
+
+import com.google.common.collect.Maps;
+import de.lino.database.database.ChangeStreamSection;
+import de.lino.database.database.DatabaseProvider;
+import de.lino.database.database.DatabaseSection;
+import de.lino.database.database.DatabaseType;
+import de.lino.database.database.conversion.ConversionOptions;
+import de.lino.database.database.conversion.ProviderConversion;
+import de.lino.database.database.entity.DatabaseEntry;
+import de.lino.database.database.entity.SectionChanges;
+import de.lino.database.utils.VersionClock;
+import lombok.Getter;
+import org.jetbrains.annotations.NotNull;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * The {@link Replication} behind {@link de.lino.database.DatabaseRepository#replicate(int, int)}:
+ * copies every section of the source to the target through a {@link ProviderConversion}, then
+ * polls the source on a single daemon thread, every {@link ReplicationOptions#getPollInterval()}.
+ * <p>
+ * A source section that is a {@link ChangeStreamSection} - a SQL or MongoDB section with
+ * incremental reloads enabled - is tailed: every poll applies only the entries written and the ids
+ * deleted since the previous poll. Every other section, or a tailed one whose changes cannot be
+ * listed (e.g. because it was cleared), is rescanned in full: it is {@link DatabaseSection#reload()
+ * reloaded} first, so writes other instances made to the source database are seen as well, then
+ * every entry differing from the target's is written, and every entry the source no longer holds
+ * is deleted. Either way, only
+ * entries whose document differs from the target's are written, so applying the same change twice
+ * is harmless. Sections dropped from the source are dropped from the target.
+ * <p>
+ * A failing poll is counted and simply retried by the next one; sections it completed keep their
+ * progress.
+ */
+public class ProviderReplication implements Replication {
+
+    /**
+     * The id of the database replicated from.
+     */
+    @Getter
+    private final int sourceId;
+
+    /**
+     * The id of the database replicated to.
+     */
+    @Getter
+    private final int targetId;
+
+    /**
+     * The type of the source provider, deciding how source sections map to target sections.
+     */
+    private final DatabaseType sourceType;
+
+    /**
+     * The provider every section is read from.
+     */
+    private final DatabaseProvider source;
+
+    /**
+     * The provider every section is written to.
+     */
+    private final DatabaseProvider destination;
+
+    /**
+     * The options this replication runs with.
+     */
+    private final ReplicationOptions options;
+
+    /**
+     * The {@link VersionClock version} every replicated target section is current as of, keyed by
+     * the target section's name; only touched by the polling thread after the initial copy.
+     */
+    private final Map<String, Long> positions = Maps.newConcurrentMap();
+
+    /**
+     * The single daemon thread running every poll.
+     */
+    private final ScheduledExecutorService scheduler;
+
+    /**
+     * The number of entries written to the target since the initial copy.
+     */
+    private final AtomicLong written = new AtomicLong();
+
+    /**
+     * The number of ids deleted from the target since the initial copy.
+     */
+    private final AtomicLong deleted = new AtomicLong();
+
+    /**
+     * The number of polls completed, successfully or not.
+     */
+    private final AtomicLong polls = new AtomicLong();
+
+    /**
+     * The number of polls that failed.
+     */
+    private final AtomicLong failures = new AtomicLong();
+
+    /**
+     * The {@link System#nanoTime()} the last successful poll, or the initial copy, started at.
+     */
+    private volatile long syncedAt;
+
+    /**
+     * How long the last completed poll took, in nanoseconds.
+     */
+    private volatile long lastPoll;
+
+    /**
+     * The {@link System#nanoTime()} the initial copy finished at.
+     */
+    private final long started;
+
+    /**
+     * Copies every section of {@code source} to {@code destination}, blocking until done, and then
+     * starts polling {@code source} for changes.
+     *
+     * @param sourceId    the id of the database to replicate from
+     * @param targetId    the id of the database to replicate to
+     * @param sourceType  the type of the source provider
+     * @param source      the provider to replicate from
+     * @param destination the provider to replicate to
+     * @param options     the options to run with
+     */
+    public ProviderReplication(int sourceId, int targetId, @NotNull DatabaseType sourceType, @NotNull DatabaseProvider source, @NotNull DatabaseProvider destination, @NotNull ReplicationOptions options) {
+
+        this.sourceId = sourceId;
+        this.targetId = targetId;
+        this.sourceType = sourceType;
+        this.source = source;
+        this.destination = destination;
+        this.options = options;
+
+        final long copiedAt = System.nanoTime();
+        final long version = VersionClock.next();
+
+        new ProviderConversion(sourceType, source, destination, new ConversionOptions().parallelism(options.getParallelism()).chunkSize(options.getBatchSize())).run();
+        this.groups().keySet().forEach(name -> this.positions.put(name, version));
+
+        this.syncedAt = copiedAt;
+        this.started = System.nanoTime();
+
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            final Thread thread = new Thread(runnable, "database-driver-replication-" + sourceId + "-" + targetId);
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        final long interval = options.getPollInterval().toNanos();
+        this.scheduler.scheduleWithFixedDelay(this::poll, interval, interval, TimeUnit.NANOSECONDS);
+
+    }
+
+    @Override
+    public @NotNull ReplicationMetrics getMetrics() {
+        final long now = System.nanoTime();
+        return new ReplicationMetrics(this.written.get(), this.deleted.get(), this.polls.get(), this.failures.get(),
+                Duration.ofNanos(now - this.syncedAt), Duration.ofNanos(this.lastPoll), Duration.ofNanos(now - this.started));
+    }
+
+    @Override
+    public boolean isRunning() {
+        return !this.scheduler.isShutdown();
+    }
+
+    @Override
+    public void close() {
+
+        this.scheduler.shutdown();
+
+        try {
+            if (!this.scheduler.awaitTermination(30, TimeUnit.SECONDS)) this.scheduler.shutdownNow();
+        } catch (final InterruptedException exception) {
+            this.scheduler.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+
+    }
+
+    /**
+     * Brings every target section up to date with its source sections, tailing those it can and
+     * rescanning the rest, and drops target sections whose source sections are gone.
+     */
+    private void poll() {
+
+        final long polledAt = System.nanoTime();
+        final long version = VersionClock.next();
+
+        try {
+
+            final Map<String, List<DatabaseSection>> groups = this.groups();
+
+            for (final Map.Entry<String, List<DatabaseSection>> group : groups.entrySet()) {
+                this.sync(group.getKey(), group.getValue());
+                this.positions.put(group.getKey(), version);
+            }
+
+            for (final String name : List.copyOf(this.positions.keySet())) {
+                if (groups.containsKey(name)) continue;
+                if (this.destination.existsSection(name)) this.destination.deleteSection(name);
+                this.positions.remove(name);
+            }
+
+            this.syncedAt = polledAt;
+
+        } catch (final RuntimeException exception) {
+            System.err.println("Replicating database with id #" + this.sourceId + " to database with id #" + this.targetId + " failed, retrying on the next poll:");
+            exception.printStackTrace();
+            this.failures.incrementAndGet();
+        } finally {
+            this.lastPoll = System.nanoTime() - polledAt;
+            this.polls.incrementAndGet();
+        }
+
+    }
+
+    /**
+     * Brings one target section up to date with the source sections mapping to it.
+     *
+     * @param name     the target section's name
+     * @param sections the source sections mapping to it
+     */
+    private void sync(@NotNull String name, @NotNull List<DatabaseSection> sections) {
+
+        final DatabaseSection target = this.destination.createSection(name);
+        final Long position = this.positions.get(name);
+
+        if (position != null && sections.size() == 1 && sections.get(0) instanceof ChangeStreamSection changeStreamSection) {
+
+            final Optional<SectionChanges> changes = changeStreamSection.changesSince(position);
+
+            if (changes.isPresent()) {
+                this.delete(target, changes.get().deleted());
+                for (int i = 0; i < changes.get().written().size(); i += this.options.getBatchSize())
+                    this.write(target, changes.get().written().subList(i, Math.min(i + this.options.getBatchSize(), changes.get().written().size())));
+                return;
+            }
+        }
+
+        this.rescan(target, sections);
+
+    }
+
+    /**
+     * Makes {@code target} hold exactly the entries of {@code sections}, streaming them in
+     * batches, writing those that differ and deleting those the source no longer holds. Each
+     * source section is reloaded first, as sections serving reads from memory would otherwise
+     * only ever yield this instance's own writes.
+     *
+     * @param target   the target section to bring up to date
+     * @param sections the source sections mapping to it
+     */
+    private void rescan(@NotNull DatabaseSection target, @NotNull List<DatabaseSection> sections) {
+
+        final Set<String> ids = new HashSet<>();
+        final List<DatabaseEntry> batch = new ArrayList<>(this.options.getBatchSize());
+
+        for (final DatabaseSection section : sections) {
+
+            section.reload();
+            section.forEachEntry(databaseEntry -> {
+
+                ids.add(databaseEntry.getId());
+                batch.add(databaseEntry);
+                if (batch.size() < this.options.getBatchSize()) return;
+
+                this.write(target, batch);
+                batch.clear();
+            });
+
+        }
+
+        if (!batch.isEmpty()) this.write(target, batch);
+
+        final List<String> stale;
+        try (Stream<DatabaseEntry> entries = target.stream()) {
+            stale = entries.map(DatabaseEntry::getId).filter(id -> !ids.contains(id)).toList();
+        }
+
+        for (int i = 0; i < stale.size(); i += this.options.getBatchSize())
+            this.delete(target, stale.subList(i, Math.min(i + this.options.getBatchSize(), stale.size())));
+
+    }
+
+    /**
+     * Writes every entry of {@code databaseEntries} whose document differs from {@code target}'s,
+     * inserting new ids and updating existing ones, each in a single batch.
+     *
+     * @param target          the target section to write to
+     * @param databaseEntries the source entries to apply
+     */
+    private void write(@NotNull DatabaseSection target, @NotNull Collection<DatabaseEntry> databaseEntries) {
+
+        final List<DatabaseEntry> inserts = new ArrayList<>();
+        final List<DatabaseEntry> updates = new ArrayList<>();
+
+        for (final DatabaseEntry databaseEntry : databaseEntries) {
+
+            final Optional<DatabaseEntry> current = target.findEntryById(databaseEntry.getId());
+
+            if (current.isEmpty()) inserts.add(databaseEntry);
+            else if (!current.get().getDocument().getJsonObject().equals(databaseEntry.getDocument().getJsonObject())) updates.add(databaseEntry);
+        }
+
+        if (!inserts.isEmpty()) target.insertAll(inserts);
+        if (!updates.isEmpty()) target.updateAll(updates);
+
+        this.written.addAndGet(inserts.size() + updates.size());
+
+    }
+
+    /**
+     * Deletes every id of {@code ids} {@code target} still holds, in a single batch.
+     *
+     * @param target the target section to delete from
+     * @param ids    the ids deleted from the source
+     */
+    private void delete(@NotNull DatabaseSection target, @NotNull Collection<String> ids) {
+
+        final List<String> present = ids.stream().distinct().filter(target::exists).toList();
+        if (present.isEmpty()) return;
+
+        target.deleteAll(present);
+        this.deleted.addAndGet(present.size());
+
+    }
+
+    /**
+     * Groups the source's current sections by the target section they map to.
+     *
+     * @return every target section's name, mapped to its source sections
+     */
+    private @NotNull Map<String, List<DatabaseSection>> groups() {
+
+        final Map<String, List<DatabaseSection>> groups = new LinkedHashMap<>();
+        for (final DatabaseSection section : this.source.getSections())
+            groups.computeIfAbsent(ProviderConversion.targetName(this.sourceType, section.getName()), key -> new ArrayList<>()).add(section);
+
+        return groups;
+    }
+
+}
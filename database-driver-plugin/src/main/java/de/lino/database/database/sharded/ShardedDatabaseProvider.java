@@ -0,0 +1,208 @@
+package de.lino.database.database.sharded;
+
+import com.google.common.collect.Maps;
+import de.lino.database.database.DatabaseProvider;
+import de.lino.database.database.DatabaseSection;
+import de.lino.database.utility.cache.DefaultConsistentHashRing;
+import de.lino.database.utils.cache.ConsistentHashRing;
+import lombok.Getter;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.UnmodifiableView;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Function;
+
+/**
+ * A {@link DatabaseProvider} partitioning every section across several other, already registered
+ * providers - its shards, e.g. four PostgreSQL instances - so a section can outgrow a single
+ * database server. Every shard holds a section of the same name, and each entry lives in exactly
+ * one of them: the one its id maps to on a {@link ConsistentHashRing} over the shards' registry
+ * ids, via {@link ShardedDatabaseSection}.
+ * <p>
+ * The shards stay registered on their own and are owned by the repository, not by this provider:
+ * {@link #shutdown()} leaves them running. Since entries are placed by the shards' registry ids,
+ * a sharded provider must always be registered with the same ids - ideally the same set - to find
+ * its entries again; consistent hashing only keeps the share of entries that would have to move
+ * small when a shard is added or removed, it does not move them.
+ */
+@Getter
+public class ShardedDatabaseProvider implements DatabaseProvider {
+
+    /**
+     * Every shard, keyed by its registry id, in registration order.
+     */
+    private final Map<Integer, DatabaseProvider> shards;
+
+    /**
+     * The ring mapping every entry id to the registry id of the shard it lives on.
+     */
+    private final ConsistentHashRing<Integer> ring;
+
+    /**
+     * Every sharded section, keyed by name.
+     */
+    private final Map<String, ShardedDatabaseSection> databaseSections;
+
+    /**
+     * Builds a sharded section for every section existing on any of {@code shards}, creating it on
+     * the shards it is still missing from.
+     *
+     * @param shards every shard, keyed by its registry id, at least one
+     * @throws IllegalArgumentException if {@code shards} is empty
+     */
+    public ShardedDatabaseProvider(@NotNull Map<Integer, DatabaseProvider> shards) {
+
+        this.shards = Collections.unmodifiableMap(Maps.newLinkedHashMap(shards));
+        this.ring = new DefaultConsistentHashRing<>(new ArrayList<>(shards.keySet()));
+        this.databaseSections = Maps.newConcurrentMap();
+
+        this.load();
+
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Only discards this provider's own sections; the shards are owned by the repository and keep
+     * running until unregistered themselves.
+     */
+    @Override
+    public void shutdown() {
+        this.databaseSections.clear();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Creates the section on every shard in parallel.
+     */
+    @Override
+    public DatabaseSection createSection(@NotNull String name) {
+        return this.databaseSections.computeIfAbsent(name, key -> this.shardSections(key, shard -> shard.createSectionAsync(key)));
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Deletes the section from every shard in parallel.
+     */
+    @Override
+    public void deleteSection(@NotNull String name) {
+
+        if (this.databaseSections.remove(name) == null) return;
+        await(this.shards.values().stream().map(shard -> shard.deleteSectionAsync(name)).toList());
+
+    }
+
+    @Override
+    public boolean existsSection(@NotNull String name) {
+        return this.databaseSections.containsKey(name);
+    }
+
+    @Override
+    public @UnmodifiableView List<DatabaseSection> getSections() {
+        return List.copyOf(this.databaseSections.values());
+    }
+
+    @Override
+    public Optional<DatabaseSection> getSection(@NotNull String name) {
+        return Optional.ofNullable(this.databaseSections.get(name));
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Clears every shard in parallel.
+     */
+    @Override
+    public void clear() {
+
+        await(this.shards.values().stream().map(DatabaseProvider::clearAsync).toList());
+        this.databaseSections.clear();
+
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Reloads every shard in parallel, then rebuilds every sharded section on top of the shards'
+     * fresh section instances.
+     */
+    @Override
+    public void reload() {
+
+        await(this.shards.values().stream().map(DatabaseProvider::reloadAsync).toList());
+        this.load();
+
+    }
+
+    /**
+     * Rebuilds {@link #databaseSections} from the sections currently known to the shards: one
+     * sharded section per name found on any shard, created on the shards still missing it.
+     */
+    private void load() {
+
+        final Set<String> names = new LinkedHashSet<>();
+        this.shards.values().forEach(shard -> shard.getSections().forEach(section -> names.add(section.getName())));
+
+        final Map<String, ShardedDatabaseSection> sections = Maps.newConcurrentMap();
+        for (final String name : names) {
+            sections.put(name, this.shardSections(name, shard -> shard.getSection(name)
+                    .map(CompletableFuture::completedFuture)
+                    .orElseGet(() -> shard.createSectionAsync(name))));
+        }
+
+        this.databaseSections.keySet().retainAll(sections.keySet());
+        this.databaseSections.putAll(sections);
+
+    }
+
+    /**
+     * Resolves the section {@code name} on every shard in parallel, via {@code resolver}, and
+     * combines them into one sharded section.
+     *
+     * @param name     the section's name
+     * @param resolver resolves the section on a single shard
+     * @return the sharded section
+     */
+    private @NotNull ShardedDatabaseSection shardSections(@NotNull String name, @NotNull Function<DatabaseProvider, CompletableFuture<DatabaseSection>> resolver) {
+
+        final Map<Integer, CompletableFuture<DatabaseSection>> pending = Maps.newLinkedHashMap();
+        this.shards.forEach((id, shard) -> pending.put(id, resolver.apply(shard)));
+        await(pending.values());
+
+        final Map<Integer, DatabaseSection> sections = Maps.newLinkedHashMap();
+        pending.forEach((id, future) -> sections.put(id, future.join()));
+
+        return new ShardedDatabaseSection(name, this.ring, sections);
+    }
+
+    /**
+     * Waits for every one of {@code futures}, rethrowing the first failure's cause as is if it is
+     * unchecked, so callers see the same exception a single shard would have thrown.
+     *
+     * @param futures the operations to wait for
+     */
+    static void await(@NotNull Iterable<? extends CompletableFuture<?>> futures) {
+
+        final List<CompletableFuture<?>> pending = new ArrayList<>();
+        futures.forEach(pending::add);
+
+        try {
+            CompletableFuture.allOf(pending.toArray(CompletableFuture[]::new)).join();
+        } catch (final CompletionException exception) {
+            if (exception.getCause() instanceof RuntimeException cause) throw cause;
+            throw exception;
+        }
+
+    }
+
+}
@@ -0,0 +1,261 @@
+package de.lino.database.database.sharded;
+
+import com.google.common.collect.Maps;
+import de.lino.database.database.BulkIngestSection;
+import de.lino.database.database.DatabaseSection;
+import de.lino.database.database.entity.DatabaseEntry;
+import de.lino.database.utils.cache.ConsistentHashRing;
+import lombok.AccessLevel;
+import lombok.Getter;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.UnmodifiableView;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+import static de.lino.database.database.sharded.ShardedDatabaseProvider.await;
+
+/**
+ * The {@link DatabaseSection} of a {@link ShardedDatabaseProvider}: one section of the same name
+ * per shard, each holding the entries whose id the {@link ConsistentHashRing} maps to that shard.
+ * <p>
+ * Operations on a single id are routed to its shard alone. Batch writes are split by shard and
+ * every shard's part written in parallel. Whole-section operations - {@link #count()},
+ * {@link #getEntries()}, {@link #clear()}, {@link #reload()} and {@link #findByField} - fan out to
+ * every shard in parallel, each on that shard's own {@link DatabaseSection#getExecutor() executor},
+ * and merge the results.
+ */
+@Getter
+public class ShardedDatabaseSection implements BulkIngestSection {
+
+    /**
+     * The section's name, shared by every shard section.
+     */
+    private final String name;
+
+    /**
+     * The ring mapping every entry id to the registry id of the shard it lives on.
+     */
+    @Getter(AccessLevel.NONE)
+    private final ConsistentHashRing<Integer> ring;
+
+    /**
+     * The section of the same name on every shard, keyed by the shard's registry id.
+     */
+    private final Map<Integer, DatabaseSection> shardSections;
+
+    /**
+     * @param name          the section's name
+     * @param ring          the ring mapping every entry id to the registry id of its shard
+     * @param shardSections the section of the same name on every shard, keyed by the shard's
+     *                      registry id
+     */
+    public ShardedDatabaseSection(@NotNull String name, @NotNull ConsistentHashRing<Integer> ring, @NotNull Map<Integer, DatabaseSection> shardSections) {
+        this.name = name;
+        this.ring = ring;
+        this.shardSections = Collections.unmodifiableMap(shardSections);
+    }
+
+    @Override
+    public void insert(@NotNull DatabaseEntry databaseEntry) {
+        this.shardOf(databaseEntry.getId()).insert(databaseEntry);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Delegated to the entry's shard, so it expires the way that shard's backend does.
+     */
+    @Override
+    public void insert(@NotNull DatabaseEntry databaseEntry, @NotNull Duration ttl) {
+        this.shardOf(databaseEntry.getId()).insert(databaseEntry, ttl);
+    }
+
+    @Override
+    public void update(@NotNull DatabaseEntry databaseEntry) {
+        this.shardOf(databaseEntry.getId()).update(databaseEntry);
+    }
+
+    @Override
+    public void upsert(@NotNull DatabaseEntry databaseEntry) {
+        this.shardOf(databaseEntry.getId()).upsert(databaseEntry);
+    }
+
+    @Override
+    public void delete(@NotNull String id) {
+        this.shardOf(id).delete(id);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Splits {@code databaseEntries} by shard and inserts every shard's part in parallel.
+     */
+    @Override
+    public void insertAll(@NotNull Collection<DatabaseEntry> databaseEntries) {
+        this.partitioned(databaseEntries, DatabaseEntry::getId, DatabaseSection::insertAllAsync);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Splits {@code databaseEntries} by shard and bulk-inserts every shard's part in parallel,
+     * through {@link DatabaseSection#insertAll} on shards without a bulk-ingest path.
+     */
+    @Override
+    public void bulkInsert(@NotNull Collection<DatabaseEntry> databaseEntries) {
+        this.partitioned(databaseEntries, DatabaseEntry::getId, (section, part) -> section instanceof BulkIngestSection bulkIngestSection
+                ? CompletableFuture.runAsync(() -> bulkIngestSection.bulkInsert(part), section.getExecutor())
+                : section.insertAllAsync(part));
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Splits {@code databaseEntries} by shard and updates every shard's part in parallel.
+     */
+    @Override
+    public void updateAll(@NotNull Collection<DatabaseEntry> databaseEntries) {
+        this.partitioned(databaseEntries, DatabaseEntry::getId, DatabaseSection::updateAllAsync);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Splits {@code ids} by shard and deletes every shard's part in parallel.
+     */
+    @Override
+    public void deleteAll(@NotNull Collection<String> ids) {
+        this.partitioned(ids, Function.identity(), DatabaseSection::deleteAllAsync);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Counts every shard in parallel and sums the results.
+     */
+    @Override
+    public long count() {
+        return this.fanOut(DatabaseSection::countAsync).stream().mapToLong(Long::longValue).sum();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Clears every shard in parallel.
+     */
+    @Override
+    public void clear() {
+        this.fanOut(DatabaseSection::clearAsync);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Reloads every shard in parallel.
+     */
+    @Override
+    public void reload() {
+        this.fanOut(DatabaseSection::reloadAsync);
+    }
+
+    @Override
+    public boolean exists(@NotNull String id) {
+        return this.shardOf(id).exists(id);
+    }
+
+    @Override
+    public Optional<DatabaseEntry> findEntryById(@NotNull String id) {
+        return this.shardOf(id).findEntryById(id);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Queries every shard in parallel, each filtering with its own - possibly server-side -
+     * implementation, and concatenates the results.
+     */
+    @Override
+    public List<DatabaseEntry> findByField(@NotNull String path, @NotNull Object value) {
+        return this.fanOut(section -> section.findByFieldAsync(path, value)).stream().flatMap(List::stream).toList();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Collects every shard's entries in parallel and concatenates them, in shard order.
+     */
+    @Override
+    public @UnmodifiableView List<DatabaseEntry> getEntries() {
+
+        final List<List<DatabaseEntry>> parts = this.fanOut(DatabaseSection::getEntriesAsync);
+
+        final List<DatabaseEntry> entries = new ArrayList<>(parts.stream().mapToInt(List::size).sum());
+        parts.forEach(entries::addAll);
+
+        return Collections.unmodifiableList(entries);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Streams the shards one after another, each through its own {@link DatabaseSection#stream()},
+     * so a scan over the whole section still runs in constant memory and holds at most one
+     * shard's cursor open at a time.
+     */
+    @Override
+    public Stream<DatabaseEntry> stream() {
+        return this.shardSections.values().stream().flatMap(DatabaseSection::stream);
+    }
+
+    /**
+     * Resolves the shard section {@code id} lives in.
+     *
+     * @param id primary key
+     * @return the shard section owning {@code id}
+     */
+    private @NotNull DatabaseSection shardOf(@NotNull String id) {
+        return this.shardSections.get(this.ring.nodeFor(id));
+    }
+
+    /**
+     * Runs {@code operation} on every shard section in parallel and waits for all of them.
+     *
+     * @param operation the async operation to run per shard section
+     * @return every shard's result, in shard order
+     */
+    private <T> @NotNull List<T> fanOut(@NotNull Function<DatabaseSection, CompletableFuture<T>> operation) {
+
+        final List<CompletableFuture<T>> pending = this.shardSections.values().stream().map(operation).toList();
+        await(pending);
+
+        return pending.stream().map(CompletableFuture::join).toList();
+    }
+
+    /**
+     * Splits {@code elements} by the shard their id maps to and runs {@code operation} on every
+     * shard's part in parallel, waiting for all of them.
+     *
+     * @param elements  the entries or ids to split
+     * @param idOf      extracts an element's id
+     * @param operation the async batch operation to run per shard section
+     */
+    private <E> void partitioned(@NotNull Collection<E> elements, @NotNull Function<E, String> idOf, @NotNull BiFunction<DatabaseSection, Collection<E>, CompletableFuture<Void>> operation) {
+
+        final Map<Integer, List<E>> parts = Maps.newHashMap();
+        for (final E element : elements) parts.computeIfAbsent(this.ring.nodeFor(idOf.apply(element)), key -> new ArrayList<>()).add(element);
+
+        await(parts.entrySet().stream().map(part -> operation.apply(this.shardSections.get(part.getKey()), part.getValue())).toList());
+
+    }
+
+}
@@ -0,0 +1,189 @@
+package de.lino.database.database.sql;
+
+import de.lino.database.database.DatabaseProvider;
+import de.lino.database.database.DatabaseSection;
+import de.lino.database.database.change.ChangeFeed;
+import de.lino.database.database.change.ChangeNotification;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * The {@link ChangeFeed} of PostgreSQL databases, built on {@code LISTEN}/{@code NOTIFY}: every
+ * write is announced via {@code pg_notify} on {@link #CHANNEL}, and a dedicated listener thread
+ * holding one dedicated connection, opened outside the pool, applies every peer's notifications to the local sections.
+ * <p>
+ * Notifications sent while the listener is disconnected are lost, so after every reconnect the
+ * listener {@link DatabaseSection#reload() reloads} every section - incrementally, since the
+ * change feed implies {@link SQLOptions#isIncrementalReload() incremental reloads}.
+ */
+public class PostgresChangeFeed implements ChangeFeed {
+
+    /**
+     * The channel every instance notifies and listens on.
+     */
+    public static final String CHANNEL = "database_driver_changes";
+
+    /**
+     * The maximum payload size per notification, in bytes, safely below PostgreSQL's limit of
+     * 8000 bytes; larger batches of ids are split across several notifications.
+     */
+    private static final int MAX_PAYLOAD = 7_000;
+
+    /**
+     * The connection pool notifications are sent through; the listener's connection is opened
+     * next to it.
+     */
+    private final SQLExecution sqlExecution;
+
+    /**
+     * The provider whose sections notifications are applied to.
+     */
+    private final DatabaseProvider databaseProvider;
+
+    /**
+     * This feed's id, sent along with every notification so the listener skips its own.
+     */
+    private final String origin;
+
+    /**
+     * Whether {@link #close()} was called.
+     */
+    private volatile boolean closed;
+
+    /**
+     * The listener thread.
+     */
+    private final Thread listener;
+
+    /**
+     * Starts listening on {@link #CHANNEL} through a dedicated connection to
+     * {@code sqlExecution}'s primary.
+     *
+     * @param sqlExecution     the connection pool to notify and listen through
+     * @param databaseProvider the provider whose sections to apply notifications to
+     */
+    public PostgresChangeFeed(@NotNull SQLExecution sqlExecution, @NotNull DatabaseProvider databaseProvider) {
+
+        this.sqlExecution = sqlExecution;
+        this.databaseProvider = databaseProvider;
+        this.origin = UUID.randomUUID().toString();
+
+        this.listener = new Thread(this::listen, "database-driver-change-listener");
+        this.listener.setDaemon(true);
+        this.listener.start();
+
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Sends one {@code pg_notify} per chunk of ids fitting into {@link #MAX_PAYLOAD} bytes.
+     */
+    @Override
+    public void publish(@NotNull String section, @Nullable Collection<String> ids) {
+
+        if (this.closed) return;
+
+        if (ids == null) {
+            this.notify(new ChangeNotification(this.origin, section, null));
+            return;
+        }
+
+        final int overhead = this.origin.length() + section.length() + 64;
+        List<String> chunk = new ArrayList<>();
+        int size = overhead;
+
+        for (final String id : ids) {
+
+            final int length = id.getBytes(StandardCharsets.UTF_8).length * 2 + 4;
+
+            if (!chunk.isEmpty() && size + length > MAX_PAYLOAD) {
+                this.notify(new ChangeNotification(this.origin, section, chunk));
+                chunk = new ArrayList<>();
+                size = overhead;
+            }
+
+            chunk.add(id);
+            size += length;
+        }
+
+        if (!chunk.isEmpty()) this.notify(new ChangeNotification(this.origin, section, chunk));
+    }
+
+    @Override
+    public void close() {
+        this.closed = true;
+        this.listener.interrupt();
+    }
+
+    /**
+     * Sends {@code changeNotification} on {@link #CHANNEL}.
+     *
+     * @param changeNotification the notification to send
+     */
+    private void notify(@NotNull ChangeNotification changeNotification) {
+        this.sqlExecution.executeQuery("SELECT pg_notify(?, ?)", resultSet -> true, false, CHANNEL, changeNotification.toJson());
+    }
+
+    /**
+     * The listener loop: opens an unpooled connection, {@code LISTEN}s on {@link #CHANNEL} and applies
+     * every peer's notification until {@link #close() closed}, reconnecting after a second if
+     * the connection fails.
+     */
+    private void listen() {
+
+        boolean reconnected = false;
+
+        while (!this.closed) {
+
+            try (final Connection connection = this.sqlExecution.openConnection()) {
+
+                try (final Statement statement = connection.createStatement()) {
+                    statement.execute("LISTEN " + CHANNEL);
+                }
+
+                if (reconnected) this.databaseProvider.getSections().forEach(DatabaseSection::reload);
+
+                final PGConnection pgConnection = connection.unwrap(PGConnection.class);
+
+                while (!this.closed) {
+
+                    final PGNotification[] notifications = pgConnection.getNotifications(500);
+                    if (notifications == null) continue;
+
+                    for (final PGNotification notification : notifications) {
+                        ChangeNotification.parse(notification.getParameter())
+                                .filter(changeNotification -> !this.origin.equals(changeNotification.origin()))
+                                .ifPresent(changeNotification -> changeNotification.apply(this.databaseProvider::getSection));
+                    }
+                }
+
+            } catch (final SQLException | RuntimeException exception) {
+
+                if (this.closed) return;
+                exception.printStackTrace();
+
+                try {
+                    Thread.sleep(1_000);
+                } catch (final InterruptedException interruptedException) {
+                    return;
+                }
+            }
+
+            reconnected = true;
+        }
+
+    }
+
+}
@@ -0,0 +1,291 @@
+package de.lino.database.database.sql;
+
+import de.lino.database.database.DatabaseType;
+import org.jetbrains.annotations.NotNull;
+import org.postgresql.PGConnection;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The bulk-ingest path of one {@link SQLExecution}, behind
+ * {@link SQLDatabaseSection#bulkInsert}: loads rows through the vendor's native bulk protocol
+ * rather than a JDBC batch of {@code INSERT} statements - {@code COPY FROM STDIN (FORMAT BINARY)}
+ * on PostgreSQL, {@code LOAD DATA LOCAL INFILE} from an in-memory stream on MySQL and MariaDB,
+ * and {@code SQLServerBulkCopy} on Microsoft SQL Server. Every other vendor has no such path.
+ * <p>
+ * The MySQL and Microsoft SQL Server drivers are not dependencies of this module, so their bulk
+ * APIs are reached reflectively. MySQL additionally requires {@code allowLoadLocalInfile=true}
+ * among the {@link SQLOptions#getDriverProperties() driver properties}, and the server's
+ * {@code local_infile} setting. A failed bulk load always falls back to JDBC batching; once one
+ * fails because the path itself is unavailable - a driver class or method missing, or
+ * {@code LOAD DATA LOCAL} refused by client or server - this loader disables itself for the rest
+ * of its lifetime. Failures caused by the rows themselves, e.g. a duplicate id, only affect the
+ * load they occurred in.
+ */
+public class SQLBulkLoader {
+
+    /**
+     * The signature every {@code COPY ... (FORMAT BINARY)} stream starts with.
+     */
+    private static final byte[] COPY_SIGNATURE = {'P', 'G', 'C', 'O', 'P', 'Y', '\n', (byte) 0xFF, '\r', '\n', 0};
+
+    /**
+     * The connection pool every bulk load runs through.
+     */
+    private final SQLExecution sqlExecution;
+
+    /**
+     * The MySQL and MariaDB error codes {@code LOAD DATA LOCAL} is refused with: the server's
+     * {@code local_infile} being off ({@code 1148}, {@code 3948}) or the client not allowing it
+     * ({@code 2068}).
+     */
+    private static final Set<Integer> LOCAL_INFILE_REFUSED = Set.of(1148, 2068, 3948);
+
+    /**
+     * Whether a bulk load has failed for lack of capability before, after which every further
+     * load is refused.
+     */
+    private volatile boolean disabled;
+
+    /**
+     * @param sqlExecution the connection pool to run every bulk load through
+     */
+    public SQLBulkLoader(@NotNull SQLExecution sqlExecution) {
+        this.sqlExecution = sqlExecution;
+    }
+
+    /**
+     * Checks whether {@link #load} may succeed at all: whether the vendor has a bulk path, and no
+     * bulk load has found it unavailable yet.
+     *
+     * @return {@code true} if bulk loads are attempted, {@code false} if callers should batch
+     */
+    public boolean isSupported() {
+
+        if (this.disabled) return false;
+
+        return switch (this.sqlExecution.getDatabaseType()) {
+            case POSTGRES_SQL, MY_SQL, MARIA_DB, MICROSOFT_SQL_SERVER -> true;
+            default -> false;
+        };
+    }
+
+    /**
+     * Loads {@code rows} into {@code table} in a single bulk operation, committed on its own.
+     *
+     * @param table     the section table to load into
+     * @param json      whether the table's {@code data} column is a native JSON column, whose
+     *                  values are JSON text rather than bytes
+     * @param versioned whether the table has a {@code version} column
+     * @param rows      the rows to load, each holding its id, its {@code data} value and - if
+     *                  {@code versioned} - its version, in that order
+     * @return {@code true} if every row was loaded, {@code false} if none was and the caller has to
+     * fall back to batching
+     */
+    public boolean load(@NotNull String table, boolean json, boolean versioned, @NotNull List<Object[]> rows) {
+
+        if (rows.isEmpty()) return true;
+        if (!this.isSupported()) return false;
+
+        final DatabaseType databaseType = this.sqlExecution.getDatabaseType();
+        final String columns = versioned ? "id, data, version" : "id, data";
+
+        try {
+
+            switch (databaseType) {
+                case POSTGRES_SQL -> this.copy(table, columns, json, rows);
+                case MY_SQL, MARIA_DB -> this.loadData(table, json, versioned, rows);
+                case MICROSOFT_SQL_SERVER -> this.bulkCopy(table, versioned, rows);
+                default -> {
+                    return false;
+                }
+            }
+
+            return true;
+
+        } catch (final SQLException | IOException | ReflectiveOperationException | RuntimeException exception) {
+            System.err.println("Bulk loading into " + table + " (" + databaseType + ") failed, falling back to JDBC batching:");
+            exception.printStackTrace();
+            if (isUnsupported(exception)) this.disabled = true;
+        }
+
+        return false;
+    }
+
+    /**
+     * Checks whether {@code exception} means the bulk path is unavailable altogether, rather than
+     * that the rows of one load were rejected.
+     *
+     * @param exception the exception a bulk load failed with
+     * @return {@code true} if further bulk loads would fail the same way
+     */
+    private static boolean isUnsupported(@NotNull Throwable exception) {
+
+        if (exception instanceof InvocationTargetException invocation && invocation.getCause() != null) return isUnsupported(invocation.getCause());
+        if (exception instanceof ReflectiveOperationException || exception instanceof UnsupportedOperationException) return true;
+        if (!(exception instanceof SQLException sqlException)) return false;
+
+        return sqlException instanceof SQLFeatureNotSupportedException
+                || "0A000".equals(sqlException.getSQLState())
+                || LOCAL_INFILE_REFUSED.contains(sqlException.getErrorCode());
+    }
+
+    /**
+     * Loads {@code rows} through PostgreSQL's {@code COPY FROM STDIN} in its binary format.
+     */
+    private void copy(@NotNull String table, @NotNull String columns, boolean json, @NotNull List<Object[]> rows) throws SQLException, IOException {
+
+        final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        final DataOutputStream output = new DataOutputStream(buffer);
+
+        output.write(COPY_SIGNATURE);
+        output.writeInt(0);
+        output.writeInt(0);
+
+        for (final Object[] row : rows) {
+
+            output.writeShort(row.length);
+            writeField(output, ((String) row[0]).getBytes(StandardCharsets.UTF_8));
+
+            if (json) {
+                final byte[] text = ((String) row[1]).getBytes(StandardCharsets.UTF_8);
+                output.writeInt(text.length + 1);
+                output.writeByte(1); // the JSONB binary format version
+                output.write(text);
+            } else writeField(output, (byte[]) row[1]);
+
+            if (row.length > 2) {
+                output.writeInt(Long.BYTES);
+                output.writeLong((Long) row[2]);
+            }
+        }
+
+        output.writeShort(-1);
+
+        try (Connection connection = this.sqlExecution.getConnection()) {
+            connection.unwrap(PGConnection.class).getCopyAPI().copyIn("COPY " + table + " (" + columns + ") FROM STDIN (FORMAT BINARY)", new ByteArrayInputStream(buffer.toByteArray()));
+        }
+
+    }
+
+    /**
+     * Loads {@code rows} through MySQL's and MariaDB's {@code LOAD DATA LOCAL INFILE}, reading a
+     * tab-separated stream handed to the driver's {@code setLocalInfileInputStream}. Ids and
+     * values are sent hex-encoded, so no byte of them needs escaping.
+     */
+    private void loadData(@NotNull String table, boolean json, boolean versioned, @NotNull List<Object[]> rows) throws SQLException, ReflectiveOperationException {
+
+        final HexFormat hex = HexFormat.of();
+        final StringBuilder builder = new StringBuilder();
+
+        for (final Object[] row : rows) {
+
+            final byte[] data = json ? ((String) row[1]).getBytes(StandardCharsets.UTF_8) : (byte[]) row[1];
+
+            builder.append(hex.formatHex(((String) row[0]).getBytes(StandardCharsets.UTF_8))).append('\t').append(hex.formatHex(data));
+            if (versioned) builder.append('\t').append(row[2]);
+            builder.append('\n');
+        }
+
+        final String query = "LOAD DATA LOCAL INFILE 'database-driver' INTO TABLE " + table
+                + " FIELDS TERMINATED BY '\\t' LINES TERMINATED BY '\\n' (@id, @data" + (versioned ? ", version)" : ")")
+                + " SET id = CONVERT(UNHEX(@id) USING utf8mb4), data = " + (json ? "CONVERT(UNHEX(@data) USING utf8mb4)" : "UNHEX(@data)");
+
+        try (Connection connection = this.sqlExecution.getConnection(); Statement statement = connection.createStatement()) {
+
+            final Statement driverStatement = statement.unwrap(Statement.class);
+            driverStatement.getClass().getMethod("setLocalInfileInputStream", InputStream.class)
+                    .invoke(driverStatement, new ByteArrayInputStream(builder.toString().getBytes(StandardCharsets.UTF_8)));
+
+            statement.execute(query);
+        }
+
+    }
+
+    /**
+     * Loads {@code rows} through Microsoft SQL Server's {@code SQLServerBulkCopy}, feeding them
+     * from an {@code ISQLServerBulkData} proxy over {@code rows}.
+     */
+    private void bulkCopy(@NotNull String table, boolean versioned, @NotNull List<Object[]> rows) throws SQLException, ReflectiveOperationException {
+
+        final Class<?> bulkCopyClass = Class.forName("com.microsoft.sqlserver.jdbc.SQLServerBulkCopy");
+        final Class<?> bulkDataClass = Class.forName("com.microsoft.sqlserver.jdbc.ISQLServerBulkData");
+
+        final String[] names = versioned ? new String[]{"id", "data", "version"} : new String[]{"id", "data"};
+        final int[] types = {Types.VARCHAR, Types.VARBINARY, Types.BIGINT};
+        final int[] precisions = {255, Integer.MAX_VALUE, 19};
+        final Set<Integer> ordinals = versioned ? Set.of(1, 2, 3) : Set.of(1, 2);
+
+        final Iterator<Object[]> iterator = rows.iterator();
+        final Object[][] current = new Object[1][];
+
+        final Object bulkData = Proxy.newProxyInstance(bulkDataClass.getClassLoader(), new Class<?>[]{bulkDataClass}, (proxy, method, arguments) -> {
+
+            if (method.isDefault()) return InvocationHandler.invokeDefault(proxy, method, arguments);
+
+            return switch (method.getName()) {
+                case "getColumnOrdinals" -> ordinals;
+                case "getColumnName" -> names[(int) arguments[0] - 1];
+                case "getColumnType" -> types[(int) arguments[0] - 1];
+                case "getPrecision" -> precisions[(int) arguments[0] - 1];
+                case "getScale" -> 0;
+                case "getRowData" -> current[0];
+                case "next" -> {
+                    current[0] = iterator.hasNext() ? iterator.next() : null;
+                    yield current[0] != null;
+                }
+                case "hashCode" -> System.identityHashCode(proxy);
+                case "equals" -> proxy == arguments[0];
+                case "toString" -> "SQLBulkLoader(" + table + ")";
+                default -> throw new UnsupportedOperationException(method.getName());
+            };
+        });
+
+        try (Connection connection = this.sqlExecution.getConnection()) {
+
+            final Object bulkCopy = bulkCopyClass.getConstructor(Connection.class).newInstance(connection.unwrap(Connection.class));
+
+            try {
+
+                bulkCopyClass.getMethod("setDestinationTableName", String.class).invoke(bulkCopy, table);
+                for (int i = 0; i < names.length; i++) bulkCopyClass.getMethod("addColumnMapping", int.class, String.class).invoke(bulkCopy, i + 1, names[i]);
+
+                bulkCopyClass.getMethod("writeToServer", bulkDataClass).invoke(bulkCopy, bulkData);
+
+            } catch (final InvocationTargetException exception) {
+                if (exception.getCause() instanceof SQLException cause) throw cause;
+                throw exception;
+            } finally {
+                bulkCopyClass.getMethod("close").invoke(bulkCopy);
+            }
+
+        }
+
+    }
+
+    /**
+     * Writes one length-prefixed field of a binary {@code COPY} tuple.
+     */
+    private static void writeField(@NotNull DataOutputStream output, byte @NotNull [] value) throws IOException {
+        output.writeInt(value.length);
+        output.write(value);
+    }
+
+}
@@ -4,21 +4,37 @@ import com.google.common.collect.Maps;
 import de.lino.database.database.DatabaseProvider;
 import de.lino.database.database.DatabaseSection;
 import de.lino.database.database.DatabaseType;
+import de.lino.database.database.change.PollingChangeFeed;
 import lombok.SneakyThrows;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.UnmodifiableView;
 
 import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 /**
  * The shared {@link DatabaseProvider} implementation behind every SQL vendor this driver
  * supports (MySQL, PostgreSQL, MariaDB, SQLite, H2, Oracle, Microsoft SQL Server, Apache Derby -
  * see the vendor-specific subclasses in the sibling packages), each {@link DatabaseSection}
  * mapping to one table, all sharing this database's single {@link SQLExecution} connection pool.
+ * <p>
+ * Sections are loaded in parallel on the pool's {@link SQLExecution#getExecutor() executor} -
+ * so at most as many tables load at once as there are connections - into a fresh map that only
+ * replaces {@link #databaseSections} once every section has loaded, so readers never observe a
+ * partially loaded database. {@link #ready()} tracks the latest load.
+ * <p>
+ * A daemon thread sweeps the {@link SQLDialect#EXPIRIES expiry table} every
+ * {@link SQLOptions#getExpirySweepInterval()} once it exists, expiring the entries whose time to
+ * live elapsed without their inserting instance deleting them.
  */
 public class SQLDatabaseProvider implements DatabaseProvider {
 
@@ -34,13 +50,30 @@ public class SQLDatabaseProvider implements DatabaseProvider {
     private final SQLExecution sqlExecution;
 
     /**
-     * Every registered section, keyed by table name.
+     * Every registered section, keyed by table name. Replaced as a whole once a
+     * {@link #reloadAsync() reload} has loaded every section.
      */
-    private final Map<String, DatabaseSection> databaseSections;
+    private volatile Map<String, DatabaseSection> databaseSections;
+
+    /**
+     * The latest {@link #reloadAsync() reload}, completing once its sections have replaced
+     * {@link #databaseSections}. Every reload is chained onto the previous one, and every method
+     * adding or removing sections waits for it first, so neither can be lost to a concurrent
+     * swap.
+     */
+    private volatile CompletableFuture<Void> ready;
+
+    /**
+     * The daemon thread sweeping the {@link SQLDialect#EXPIRIES expiry table}.
+     */
+    private final ScheduledExecutorService expirySweeper;
 
     /**
      * Connects via {@code sqlExecution} and loads every existing table of {@code databaseType} as
-     * a {@link SQLDatabaseSection}.
+     * a {@link SQLDatabaseSection} - returning once every section has loaded, or right away if
+     * {@link SQLOptions#isAsyncStartup() asynchronous startup} is enabled, in which case
+     * {@link #ready()} tells when loading finished. Installs the
+     * {@link SQLOptions#isChangeFeed() change feed} first, if enabled.
      *
      * @param databaseType  the SQL vendor being connected to
      * @param sqlExecution  the connection pool to run every query and update through
@@ -51,57 +84,113 @@ public class SQLDatabaseProvider implements DatabaseProvider {
         this.databaseType = databaseType;
         this.sqlExecution = sqlExecution;
         this.databaseSections = Maps.newConcurrentMap();
+        this.ready = CompletableFuture.completedFuture(null);
+
+        final SQLOptions options = sqlExecution.getOptions();
+
+        this.expirySweeper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            final Thread thread = new Thread(runnable, "database-driver-sql-expiry");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        final long interval = options.getExpirySweepInterval().toMillis();
+        this.expirySweeper.scheduleWithFixedDelay(this::sweep, interval, interval, TimeUnit.MILLISECONDS);
+
+        if (options.isChangeFeed()) sqlExecution.setChangeFeed(databaseType == DatabaseType.POSTGRES_SQL
+                ? new PostgresChangeFeed(sqlExecution, this)
+                : new PollingChangeFeed(this, options.getChangeFeedPollInterval()));
 
-        this.reload();
+        final CompletableFuture<Void> startup = this.reloadAsync();
+        if (!options.isAsyncStartup()) startup.join();
 
     }
 
     @Override
     public void shutdown() {
+        this.expirySweeper.shutdownNow();
+        this.awaitReload();
         this.sqlExecution.shutdown();
         this.databaseSections.clear();
     }
 
+    /**
+     * Get the readiness of this database: a future completing once the latest
+     * {@link #reloadAsync() reload} - initially the one started by the constructor - has loaded
+     * every section, or completing exceptionally if loading any of them failed.
+     *
+     * @return a {@link CompletableFuture} that completes once every section is loaded
+     */
+    public CompletableFuture<Void> ready() {
+        return this.ready;
+    }
+
+    /**
+     * Get the live metrics of this database's connection pool - active, idle and pending
+     * connections plus acquire and usage time histograms - e.g. to size
+     * {@link SQLOptions#getMaximumPoolSize()} from measurements rather than guesswork.
+     *
+     * @return the pool metrics of this database's {@link SQLExecution}
+     */
+    public @NotNull SQLPoolMetrics getPoolMetrics() {
+        return this.sqlExecution.getPoolMetrics();
+    }
+
     /**
      * {@inheritDoc}
      * <p>
-     * Discards {@link #databaseSections} entirely and rebuilds it with a fresh
-     * {@link SQLDatabaseSection} per table currently reported by {@link #getPattern},
-     * the same query the constructor itself runs.
+     * Runs {@link #reloadAsync()} and waits for it, so must not be called from the connection
+     * pool's {@link SQLExecution#getExecutor() executor} itself.
      */
     @Override
-    @SneakyThrows
     public void reload() {
+        this.reloadAsync().join();
+    }
 
-        this.databaseSections.clear();
-        String tablePattern = getPattern(this.databaseType);
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Creates the {@link SQLDialect#TOMBSTONES tombstone table} first if
+     * {@link SQLOptions#isIncrementalReload() incremental reloads} are enabled and it does not
+     * exist yet, and looks up whether the {@link SQLDialect#EXPIRIES expiry table} does. Lists every table currently reported by {@link #getPattern}, then builds a fresh
+     * {@link SQLDatabaseSection} per table in parallel on the connection pool's
+     * {@link SQLExecution#getExecutor() executor}, and finally swaps the new sections in for
+     * {@link #databaseSections} as a whole. Until then, every read keeps seeing the previous
+     * sections. Starts only once any reload still running has finished.
+     */
+    @Override
+    public synchronized CompletableFuture<Void> reloadAsync() {
 
-        this.sqlExecution.executeQueryAsync(tablePattern, resultSet -> {
+        final CompletableFuture<Void> reload = this.ready.handle((result, throwable) -> null).thenComposeAsync(ignored -> {
 
-            try {
+            if (this.sqlExecution.getOptions().isIncrementalReload() && !this.sqlExecution.tableExists(SQLDialect.TOMBSTONES))
+                this.sqlExecution.createTable(SQLDialect.TOMBSTONES, SQLDialect.createTombstones(this.databaseType).toArray(String[]::new));
 
-                while (resultSet.next()) {
-                    String tableName = resultSet.getString("TABLE_NAME");
-                    this.databaseSections.put(tableName, new SQLDatabaseSection(this.databaseType, tableName, this.sqlExecution));
-                }
+            this.sqlExecution.detectExpiries();
 
-            } catch (final SQLException exception) {
-                exception.printStackTrace();
-            }
+            final Map<String, DatabaseSection> sections = Maps.newConcurrentMap();
+            final List<CompletableFuture<Void>> loads = this.listTables().stream().map(tableName -> CompletableFuture.runAsync(() ->
+                    sections.put(tableName, new SQLDatabaseSection(this.databaseType, tableName, this.sqlExecution)), this.sqlExecution.getExecutor())).toList();
 
-            return true;
-        }, true).get();
+            return CompletableFuture.allOf(loads.toArray(CompletableFuture[]::new)).thenRun(() -> this.databaseSections = sections);
+        }, this.sqlExecution.getExecutor());
 
+        this.ready = reload;
+        return reload;
     }
 
     @Override
     public DatabaseSection createSection(@NotNull String name) {
+        this.awaitReload();
         return this.databaseSections.computeIfAbsent(name, key -> new SQLDatabaseSection(this.databaseType, key, this.sqlExecution));
     }
 
     @Override
     public void deleteSection(@NotNull String name) {
+        this.awaitReload();
+        this.sqlExecution.discard(name);
         this.sqlExecution.executeUpdate("DROP TABLE " + name);
+        if (this.sqlExecution.hasExpiries()) this.sqlExecution.executeUpdate("DELETE FROM " + SQLDialect.EXPIRIES + " WHERE section_name = ?", name);
         this.databaseSections.remove(name);
     }
 
@@ -122,6 +211,7 @@ public class SQLDatabaseProvider implements DatabaseProvider {
 
     @Override
     public void clear() {
+        this.awaitReload();
         for (DatabaseSection databaseSection : this.getSections()) databaseSection.clear();
         this.databaseSections.clear();
     }
@@ -145,6 +235,81 @@ public class SQLDatabaseProvider implements DatabaseProvider {
 
     }
 
+    /**
+     * Waits for the {@link #ready latest reload} to finish, successfully or not.
+     */
+    private void awaitReload() {
+
+        try {
+            this.ready.join();
+        } catch (final CompletionException | CancellationException exception) {
+            // a failed reload keeps the previous sections, which are still valid to mutate
+        }
+
+    }
+
+    /**
+     * Expires every entry of a loaded section whose deadline in the
+     * {@link SQLDialect#EXPIRIES expiry table} has passed, through
+     * {@link SQLDatabaseSection#expire}. Rows of sections not loaded here are left for an instance
+     * that has them.
+     */
+    private void sweep() {
+
+        if (!this.sqlExecution.hasExpiries()) return;
+
+        final Map<String, List<String>> expired = this.sqlExecution.executeQuery("SELECT section_name, id FROM " + SQLDialect.EXPIRIES + " WHERE expires_at <= ?", resultSet -> {
+
+            final Map<String, List<String>> ids = Maps.newHashMap();
+
+            try {
+                while (resultSet.next()) ids.computeIfAbsent(resultSet.getString("section_name"), ignored -> new ArrayList<>()).add(resultSet.getString("id"));
+            } catch (final SQLException exception) {
+                exception.printStackTrace();
+            }
+
+            return ids;
+        }, Map.of(), System.currentTimeMillis());
+
+        expired.forEach((name, ids) -> {
+
+            if (!(this.databaseSections.get(name) instanceof SQLDatabaseSection section)) return;
+
+            try {
+                section.expire(ids);
+            } catch (final RuntimeException exception) {
+                exception.printStackTrace();
+            }
+        });
+
+    }
+
+    /**
+     * Lists the name of every table currently reported by {@link #getPattern}, except the
+     * {@link SQLDialect#TOMBSTONES tombstone table} and the {@link SQLDialect#EXPIRIES expiry
+     * table}.
+     *
+     * @return every table name, or an empty list if the listing failed
+     */
+    private @NotNull List<String> listTables() {
+
+        return this.sqlExecution.executeQuery(getPattern(this.databaseType), resultSet -> {
+
+            final List<String> names = new ArrayList<>();
+
+            try {
+                while (resultSet.next()) {
+                    final String name = resultSet.getString("TABLE_NAME");
+                    if (!SQLDialect.TOMBSTONES.equalsIgnoreCase(name) && !SQLDialect.EXPIRIES.equalsIgnoreCase(name)) names.add(name);
+                }
+            } catch (final SQLException exception) {
+                exception.printStackTrace();
+            }
+
+            return names;
+        }, List.of());
+    }
+
     /**
      * Builds the vendor-specific query that lists every existing table's name as
      * {@code TABLE_NAME}, used by the constructor to load existing {@link SQLDatabaseSection}s.
@@ -6,29 +6,96 @@ import de.lino.database.database.exception.DataAlreadyExist;
 import de.lino.database.database.exception.NoSuchDataFound;
 import de.lino.database.database.exception.NoSuchEntryFound;
 import de.lino.database.json.JsonDocument;
+import de.lino.database.database.BulkIngestSection;
+import de.lino.database.database.ChangeStreamSection;
 import de.lino.database.database.DatabaseSection;
 import de.lino.database.database.DatabaseType;
+import de.lino.database.database.change.ChangeFeed;
+import de.lino.database.database.change.CoherentSection;
 import de.lino.database.database.entity.DatabaseEntry;
+import de.lino.database.database.entity.SectionChanges;
+import de.lino.database.utils.cache.Cache;
+import de.lino.database.utils.cache.provider.Caches;
+import de.lino.database.utils.VersionClock;
+import de.lino.database.utils.codec.PayloadCodec;
+import de.lino.database.utils.expiry.ExpiryWheel;
+import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.SneakyThrows;
+import org.jetbrains.annotations.NonNls;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import org.jetbrains.annotations.UnmodifiableView;
 
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 /**
  * The {@link DatabaseSection} backing one SQL table: entries are cached in memory (loaded once
  * in the constructor and kept in sync on every write) so reads ({@link #exists}, {@link #count},
  * {@link #getEntries}, {@link #findEntryById}) never touch the database, only writes do.
+ * <p>
+ * If {@link SQLOptions#isLazy() lazy mode} is enabled, the table is never loaded as a whole
+ * instead: {@link #exists} and {@link #findEntryById} look single rows up by id through a bounded
+ * {@link Cache}, {@link #count} runs {@code SELECT COUNT(*)}, and {@link #stream} walks a
+ * forward-only cursor - so heap usage is bounded by the cache size rather than the table size.
+ * <p>
+ * If {@link SQLOptions#isWriteBehind() write-behind} is enabled, every write updates this
+ * section's in-memory view immediately but is only {@link SQLWriteBehind#enqueue enqueued} for
+ * a background group commit; every method reading the table as a whole ({@link #reload},
+ * {@link #clear}, and {@link #count}/{@link #stream} in lazy mode) {@link SQLExecution#flush()
+ * flushes} the queue first.
+ * <p>
+ * If the table stores documents in a native JSON column (see {@link SQLOptions#isJsonStorage()}),
+ * {@link #findByField} filters on the server, through an index where the vendor has one.
+ * <p>
+ * If {@link SQLOptions#isIncrementalReload() incremental reloads} are enabled, every write stamps
+ * its row's {@code version} column via {@link VersionClock} and every delete leaves a tombstone in
+ * the shared {@link SQLDialect#TOMBSTONES tombstone table}, so {@link #reload} only fetches the
+ * rows and tombstones newer than its {@link #highWaterMark high-water mark}.
+ * <p>
+ * If a {@link SQLExecution#getChangeFeed() change feed} is installed, every committed write is
+ * announced through it, and peers' writes are applied through {@link #refresh}.
+ * <p>
+ * If {@link SQLOptions#getReplicas() read replicas} are configured, every read of the table -
+ * {@link #reload}, and the lookups, counts and scans of lazy mode - is served by a replica,
+ * except within this section's {@link SQLOptions#readAfterWrite(String) read-after-write window}
+ * after its own last write, which reads from the primary so it never misses that write.
+ * Incremental reloads, and the full reloads they pick up from, always read from the primary, as
+ * their versions are taken on this node and a lagging replica would have changes skipped.
+ * <p>
+ * Entries {@link #insert(DatabaseEntry, Duration) inserted with a time to live} get a row in the
+ * shared {@link SQLDialect#EXPIRIES expiry table}. The shared {@link ExpiryWheel} deletes each of
+ * them at its deadline, and the owning provider's sweep catches every one left over, e.g. by a
+ * stopped instance; updating, upserting or deleting an entry drops its expiry.
  */
 @Getter
-public class SQLDatabaseSection implements DatabaseSection {
+public class SQLDatabaseSection implements CoherentSection, BulkIngestSection, ChangeStreamSection {
+
+    /**
+     * The minimum time between two {@link #pruneTombstones() prunes} of this section's expired
+     * tombstones, in nanoseconds.
+     */
+    private static final long PRUNE_INTERVAL = TimeUnit.MINUTES.toNanos(1);
 
     /**
      * This section's table name.
@@ -43,16 +110,87 @@ public class SQLDatabaseSection implements DatabaseSection {
 
     /**
      * Every entry currently in this table, keyed by id and kept in sync with the database by
-     * every write method; the source of truth for every read method.
+     * every write method; the source of truth for every read method. Always empty in lazy mode.
      */
     private final Map<String, DatabaseEntry> entries;
 
     /**
-     * Creates (if not already present) this section's table and loads its existing rows into
-     * {@link #entries}.
+     * The bounded, TTL-limited id lookup cache used in lazy mode, caching misses as an empty
+     * {@link Optional} as well; {@code null} unless {@link SQLOptions#isLazy() lazy mode} is
+     * enabled, which is also how every method tells the two modes apart.
+     */
+    private final @Nullable Cache<String, Optional<DatabaseEntry>> cache;
+
+    /**
+     * Whether this table's {@code data} column is a native {@link SQLDialect#jsonType JSON}
+     * column holding plain JSON text, rather than a BLOB holding
+     * {@link SQLOptions#getCodec() encoded} bytes.
+     */
+    private final boolean json;
+
+    /**
+     * Whether this table has a {@code version} column every write stamps and every delete leaves
+     * a tombstone for, enabling incremental {@link #reload reloads}.
+     */
+    private final boolean versioned;
+
+    /**
+     * Whether this table has a primary key on {@code id}, which every native
+     * {@link SQLDialect#upsert upsert} relies on to detect the conflicting row. Only a legacy table
+     * that could not be {@link #migrate migrated} has none, in which case upserts fall back to
+     * check-then-act and the {@link SQLWriteBehind write-behind queue}, built on upserts, is
+     * bypassed.
+     */
+    private final boolean keyed;
+
+    /**
+     * The {@link VersionClock version} the last {@link #reload} started at: every change older
+     * than it - minus {@link SQLOptions#getIncrementalOverlap() the overlap window} - is already
+     * reflected in {@link #entries}. {@code 0} until the first reload, and always unless
+     * {@link #versioned}.
+     */
+    private volatile long highWaterMark;
+
+    /**
+     * The {@link System#nanoTime()} this section's expired tombstones were last
+     * {@link #pruneTombstones() pruned} at.
+     */
+    @Getter(AccessLevel.NONE)
+    private volatile long prunedAt;
+
+    /**
+     * This section's {@link SQLOptions#readAfterWrite(String) read-after-write window}, in
+     * nanoseconds.
+     */
+    @Getter(AccessLevel.NONE)
+    private final long readAfterWrite;
+
+    /**
+     * The {@link System#nanoTime()} until which reads go to the primary rather than a replica,
+     * extended by every write of this section.
+     */
+    @Getter(AccessLevel.NONE)
+    private volatile long primaryUntil;
+
+    /**
+     * The pending expiry of every entry known to carry a time to live - inserted with one by this
+     * section, or found in the {@link SQLDialect#EXPIRIES expiry table} by the last
+     * {@link #reload} - keyed by id.
+     */
+    @Getter(AccessLevel.NONE)
+    private final Map<String, ExpiryWheel.Timeout> expiring;
+
+    /**
+     * Creates (if not already present) this section's table, {@link #migrate migrates} it if it
+     * was created by an older version without a primary key and, unless running in lazy mode,
+     * loads its existing rows into {@link #entries}. A new table gets a native JSON {@code data}
+     * column if {@link SQLOptions#isJsonStorage() JSON storage} is enabled; an existing table
+     * keeps whichever column type it was created with. With
+     * {@link SQLOptions#isIncrementalReload() incremental reloads} enabled, the table gets an
+     * indexed {@code version} column if it has none yet.
      *
      * @param databaseType the SQL vendor {@code sqlExecution} is connected to, used to pick this
-     *                     vendor's BLOB column type
+     *                     vendor's DDL
      * @param name         this section's table name
      * @param sqlExecution the connection pool to run every query and update through
      */
@@ -62,81 +200,320 @@ public class SQLDatabaseSection implements DatabaseSection {
         this.name = name;
         this.sqlExecution = sqlExecution;
         this.entries = Maps.newConcurrentMap();
+        this.expiring = Maps.newConcurrentMap();
+
+        final SQLOptions options = sqlExecution.getOptions();
+        this.cache = options.isLazy() ? Caches.newCache(id -> CompletableFuture.supplyAsync(() -> this.select(id, this.replicaRead()), sqlExecution.getLoadExecutor()), options.getLazyCacheTtl(), options.getLazyCacheSize()) : null;
 
-        String sqlStatement = "";
-        switch (databaseType) {
+        this.readAfterWrite = options.readAfterWrite(name).toNanos();
+        this.primaryUntil = System.nanoTime();
+        this.prunedAt = System.nanoTime() - PRUNE_INTERVAL;
+
+        if (!this.sqlExecution.tableExists(name)) {
+            this.json = options.isJsonStorage() && SQLDialect.jsonType(databaseType) != null;
+            this.sqlExecution.createTable(name, SQLDialect.createTable(databaseType, name, this.json));
+            this.wrote();
+            this.keyed = true;
+        } else {
+            if (!this.sqlExecution.hasPrimaryKey(name)) this.migrate(databaseType);
+            this.json = !isBinary(this.sqlExecution.columnType(name, "data"));
+            this.keyed = this.sqlExecution.hasPrimaryKey(name);
+        }
 
-            case POSTGRES_SQL -> sqlStatement = "BYTEA";
-            case MY_SQL, MARIA_DB ->  sqlStatement = "LONGBLOB";
-            case SQLITE, H2_DB, ORACLE, APACHE_DERBY ->  sqlStatement = "BLOB";
-            case MICROSOFT_SQL_SERVER ->  sqlStatement = "VARBINARY(MAX)";
+        final String jsonIndex = this.json ? SQLDialect.createJsonIndex(databaseType, name) : null;
+        if (jsonIndex != null) this.sqlExecution.executeUpdate(jsonIndex);
 
+        this.versioned = options.isIncrementalReload();
+        if (this.versioned) {
+            if (this.sqlExecution.columnType(name, "version") == Types.NULL) this.sqlExecution.executeUpdate(SQLDialect.addVersionColumn(databaseType, name));
+            if (!this.sqlExecution.indexExists(name, name + "_version_idx")) this.sqlExecution.executeUpdate("CREATE INDEX " + name + "_version_idx ON " + name + " (version)");
         }
 
-        this.sqlExecution.executeUpdateAsync("CREATE TABLE IF NOT EXISTS " + name + " (id TEXT, data " + sqlStatement + ");").get();
         this.reload();
 
     }
 
+    /**
+     * Upgrades this section's table from the schema older versions created - an unindexed
+     * {@code id TEXT} column without primary key, turning every lookup, update and delete by id
+     * into a full table scan - to the indexed {@link SQLDialect#createTable schema} new tables are
+     * created with, in place: its rows are copied into a new table with the new schema, which
+     * then takes over the old table's name, and the old table is dropped.
+     * <p>
+     * Every step runs in a single {@link SQLExecution#executeTransaction transaction}, so on
+     * vendors with transactional DDL a failed migration (e.g. due to duplicate ids, which the old
+     * schema allowed) leaves the old table untouched; on every other vendor the old table is
+     * only dropped after being renamed out of the way, so no step can lose data either way. A
+     * failed migration is reported and the old table kept as is, still fully usable, only without
+     * the index.
+     *
+     * @param databaseType the SQL vendor to build the migration's DDL for
+     */
+    private void migrate(@NotNull DatabaseType databaseType) {
+
+        final String migration = this.name + "_migration", backup = this.name + "_legacy";
+
+        if (this.sqlExecution.tableExists(migration)) this.sqlExecution.executeUpdate("DROP TABLE " + migration);
+        if (this.sqlExecution.tableExists(backup)) this.sqlExecution.executeUpdate("DROP TABLE " + backup);
+
+        final List<String> statements = new ArrayList<>();
+        statements.add(SQLDialect.createTable(databaseType, migration));
+        statements.add("INSERT INTO " + migration + " (id, data) SELECT id, data FROM " + this.name);
+        statements.addAll(SQLDialect.swapTables(databaseType, this.name, migration, backup));
+        statements.add("DROP TABLE " + backup);
+
+        if (!this.sqlExecution.executeTransaction(statements.toArray(String[]::new)))
+            System.out.println("Table " + this.name + " could not be migrated to an indexed primary key and keeps its old schema");
+
+    }
+
     /**
      * {@inheritDoc}
      * <p>
      * Discards {@link #entries} entirely and re-populates it from every row currently
-     * in this section's table, the same query the constructor itself runs.
+     * in this section's table, the same query the constructor itself runs. In lazy mode, only
+     * the {@link #cache} is discarded instead, so every entry is looked up again on next access.
+     * <p>
+     * With {@link #versioned incremental reloads}, only the tombstones and rows newer than the
+     * {@link #highWaterMark} minus {@link SQLOptions#getIncrementalOverlap() the overlap window}
+     * are fetched and applied, in that order - falling back to a full reload on the first reload,
+     * once the last one is older than {@link SQLOptions#getTombstoneRetention() the tombstone
+     * retention}, after the table was cleared, or if fetching the changes failed.
+     * <p>
+     * Either way, the section's rows of the {@link SQLDialect#EXPIRIES expiry table} are read
+     * again, and every expiry not scheduled yet is, and its expired tombstones are
+     * {@link #pruneTombstones() pruned}.
      */
     @Override
-    @SneakyThrows
     public void reload() {
 
+        this.sqlExecution.flush();
+        this.loadExpiries();
+
+        if (this.cache != null) {
+            this.cache.invalidateAll();
+            return;
+        }
+
+        final long version = this.versioned ? VersionClock.next() : 0;
+        if (!this.reloadChanges()) this.reloadAll();
+
+        this.highWaterMark = version;
+        this.pruneTombstones();
+
+    }
+
+    /**
+     * Re-populates {@link #entries} from every row of this section's table. Reads from the primary if {@link #versioned}, as the next
+     * incremental reload picks up from the version taken on this node before this one.
+     */
+    private void reloadAll() {
+
         this.entries.clear();
 
-        this.sqlExecution.executeQueryAsync("SELECT * FROM " + this.name, resultSet -> {
+        this.sqlExecution.executeQuery(!this.versioned && this.replicaRead(), "SELECT * FROM " + this.name, resultSet -> {
 
             try {
 
                 while (resultSet.next()) {
+                    final DatabaseEntry databaseEntry = this.read(resultSet);
+                    if (databaseEntry != null) this.entries.put(databaseEntry.getId(), databaseEntry);
+                }
+
+            } catch (final SQLException exception) {
+                exception.printStackTrace();
+            }
+
+            return true;
+        }, true);
+
+    }
+
+    /**
+     * Deletes this section's tombstones older than {@link SQLOptions#getTombstoneRetention() the
+     * retention} if {@link #versioned}, at most once per {@link #PRUNE_INTERVAL}, so frequent
+     * incremental reloads neither let the tombstone table grow without bound nor delete from it
+     * every time.
+     */
+    private void pruneTombstones() {
+
+        final long now = System.nanoTime();
+        if (!this.versioned || now - this.prunedAt < PRUNE_INTERVAL) return;
+
+        this.prunedAt = now;
+
+        final long cutoff = VersionClock.ofMillis(System.currentTimeMillis() - this.sqlExecution.getOptions().getTombstoneRetention().toMillis());
+        this.sqlExecution.executeUpdate("DELETE FROM " + SQLDialect.TOMBSTONES + " WHERE section_name = ? AND version < ?", this.name, cutoff);
+
+    }
+
+    /**
+     * Applies every tombstone, then every row, changed since the {@link #highWaterMark} minus
+     * {@link SQLOptions#getIncrementalOverlap() the overlap window} to {@link #entries}. A row
+     * re-inserted after being deleted therefore ends up present, whichever order both changes
+     * are fetched in.
+     *
+     * @return {@code true} if the changes were applied, {@code false} if a full reload is needed
+     * instead
+     */
+    private boolean reloadChanges() {
+
+        if (this.highWaterMark == 0) return false;
+
+        final Optional<SectionChanges> changes = this.changesSince(this.highWaterMark);
+        if (changes.isEmpty()) return false;
+
+        changes.get().deleted().forEach(this.entries::remove);
+        changes.get().written().forEach(databaseEntry -> this.entries.put(databaseEntry.getId(), databaseEntry));
+
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Fetches every tombstone, then every row, with a version newer than {@code version} minus
+     * {@link SQLOptions#getIncrementalOverlap() the overlap window} - always from the primary, as
+     * {@code version} is taken on this node and a replica lagging further behind than the overlap
+     * window would otherwise have changes skipped for good. Always empty unless {@link SQLOptions#isIncrementalReload()
+     * incremental reloads} are enabled, as only then are versions and tombstones recorded.
+     */
+    @Override
+    public @NotNull Optional<SectionChanges> changesSince(long version) {
+
+        if (!this.versioned) return Optional.empty();
+
+        final SQLOptions options = this.sqlExecution.getOptions();
+        if (VersionClock.next() - version > VersionClock.ofMillis(options.getTombstoneRetention().toMillis())) return Optional.empty();
+
+        final long since = version - VersionClock.ofMillis(options.getIncrementalOverlap().toMillis());
 
+        final Optional<List<String>> deleted = this.sqlExecution.executeQuery("SELECT id FROM " + SQLDialect.TOMBSTONES + " WHERE section_name = ? AND version > ?", resultSet -> {
+
+            final List<String> ids = new ArrayList<>();
+
+            try {
+
+                while (resultSet.next()) {
                     final String id = resultSet.getString("id");
-                    final byte[] data = resultSet.getBytes("data");
+                    if (id == null) return Optional.<List<String>>empty();
+                    ids.add(id);
+                }
+
+            } catch (final SQLException exception) {
+                exception.printStackTrace();
+                return Optional.<List<String>>empty();
+            }
+
+            return Optional.of(ids);
+        }, Optional.empty(), this.name, since);
 
-                    if (data == null) throw new NoSuchDataFound(id);
+        if (deleted.isEmpty()) return Optional.empty();
 
-                    try (final InputStream inputStream = new ByteArrayInputStream(data)) {
-                        JsonDocument jsonDocument = new JsonDocument(inputStream);
-                        this.entries.put(id, new DatabaseEntry(id, jsonDocument));
-                    } catch (final IOException exception) {
-                        exception.printStackTrace();
-                    }
+        final Optional<List<DatabaseEntry>> written = this.sqlExecution.executeQuery("SELECT * FROM " + this.name + " WHERE version > ?", resultSet -> {
+
+            final List<DatabaseEntry> databaseEntries = new ArrayList<>();
+
+            try {
 
+                while (resultSet.next()) {
+                    final DatabaseEntry databaseEntry = this.read(resultSet);
+                    if (databaseEntry != null) databaseEntries.add(databaseEntry);
                 }
 
             } catch (final SQLException exception) {
                 exception.printStackTrace();
+                return Optional.<List<DatabaseEntry>>empty();
             }
 
-            return true;
-        }, true).get();
+            return Optional.of(databaseEntries);
+        }, Optional.empty(), since);
 
+        return written.map(databaseEntries -> new SectionChanges(databaseEntries, deleted.get()));
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Returns the bounded executor of the {@link SQLExecution} this section shares with every
+     * other section of its database, so async operations never block the common pool.
+     */
+    @Override
+    public @NotNull Executor getExecutor() {
+        return this.sqlExecution.getExecutor();
     }
 
     @Override
     public void insert(@NotNull DatabaseEntry databaseEntry) {
 
-        if (this.entries.putIfAbsent(databaseEntry.getId(), databaseEntry) != null) throw new DataAlreadyExist(databaseEntry.getId());
+        if (this.cache != null) {
+            if (this.exists(databaseEntry.getId())) throw new DataAlreadyExist(databaseEntry.getId());
+        } else if (this.entries.putIfAbsent(databaseEntry.getId(), databaseEntry) != null) throw new DataAlreadyExist(databaseEntry.getId());
 
-        this.sqlExecution.executeUpdate("INSERT INTO " + this.name + " (id, data) VALUES (?, ?);", databaseEntry.getId(), databaseEntry.getDocument().toBytes());
+        this.write(databaseEntry, this.insertQuery(), this.insertParameters(databaseEntry));
+        if (this.cache != null) this.cache.put(databaseEntry.getId(), Optional.of(databaseEntry));
 
         DatabaseRepositoryRegistry.logBytes("The database entry contained %d Bytes", databaseEntry.getDocument());
 
     }
 
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Inserts the row, then records its deadline in the {@link SQLDialect#EXPIRIES expiry table} -
+     * created on first use - so it expires even if this instance stops before; the shared
+     * {@link ExpiryWheel} deletes it right at the deadline while this instance runs.
+     */
+    @Override
+    public void insert(@NotNull DatabaseEntry databaseEntry, @NotNull Duration ttl) {
+
+        if (ttl.isNegative() || ttl.isZero()) throw new IllegalArgumentException("@SQLDatabaseSection.insert: The time to live must be positive");
+
+        final long expiresAt = System.currentTimeMillis() + ttl.toMillis();
+        this.sqlExecution.createExpiries();
+
+        this.insert(databaseEntry);
+        this.sqlExecution.executeUpdate("INSERT INTO " + SQLDialect.EXPIRIES + " (section_name, id, expires_at) VALUES (?, ?, ?)", this.name, databaseEntry.getId(), expiresAt);
+
+        final ExpiryWheel.Timeout previous = this.expiring.put(databaseEntry.getId(), this.schedule(databaseEntry.getId(), expiresAt));
+        if (previous != null) previous.cancel();
+
+    }
+
     @Override
     public void update(@NotNull DatabaseEntry databaseEntry) {
 
         if (!this.exists(databaseEntry.getId())) throw new NoSuchEntryFound(databaseEntry.getId());
 
-        this.sqlExecution.executeUpdate("UPDATE " + this.name + " SET data = ? WHERE id = ?", databaseEntry.getDocument().toBytes(), databaseEntry.getId());
-        this.entries.put(databaseEntry.getId(), databaseEntry);
+        this.persist(databaseEntry.getId());
+        this.write(databaseEntry, this.updateQuery(), this.updateParameters(databaseEntry));
+        this.remember(databaseEntry);
+
+        DatabaseRepositoryRegistry.logBytes("The database entry contained %d Bytes", databaseEntry.getDocument());
+
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Runs the vendor's native {@link SQLDialect#upsert upsert statement} - a single round trip,
+     * with no check-then-act race against concurrent writers - falling back to the default
+     * check-then-act only on vendors without one, or if this table has no primary key for it to
+     * conflict on.
+     */
+    @Override
+    public void upsert(@NotNull DatabaseEntry databaseEntry) {
+
+        final String query = this.keyed ? SQLDialect.upsert(this.sqlExecution.getDatabaseType(), this.name, this.dataParameter(), this.versioned) : null;
+
+        if (query == null) {
+            CoherentSection.super.upsert(databaseEntry);
+            return;
+        }
+
+        this.persist(databaseEntry.getId());
+        this.write(databaseEntry, query, this.insertParameters(databaseEntry));
+        this.remember(databaseEntry);
 
         DatabaseRepositoryRegistry.logBytes("The database entry contained %d Bytes", databaseEntry.getDocument());
 
@@ -147,35 +524,697 @@ public class SQLDatabaseSection implements DatabaseSection {
 
         if (!this.exists(id)) throw new NoSuchEntryFound(id);
 
-        this.sqlExecution.executeUpdate("DELETE FROM " + this.name + " WHERE id = ?", id);
-        this.entries.remove(id);
+        this.persist(id);
+        this.erase(id);
+        this.forget(id);
+
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Every id is reserved in {@link #entries} first - if any of them is already taken, every id
+     * reserved so far is released again and nothing is written - then every row is sent through
+     * a single {@link SQLExecution#executeBatch JDBC batch}. In lazy mode, every id is checked
+     * through {@link #exists} instead.
+     */
+    @Override
+    public void insertAll(@NotNull Collection<DatabaseEntry> databaseEntries) {
+
+        final List<Object[]> parameters = new ArrayList<>(databaseEntries.size());
+        final List<String> reserved = new ArrayList<>(databaseEntries.size());
+
+        for (final DatabaseEntry databaseEntry : databaseEntries) {
+
+            final boolean taken = this.cache != null ? this.exists(databaseEntry.getId()) : this.entries.putIfAbsent(databaseEntry.getId(), databaseEntry) != null;
+
+            if (taken) {
+                if (this.cache == null) reserved.forEach(this.entries::remove);
+                throw new DataAlreadyExist(databaseEntry.getId());
+            }
+
+            reserved.add(databaseEntry.getId());
+            parameters.add(this.insertParameters(databaseEntry));
+        }
+
+        this.writeAll(databaseEntries, this.insertQuery(), parameters);
+        if (this.cache != null) databaseEntries.forEach(this::remember);
+
+        databaseEntries.forEach(databaseEntry -> DatabaseRepositoryRegistry.logBytes("The database entry contained %d Bytes", databaseEntry.getDocument()));
+
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Flushes the {@link SQLWriteBehind write-behind queue} first, then loads every row through
+     * the vendor's {@link SQLBulkLoader bulk-ingest path}, or a single
+     * {@link SQLExecution#executeBatch JDBC batch} where there is none. Either way, a taken id
+     * fails the load - the bulk path's whole load, or the batch's chunk holding it.
+     */
+    @Override
+    public void bulkInsert(@NotNull Collection<DatabaseEntry> databaseEntries) {
+
+        if (databaseEntries.isEmpty()) return;
+        this.sqlExecution.flush();
+
+        final List<Object[]> rows = databaseEntries.stream().map(this::insertParameters).toList();
+        if (!this.sqlExecution.getBulkLoader().load(this.name, this.json, this.versioned, rows)) this.sqlExecution.executeBatch(this.insertQuery(), rows);
+
+        this.wrote();
+        databaseEntries.forEach(this::remember);
+        this.publish(databaseEntries.stream().map(DatabaseEntry::getId).toList());
 
     }
 
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Every id is checked against {@link #entries} before anything is written, then every row is
+     * sent through a single {@link SQLExecution#executeBatch JDBC batch}.
+     */
+    @Override
+    public void updateAll(@NotNull Collection<DatabaseEntry> databaseEntries) {
+
+        final List<Object[]> parameters = new ArrayList<>(databaseEntries.size());
+
+        for (final DatabaseEntry databaseEntry : databaseEntries) {
+            if (!this.exists(databaseEntry.getId())) throw new NoSuchEntryFound(databaseEntry.getId());
+            parameters.add(this.updateParameters(databaseEntry));
+        }
+
+        databaseEntries.forEach(databaseEntry -> this.persist(databaseEntry.getId()));
+        this.writeAll(databaseEntries, this.updateQuery(), parameters);
+        databaseEntries.forEach(this::remember);
+
+        databaseEntries.forEach(databaseEntry -> DatabaseRepositoryRegistry.logBytes("The database entry contained %d Bytes", databaseEntry.getDocument()));
+
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Every id is checked against {@link #entries} before anything is deleted, then every row is
+     * deleted through a single {@link SQLExecution#executeBatch JDBC batch}.
+     */
+    @Override
+    public void deleteAll(@NotNull Collection<String> ids) {
+
+        for (final String id : ids) if (!this.exists(id)) throw new NoSuchEntryFound(id);
+
+        ids.forEach(this::persist);
+
+        final SQLWriteBehind writeBehind = this.writeBehind();
+        if (writeBehind != null) ids.forEach(this::erase);
+        else {
+            this.sqlExecution.executeBatch("DELETE FROM " + this.name + " WHERE id = ?", ids.stream().map(id -> new Object[]{id}).toList());
+            this.wrote();
+            if (this.versioned) this.sqlExecution.executeBatch(tombstoneQuery(), ids.stream().map(id -> new Object[]{this.name, id, VersionClock.next()}).toList());
+            this.publish(ids);
+        }
+
+        ids.forEach(this::forget);
+
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Runs {@code SELECT COUNT(*)} in lazy mode, since {@link #entries} is never populated there.
+     */
     @Override
     public long count() {
-        return this.entries.size();
+
+        if (this.cache == null) return this.entries.size();
+
+        this.sqlExecution.flush();
+        return this.sqlExecution.executeQuery(this.replicaRead(), "SELECT COUNT(*) FROM " + this.name, resultSet -> {
+
+            try {
+                return resultSet.next() ? resultSet.getLong(1) : 0L;
+            } catch (final SQLException exception) {
+                exception.printStackTrace();
+            }
+
+            return 0L;
+        }, 0L);
     }
 
     @Override
     public void clear() {
+        this.sqlExecution.discard(this.name);
+        this.wrote();
         this.sqlExecution.executeUpdate("TRUNCATE TABLE " + this.name);
+        if (this.versioned) this.sqlExecution.executeUpdate("INSERT INTO " + SQLDialect.TOMBSTONES + " (section_name, id, version) VALUES (?, NULL, ?)", this.name, VersionClock.next());
+        if (this.sqlExecution.hasExpiries()) this.sqlExecution.executeUpdate("DELETE FROM " + SQLDialect.EXPIRIES + " WHERE section_name = ?", this.name);
+        this.expiring.values().forEach(ExpiryWheel.Timeout::cancel);
+        this.expiring.clear();
         this.entries.clear();
+        if (this.cache != null) this.cache.invalidateAll();
+        this.publish(null);
     }
 
     @Override
     public boolean exists(@NotNull String id) {
-        return this.entries.containsKey(id);
+        return this.cache != null ? this.findEntryById(id).isPresent() : this.entries.containsKey(id);
     }
 
     @Override
     public Optional<DatabaseEntry> findEntryById(@NotNull String id) {
-        return Optional.ofNullable(this.entries.get(id));
+        return this.cache != null ? this.cache.get(id).join() : Optional.ofNullable(this.entries.get(id));
     }
 
+    /**
+     * {@inheritDoc}
+     * <p>
+     * In lazy mode, this reads and materializes the whole table on every call; prefer
+     * {@link #stream()} or {@link #forEachEntry} for scans there.
+     */
     @Override
     public @UnmodifiableView List<DatabaseEntry> getEntries() {
-        return List.copyOf(this.entries.values());
+
+        if (this.cache == null) return List.copyOf(this.entries.values());
+
+        try (final Stream<DatabaseEntry> stream = this.stream()) {
+            return stream.toList();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Streams {@link #entries} directly in eager mode; in lazy mode, streams a forward-only cursor
+     * over the whole table via {@link SQLExecution#executeStream}, fetching
+     * {@link SQLOptions#getFetchSize()} rows per round trip.
+     */
+    @Override
+    public Stream<DatabaseEntry> stream() {
+
+        if (this.cache == null) return this.entries.values().stream();
+
+        this.sqlExecution.flush();
+        return this.sqlExecution.executeStream(this.replicaRead(), "SELECT * FROM " + this.name, resultSet -> {
+
+            try {
+                return this.read(resultSet);
+            } catch (final SQLException exception) {
+                throw new IllegalStateException("@SQLDatabaseSection.stream: Failed to read row of " + this.name, exception);
+            }
+
+        });
+    }
+
+    @Override
+    public void forEachEntry(@NotNull Consumer<DatabaseEntry> consumer) {
+
+        if (this.cache == null) {
+            this.entries.values().forEach(consumer);
+            return;
+        }
+
+        CoherentSection.super.forEachEntry(consumer);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * On a native JSON column, the rows are filtered on the server through the vendor's
+     * {@link SQLDialect#fieldFilter field filter} - served by the table's GIN index on
+     * PostgreSQL, or by an index created via {@link #indexField} on MySQL and SQLite - and only
+     * the candidate rows are read and re-checked against the exact value. Falls back to the
+     * default in-memory filter on BLOB columns, and on vendors or values the server cannot
+     * compare.
+     *
+     * @throws IllegalArgumentException if {@code path} is not a plain dotted identifier path
+     */
+    @Override
+    public List<DatabaseEntry> findByField(@NotNull String path, @NotNull Object value) {
+
+        final DatabaseType databaseType = this.sqlExecution.getDatabaseType();
+        final String filter = this.json ? SQLDialect.fieldFilter(databaseType, path) : null;
+        final Object parameter = filter != null ? SQLDialect.fieldParameter(databaseType, path, value) : null;
+
+        if (parameter == null) return CoherentSection.super.findByField(path, value);
+
+        this.sqlExecution.flush();
+        try (final Stream<DatabaseEntry> stream = this.sqlExecution.executeStream(this.replicaRead(), "SELECT * FROM " + this.name + " WHERE " + filter, resultSet -> {
+
+            try {
+                return this.read(resultSet);
+            } catch (final SQLException exception) {
+                throw new IllegalStateException("@SQLDatabaseSection.findByField: Failed to read row of " + this.name, exception);
+            }
+
+        }, parameter)) {
+            return stream.filter(databaseEntry -> databaseEntry.getDocument().matches(path, value)).toList();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * In lazy mode, only drops {@code id} from the {@link #cache}. Otherwise the row is read
+     * first, and only applied to {@link #entries} if the entry there is still the one seen before
+     * the read: a concurrent local write to the same id - which commits before updating
+     * {@link #entries} - therefore always wins over a possibly older read, and no lock is held
+     * during the round trip.
+     */
+    @Override
+    public void refresh(@NotNull String id) {
+
+        if (this.cache != null) {
+            this.cache.invalidate(id);
+            return;
+        }
+
+        final DatabaseEntry before = this.entries.get(id);
+        final DatabaseEntry fetched = this.select(id, false).orElse(null);
+
+        this.entries.compute(id, (key, current) -> current == before ? fetched : current);
+    }
+
+    /**
+     * Creates an index on the field at the dotted {@code path} of this table's native JSON
+     * column, serving {@link #findByField} on that path, unless it already exists. Only MySQL
+     * and SQLite need one per field; PostgreSQL's GIN index already covers every field.
+     *
+     * @param path the dot-separated keys leading to the field, from the document's root
+     * @return {@code true} if the index exists afterwards, {@code false} if this table has no
+     * JSON column or the vendor cannot index single fields
+     * @throws IllegalArgumentException if {@code path} is not a plain dotted identifier path
+     */
+    public boolean indexField(@NotNull String path) {
+
+        if (!this.json) return false;
+
+        final String index = this.name + "_" + path.replace('.', '_') + "_idx";
+        final String query = SQLDialect.createFieldIndex(this.sqlExecution.getDatabaseType(), this.name, index, path);
+
+        if (query == null) return false;
+        if (!this.sqlExecution.indexExists(this.name, index)) this.sqlExecution.executeUpdate(query);
+
+        return this.sqlExecution.indexExists(this.name, index);
+    }
+
+    /**
+     * Looks a single row up by id straight from the database, bypassing {@link #cache} - unless a
+     * write to it is still pending in the {@link SQLWriteBehind write-behind queue}, in which case
+     * that write's state is returned instead; the {@link #cache} loader in lazy mode.
+     *
+     * @param id      primary key
+     * @param replica whether the row may be read from a replica; {@link #refresh} never does, as
+     *                the peer's write it was notified of may not have replicated yet
+     * @return the matching entry, or empty if no row exists under the given id
+     */
+    private Optional<DatabaseEntry> select(@NotNull String id, boolean replica) {
+
+        final SQLWriteBehind writeBehind = this.writeBehind();
+
+        if (writeBehind != null) {
+            final Optional<Optional<DatabaseEntry>> pending = writeBehind.lookup(this.name, id);
+            if (pending.isPresent()) return pending.get();
+        }
+
+        return this.sqlExecution.executeQuery(replica, "SELECT * FROM " + this.name + " WHERE id = ?", resultSet -> {
+
+            try {
+                return resultSet.next() ? Optional.ofNullable(this.read(resultSet)) : Optional.<DatabaseEntry>empty();
+            } catch (final SQLException exception) {
+                exception.printStackTrace();
+            }
+
+            return Optional.<DatabaseEntry>empty();
+        }, Optional.empty(), id);
+    }
+
+    /**
+     * Get the {@link SQLWriteBehind write-behind queue} this section's writes go through.
+     *
+     * @return the queue, or {@code null} if write-behind is disabled or this table has no
+     * primary key for the queue's upserts to conflict on
+     */
+    private @Nullable SQLWriteBehind writeBehind() {
+        return this.keyed ? this.sqlExecution.getWriteBehind() : null;
+    }
+
+    /**
+     * Runs {@code query} to write {@code databaseEntry} - or, if the
+     * {@link SQLWriteBehind write-behind queue} is enabled, enqueues the equivalent idempotent
+     * {@link SQLDialect#upsert upsert} there instead, returning before it is committed.
+     *
+     * @param databaseEntry the entry written
+     * @param query         the parameterized statement writing it synchronously
+     * @param objects       the values to bind to {@code query}, in placeholder order
+     */
+    private void write(@NotNull DatabaseEntry databaseEntry, @NotNull String query, @NonNls Object... objects) {
+
+        final SQLWriteBehind writeBehind = this.writeBehind();
+        this.wrote();
+
+        if (writeBehind == null) {
+            this.sqlExecution.executeUpdate(query, objects);
+            this.publish(List.of(databaseEntry.getId()));
+            return;
+        }
+
+        final String upsert = Objects.requireNonNull(SQLDialect.upsert(this.sqlExecution.getDatabaseType(), this.name, this.dataParameter(), this.versioned));
+        writeBehind.enqueue(this.name, databaseEntry.getId(), databaseEntry, upsert, this.insertParameters(databaseEntry));
+
+    }
+
+    /**
+     * The batched counterpart of {@link #write}: sends {@code parameters} through a single
+     * {@link SQLExecution#executeBatch JDBC batch} of {@code query}, or enqueues every entry
+     * separately if the {@link SQLWriteBehind write-behind queue} is enabled.
+     *
+     * @param databaseEntries the entries written
+     * @param query           the parameterized statement writing each of them synchronously
+     * @param parameters      the values to bind to {@code query} per entry, in placeholder order
+     */
+    private void writeAll(@NotNull Collection<DatabaseEntry> databaseEntries, @NotNull String query, @NotNull List<Object[]> parameters) {
+
+        if (this.writeBehind() == null) {
+            this.sqlExecution.executeBatch(query, parameters);
+            this.wrote();
+            this.publish(databaseEntries.stream().map(DatabaseEntry::getId).toList());
+            return;
+        }
+
+        databaseEntries.forEach(databaseEntry -> this.write(databaseEntry, query));
+    }
+
+    /**
+     * Deletes row {@code id} - or, if the {@link SQLWriteBehind write-behind queue} is enabled,
+     * enqueues its deletion there instead, returning before it is committed - and, if
+     * {@link #versioned}, records its tombstone the same way.
+     *
+     * @param id primary key of the row to delete
+     */
+    private void erase(@NotNull String id) {
+
+        final SQLWriteBehind writeBehind = this.writeBehind();
+        final String query = "DELETE FROM " + this.name + " WHERE id = ?";
+        this.wrote();
+
+        if (writeBehind == null) this.sqlExecution.executeUpdate(query, id);
+        else writeBehind.enqueue(this.name, id, null, query, id);
+
+        if (this.versioned) {
+            final Object[] tombstone = {this.name, id, VersionClock.next()};
+            if (writeBehind == null) this.sqlExecution.executeUpdate(tombstoneQuery(), tombstone);
+            else writeBehind.enqueue(SQLDialect.TOMBSTONES, this.name + "/" + id, null, tombstoneQuery(), tombstone);
+        }
+
+        if (writeBehind == null) this.publish(List.of(id));
+
+    }
+
+    /**
+     * Deletes every row of {@code ids} whose deadline in the {@link SQLDialect#EXPIRIES expiry
+     * table} has passed, together with that deadline, leaving a tombstone if {@link #versioned}.
+     * Called by the shared {@link ExpiryWheel} at an entry's deadline and by the owning provider's
+     * sweep. A row whose expiry was dropped in the meantime - by an update on any instance - is
+     * kept, as every delete is guarded by the deadline still being recorded: only the rows
+     * actually deleted get a tombstone and are dropped locally, every other id is
+     * {@link #refresh refreshed} instead.
+     *
+     * @param ids primary keys of entries whose time to live may have elapsed
+     */
+    void expire(@NotNull Collection<String> ids) {
+
+        if (ids.isEmpty()) return;
+
+        final long now = System.currentTimeMillis();
+        final List<Object[]> expired = ids.stream().map(id -> new Object[]{id, this.name, id, now}).toList();
+
+        this.sqlExecution.flush();
+        final int[] counts = this.sqlExecution.executeBatch("DELETE FROM " + this.name + " WHERE id = ? AND id IN (SELECT id FROM " + SQLDialect.EXPIRIES + " WHERE section_name = ? AND id = ? AND expires_at <= ?)", expired);
+        this.wrote();
+
+        final Set<String> deleted = new HashSet<>();
+        for (int i = 0; i < counts.length; i++) {
+            final String id = (String) expired.get(i)[0];
+            if (counts[i] > 0 || (counts[i] == Statement.SUCCESS_NO_INFO && this.select(id, false).isEmpty())) deleted.add(id);
+        }
+
+        if (this.versioned) this.sqlExecution.executeBatch(tombstoneQuery(), deleted.stream().map(id -> new Object[]{this.name, id, VersionClock.next()}).toList());
+        this.sqlExecution.executeBatch("DELETE FROM " + SQLDialect.EXPIRIES + " WHERE section_name = ? AND id = ? AND expires_at <= ?", ids.stream().map(id -> new Object[]{this.name, id, now}).toList());
+
+        for (final String id : ids) {
+
+            final ExpiryWheel.Timeout timeout = this.expiring.remove(id);
+            if (timeout != null) timeout.cancel();
+
+            if (deleted.contains(id)) this.forget(id);
+            else this.refresh(id);
+        }
+
+        if (!deleted.isEmpty()) this.publish(deleted);
+
+    }
+
+    /**
+     * Re-reads this section's rows of the {@link SQLDialect#EXPIRIES expiry table}, scheduling
+     * every deadline not scheduled yet and cancelling every one no longer recorded. Keeps the
+     * scheduled expiries if reading fails.
+     */
+    private void loadExpiries() {
+
+        if (!this.sqlExecution.hasExpiries()) return;
+
+        final Optional<Map<String, Long>> deadlines = this.sqlExecution.executeQuery(this.replicaRead(), "SELECT id, expires_at FROM " + SQLDialect.EXPIRIES + " WHERE section_name = ?", resultSet -> {
+
+            final Map<String, Long> expiresAt = Maps.newHashMap();
+
+            try {
+                while (resultSet.next()) expiresAt.put(resultSet.getString("id"), resultSet.getLong("expires_at"));
+            } catch (final SQLException exception) {
+                exception.printStackTrace();
+                return Optional.<Map<String, Long>>empty();
+            }
+
+            return Optional.of(expiresAt);
+        }, Optional.empty(), this.name);
+
+        if (deadlines.isEmpty()) return;
+
+        this.expiring.entrySet().removeIf(entry -> {
+            if (deadlines.get().containsKey(entry.getKey())) return false;
+            entry.getValue().cancel();
+            return true;
+        });
+
+        deadlines.get().forEach((id, expiresAt) -> this.expiring.computeIfAbsent(id, key -> this.schedule(key, expiresAt)));
+
+    }
+
+    /**
+     * Schedules {@link #expire expiring} {@code id} on this section's executor at
+     * {@code expiresAt}.
+     *
+     * @param id        primary key of the entry
+     * @param expiresAt the entry's deadline, in milliseconds since the epoch
+     * @return the pending expiry
+     */
+    private @NotNull ExpiryWheel.Timeout schedule(@NotNull String id, long expiresAt) {
+        return ExpiryWheel.getInstance().schedule(Duration.ofMillis(expiresAt - System.currentTimeMillis()), () -> this.getExecutor().execute(() -> {
+            try {
+                this.expire(List.of(id));
+            } catch (final RuntimeException exception) {
+                exception.printStackTrace();
+            }
+        }));
+    }
+
+    /**
+     * Drops the time to live of {@code id}, if it is known to carry one, before it is written or
+     * deleted.
+     *
+     * @param id primary key of the entry
+     */
+    private void persist(@NotNull String id) {
+
+        final ExpiryWheel.Timeout timeout = this.expiring.remove(id);
+        if (timeout == null) return;
+
+        timeout.cancel();
+        this.sqlExecution.executeUpdate("DELETE FROM " + SQLDialect.EXPIRIES + " WHERE section_name = ? AND id = ?", this.name, id);
+
+    }
+
+    /**
+     * Extends the {@link #primaryUntil read-after-write window} past a write of this section,
+     * called once a batch has committed, or as a single write is issued or enqueued.
+     */
+    private void wrote() {
+        this.primaryUntil = System.nanoTime() + this.readAfterWrite;
+    }
+
+    /**
+     * Checks whether the next read of this section may be served by a replica, i.e. whether its
+     * {@link #primaryUntil read-after-write window} has passed.
+     *
+     * @return {@code true} if reading from a replica is safe, {@code false} to read from the
+     * primary
+     */
+    private boolean replicaRead() {
+        return System.nanoTime() - this.primaryUntil >= 0;
+    }
+
+    /**
+     * Announces a committed write to peer instances through the
+     * {@link SQLExecution#getChangeFeed() change feed}, if one is installed.
+     *
+     * @param ids the ids written or deleted, or {@code null} if the whole table changed
+     */
+    private void publish(@Nullable Collection<String> ids) {
+        final ChangeFeed changeFeed = this.sqlExecution.getChangeFeed();
+        if (changeFeed != null) changeFeed.publish(this.name, ids);
+    }
+
+    /**
+     * Builds the statement inserting a new row, taking {@link #insertParameters} as parameters.
+     *
+     * @return the parameterized {@code INSERT} statement
+     */
+    private @NotNull String insertQuery() {
+        return this.versioned
+                ? "INSERT INTO " + this.name + " (id, data, version) VALUES (?, " + this.dataParameter() + ", ?)"
+                : "INSERT INTO " + this.name + " (id, data) VALUES (?, " + this.dataParameter() + ")";
+    }
+
+    /**
+     * Builds the statement overwriting an existing row, taking {@link #updateParameters} as
+     * parameters.
+     *
+     * @return the parameterized {@code UPDATE} statement
+     */
+    private @NotNull String updateQuery() {
+        return "UPDATE " + this.name + " SET data = " + this.dataParameter() + (this.versioned ? ", version = ?" : "") + " WHERE id = ?";
+    }
+
+    /**
+     * Builds the parameters of {@link #insertQuery} and the {@link SQLDialect#upsert upsert}:
+     * {@code databaseEntry}'s id, its {@link #payload}, and a fresh version if {@link #versioned}.
+     *
+     * @param databaseEntry the entry to write
+     * @return the values to bind, in placeholder order
+     */
+    private Object @NotNull [] insertParameters(@NotNull DatabaseEntry databaseEntry) {
+        return this.versioned
+                ? new Object[]{databaseEntry.getId(), this.payload(databaseEntry), VersionClock.next()}
+                : new Object[]{databaseEntry.getId(), this.payload(databaseEntry)};
+    }
+
+    /**
+     * Builds the parameters of {@link #updateQuery}: {@code databaseEntry}'s {@link #payload},
+     * a fresh version if {@link #versioned}, and its id.
+     *
+     * @param databaseEntry the entry to write
+     * @return the values to bind, in placeholder order
+     */
+    private Object @NotNull [] updateParameters(@NotNull DatabaseEntry databaseEntry) {
+        return this.versioned
+                ? new Object[]{this.payload(databaseEntry), VersionClock.next(), databaseEntry.getId()}
+                : new Object[]{this.payload(databaseEntry), databaseEntry.getId()};
+    }
+
+    /**
+     * Builds the statement recording a tombstone, taking the section name, the deleted id and
+     * the delete's version as parameters.
+     *
+     * @return the parameterized {@code INSERT} statement
+     */
+    private static @NotNull String tombstoneQuery() {
+        return "INSERT INTO " + SQLDialect.TOMBSTONES + " (section_name, id, version) VALUES (?, ?, ?)";
+    }
+
+    /**
+     * Serializes {@code databaseEntry}'s document into the value stored in its row's
+     * {@code data} column: plain JSON text for a {@link #json native JSON column}, otherwise
+     * bytes encoded with the configured {@link SQLOptions#getCodec() codec}.
+     *
+     * @param databaseEntry the entry to serialize
+     * @return the value to store
+     */
+    private Object payload(@NotNull DatabaseEntry databaseEntry) {
+
+        if (this.json) return databaseEntry.getDocument().toJson();
+        return this.sqlExecution.getOptions().getCodec().encode(databaseEntry.getDocument().toBytes());
+    }
+
+    /**
+     * Builds the placeholder expression the {@code data} column's value is bound through.
+     *
+     * @return {@link SQLDialect#jsonParameter} for a {@link #json native JSON column}, a plain
+     * placeholder otherwise
+     */
+    private @NotNull String dataParameter() {
+        return this.json ? SQLDialect.jsonParameter(this.sqlExecution.getDatabaseType()) : "?";
+    }
+
+    /**
+     * Checks whether a column of JDBC type {@code type} holds binary data, i.e. is a BLOB rather
+     * than a native JSON column. Unknown types count as binary, the only storage older versions
+     * created.
+     *
+     * @param type the column's {@link Types JDBC type}
+     * @return {@code true} if the column is binary or its type unknown
+     */
+    private static boolean isBinary(int type) {
+        return type == Types.BINARY || type == Types.VARBINARY || type == Types.LONGVARBINARY || type == Types.BLOB || type == Types.NULL;
+    }
+
+    /**
+     * Parses the row {@code resultSet} currently points at into a {@link DatabaseEntry}.
+     *
+     * @param resultSet the result set, positioned on the row to read
+     * @return the parsed entry, or {@code null} if its document could not be read
+     * @throws SQLException     if reading either column fails
+     * @throws NoSuchDataFound if the row has no {@code data}
+     */
+    private @Nullable DatabaseEntry read(@NotNull ResultSet resultSet) throws SQLException {
+
+        final String id = resultSet.getString("id");
+
+        if (this.json) {
+            final String data = resultSet.getString("data");
+            if (data == null) throw new NoSuchDataFound(id);
+            return new DatabaseEntry(id, new JsonDocument(data));
+        }
+
+        final byte[] data = resultSet.getBytes("data");
+
+        if (data == null) throw new NoSuchDataFound(id);
+
+        try (final InputStream inputStream = new ByteArrayInputStream(PayloadCodec.decode(data))) {
+            return new DatabaseEntry(id, new JsonDocument(inputStream));
+        } catch (final IOException exception) {
+            exception.printStackTrace();
+        }
+
+        return null;
+    }
+
+    /**
+     * Records {@code databaseEntry} as this section's current state of its id, in {@link #cache}
+     * in lazy mode, in {@link #entries} otherwise.
+     *
+     * @param databaseEntry the entry just written
+     */
+    private void remember(@NotNull DatabaseEntry databaseEntry) {
+        if (this.cache != null) this.cache.put(databaseEntry.getId(), Optional.of(databaseEntry));
+        else this.entries.put(databaseEntry.getId(), databaseEntry);
+    }
+
+    /**
+     * Records {@code id} as deleted, in {@link #cache} in lazy mode, in {@link #entries} otherwise.
+     *
+     * @param id primary key of the entry just deleted
+     */
+    private void forget(@NotNull String id) {
+        if (this.cache != null) this.cache.put(id, Optional.empty());
+        else this.entries.remove(id);
     }
 
 }
@@ -0,0 +1,472 @@
+package de.lino.database.database.sql;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+import de.lino.database.database.DatabaseType;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * The vendor-specific SQL every {@link SQLDatabaseSection} needs beyond plain, portable
+ * {@code SELECT}/{@code INSERT}/{@code UPDATE}/{@code DELETE} statements - column types, table
+ * DDL, table renames, upserts, driver properties, JSON field filters and row versions - built per {@link DatabaseType} the same way
+ * {@link SQLDatabaseProvider}'s table-listing query is.
+ */
+public final class SQLDialect {
+
+    /**
+     * The column type of every section table's {@code id} primary key. A bounded {@code VARCHAR}
+     * rather than {@code TEXT}, since MySQL and MariaDB cannot index {@code TEXT} columns without
+     * a prefix length, and every other vendor indexes a bounded column at least as well.
+     */
+    public static final String ID_TYPE = "VARCHAR(255)";
+
+    /**
+     * The table every section of a database running with
+     * {@link SQLOptions#isIncrementalReload() incremental reloads} records its deletes in, one
+     * row per deleted id - or a {@code NULL} id for a cleared section - stamped with the delete's
+     * version. Never loaded as a section itself.
+     */
+    public static final String TOMBSTONES = "database_tombstones";
+
+    /**
+     * The table every section records the deadline of each entry
+     * {@link SQLDatabaseSection#insert(de.lino.database.database.entity.DatabaseEntry, java.time.Duration)
+     * inserted with a time to live} in, one row per entry holding its expiry in milliseconds since
+     * the epoch. Created on first use and never loaded as a section itself.
+     */
+    public static final String EXPIRIES = "database_expiries";
+
+    /**
+     * The dotted field paths {@link #fieldFilter} and {@link #createFieldIndex} accept. Paths are
+     * spliced into SQL as JSON path literals, so only plain identifier segments are allowed.
+     */
+    private static final Pattern FIELD_PATH = Pattern.compile("[A-Za-z0-9_]+(\\.[A-Za-z0-9_]+)*");
+
+    /**
+     * Serializes the values {@link #fieldParameter} binds.
+     */
+    private static final Gson GSON = new Gson();
+
+    private SQLDialect() {
+    }
+
+    /**
+     * Picks {@code databaseType}'s binary column type for every section table's {@code data}
+     * column.
+     *
+     * @param databaseType the SQL vendor to pick a column type for
+     * @return the vendor-specific BLOB column type
+     */
+    public static @NotNull String blobType(@NotNull DatabaseType databaseType) {
+
+        return switch (databaseType) {
+            case POSTGRES_SQL -> "BYTEA";
+            case MY_SQL, MARIA_DB -> "LONGBLOB";
+            case MICROSOFT_SQL_SERVER -> "VARBINARY(MAX)";
+            default -> "BLOB";
+        };
+    }
+
+    /**
+     * Picks the JDBC driver properties every connection to {@code databaseType} is opened with by
+     * default: server-side prepared statement caching, batch rewriting and cursor-based fetching
+     * on MySQL, their counterparts on MariaDB, and batched insert rewriting on PostgreSQL. Every
+     * other vendor's driver is left at its defaults, as it would reject or ignore foreign
+     * properties. {@link SQLOptions#getDriverProperties()} overrides any of them.
+     *
+     * @param databaseType the SQL vendor to pick driver properties for
+     * @return the vendor-specific driver properties, possibly empty
+     */
+    public static @NotNull Map<String, String> driverProperties(@NotNull DatabaseType databaseType) {
+
+        return switch (databaseType) {
+            case MY_SQL -> Map.ofEntries(
+                    Map.entry("cachePrepStmts", "true"),
+                    Map.entry("prepStmtCacheSize", "250"),
+                    Map.entry("prepStmtCacheSqlLimit", "2048"),
+                    Map.entry("useServerPrepStmts", "true"),
+                    Map.entry("useLocalSessionState", "true"),
+                    Map.entry("rewriteBatchedStatements", "true"),
+                    Map.entry("cacheResultSetMetadata", "true"),
+                    Map.entry("cacheServerConfiguration", "true"),
+                    Map.entry("elideSetAutoCommits", "true"),
+                    Map.entry("maintainTimeStats", "false"),
+                    Map.entry("useCursorFetch", "true"));
+            case MARIA_DB -> Map.of(
+                    "cachePrepStmts", "true",
+                    "prepStmtCacheSize", "250",
+                    "useServerPrepStmts", "true",
+                    "useBulkStmts", "true");
+            case POSTGRES_SQL -> Map.of("reWriteBatchedInserts", "true");
+            default -> Map.of();
+        };
+    }
+
+    /**
+     * Picks {@code databaseType}'s native JSON column type for section tables created with
+     * {@link SQLOptions#isJsonStorage() JSON storage}: {@code JSONB} on PostgreSQL, {@code JSON}
+     * on MySQL, MariaDB and H2, and {@code TEXT} on SQLite, whose JSON functions work on text.
+     *
+     * @param databaseType the SQL vendor to pick a column type for
+     * @return the vendor-specific JSON column type, or {@code null} if the vendor has none
+     */
+    public static @Nullable String jsonType(@NotNull DatabaseType databaseType) {
+
+        return switch (databaseType) {
+            case POSTGRES_SQL -> "JSONB";
+            case MY_SQL, MARIA_DB, H2_DB -> "JSON";
+            case SQLITE -> "TEXT";
+            default -> null;
+        };
+    }
+
+    /**
+     * Builds the placeholder a JSON {@code data} column's value is bound through, parsing the
+     * bound JSON text where the vendor would otherwise store it as a plain string.
+     *
+     * @param databaseType the SQL vendor to build the placeholder for
+     * @return the vendor-specific placeholder expression
+     */
+    public static @NotNull String jsonParameter(@NotNull DatabaseType databaseType) {
+
+        return switch (databaseType) {
+            case POSTGRES_SQL -> "CAST(? AS JSONB)";
+            case H2_DB -> "? FORMAT JSON";
+            default -> "?";
+        };
+    }
+
+    /**
+     * Checks whether the vendor supports {@code CREATE TABLE IF NOT EXISTS}.
+     *
+     * @param databaseType the SQL vendor to check
+     * @return {@code true} for PostgreSQL, MySQL, MariaDB, SQLite and H2, {@code false} otherwise
+     */
+    private static boolean ifNotExists(@NotNull DatabaseType databaseType) {
+        return switch (databaseType) {
+            case POSTGRES_SQL, MY_SQL, MARIA_DB, SQLITE, H2_DB -> true;
+            default -> false;
+        };
+    }
+
+    /**
+     * Builds the DDL creating a section table named {@code table}: an indexed {@link #ID_TYPE}
+     * primary key plus a {@link #blobType BLOB} {@code data} column. Uses {@code IF NOT EXISTS}
+     * where the vendor supports it; Oracle, Microsoft SQL Server and Apache Derby do not, so
+     * instances starting together rely on {@link SQLExecution#createTable} tolerating the
+     * "already exists" error there.
+     *
+     * @param databaseType the SQL vendor to build the DDL for
+     * @param table        the name of the table to create
+     * @return the vendor-specific {@code CREATE TABLE} statement
+     */
+    public static @NotNull String createTable(@NotNull DatabaseType databaseType, @NotNull String table) {
+        return createTable(databaseType, table, false);
+    }
+
+    /**
+     * Builds the DDL creating a section table named {@code table}, like
+     * {@link #createTable(DatabaseType, String)}, with a {@link #jsonType JSON} {@code data}
+     * column instead if {@code json} is set and the vendor has one.
+     *
+     * @param databaseType the SQL vendor to build the DDL for
+     * @param table        the name of the table to create
+     * @param json         whether to store documents in a native JSON column
+     * @return the vendor-specific {@code CREATE TABLE} statement
+     */
+    public static @NotNull String createTable(@NotNull DatabaseType databaseType, @NotNull String table, boolean json) {
+
+        final String jsonType = json ? jsonType(databaseType) : null;
+        return "CREATE TABLE " + (ifNotExists(databaseType) ? "IF NOT EXISTS " : "") + table + " (id " + ID_TYPE + " NOT NULL PRIMARY KEY, data " + (jsonType != null ? jsonType : blobType(databaseType)) + ")";
+    }
+
+    /**
+     * Picks {@code databaseType}'s 64-bit integer column type for the {@code version} column of
+     * {@link SQLOptions#isIncrementalReload() incrementally reloaded} tables.
+     *
+     * @param databaseType the SQL vendor to pick a column type for
+     * @return the vendor-specific 64-bit integer column type
+     */
+    public static @NotNull String versionType(@NotNull DatabaseType databaseType) {
+        return databaseType == DatabaseType.ORACLE ? "NUMBER(19)" : "BIGINT";
+    }
+
+    /**
+     * Builds the DDL adding the {@code version} column to section table {@code table}, every
+     * existing row starting out at version {@code 0}.
+     *
+     * @param databaseType the SQL vendor to build the DDL for
+     * @param table        the table to add the column to
+     * @return the vendor-specific {@code ALTER TABLE} statement
+     */
+    public static @NotNull String addVersionColumn(@NotNull DatabaseType databaseType, @NotNull String table) {
+
+        final String column = "version " + versionType(databaseType) + " DEFAULT 0 NOT NULL";
+
+        return switch (databaseType) {
+            case ORACLE -> "ALTER TABLE " + table + " ADD (" + column + ")";
+            case MICROSOFT_SQL_SERVER -> "ALTER TABLE " + table + " ADD " + column;
+            default -> "ALTER TABLE " + table + " ADD COLUMN " + column;
+        };
+    }
+
+    /**
+     * Builds the DDL creating the {@link #TOMBSTONES tombstone table} and its index on section
+     * and version, the two columns every incremental reload filters on.
+     *
+     * @param databaseType the SQL vendor to build the DDL for
+     * @return the vendor-specific {@code CREATE TABLE} and {@code CREATE INDEX} statements, in
+     * execution order
+     */
+    public static @NotNull List<String> createTombstones(@NotNull DatabaseType databaseType) {
+        return List.of(
+                "CREATE TABLE " + TOMBSTONES + " (section_name " + ID_TYPE + " NOT NULL, id " + ID_TYPE + ", version " + versionType(databaseType) + " NOT NULL)",
+                "CREATE INDEX " + TOMBSTONES + "_idx ON " + TOMBSTONES + " (section_name, version)");
+    }
+
+    /**
+     * Builds the DDL creating the {@link #EXPIRIES expiry table} and its index on the deadline,
+     * the column every expiry sweep filters on.
+     *
+     * @param databaseType the SQL vendor to build the DDL for
+     * @return the vendor-specific {@code CREATE TABLE} and {@code CREATE INDEX} statements, in
+     * execution order
+     */
+    public static @NotNull List<String> createExpiries(@NotNull DatabaseType databaseType) {
+        return List.of(
+                "CREATE TABLE " + EXPIRIES + " (section_name " + ID_TYPE + " NOT NULL, id " + ID_TYPE + " NOT NULL, expires_at " + versionType(databaseType) + " NOT NULL)",
+                "CREATE INDEX " + EXPIRIES + "_idx ON " + EXPIRIES + " (expires_at)");
+    }
+
+    /**
+     * Builds the DDL indexing every field of a JSON {@code data} column at once, so
+     * {@link #fieldFilter} needs no per-field index: a {@code jsonb_path_ops} GIN index serving
+     * containment queries on PostgreSQL.
+     *
+     * @param databaseType the SQL vendor to build the DDL for
+     * @param table        the table to index
+     * @return the vendor-specific {@code CREATE INDEX} statement, or {@code null} if the vendor
+     * can only index single fields via {@link #createFieldIndex}
+     */
+    public static @Nullable String createJsonIndex(@NotNull DatabaseType databaseType, @NotNull String table) {
+        return databaseType == DatabaseType.POSTGRES_SQL ? "CREATE INDEX IF NOT EXISTS " + table + "_data_idx ON " + table + " USING GIN (data jsonb_path_ops)" : null;
+    }
+
+    /**
+     * Builds the {@code WHERE} condition matching rows whose JSON {@code data} column holds
+     * {@link #fieldParameter the bound value} at the dotted {@code path}: a containment test
+     * served by the {@link #createJsonIndex GIN index} on PostgreSQL, and a comparison of the
+     * extracted field - the exact expression {@link #createFieldIndex} indexes - on MySQL,
+     * MariaDB and SQLite. The condition may match more rows than exact JSON equality does (e.g.
+     * the string {@code "1"} where the number {@code 1} was asked for), so callers re-check every
+     * row.
+     *
+     * @param databaseType the SQL vendor to build the condition for
+     * @param path         the dot-separated keys leading to the field, from the document's root
+     * @return the vendor-specific condition with a single placeholder, or {@code null} if the
+     * vendor has no JSON functions usable here (e.g. H2)
+     * @throws IllegalArgumentException if {@code path} is not a plain dotted identifier path
+     */
+    public static @Nullable String fieldFilter(@NotNull DatabaseType databaseType, @NotNull String path) {
+
+        if (!FIELD_PATH.matcher(path).matches())
+            throw new IllegalArgumentException("@SQLDialect.fieldFilter: Invalid field path " + path);
+
+        if (databaseType == DatabaseType.POSTGRES_SQL) return "data @> CAST(? AS JSONB)";
+
+        final String expression = fieldExpression(databaseType, path);
+        return expression == null ? null : expression + " = ?";
+    }
+
+    /**
+     * Converts {@code value} into the parameter bound to {@link #fieldFilter}'s placeholder: the
+     * document {@code {"a": {"b": value}}} for path {@code a.b} on PostgreSQL, the value's JSON
+     * scalar text on MySQL and MariaDB, and the value itself on SQLite, whose
+     * {@code json_extract} returns native SQL values (booleans as {@code 1}/{@code 0}).
+     *
+     * @param databaseType the SQL vendor to convert the value for
+     * @param path         the dot-separated keys leading to the field, from the document's root
+     * @param value        the value the field must equal
+     * @return the parameter to bind, or {@code null} if the vendor cannot compare {@code value}
+     * on the server (only PostgreSQL compares objects and arrays)
+     */
+    public static @Nullable Object fieldParameter(@NotNull DatabaseType databaseType, @NotNull String path, @NotNull Object value) {
+
+        final JsonElement element = GSON.toJsonTree(value);
+
+        if (databaseType == DatabaseType.POSTGRES_SQL) {
+
+            final String[] keys = path.split("\\.");
+            JsonElement document = element;
+
+            for (int i = keys.length - 1; i >= 0; i--) {
+                final JsonObject parent = new JsonObject();
+                parent.add(keys[i], document);
+                document = parent;
+            }
+
+            return document.toString();
+        }
+
+        if (!element.isJsonPrimitive()) return null;
+
+        final JsonPrimitive primitive = element.getAsJsonPrimitive();
+        if (databaseType != DatabaseType.SQLITE) return primitive.getAsString();
+
+        if (primitive.isBoolean()) return primitive.getAsBoolean() ? 1 : 0;
+        if (primitive.isNumber()) return primitive.getAsNumber();
+        return primitive.getAsString();
+    }
+
+    /**
+     * Builds the DDL indexing the field at the dotted {@code path} of a JSON {@code data} column,
+     * on exactly the expression {@link #fieldFilter} compares: a functional index on MySQL and an
+     * expression index on SQLite.
+     *
+     * @param databaseType the SQL vendor to build the DDL for
+     * @param table        the table to index
+     * @param index        the name of the index to create
+     * @param path         the dot-separated keys leading to the field, from the document's root
+     * @return the vendor-specific {@code CREATE INDEX} statement, or {@code null} if the vendor
+     * needs none (PostgreSQL, whose {@link #createJsonIndex} covers every field) or supports none
+     * @throws IllegalArgumentException if {@code path} is not a plain dotted identifier path
+     */
+    public static @Nullable String createFieldIndex(@NotNull DatabaseType databaseType, @NotNull String table, @NotNull String index, @NotNull String path) {
+
+        if (databaseType != DatabaseType.MY_SQL && databaseType != DatabaseType.SQLITE) return null;
+        return "CREATE INDEX " + index + " ON " + table + " (" + (databaseType == DatabaseType.MY_SQL ? "(" + fieldExpression(databaseType, path) + ")" : fieldExpression(databaseType, path)) + ")";
+    }
+
+    /**
+     * Builds the expression extracting the field at the dotted {@code path} of a JSON
+     * {@code data} column as a scalar.
+     *
+     * @param databaseType the SQL vendor to build the expression for
+     * @param path         the dot-separated keys leading to the field, from the document's root
+     * @return the vendor-specific expression, or {@code null} if the vendor has none
+     * @throws IllegalArgumentException if {@code path} is not a plain dotted identifier path
+     */
+    private static @Nullable String fieldExpression(@NotNull DatabaseType databaseType, @NotNull String path) {
+
+        if (!FIELD_PATH.matcher(path).matches())
+            throw new IllegalArgumentException("@SQLDialect.fieldExpression: Invalid field path " + path);
+
+        return switch (databaseType) {
+            case MY_SQL -> "CAST(JSON_UNQUOTE(JSON_EXTRACT(data, '$." + path + "')) AS CHAR(255)) COLLATE utf8mb4_bin";
+            case MARIA_DB -> "JSON_VALUE(data, '$." + path + "')";
+            case SQLITE -> "json_extract(data, '$." + path + "')";
+            default -> null;
+        };
+    }
+
+    /**
+     * Builds {@code databaseType}'s native single-statement upsert into a {@link #blobType BLOB}
+     * {@code data} column, see {@link #upsert(DatabaseType, String, String)}.
+     *
+     * @param databaseType the SQL vendor to build the upsert for
+     * @param table        the table to upsert into
+     * @return the vendor-specific upsert statement, or {@code null} if the vendor has none usable
+     * with bound parameters (Apache Derby)
+     */
+    public static @Nullable String upsert(@NotNull DatabaseType databaseType, @NotNull String table) {
+        return upsert(databaseType, table, "?");
+    }
+
+    /**
+     * Builds {@code databaseType}'s native single-statement upsert into {@code table}, taking the
+     * row's {@code id} and {@code data} as its two parameters, in that order:
+     * {@code INSERT ... ON CONFLICT DO UPDATE} on PostgreSQL and SQLite,
+     * {@code INSERT ... ON DUPLICATE KEY UPDATE} on MySQL and MariaDB, and {@code MERGE} on H2,
+     * Oracle and Microsoft SQL Server. Every one of them relies on the indexed primary key
+     * {@link #createTable} creates.
+     *
+     * @param databaseType the SQL vendor to build the upsert for
+     * @param table        the table to upsert into
+     * @param data         the placeholder expression {@code data} is bound through, see
+     *                     {@link #jsonParameter}
+     * @return the vendor-specific upsert statement, or {@code null} if the vendor has none usable
+     * with bound parameters (Apache Derby)
+     */
+    public static @Nullable String upsert(@NotNull DatabaseType databaseType, @NotNull String table, @NotNull String data) {
+        return upsert(databaseType, table, data, false);
+    }
+
+    /**
+     * Builds {@code databaseType}'s native single-statement upsert into {@code table}, like
+     * {@link #upsert(DatabaseType, String, String)}, also writing the row's {@code version} as a
+     * third parameter if {@code versioned} is set.
+     *
+     * @param databaseType the SQL vendor to build the upsert for
+     * @param table        the table to upsert into
+     * @param data         the placeholder expression {@code data} is bound through, see
+     *                     {@link #jsonParameter}
+     * @param versioned    whether the table has a {@code version} column to write as well
+     * @return the vendor-specific upsert statement, or {@code null} if the vendor has none usable
+     * with bound parameters (Apache Derby)
+     */
+    public static @Nullable String upsert(@NotNull DatabaseType databaseType, @NotNull String table, @NotNull String data, boolean versioned) {
+
+        final String columns = versioned ? "id, data, version" : "id, data";
+        final String values = versioned ? "?, " + data + ", ?" : "?, " + data;
+
+        return switch (databaseType) {
+            case POSTGRES_SQL, SQLITE -> "INSERT INTO " + table + " (" + columns + ") VALUES (" + values + ") ON CONFLICT (id) DO UPDATE SET data = excluded.data"
+                    + (versioned ? ", version = excluded.version" : "");
+            case MY_SQL, MARIA_DB -> "INSERT INTO " + table + " (" + columns + ") VALUES (" + values + ") ON DUPLICATE KEY UPDATE data = VALUES(data)"
+                    + (versioned ? ", version = VALUES(version)" : "");
+            case H2_DB -> "MERGE INTO " + table + " (" + columns + ") KEY (id) VALUES (" + values + ")";
+            case ORACLE -> "MERGE INTO " + table + " target USING (SELECT ? AS id, ? AS data" + (versioned ? ", ? AS version" : "") + " FROM dual) source ON (target.id = source.id)"
+                    + " WHEN MATCHED THEN UPDATE SET target.data = source.data" + (versioned ? ", target.version = source.version" : "")
+                    + " WHEN NOT MATCHED THEN INSERT (" + columns + ") VALUES (source.id, source.data" + (versioned ? ", source.version" : "") + ")";
+            case MICROSOFT_SQL_SERVER -> "MERGE INTO " + table + " WITH (HOLDLOCK) AS target USING (SELECT ? AS id, ? AS data" + (versioned ? ", ? AS version" : "") + ") AS source ON target.id = source.id"
+                    + " WHEN MATCHED THEN UPDATE SET target.data = source.data" + (versioned ? ", target.version = source.version" : "")
+                    + " WHEN NOT MATCHED THEN INSERT (" + columns + ") VALUES (source.id, source.data" + (versioned ? ", source.version" : "") + ");";
+            default -> null;
+        };
+    }
+
+    /**
+     * Builds the statements replacing {@code table} with {@code replacement}, keeping the former as
+     * {@code backup} rather than dropping it, so the swap never loses data even on vendors whose
+     * DDL cannot be rolled back. MySQL and MariaDB swap both tables in one atomic
+     * {@code RENAME TABLE}; every other vendor renames them one after another.
+     *
+     * @param databaseType the SQL vendor to build the statements for
+     * @param table        the table to replace
+     * @param replacement  the table to take {@code table}'s name
+     * @param backup       the name {@code table} is kept under afterwards
+     * @return the vendor-specific rename statements, in execution order
+     */
+    public static @NotNull List<String> swapTables(@NotNull DatabaseType databaseType, @NotNull String table, @NotNull String replacement, @NotNull String backup) {
+
+        if (databaseType == DatabaseType.MY_SQL || databaseType == DatabaseType.MARIA_DB)
+            return List.of("RENAME TABLE " + table + " TO " + backup + ", " + replacement + " TO " + table);
+
+        return List.of(renameTable(databaseType, table, backup), renameTable(databaseType, replacement, table));
+    }
+
+    /**
+     * Builds the statement renaming table {@code from} to {@code to}.
+     *
+     * @param databaseType the SQL vendor to build the statement for
+     * @param from         the table's current name
+     * @param to           the table's new name
+     * @return the vendor-specific rename statement
+     */
+    public static @NotNull String renameTable(@NotNull DatabaseType databaseType, @NotNull String from, @NotNull String to) {
+
+        return switch (databaseType) {
+            case MICROSOFT_SQL_SERVER -> "EXEC sp_rename '" + from + "', '" + to + "'";
+            case APACHE_DERBY -> "RENAME TABLE " + from + " TO " + to;
+            default -> "ALTER TABLE " + from + " RENAME TO " + to;
+        };
+    }
+
+}
@@ -3,16 +3,43 @@ package de.lino.database.database.sql;
 import com.zaxxer.hikari.HikariConfig;
 import com.zaxxer.hikari.HikariDataSource;
 import de.lino.database.database.auth.Credentials;
+import de.lino.database.database.change.ChangeFeed;
 import de.lino.database.database.DatabaseType;
+import lombok.Getter;
 import org.jetbrains.annotations.NonNls;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.DriverManager;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Properties;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 import java.util.function.Function;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * A single JDBC connection pool (via HikariCP) shared by every {@link SQLDatabaseSection} of one
@@ -20,6 +47,17 @@ import java.util.function.Function;
  * helpers built on top of it. {@link HikariDataSource} is itself thread-safe and designed for
  * concurrent multi-threaded use, so every method here is safe to call concurrently without
  * additional locking.
+ * <p>
+ * Every async helper here, and every {@code *Async} method of the {@link SQLDatabaseSection}s
+ * sharing this pool, runs on this pool's own {@link #getExecutor() executor} rather than the
+ * common {@link CompletableFuture} pool, so blocking JDBC calls never starve unrelated work and
+ * never pile up beyond what the connection pool can serve.
+ * <p>
+ * If {@link SQLOptions#getReplicas() read replicas} are configured, each gets a read-only pool of
+ * its own, and every {@link #executeQuery(boolean, String, Function, Object, Object...) query} or
+ * {@link #executeStream(boolean, String, Function, Object...) stream} flagged as replica-safe is
+ * balanced over them round-robin, falling back to the primary if the chosen replica fails.
+ * Everything else - every write, DDL, metadata lookup and unflagged read - runs on the primary.
  */
 public class SQLExecution {
 
@@ -35,6 +73,84 @@ public class SQLExecution {
      */
     private final HikariDataSource hikariDataSource;
 
+    /**
+     * One read-only connection pool per {@link SQLOptions#getReplicas() read replica}, empty if
+     * none are configured.
+     */
+    private final List<HikariDataSource> replicaDataSources;
+
+    /**
+     * The round-robin counter picking the replica of the next replica read.
+     */
+    private final AtomicInteger nextReplica = new AtomicInteger();
+
+    /**
+     * The SQL vendor this pool is connected to.
+     */
+    @Getter
+    private final DatabaseType databaseType;
+
+    /**
+     * The SQL-specific tuning options read from the {@link Credentials} this pool was built with.
+     */
+    @Getter
+    private final SQLOptions options;
+
+    /**
+     * The write-behind group-commit queue every {@link SQLDatabaseSection} write goes through
+     * instead of committing on the caller's thread, or {@code null} unless
+     * {@link SQLOptions#isWriteBehind() enabled} (and supported by {@link #databaseType}).
+     */
+    @Getter
+    private final @Nullable SQLWriteBehind writeBehind;
+
+    /**
+     * The vendor's native bulk-ingest path, behind {@link SQLDatabaseSection#bulkInsert}.
+     */
+    @Getter
+    private final SQLBulkLoader bulkLoader;
+
+    /**
+     * The live connection statistics and acquire/usage time histograms of
+     * {@link #hikariDataSource}.
+     */
+    @Getter
+    private final SQLPoolMetrics poolMetrics;
+
+    /**
+     * The threads every async task runs on: a fixed pool of as many platform threads as the
+     * connection pool has connections, or one virtual thread per task if
+     * {@link SQLOptions#isVirtualThreads() enabled}.
+     */
+    private final ExecutorService executorService;
+
+    /**
+     * Bounds the number of tasks submitted to {@link #executorService} but not finished yet to the
+     * connection pool size plus {@link SQLOptions#getExecutorQueueSize()}.
+     */
+    private final Semaphore permits;
+
+    /**
+     * The threads {@link SQLDatabaseSection}s load lazily cached entries on, separate from
+     * {@link #executorService}: async tasks block waiting for such loads, so loads queued behind
+     * them on the same pool would never run once every one of its threads waits.
+     */
+    private final ExecutorService loadExecutorService;
+
+    /**
+     * The channel every committed write is announced to peer instances through, or {@code null}
+     * unless {@link SQLOptions#isChangeFeed() enabled}; installed by the owning
+     * {@link SQLDatabaseProvider} once constructed.
+     */
+    @Getter
+    private volatile @Nullable ChangeFeed changeFeed;
+
+    /**
+     * Whether the {@link SQLDialect#EXPIRIES expiry table} is known to exist, i.e. whether any
+     * entry may have been inserted with a time to live. Only ever turns {@code true}.
+     */
+    private volatile boolean expiries;
+
     /**
      * Builds a connection pool for {@code databaseType}, configured with {@code credentials}.
      *
@@ -43,30 +159,168 @@ public class SQLExecution {
      */
     public SQLExecution(@NotNull DatabaseType databaseType, @NotNull Credentials credentials) {
 
-        final HikariConfig hikariConfig = this.getHikariConfig(databaseType, credentials);
+        this.databaseType = databaseType;
+        this.options = new SQLOptions(credentials.getOptions());
+
+        final HikariConfig hikariConfig = this.getHikariConfig(databaseType, credentials, credentials.getAddress(), credentials.getPort());
 
-        hikariConfig.addDataSourceProperty("cachePrepStmts", "true");
-        hikariConfig.addDataSourceProperty("prepStmtCacheSize", "250");
-        hikariConfig.addDataSourceProperty("prepStmtCacheSqlLimit", "2048");
-        hikariConfig.addDataSourceProperty("useServerPrepStmts", "true");
-        hikariConfig.addDataSourceProperty("useLocalSessionState", "true");
-        hikariConfig.addDataSourceProperty("rewriteBatchedStatements", "true");
-        hikariConfig.addDataSourceProperty("cacheResultSetMetadata", "true");
-        hikariConfig.addDataSourceProperty("cacheServerConfiguration", "true");
-        hikariConfig.addDataSourceProperty("elideSetAutoCommits", "true");
-        hikariConfig.addDataSourceProperty("maintainTimeStats", "false");
+        this.poolMetrics = new SQLPoolMetrics();
+        hikariConfig.setMetricsTrackerFactory(this.poolMetrics);
 
         this.hikariDataSource = new HikariDataSource(hikariConfig);
+        this.replicaDataSources = this.newReplicaDataSources(databaseType, credentials);
+        this.executorService = this.newExecutorService(hikariConfig.getMaximumPoolSize(), "database-driver-sql-");
+        this.loadExecutorService = this.newExecutorService(hikariConfig.getMaximumPoolSize(), "database-driver-sql-load-");
+        this.permits = new Semaphore(hikariConfig.getMaximumPoolSize() + this.options.getExecutorQueueSize());
+        this.writeBehind = this.options.isWriteBehind() && SQLDialect.upsert(databaseType, "") != null ? new SQLWriteBehind(this) : null;
+        this.bulkLoader = new SQLBulkLoader(this);
     }
 
     /**
-     * Closes the underlying connection pool. No further queries or updates should be issued
+     * Closes the underlying connection pool, after waiting for every async task and lazy load
+     * already submitted to finish and committing every write still pending in the
+     * {@link #writeBehind write-behind queue}. No further queries or updates should be issued
      * after this returns.
      */
     public void shutdown() {
+
+        this.executorService.shutdown();
+        this.loadExecutorService.shutdown();
+
+        try {
+            this.executorService.awaitTermination(30, TimeUnit.SECONDS);
+            this.loadExecutorService.awaitTermination(30, TimeUnit.SECONDS);
+        } catch (final InterruptedException exception) {
+            Thread.currentThread().interrupt();
+        }
+
+        if (this.writeBehind != null) this.writeBehind.shutdown();
+        if (this.changeFeed != null) this.changeFeed.close();
+        this.replicaDataSources.forEach(HikariDataSource::close);
         this.hikariDataSource.close();
     }
 
+    /**
+     * Checks whether any {@link SQLOptions#getReplicas() read replica} is configured, i.e. whether
+     * replica reads are served by anything other than the primary.
+     *
+     * @return {@code true} if at least one replica pool is open, {@code false} otherwise
+     */
+    public boolean hasReplicas() {
+        return !this.replicaDataSources.isEmpty();
+    }
+
+    /**
+     * Installs the change feed every committed write is announced through.
+     *
+     * @param changeFeed the change feed to publish to
+     */
+    void setChangeFeed(@NotNull ChangeFeed changeFeed) {
+        this.changeFeed = changeFeed;
+    }
+
+    /**
+     * Checks whether the {@link SQLDialect#EXPIRIES expiry table} is known to exist, as last
+     * {@link #detectExpiries() detected} or {@link #createExpiries() created}.
+     *
+     * @return {@code true} if entries may carry a time to live, {@code false} otherwise
+     */
+    boolean hasExpiries() {
+        return this.expiries;
+    }
+
+    /**
+     * Looks up whether the {@link SQLDialect#EXPIRIES expiry table} exists, e.g. because another
+     * instance created it since.
+     */
+    void detectExpiries() {
+        if (!this.expiries) this.expiries = this.tableExists(SQLDialect.EXPIRIES);
+    }
+
+    /**
+     * Creates the {@link SQLDialect#EXPIRIES expiry table} unless it is known to exist already.
+     */
+    synchronized void createExpiries() {
+
+        if (this.expiries) return;
+        if (!this.tableExists(SQLDialect.EXPIRIES)) this.createTable(SQLDialect.EXPIRIES, SQLDialect.createExpiries(this.databaseType).toArray(String[]::new));
+
+        this.expiries = true;
+    }
+
+    /**
+     * Get the executor every async task against this pool runs on. Once
+     * {@link SQLOptions#getExecutorQueueSize()} tasks are waiting, further tasks run on the
+     * submitting thread instead, as do tasks submitted after {@link #shutdown()}.
+     *
+     * @return the bounded executor of this pool
+     */
+    public @NotNull Executor getExecutor() {
+        return this::execute;
+    }
+
+    /**
+     * Get the executor lazily cached entries are loaded on. Unlike {@link #getExecutor()}, it
+     * never runs a task on the submitting thread, so a load never holds up the cache it fills;
+     * and as loads never wait for other tasks, they cannot deadlock behind the async tasks
+     * waiting for them.
+     *
+     * @return the load executor of this pool
+     */
+    public @NotNull Executor getLoadExecutor() {
+        return this.loadExecutorService;
+    }
+
+    /**
+     * Commits every write still pending in the {@link #writeBehind write-behind queue} on the
+     * calling thread; a no-op if write-behind is disabled.
+     *
+     * @return {@code true} if no write is left pending, {@code false} if any was dropped or is
+     * still queued
+     */
+    public boolean flush() {
+        return this.writeBehind == null || this.writeBehind.flush();
+    }
+
+    /**
+     * Drops every write to {@code table} still pending in the
+     * {@link #writeBehind write-behind queue}; a no-op if write-behind is disabled.
+     *
+     * @param table the table whose writes to drop
+     */
+    public void discard(@NotNull String table) {
+        if (this.writeBehind != null) this.writeBehind.discard(table);
+    }
+
+    /**
+     * Borrows a connection from the underlying pool, to be closed (returned) by the caller.
+     *
+     * @return a pooled connection
+     * @throws SQLException if no connection could be acquired
+     */
+    @NotNull Connection getConnection() throws SQLException {
+        return this.hikariDataSource.getConnection();
+    }
+
+    /**
+     * Opens a connection to the primary outside the underlying pool, for callers holding it
+     * for their whole lifetime - such as a change feed's listener - which would otherwise take
+     * a pooled connection away from every other query. To be closed by the caller.
+     *
+     * @return a new, unpooled connection
+     * @throws SQLException if the connection could not be opened
+     */
+    @NotNull Connection openConnection() throws SQLException {
+
+        final Properties properties = new Properties();
+        properties.putAll(this.hikariDataSource.getDataSourceProperties());
+
+        if (this.hikariDataSource.getUsername() != null) properties.setProperty("user", this.hikariDataSource.getUsername());
+        if (this.hikariDataSource.getPassword() != null) properties.setProperty("password", this.hikariDataSource.getPassword());
+
+        return DriverManager.getConnection(this.hikariDataSource.getJdbcUrl(), properties);
+    }
+
     /**
      * Runs a parameterized {@code INSERT}/{@code UPDATE}/{@code DELETE}/DDL statement, binding
      * each of {@code objects} in order (as raw bytes for {@code byte[]}, via
@@ -79,18 +333,253 @@ public class SQLExecution {
 
         try (Connection connection = this.hikariDataSource.getConnection(); PreparedStatement preparedStatement = connection.prepareStatement(query)) {
 
-            int i = 1;
-            for (Object object : objects) {
-                if (object instanceof byte[]) preparedStatement.setBytes(i++, (byte[]) object);
-                else preparedStatement.setObject(i++, object);
+            this.bind(preparedStatement, objects);
+            preparedStatement.executeUpdate();
+
+        } catch (final SQLException exception) {
+            exception.printStackTrace();
+        }
+
+    }
+
+    /**
+     * Runs every one of {@code statements} in order within a single transaction, rolling all of
+     * them back if any fails. Vendors that implicitly commit DDL (MySQL, MariaDB, Oracle, H2)
+     * cannot roll back DDL statements already run, so callers must order their statements such
+     * that stopping after any one of them never loses data.
+     *
+     * @param statements the unparameterized SQL statements to execute, in order
+     * @return {@code true} if every statement ran and was committed, {@code false} otherwise
+     */
+    public boolean executeTransaction(@NotNull String... statements) {
+
+        try {
+            this.transaction(statements);
+            return true;
+        } catch (final SQLException exception) {
+            exception.printStackTrace();
+        }
+
+        return false;
+    }
+
+    /**
+     * Creates table {@code table} by running {@code statements} like
+     * {@link #executeTransaction}, tolerating another instance creating the same table
+     * concurrently: if the statements fail but the table exists afterwards, it counts as created.
+     *
+     * @param table      the table the statements create
+     * @param statements the {@code CREATE TABLE} statement followed by any of its indexes
+     * @return {@code true} if the table exists now, {@code false} otherwise
+     */
+    public boolean createTable(@NotNull String table, @NotNull String... statements) {
+
+        try {
+            this.transaction(statements);
+            return true;
+        } catch (final SQLException exception) {
+            if (this.tableExists(table)) return true;
+            exception.printStackTrace();
+        }
+
+        return false;
+    }
+
+    /**
+     * Runs every one of {@code statements} in order within a single transaction, rolling all of
+     * them back if any fails.
+     *
+     * @param statements the unparameterized SQL statements to execute, in order
+     * @throws SQLException if any statement failed or the transaction could not be committed
+     */
+    private void transaction(@NotNull String... statements) throws SQLException {
+
+        try (Connection connection = this.hikariDataSource.getConnection()) {
+
+            final boolean autoCommit = connection.getAutoCommit();
+            connection.setAutoCommit(false);
+
+            try (final Statement statement = connection.createStatement()) {
+
+                for (final String query : statements) statement.execute(query);
+                connection.commit();
+
+            } catch (final SQLException exception) {
+                connection.rollback();
+                throw exception;
+            } finally {
+                connection.setAutoCommit(autoCommit);
             }
 
-            preparedStatement.executeUpdate();
+        }
+
+    }
+
+    /**
+     * Checks through the driver's {@link DatabaseMetaData} whether table {@code table} exists,
+     * trying its name as given as well as upper- and lower-cased, since vendors differ in how they
+     * fold unquoted identifiers (e.g. H2, Oracle and Apache Derby upper-case them, PostgreSQL
+     * lower-cases them).
+     *
+     * @param table the table name to look up
+     * @return {@code true} if the table exists, {@code false} otherwise or if the lookup failed
+     */
+    public boolean tableExists(@NotNull String table) {
+
+        try (Connection connection = this.hikariDataSource.getConnection()) {
+
+            final DatabaseMetaData metaData = connection.getMetaData();
+            for (final String candidate : candidates(table)) {
+                try (final ResultSet resultSet = metaData.getTables(connection.getCatalog(), null, candidate, new String[]{"TABLE"})) {
+                    if (resultSet.next()) return true;
+                }
+            }
+
+        } catch (final SQLException exception) {
+            exception.printStackTrace();
+        }
+
+        return false;
+    }
+
+    /**
+     * Checks through the driver's {@link DatabaseMetaData} whether table {@code table} has a
+     * primary key, folding its name the same way {@link #tableExists} does. Tables created by
+     * older versions of this driver have none.
+     *
+     * @param table the table name to look up
+     * @return {@code true} if the table has a primary key, {@code false} otherwise or if the
+     * lookup failed
+     */
+    public boolean hasPrimaryKey(@NotNull String table) {
+
+        try (Connection connection = this.hikariDataSource.getConnection()) {
+
+            final DatabaseMetaData metaData = connection.getMetaData();
+            for (final String candidate : candidates(table)) {
+                try (final ResultSet resultSet = metaData.getPrimaryKeys(connection.getCatalog(), null, candidate)) {
+                    if (resultSet.next()) return true;
+                }
+            }
+
+        } catch (final SQLException exception) {
+            exception.printStackTrace();
+        }
+
+        return false;
+    }
+
+    /**
+     * Looks up through the driver's {@link DatabaseMetaData} the JDBC type of column
+     * {@code column} of table {@code table}, folding both names the same way
+     * {@link #tableExists} does.
+     *
+     * @param table  the table name to look up
+     * @param column the column name to look up
+     * @return the column's {@link java.sql.Types JDBC type}, or {@link java.sql.Types#NULL} if
+     * the column does not exist or the lookup failed
+     */
+    public int columnType(@NotNull String table, @NotNull String column) {
+
+        try (Connection connection = this.hikariDataSource.getConnection()) {
+
+            final DatabaseMetaData metaData = connection.getMetaData();
+            for (final String tableCandidate : candidates(table)) {
+                for (final String columnCandidate : candidates(column)) {
+                    try (final ResultSet resultSet = metaData.getColumns(connection.getCatalog(), null, tableCandidate, columnCandidate)) {
+                        if (resultSet.next()) return resultSet.getInt("DATA_TYPE");
+                    }
+                }
+            }
+
+        } catch (final SQLException exception) {
+            exception.printStackTrace();
+        }
+
+        return Types.NULL;
+    }
+
+    /**
+     * Checks through the driver's {@link DatabaseMetaData} whether table {@code table} has an
+     * index named {@code index}, folding both names the same way {@link #tableExists} does.
+     *
+     * @param table the table name to look up
+     * @param index the index name to look for
+     * @return {@code true} if the index exists, {@code false} otherwise or if the lookup failed
+     */
+    public boolean indexExists(@NotNull String table, @NotNull String index) {
+
+        final Set<String> indexCandidates = candidates(index);
+
+        try (Connection connection = this.hikariDataSource.getConnection()) {
+
+            final DatabaseMetaData metaData = connection.getMetaData();
+            for (final String candidate : candidates(table)) {
+                try (final ResultSet resultSet = metaData.getIndexInfo(connection.getCatalog(), null, candidate, false, true)) {
+                    while (resultSet.next()) if (indexCandidates.contains(resultSet.getString("INDEX_NAME"))) return true;
+                }
+            }
 
         } catch (final SQLException exception) {
             exception.printStackTrace();
         }
 
+        return false;
+    }
+
+    /**
+     * Runs the same parameterized {@code INSERT}/{@code UPDATE}/{@code DELETE} statement once per
+     * element of {@code parameters} over a single connection and {@link PreparedStatement}, sending
+     * the rows via {@link PreparedStatement#addBatch()}/{@link PreparedStatement#executeBatch()} in
+     * chunks of {@link SQLOptions#getBatchSize()} rows. Each chunk is committed as its own
+     * transaction, so a failing chunk is rolled back on its own while every chunk before it stays
+     * committed - a large batch never holds one long-running transaction open, and never costs one
+     * network round trip and commit per row either.
+     *
+     * @param query      the parameterized SQL statement to execute
+     * @param parameters the values to bind per row, each in placeholder order
+     * @return the update count per element of {@code parameters}, as reported by the driver
+     * (possibly {@link Statement#SUCCESS_NO_INFO}); {@code 0} for every row of a chunk that was
+     * rolled back or never ran
+     */
+    public int[] executeBatch(@NotNull String query, @NotNull List<Object[]> parameters) {
+
+        final int[] counts = new int[parameters.size()];
+        if (parameters.isEmpty()) return counts;
+
+        try (Connection connection = this.hikariDataSource.getConnection(); PreparedStatement preparedStatement = connection.prepareStatement(query)) {
+
+            final boolean autoCommit = connection.getAutoCommit();
+            connection.setAutoCommit(false);
+
+            try {
+
+                final int batchSize = this.options.getBatchSize();
+                for (int offset = 0; offset < parameters.size(); offset += batchSize) {
+
+                    for (final Object[] objects : parameters.subList(offset, Math.min(offset + batchSize, parameters.size()))) {
+                        this.bind(preparedStatement, objects);
+                        preparedStatement.addBatch();
+                    }
+
+                    final int[] chunk = preparedStatement.executeBatch();
+                    connection.commit();
+
+                    System.arraycopy(chunk, 0, counts, offset, Math.min(chunk.length, counts.length - offset));
+                }
+
+            } catch (final SQLException exception) {
+                connection.rollback();
+                throw exception;
+            } finally {
+                connection.setAutoCommit(autoCommit);
+            }
+
+        } catch (final SQLException exception) {
+            exception.printStackTrace();
+        }
+
+        return counts;
     }
 
     /**
@@ -106,26 +595,99 @@ public class SQLExecution {
      * @return {@code function}'s result, or {@code defaultValue} if the query or {@code function} failed
      */
     public <T> T executeQuery(@NotNull String query, @NotNull Function<ResultSet, T> function, @NotNull T defaultValue, @NonNls Object... objects) {
+        return this.executeQuery(false, query, function, defaultValue, objects);
+    }
 
-        try (Connection connection = this.hikariDataSource.getConnection(); PreparedStatement preparedStatement = connection.prepareStatement(query)) {
+    /**
+     * Runs a parameterized {@code SELECT} statement like
+     * {@link #executeQuery(String, Function, Object, Object...)}, on one of the
+     * {@link SQLOptions#getReplicas() read replicas} if {@code replica} is set and any are
+     * configured. A query failing on the replica is retried once on the primary.
+     *
+     * @param <T>          the type {@code function} maps the result set to
+     * @param replica      whether the query may be served by a replica, i.e. tolerates missing
+     *                     the latest writes
+     * @param query        the parameterized SQL query to execute
+     * @param function     maps the query's result set to the returned value; its own unchecked
+     *                     exceptions are caught and treated the same as a failed query
+     * @param defaultValue the value returned if the query fails, or if {@code function} throws
+     * @param objects      the values to bind, in placeholder order
+     * @return {@code function}'s result, or {@code defaultValue} if the query or {@code function} failed
+     */
+    public <T> T executeQuery(boolean replica, @NotNull String query, @NotNull Function<ResultSet, T> function, @NotNull T defaultValue, @NonNls Object... objects) {
 
-            int i = 1;
-            for (Object object : objects) {
-                if (object instanceof byte[]) preparedStatement.setBytes(i++, (byte[]) object);
-                else preparedStatement.setObject(i++, object);
+        if (replica && this.hasReplicas()) {
+            try {
+                return this.query(this.nextReplicaDataSource(), query, function, defaultValue, objects);
+            } catch (final SQLException exception) {
+                exception.printStackTrace();
             }
+        }
 
-            try (final ResultSet resultSet = preparedStatement.executeQuery()) {
-                return function.apply(resultSet);
-            } catch (final RuntimeException exception) {
-                return defaultValue;
+        try {
+            return this.query(this.hikariDataSource, query, function, defaultValue, objects);
+        } catch (final SQLException exception) {
+            exception.printStackTrace();
+        }
+
+        return defaultValue;
+    }
+
+    /**
+     * Runs a parameterized {@code SELECT} statement, binding each of {@code objects} in order, and
+     * lazily maps every row of its forward-only, read-only {@link ResultSet} through
+     * {@code function} as the returned stream is consumed. Rows are fetched from the database
+     * {@link SQLOptions#getFetchSize()} at a time rather than all at once, so a scan over any
+     * number of rows runs in constant memory; on PostgreSQL, this requires running the query
+     * outside auto-commit, which is therefore switched off for the stream's lifetime.
+     * <p>
+     * The returned stream holds its connection until it is closed, so it must always be closed,
+     * e.g. via try-with-resources.
+     *
+     * @param <T>      the type {@code function} maps each row to
+     * @param query    the parameterized SQL query to execute
+     * @param function maps the row the result set currently points at to a stream element; rows
+     *                 it maps to {@code null} are skipped
+     * @param objects  the values to bind, in placeholder order
+     * @return a stream over every mapped row, or an empty stream if the query failed
+     */
+    public <T> Stream<T> executeStream(@NotNull String query, @NotNull Function<ResultSet, T> function, @NonNls Object... objects) {
+        return this.executeStream(false, query, function, objects);
+    }
+
+    /**
+     * Streams a parameterized {@code SELECT} statement like
+     * {@link #executeStream(String, Function, Object...)}, on one of the
+     * {@link SQLOptions#getReplicas() read replicas} if {@code replica} is set and any are
+     * configured. A query failing to start on the replica is retried once on the primary; a
+     * failure midway through the stream is not.
+     *
+     * @param <T>      the type {@code function} maps each row to
+     * @param replica  whether the query may be served by a replica, i.e. tolerates missing the
+     *                 latest writes
+     * @param query    the parameterized SQL query to execute
+     * @param function maps the row the result set currently points at to a stream element; rows
+     *                 it maps to {@code null} are skipped
+     * @param objects  the values to bind, in placeholder order
+     * @return a stream over every mapped row, or an empty stream if the query failed
+     */
+    public <T> Stream<T> executeStream(boolean replica, @NotNull String query, @NotNull Function<ResultSet, T> function, @NonNls Object... objects) {
+
+        if (replica && this.hasReplicas()) {
+            try {
+                return this.stream(this.nextReplicaDataSource(), query, function, objects);
+            } catch (final SQLException exception) {
+                exception.printStackTrace();
             }
+        }
 
+        try {
+            return this.stream(this.hikariDataSource, query, function, objects);
         } catch (final SQLException exception) {
             exception.printStackTrace();
         }
 
-        return defaultValue;
+        return Stream.empty();
     }
 
     /**
@@ -136,7 +698,7 @@ public class SQLExecution {
      * @return a {@link CompletableFuture} that completes once the statement has run
      */
     public CompletableFuture<Void> executeUpdateAsync(@NotNull String query, @NonNls Object... objects) {
-        return CompletableFuture.runAsync(() -> this.executeUpdate(query, objects));
+        return CompletableFuture.runAsync(() -> this.executeUpdate(query, objects), this.getExecutor());
     }
 
     /**
@@ -151,30 +713,283 @@ public class SQLExecution {
      * {@code defaultValue} if the query or {@code function} failed
      */
     public <T> CompletableFuture<T> executeQueryAsync(@NotNull String query, @NotNull Function<ResultSet, T> function, @NotNull T defaultValue, @NonNls Object... objects) {
-        return CompletableFuture.supplyAsync(() -> executeQuery(query, function, defaultValue, objects));
+        return CompletableFuture.supplyAsync(() -> executeQuery(query, function, defaultValue, objects), this.getExecutor());
     }
 
     /**
-     * Builds the {@link HikariConfig} for {@code databaseType}: shared pool sizing and prepared
-     * statement caching, plus a vendor-specific JDBC URL and driver class.
+     * Binds each of {@code objects} to {@code preparedStatement} in placeholder order, as raw bytes
+     * for {@code byte[]}, via {@link PreparedStatement#setObject} otherwise.
+     *
+     * @param preparedStatement the statement to bind to
+     * @param objects           the values to bind, in placeholder order
+     * @throws SQLException if binding any value fails
+     */
+    void bind(@NotNull PreparedStatement preparedStatement, @NonNls Object... objects) throws SQLException {
+
+        int i = 1;
+        for (Object object : objects) {
+            if (object instanceof byte[]) preparedStatement.setBytes(i++, (byte[]) object);
+            else preparedStatement.setObject(i++, object);
+        }
+
+    }
+
+    /**
+     * Hands {@code runnable} to {@link #executorService} if a {@link #permits permit} is free, or
+     * runs it on the calling thread otherwise.
+     *
+     * @param runnable the task to run
+     */
+    private void execute(@NotNull Runnable runnable) {
+
+        if (!this.permits.tryAcquire()) {
+            runnable.run();
+            return;
+        }
+
+        try {
+
+            this.executorService.execute(() -> {
+                try {
+                    runnable.run();
+                } finally {
+                    this.permits.release();
+                }
+            });
+
+        } catch (final RejectedExecutionException exception) {
+            this.permits.release();
+            runnable.run();
+        }
+
+    }
+
+    /**
+     * Builds the executor behind {@link #getExecutor()} or {@link #getLoadExecutor()}: one virtual thread per task if
+     * {@link SQLOptions#isVirtualThreads() enabled}, otherwise {@code poolSize} daemon platform
+     * threads - one per pooled connection, as more could only wait for a connection - which time
+     * out when idle. Its queue is unbounded, as {@link #permits} already bounds it.
+     *
+     * @param poolSize the maximum number of connections in the pool
+     * @param prefix   the name prefix of every thread of the executor
+     * @return the built executor
+     */
+    private @NotNull ExecutorService newExecutorService(int poolSize, @NotNull String prefix) {
+
+        if (this.options.isVirtualThreads())
+            return Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name(prefix, 0).factory());
+
+        final AtomicInteger counter = new AtomicInteger();
+        final ThreadPoolExecutor threadPoolExecutor = new ThreadPoolExecutor(poolSize, poolSize, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), runnable -> {
+            final Thread thread = new Thread(runnable, prefix + counter.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        threadPoolExecutor.allowCoreThreadTimeOut(true);
+        return threadPoolExecutor;
+    }
+
+    /**
+     * Runs {@code query} on a connection of {@code dataSource}, mapping its result set through
+     * {@code function}; the body of {@link #executeQuery(boolean, String, Function, Object, Object...)}.
+     *
+     * @return {@code function}'s result, or {@code defaultValue} if {@code function} threw
+     * @throws SQLException if no connection could be acquired or the query failed
+     */
+    private <T> T query(@NotNull HikariDataSource dataSource, @NotNull String query, @NotNull Function<ResultSet, T> function, @NotNull T defaultValue, @NonNls Object... objects) throws SQLException {
+
+        try (Connection connection = dataSource.getConnection(); PreparedStatement preparedStatement = connection.prepareStatement(query)) {
+
+            preparedStatement.setFetchSize(this.options.getFetchSize());
+            this.bind(preparedStatement, objects);
+
+            try (final ResultSet resultSet = preparedStatement.executeQuery()) {
+                return function.apply(resultSet);
+            } catch (final RuntimeException exception) {
+                return defaultValue;
+            }
+
+        }
+
+    }
+
+    /**
+     * Opens the cursor of {@code query} on a connection of {@code dataSource}; the body of
+     * {@link #executeStream(boolean, String, Function, Object...)}.
+     *
+     * @return a stream over every mapped row, holding its connection until closed
+     * @throws SQLException if no connection could be acquired or the query failed, in which case
+     *                      everything already acquired has been released
+     */
+    private <T> Stream<T> stream(@NotNull HikariDataSource dataSource, @NotNull String query, @NotNull Function<ResultSet, T> function, @NonNls Object... objects) throws SQLException {
+
+        Connection connection = null;
+        PreparedStatement preparedStatement = null;
+
+        try {
+
+            connection = dataSource.getConnection();
+            if (this.databaseType == DatabaseType.POSTGRES_SQL) connection.setAutoCommit(false);
+
+            preparedStatement = connection.prepareStatement(query, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            preparedStatement.setFetchSize(this.options.getFetchSize());
+            this.bind(preparedStatement, objects);
+
+            final ResultSet resultSet = preparedStatement.executeQuery();
+            final Connection owner = connection;
+            final PreparedStatement statement = preparedStatement;
+
+            final Spliterator<T> spliterator = new Spliterators.AbstractSpliterator<>(Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL) {
+
+                @Override
+                public boolean tryAdvance(Consumer<? super T> action) {
+
+                    try {
+
+                        while (resultSet.next()) {
+
+                            final T value = function.apply(resultSet);
+                            if (value == null) continue;
+
+                            action.accept(value);
+                            return true;
+                        }
+
+                    } catch (final SQLException exception) {
+                        throw new IllegalStateException("@SQLExecution.executeStream: Failed to read the next row", exception);
+                    }
+
+                    return false;
+                }
+
+            };
+
+            return StreamSupport.stream(spliterator, false).onClose(() -> this.close(resultSet, statement, owner));
+
+        } catch (final SQLException exception) {
+            this.close(null, preparedStatement, connection);
+            throw exception;
+        }
+
+    }
+
+    /**
+     * Picks the replica pool of the next replica read, round-robin.
+     *
+     * @return the replica pool to read from
+     */
+    private @NotNull HikariDataSource nextReplicaDataSource() {
+        return this.replicaDataSources.get(Math.floorMod(this.nextReplica.getAndIncrement(), this.replicaDataSources.size()));
+    }
+
+    /**
+     * Opens a read-only pool per {@link SQLOptions#getReplicas() configured replica}, each sized
+     * and tuned like the primary's. The file-based vendors have no replicas, so none are opened
+     * for them.
+     *
+     * @param databaseType the SQL vendor to connect to
+     * @param credentials  the primary's login credentials, shared by every replica
+     * @return the opened replica pools, in configuration order
+     */
+    private @NotNull List<HikariDataSource> newReplicaDataSources(@NotNull DatabaseType databaseType, @NotNull Credentials credentials) {
+
+        if (databaseType == DatabaseType.SQLITE || databaseType == DatabaseType.H2_DB || databaseType == DatabaseType.APACHE_DERBY) return List.of();
+
+        final List<HikariDataSource> dataSources = new ArrayList<>();
+        for (final SQLOptions.Replica replica : this.options.getReplicas()) {
+
+            final int port = replica.port() == null ? credentials.getPort() : replica.port();
+
+            final HikariConfig hikariConfig = this.getHikariConfig(databaseType, credentials, replica.host(), port);
+            hikariConfig.setPoolName("database-driver-replica-" + dataSources.size());
+            hikariConfig.setReadOnly(true);
+
+            dataSources.add(new HikariDataSource(hikariConfig));
+        }
+
+        return List.copyOf(dataSources);
+    }
+
+    /**
+     * Every spelling of {@code table} the {@link DatabaseMetaData} lookups try: as given,
+     * upper-cased and lower-cased.
+     *
+     * @param table the table name to fold
+     * @return the distinct spellings of {@code table}, as given first
+     */
+    private static @NotNull Set<String> candidates(@NotNull String table) {
+
+        final Set<String> candidates = new LinkedHashSet<>();
+        candidates.add(table);
+        candidates.add(table.toUpperCase(Locale.ROOT));
+        candidates.add(table.toLowerCase(Locale.ROOT));
+
+        return candidates;
+    }
+
+    /**
+     * Closes everything {@link #executeStream} held open, in reverse order of acquisition,
+     * switching auto-commit back on first if it was switched off for the stream.
+     *
+     * @param resultSet         the stream's result set, or {@code null} if never opened
+     * @param preparedStatement the stream's statement, or {@code null} if never prepared
+     * @param connection        the stream's connection, or {@code null} if never acquired
+     */
+    private void close(ResultSet resultSet, PreparedStatement preparedStatement, Connection connection) {
+
+        try {
+            if (resultSet != null) resultSet.close();
+        } catch (final SQLException exception) {
+            exception.printStackTrace();
+        }
+
+        try {
+            if (preparedStatement != null) preparedStatement.close();
+        } catch (final SQLException exception) {
+            exception.printStackTrace();
+        }
+
+        if (connection == null) return;
+
+        try (connection) {
+
+            if (!connection.getAutoCommit()) {
+                connection.rollback();
+                connection.setAutoCommit(true);
+            }
+
+        } catch (final SQLException exception) {
+            exception.printStackTrace();
+        }
+
+    }
+
+    /**
+     * Builds the {@link HikariConfig} for {@code databaseType}: pool sizing and timeouts from
+     * {@link #options}, a vendor-specific JDBC URL and driver class, and the vendor's and
+     * configured driver properties.
      *
      * @param databaseType the SQL vendor to build a configuration for
      * @param credentials  the login credentials and connection details to connect with
+     * @param address      the host to connect to - the primary's, or a replica's
+     * @param port         the port to connect to - the primary's, or a replica's
      * @return the built configuration, ready to open a {@link HikariDataSource} with
      */
-    private @NotNull HikariConfig getHikariConfig(@NotNull DatabaseType databaseType, @NotNull Credentials credentials) {
+    private @NotNull HikariConfig getHikariConfig(@NotNull DatabaseType databaseType, @NotNull Credentials credentials, @NotNull String address, int port) {
 
         final HikariConfig hikariConfig = new HikariConfig();
 
-        hikariConfig.setMaximumPoolSize(10);
-        hikariConfig.setMinimumIdle(5);
-        hikariConfig.setConnectionTimeout(30_000);
-        hikariConfig.setMaxLifetime(1_800_000);
+        hikariConfig.setMaximumPoolSize(this.options.getMaximumPoolSize());
+        hikariConfig.setMinimumIdle(this.options.getMinimumIdle());
+        hikariConfig.setConnectionTimeout(this.options.getConnectionTimeout().toMillis());
+        hikariConfig.setIdleTimeout(this.options.getIdleTimeout().toMillis());
+        hikariConfig.setMaxLifetime(this.options.getMaxLifetime().toMillis());
 
         switch (databaseType) {
 
             case MY_SQL, POSTGRES_SQL, MARIA_DB, MONGO_DB, RETHINK_DB -> {
-                hikariConfig.setJdbcUrl(String.format(ARGUMENTS, databaseType.getType(), credentials.getAddress(), credentials.getPort(), credentials.getDatabase()));
+                hikariConfig.setJdbcUrl(String.format(ARGUMENTS, databaseType.getType(), address, port, credentials.getDatabase()));
                 hikariConfig.setDriverClassName(databaseType.getDriverClass());
                 hikariConfig.setUsername(credentials.getUserName());
                 hikariConfig.setPassword(credentials.getPassword());
@@ -192,13 +1007,13 @@ public class SQLExecution {
                 hikariConfig.setPassword(credentials.getPassword());
             }
             case ORACLE -> {
-                hikariConfig.setJdbcUrl("jdbc:" + databaseType.getType() + "://" + credentials.getAddress() + ":" + credentials.getPort() + "/" + credentials.getDatabase());
+                hikariConfig.setJdbcUrl("jdbc:" + databaseType.getType() + "://" + address + ":" + port + "/" + credentials.getDatabase());
                 hikariConfig.setDriverClassName(databaseType.getDriverClass());
                 hikariConfig.setUsername(credentials.getUserName());
                 hikariConfig.setPassword(credentials.getPassword());
             }
             case MICROSOFT_SQL_SERVER -> {
-                hikariConfig.setJdbcUrl("jdbc:" + databaseType.getType() + "://" + credentials.getAddress() + ":" + credentials.getPort() + ";databaseName=" + credentials.getDatabase());
+                hikariConfig.setJdbcUrl("jdbc:" + databaseType.getType() + "://" + address + ":" + port + ";databaseName=" + credentials.getDatabase());
                 hikariConfig.setDriverClassName(databaseType.getDriverClass());
                 hikariConfig.setUsername(credentials.getUserName());
                 hikariConfig.setPassword(credentials.getPassword());
@@ -212,6 +1027,9 @@ public class SQLExecution {
 
         }
 
+        SQLDialect.driverProperties(databaseType).forEach(hikariConfig::addDataSourceProperty);
+        this.options.getDriverProperties().forEach(hikariConfig::addDataSourceProperty);
+
         return hikariConfig;
     }
 
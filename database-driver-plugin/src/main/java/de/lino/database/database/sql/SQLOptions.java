@@ -0,0 +1,402 @@
+package de.lino.database.database.sql;
+
+import com.google.gson.JsonElement;
+import de.lino.database.database.auth.Credentials;
+import de.lino.database.json.JsonDocument;
+import de.lino.database.utils.codec.PayloadCodec;
+import lombok.AccessLevel;
+import lombok.Getter;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The SQL-specific tuning options of one {@link SQLExecution}, read once from the
+ * {@link Credentials#getOptions() options} of the {@link Credentials} it was created with. Every
+ * option is optional: a missing or invalid value falls back to the default documented on its
+ * field, so configuration files written by older versions keep working unchanged.
+ */
+@Getter
+public class SQLOptions {
+
+    /**
+     * The maximum number of rows {@link SQLExecution#executeBatch} sends to the database per
+     * {@code executeBatch()} round trip, each chunk being committed as its own transaction.
+     * Read from the {@code "batchSize"} option, {@code 1000} by default.
+     */
+    private final int batchSize;
+
+    /**
+     * The number of rows {@link SQLExecution#executeStream} and {@link SQLExecution#executeQuery}
+     * ask the driver to fetch per round trip via {@link java.sql.Statement#setFetchSize},
+     * bounding how many rows of a scan are held in memory at once. Read from the {@code "fetchSize"} option, {@code 1000} by default.
+     */
+    private final int fetchSize;
+
+    /**
+     * Whether every {@link SQLDatabaseSection} runs in lazy mode: instead of loading its whole
+     * table into memory, it looks entries up by id on demand through a bounded cache, and counts
+     * them with {@code SELECT COUNT(*)}. Read from the {@code "lazy"} option, {@code false} by
+     * default.
+     */
+    private final boolean lazy;
+
+    /**
+     * The maximum number of entries each lazy {@link SQLDatabaseSection} keeps cached (including
+     * cached misses). Read from the {@code "lazyCacheSize"} option, {@code 10000} by default.
+     */
+    private final long lazyCacheSize;
+
+    /**
+     * How long each lazy {@link SQLDatabaseSection} trusts a cached entry (or cached miss) before
+     * looking it up again, picking up rows changed by anything other than the section itself.
+     * Read from the {@code "lazyCacheTtlSeconds"} option, five minutes by default.
+     */
+    private final Duration lazyCacheTtl;
+
+    /**
+     * Whether writes are committed by a background {@link SQLWriteBehind write-behind queue}
+     * rather than on the caller's thread. Read from the {@code "writeBehind"} option,
+     * {@code false} by default; ignored on Apache Derby, which has no native upsert to coalesce
+     * writes into.
+     */
+    private final boolean writeBehind;
+
+    /**
+     * The maximum number of writes the {@link SQLWriteBehind write-behind queue} commits per
+     * transaction. Read from the {@code "writeBehindBatchSize"} option, {@code 1000} by default.
+     */
+    private final int writeBehindBatchSize;
+
+    /**
+     * How often the {@link SQLWriteBehind write-behind queue} commits pending writes at the
+     * latest, however few there are. Read from the {@code "writeBehindIntervalMillis"} option,
+     * {@code 50} milliseconds by default.
+     */
+    private final Duration writeBehindInterval;
+
+    /**
+     * The number of pending writes at which the {@link SQLWriteBehind write-behind queue} makes
+     * writing callers commit them themselves. Read from the {@code "writeBehindCapacity"} option,
+     * {@code 100000} by default.
+     */
+    private final int writeBehindCapacity;
+
+    /**
+     * Whether {@link SQLExecution}'s executor runs every async task on its own virtual thread
+     * rather than on a fixed pool of platform threads sized to the connection pool. Read from the
+     * {@code "virtualThreads"} option, {@code false} by default.
+     */
+    private final boolean virtualThreads;
+
+    /**
+     * The maximum number of async tasks {@link SQLExecution}'s executor holds queued (or, with
+     * {@link #virtualThreads}, running) at once; submitting beyond it runs the task on the
+     * submitting thread instead, pushing back on callers rather than queueing without bound.
+     * Read from the {@code "executorQueueSize"} option, {@code 10000} by default.
+     */
+    private final int executorQueueSize;
+
+    /**
+     * The maximum number of connections the pool opens. Read from the {@code "maximumPoolSize"}
+     * option, {@code 10} by default.
+     */
+    private final int maximumPoolSize;
+
+    /**
+     * The number of idle connections the pool keeps open at least, never more than
+     * {@link #maximumPoolSize}. Read from the {@code "minimumIdle"} option, {@code 5} by default.
+     */
+    private final int minimumIdle;
+
+    /**
+     * How long borrowing a connection waits for one to become free before failing. Read from the
+     * {@code "connectionTimeoutMillis"} option, {@code 30} seconds by default.
+     */
+    private final Duration connectionTimeout;
+
+    /**
+     * How long a connection beyond {@link #minimumIdle} may sit idle before it is closed. Read
+     * from the {@code "idleTimeoutMillis"} option, {@code 10} minutes by default.
+     */
+    private final Duration idleTimeout;
+
+    /**
+     * How long a connection is kept open at most before it is replaced. Read from the
+     * {@code "maxLifetimeMillis"} option, {@code 30} minutes by default.
+     */
+    private final Duration maxLifetime;
+
+    /**
+     * Additional JDBC driver properties, each overriding the vendor default of the same name
+     * {@link SQLDialect#driverProperties} picks. Read from the {@code "driverProperties"} option
+     * object, empty by default.
+     */
+    private final Map<String, String> driverProperties;
+
+    /**
+     * The codec every {@link SQLDatabaseSection} encodes its {@code data} column with. Read from
+     * the {@code "codec"} option, {@link PayloadCodec#NONE} by default.
+     */
+    private final PayloadCodec codec;
+
+    /**
+     * Whether new {@link SQLDatabaseSection} tables store documents in a native JSON column
+     * ({@link SQLDialect#jsonType}) rather than a BLOB, so they can be filtered on the server via
+     * {@link SQLDatabaseSection#findByField}. Read from the {@code "storage"} option, enabled by
+     * {@code "json"}, disabled by default; ignored on vendors without a JSON column type. Existing
+     * tables keep the storage they were created with, and JSON columns are never compressed by
+     * {@link #codec}.
+     */
+    private final boolean jsonStorage;
+
+    /**
+     * Whether a {@link SQLDatabaseProvider}'s constructor returns before its sections have
+     * loaded, leaving {@link SQLDatabaseProvider#ready()} to tell when they have. Read from the
+     * {@code "asyncStartup"} option, {@code false} by default.
+     */
+    private final boolean asyncStartup;
+
+    /**
+     * Whether every eager {@link SQLDatabaseSection} stamps its rows with a
+     * {@link de.lino.database.utils.VersionClock version} and records deletes in the shared
+     * {@link SQLDialect#TOMBSTONES tombstone table}, so {@link SQLDatabaseSection#reload()} only
+     * fetches what changed since its last reload instead of the whole table. Read from the
+     * {@code "incrementalReload"} option, {@code false} by default, and implied by
+     * {@link #changeFeed}; ignored in {@link #lazy} mode, which never holds the whole table.
+     */
+    private final boolean incrementalReload;
+
+    /**
+     * How far below its high-water mark an incremental reload re-fetches, covering writes of
+     * transactions still open at the last reload and wall clock skew between writers. Read from
+     * the {@code "incrementalOverlapMillis"} option, {@code 5} seconds by default.
+     */
+    private final Duration incrementalOverlap;
+
+    /**
+     * How long tombstones are kept. A section whose last reload is older than this reloads fully
+     * instead, since deletes may have been pruned in between. Read from the
+     * {@code "tombstoneRetentionMinutes"} option, {@code 24} hours by default.
+     */
+    private final Duration tombstoneRetention;
+
+    /**
+     * How often every {@link SQLDatabaseProvider} sweeps the {@link SQLDialect#EXPIRIES expiry
+     * table} for entries whose time to live elapsed without their inserting instance deleting
+     * them, e.g. because it was stopped. Read from the {@code "expirySweepMillis"} option,
+     * {@code 1} second by default.
+     */
+    private final Duration expirySweepInterval;
+
+    /**
+     * Whether every {@link SQLDatabaseProvider} keeps its sections coherent with every other
+     * instance connected to the same database through a {@link de.lino.database.database.change.ChangeFeed}:
+     * {@code LISTEN}/{@code NOTIFY} on PostgreSQL, polling incremental reloads on every other
+     * vendor. Implies {@link #incrementalReload}. Read from the {@code "changeFeed"} option,
+     * {@code false} by default.
+     */
+    private final boolean changeFeed;
+
+    /**
+     * How often the polling change feed reloads every section, on vendors without
+     * {@code LISTEN}/{@code NOTIFY}. Read from the {@code "changeFeedPollMillis"} option,
+     * {@code 1} second by default.
+     */
+    private final Duration changeFeedPollInterval;
+
+    /**
+     * The addresses of the read replicas
+     * {@link SQLExecution#executeQuery(boolean, String, java.util.function.Function, Object, Object...) replica reads}
+     * are balanced over, each connected to with the primary's database name and login. Read from
+     * the {@code "replicas"} option array of {@code host}, {@code host:port}, {@code [ipv6]} or
+     * {@code [ipv6]:port} strings - a bare IPv6 literal is taken as a host without port - empty by
+     * default; ignored on the file-based vendors (SQLite, H2, Apache Derby).
+     */
+    private final List<Replica> replicas;
+
+    /**
+     * How long a {@link SQLDatabaseSection} keeps reading from the primary after its own last
+     * write, so a read right after a write never misses it on a lagging replica. Read from the
+     * {@code "readAfterWriteMillis"} option, {@code 1} second by default; overridden per section by
+     * {@link #readAfterWriteSections}.
+     */
+    private final Duration readAfterWrite;
+
+    /**
+     * The {@link #readAfterWrite read-after-write window} of single sections, keyed by section
+     * name. Read from the {@code "readAfterWriteSections"} option object, mapping section names to
+     * milliseconds, empty by default.
+     */
+    @Getter(AccessLevel.NONE)
+    private final Map<String, Duration> readAfterWriteSections;
+
+    /**
+     * Reads every SQL option from {@code options}, falling back to its default if missing.
+     *
+     * @param options the {@link Credentials#getOptions() options} to read from
+     */
+    public SQLOptions(@NotNull JsonDocument options) {
+        this.batchSize = options.get("batchSize", Integer.class, 1_000, value -> value > 0);
+        this.fetchSize = options.get("fetchSize", Integer.class, 1_000, value -> value > 0);
+        this.lazy = options.get("lazy", Boolean.class, false);
+        this.lazyCacheSize = options.get("lazyCacheSize", Long.class, 10_000L, value -> value > 0);
+        this.lazyCacheTtl = Duration.ofSeconds(options.get("lazyCacheTtlSeconds", Long.class, 300L, value -> value > 0));
+        this.writeBehind = options.get("writeBehind", Boolean.class, false);
+        this.writeBehindBatchSize = options.get("writeBehindBatchSize", Integer.class, 1_000, value -> value > 0);
+        this.writeBehindInterval = Duration.ofMillis(options.get("writeBehindIntervalMillis", Long.class, 50L, value -> value > 0));
+        this.writeBehindCapacity = options.get("writeBehindCapacity", Integer.class, 100_000, value -> value > 0);
+        this.virtualThreads = options.get("virtualThreads", Boolean.class, false);
+        this.executorQueueSize = options.get("executorQueueSize", Integer.class, 10_000, value -> value > 0);
+        this.maximumPoolSize = options.get("maximumPoolSize", Integer.class, 10, value -> value > 0);
+        this.minimumIdle = Math.min(this.maximumPoolSize, options.get("minimumIdle", Integer.class, 5, value -> value >= 0));
+        this.connectionTimeout = Duration.ofMillis(options.get("connectionTimeoutMillis", Long.class, 30_000L, value -> value >= 250));
+        this.idleTimeout = Duration.ofMillis(options.get("idleTimeoutMillis", Long.class, 600_000L, value -> value >= 0));
+        this.maxLifetime = Duration.ofMillis(options.get("maxLifetimeMillis", Long.class, 1_800_000L, value -> value >= 0));
+        this.driverProperties = readDriverProperties(options);
+        this.codec = PayloadCodec.of(options.get("codec", String.class, null));
+        this.jsonStorage = "json".equalsIgnoreCase(options.get("storage", String.class, "blob"));
+        this.asyncStartup = options.get("asyncStartup", Boolean.class, false);
+        this.changeFeed = options.get("changeFeed", Boolean.class, false);
+        this.changeFeedPollInterval = Duration.ofMillis(options.get("changeFeedPollMillis", Long.class, 1_000L, value -> value > 0));
+        this.incrementalReload = !this.lazy && (this.changeFeed || options.get("incrementalReload", Boolean.class, false));
+        this.incrementalOverlap = Duration.ofMillis(options.get("incrementalOverlapMillis", Long.class, 5_000L, value -> value >= 0));
+        this.tombstoneRetention = Duration.ofMinutes(options.get("tombstoneRetentionMinutes", Long.class, 1_440L, value -> value > 0));
+        this.expirySweepInterval = Duration.ofMillis(options.get("expirySweepMillis", Long.class, 1_000L, value -> value > 0));
+        this.replicas = readReplicas(options);
+        this.readAfterWrite = Duration.ofMillis(options.get("readAfterWriteMillis", Long.class, 1_000L, value -> value >= 0));
+        this.readAfterWriteSections = readReadAfterWriteSections(options);
+    }
+
+    /**
+     * Get the {@link #readAfterWrite read-after-write window} of section {@code section}.
+     *
+     * @param section the section's table name
+     * @return the section's own window if configured, the default window otherwise
+     */
+    public @NotNull Duration readAfterWrite(@NotNull String section) {
+        return this.readAfterWriteSections.getOrDefault(section, this.readAfterWrite);
+    }
+
+    /**
+     * Reads the {@code "replicas"} option array, skipping blank, non-string and
+     * {@link Replica#parse unparsable} elements.
+     *
+     * @param options the {@link Credentials#getOptions() options} to read from
+     * @return the configured replica addresses, in configuration order
+     */
+    private static @NotNull List<Replica> readReplicas(@NotNull JsonDocument options) {
+
+        final JsonElement replicas = options.jsonObject.get("replicas");
+        if (replicas == null || !replicas.isJsonArray()) return Collections.emptyList();
+
+        final List<Replica> addresses = new ArrayList<>();
+        for (final JsonElement replica : replicas.getAsJsonArray()) {
+            if (!replica.isJsonPrimitive()) continue;
+            final Replica address = Replica.parse(replica.getAsString());
+            if (address != null) addresses.add(address);
+        }
+
+        return Collections.unmodifiableList(addresses);
+    }
+
+    /**
+     * Reads the {@code "readAfterWriteSections"} option object, skipping non-numeric and negative
+     * values.
+     *
+     * @param options the {@link Credentials#getOptions() options} to read from
+     * @return the configured windows, keyed by section name
+     */
+    private static @NotNull Map<String, Duration> readReadAfterWriteSections(@NotNull JsonDocument options) {
+
+        final JsonDocument sections = options.getMetaData("readAfterWriteSections");
+        if (sections == null) return Collections.emptyMap();
+
+        final Map<String, Duration> windows = new LinkedHashMap<>();
+        sections.jsonObject.entrySet().forEach(entry -> {
+            final JsonElement value = entry.getValue();
+            if (value.isJsonPrimitive() && value.getAsJsonPrimitive().isNumber() && value.getAsLong() >= 0)
+                windows.put(entry.getKey(), Duration.ofMillis(value.getAsLong()));
+        });
+
+        return Collections.unmodifiableMap(windows);
+    }
+
+    /**
+     * Reads the {@code "driverProperties"} option object, every value as a string.
+     *
+     * @param options the {@link Credentials#getOptions() options} to read from
+     * @return the configured driver properties, in configuration order
+     */
+    private static @NotNull Map<String, String> readDriverProperties(@NotNull JsonDocument options) {
+
+        final JsonDocument driverProperties = options.getMetaData("driverProperties");
+        if (driverProperties == null) return Collections.emptyMap();
+
+        final Map<String, String> properties = new LinkedHashMap<>();
+        driverProperties.jsonObject.entrySet().forEach(entry -> {
+            if (entry.getValue().isJsonPrimitive()) properties.put(entry.getKey(), entry.getValue().getAsString());
+        });
+
+        return Collections.unmodifiableMap(properties);
+    }
+
+    /**
+     * The address of one read replica.
+     *
+     * @param host the replica's host name or IP address, IPv6 literals enclosed in brackets as
+     *             JDBC URLs expect them
+     * @param port the replica's port, or {@code null} to use the primary's
+     */
+    public record Replica(@NotNull String host, @Nullable Integer port) {
+
+        /**
+         * Parses a {@code host}, {@code host:port}, {@code [ipv6]}, {@code [ipv6]:port} or bare
+         * IPv6 address.
+         *
+         * @param address the address to parse
+         * @return the parsed address, or {@code null} if it is blank, its brackets are unbalanced or
+         * its port is not a number between {@code 1} and {@code 65535}
+         */
+        static @Nullable Replica parse(@NotNull String address) {
+
+            final String trimmed = address.trim();
+            if (trimmed.isEmpty()) return null;
+
+            final String host, port;
+            if (trimmed.startsWith("[")) {
+                final int end = trimmed.indexOf(']');
+                if (end < 2) return null;
+                host = trimmed.substring(0, end + 1);
+                if (end == trimmed.length() - 1) port = null;
+                else if (trimmed.charAt(end + 1) == ':') port = trimmed.substring(end + 2);
+                else return null;
+            } else if (trimmed.indexOf(':') != trimmed.lastIndexOf(':')) {
+                host = "[" + trimmed + "]";
+                port = null;
+            } else {
+                final int separator = trimmed.indexOf(':');
+                host = separator < 0 ? trimmed : trimmed.substring(0, separator);
+                port = separator < 0 ? null : trimmed.substring(separator + 1);
+            }
+
+            if (host.isEmpty()) return null;
+            if (port == null) return new Replica(host, null);
+
+            try {
+                final int number = Integer.parseInt(port);
+                return number > 0 && number <= 65_535 ? new Replica(host, number) : null;
+            } catch (final NumberFormatException exception) {
+                return null;
+            }
+        }
+
+    }
+
+}
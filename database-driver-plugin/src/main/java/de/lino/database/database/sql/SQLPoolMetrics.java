@@ -0,0 +1,255 @@
+package de.lino.database.database.sql;
+
+import com.zaxxer.hikari.metrics.IMetricsTracker;
+import com.zaxxer.hikari.metrics.MetricsTrackerFactory;
+import com.zaxxer.hikari.metrics.PoolStats;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * The live metrics of one {@link SQLExecution}'s connection pool: how many connections are
+ * active, idle and waited for right now, plus histograms of how long borrowing a connection took
+ * and how long it was held. Installed as the pool's {@link MetricsTrackerFactory}, so HikariCP
+ * itself feeds it every acquisition and release, without a dependency on any metrics library.
+ * <p>
+ * Every getter is safe to call concurrently with the pool running, e.g. from a monitoring thread.
+ */
+public class SQLPoolMetrics implements MetricsTrackerFactory, IMetricsTracker {
+
+    /**
+     * The pool's connection statistics, handed over by HikariCP once the pool starts, or
+     * {@code null} until then.
+     */
+    private volatile PoolStats poolStats;
+
+    /**
+     * How long borrowing a connection took, in microseconds.
+     */
+    private final Histogram acquireTime = new Histogram();
+
+    /**
+     * How long a connection was held before being returned, in milliseconds.
+     */
+    private final Histogram usageTime = new Histogram();
+
+    /**
+     * The number of borrow attempts that timed out waiting for a connection.
+     */
+    private final AtomicLong connectionTimeouts = new AtomicLong();
+
+    @Override
+    public IMetricsTracker create(String poolName, PoolStats poolStats) {
+        this.poolStats = poolStats;
+        return this;
+    }
+
+    @Override
+    public void recordConnectionAcquiredNanos(long elapsedAcquiredNanos) {
+        this.acquireTime.record(TimeUnit.NANOSECONDS.toMicros(elapsedAcquiredNanos));
+    }
+
+    @Override
+    public void recordConnectionUsageMillis(long elapsedBorrowedMillis) {
+        this.usageTime.record(elapsedBorrowedMillis);
+    }
+
+    @Override
+    public void recordConnectionTimeout() {
+        this.connectionTimeouts.incrementAndGet();
+    }
+
+    /**
+     * Get the number of connections currently borrowed.
+     *
+     * @return the number of active connections
+     */
+    public int getActiveConnections() {
+        final PoolStats poolStats = this.poolStats;
+        return poolStats == null ? 0 : poolStats.getActiveConnections();
+    }
+
+    /**
+     * Get the number of connections currently open but not borrowed.
+     *
+     * @return the number of idle connections
+     */
+    public int getIdleConnections() {
+        final PoolStats poolStats = this.poolStats;
+        return poolStats == null ? 0 : poolStats.getIdleConnections();
+    }
+
+    /**
+     * Get the number of connections currently open, active or idle.
+     *
+     * @return the number of open connections
+     */
+    public int getTotalConnections() {
+        final PoolStats poolStats = this.poolStats;
+        return poolStats == null ? 0 : poolStats.getTotalConnections();
+    }
+
+    /**
+     * Get the number of threads currently waiting to borrow a connection. Consistently above
+     * zero means the pool is too small for the load.
+     *
+     * @return the number of pending threads
+     */
+    public int getPendingThreads() {
+        final PoolStats poolStats = this.poolStats;
+        return poolStats == null ? 0 : poolStats.getPendingThreads();
+    }
+
+    /**
+     * Get the maximum number of connections the pool opens.
+     *
+     * @return the configured maximum pool size
+     */
+    public int getMaxConnections() {
+        final PoolStats poolStats = this.poolStats;
+        return poolStats == null ? 0 : poolStats.getMaxConnections();
+    }
+
+    /**
+     * Get the number of borrow attempts that timed out waiting for a connection.
+     *
+     * @return the number of connection timeouts since the pool started
+     */
+    public long getConnectionTimeouts() {
+        return this.connectionTimeouts.get();
+    }
+
+    /**
+     * Get the histogram of how long borrowing a connection took, in microseconds.
+     *
+     * @return the live acquire time histogram
+     */
+    public @NotNull Histogram getAcquireTime() {
+        return this.acquireTime;
+    }
+
+    /**
+     * Get the histogram of how long a connection was held before being returned, in
+     * milliseconds.
+     *
+     * @return the live usage time histogram
+     */
+    public @NotNull Histogram getUsageTime() {
+        return this.usageTime;
+    }
+
+    /**
+     * A lock-free histogram of non-negative values in power-of-two buckets - bucket {@code i}
+     * counts the values in {@code [2^(i-1), 2^i)}, bucket {@code 0} counts zeros - trading exact
+     * percentiles for a constant footprint and a single atomic increment per recorded value.
+     * Percentiles are reported as the upper bound of the bucket they fall into, so they are
+     * accurate to within a factor of two.
+     */
+    public static final class Histogram {
+
+        /**
+         * The number of recorded values per bucket.
+         */
+        private final AtomicLongArray buckets = new AtomicLongArray(Long.SIZE);
+
+        /**
+         * The number of recorded values.
+         */
+        private final AtomicLong count = new AtomicLong();
+
+        /**
+         * The sum of every recorded value.
+         */
+        private final AtomicLong sum = new AtomicLong();
+
+        /**
+         * The largest recorded value.
+         */
+        private final AtomicLong max = new AtomicLong();
+
+        /**
+         * Records {@code value}, treating negative values as zero.
+         *
+         * @param value the value to record
+         */
+        void record(long value) {
+
+            final long recorded = Math.max(0, value);
+
+            this.buckets.incrementAndGet(Long.SIZE - Long.numberOfLeadingZeros(recorded));
+            this.count.incrementAndGet();
+            this.sum.addAndGet(recorded);
+            this.max.accumulateAndGet(recorded, Math::max);
+        }
+
+        /**
+         * Get the number of recorded values.
+         *
+         * @return the number of recorded values
+         */
+        public long getCount() {
+            return this.count.get();
+        }
+
+        /**
+         * Get the mean of every recorded value.
+         *
+         * @return the mean, or {@code 0} if nothing was recorded yet
+         */
+        public double getMean() {
+            final long count = this.count.get();
+            return count == 0 ? 0 : (double) this.sum.get() / count;
+        }
+
+        /**
+         * Get the largest recorded value.
+         *
+         * @return the largest value, or {@code 0} if nothing was recorded yet
+         */
+        public long getMax() {
+            return this.max.get();
+        }
+
+        /**
+         * Estimates the value {@code percentile} percent of every recorded value is at most.
+         *
+         * @param percentile the percentile to estimate, between {@code 0} and {@code 100}
+         * @return the upper bound of the bucket the percentile falls into, never more than
+         * {@link #getMax()}, or {@code 0} if nothing was recorded yet
+         */
+        public long getPercentile(double percentile) {
+
+            if (percentile < 0 || percentile > 100)
+                throw new IllegalArgumentException("@Histogram.getPercentile: The percentile must be between 0 and 100");
+
+            final long target = (long) Math.ceil(this.count.get() * percentile / 100);
+            if (target == 0) return 0;
+
+            long seen = 0;
+            for (int bucket = 0; bucket < this.buckets.length(); bucket++) {
+                seen += this.buckets.get(bucket);
+                if (seen >= target) return Math.min(this.getMax(), bucket == 0 ? 0 : (1L << bucket) - 1);
+            }
+
+            return this.getMax();
+        }
+
+        /**
+         * Get the number of recorded values per bucket, bucket {@code i} counting the values in
+         * {@code [2^(i-1), 2^i)}.
+         *
+         * @return a snapshot of every bucket's count
+         */
+        public long @NotNull [] getBuckets() {
+
+            final long[] buckets = new long[this.buckets.length()];
+            for (int bucket = 0; bucket < buckets.length; bucket++) buckets[bucket] = this.buckets.get(bucket);
+
+            return buckets;
+        }
+
+    }
+
+}
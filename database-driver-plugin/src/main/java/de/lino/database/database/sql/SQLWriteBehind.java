@@ -0,0 +1,421 @@
+package de.lino.database.database.sql;
+
+import de.lino.database.database.change.ChangeFeed;
+import de.lino.database.database.entity.DatabaseEntry;
+import org.jetbrains.annotations.NonNls;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.SQLNonTransientConnectionException;
+import java.sql.SQLRecoverableException;
+import java.sql.SQLTransientException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * The write-behind group-commit queue of one {@link SQLExecution}, enabled via
+ * {@link SQLOptions#isWriteBehind()}: instead of committing every row on the caller's thread,
+ * {@link SQLDatabaseSection} writes are {@link #enqueue enqueued} here and the caller returns
+ * immediately, while a background flusher commits them in batches of at most
+ * {@link SQLOptions#getWriteBehindBatchSize()} writes per transaction, at least every
+ * {@link SQLOptions#getWriteBehindInterval()}.
+ * <p>
+ * Pending writes are coalesced per table and id - only the latest write to an id is ever sent -
+ * which is why every write is enqueued as an idempotent {@link SQLDialect#upsert upsert} or
+ * delete rather than the original insert or update. Once {@link SQLOptions#getWriteBehindCapacity()}
+ * writes are pending, enqueuing callers drain the queue themselves before returning, bounding
+ * both memory use and how far the database may fall behind.
+ * <p>
+ * If a batch fails to commit, each of its writes is retried in a transaction of its own, so one
+ * bad row cannot hold up the rest: a write failing with a transient or connection error stays
+ * queued for the next drain, while one the database rejects outright is reported and dropped.
+ */
+public class SQLWriteBehind {
+
+    /**
+     * The connection pool every batch is committed through.
+     */
+    private final SQLExecution sqlExecution;
+
+    /**
+     * The maximum number of writes committed per transaction.
+     */
+    private final int batchSize;
+
+    /**
+     * The number of pending writes at which enqueuing callers drain the queue themselves.
+     */
+    private final int capacity;
+
+    /**
+     * Every write not yet taken by a drain, keyed by {@link #key table and id}, in enqueue order.
+     * Guarded by its own monitor.
+     */
+    private final Map<String, PendingWrite> pending;
+
+    /**
+     * Every write taken by the drain currently in progress but not yet committed, keyed like
+     * {@link #pending}, so {@link #lookup} still sees them until they are readable from the
+     * database. Guarded by {@link #pending}'s monitor.
+     */
+    private final Map<String, PendingWrite> inFlight;
+
+    /**
+     * Serializes every drain, so batches are committed one after another in enqueue order.
+     */
+    private final ReentrantLock drainLock;
+
+    /**
+     * Whether a size-triggered drain has already been handed to {@link #scheduler} and not
+     * started yet, so a burst of writes schedules one drain rather than one per write.
+     */
+    private final AtomicBoolean signalled;
+
+    /**
+     * The single background thread running every time- and size-triggered drain.
+     */
+    private final ScheduledExecutorService scheduler;
+
+    /**
+     * Starts the background flusher of {@code sqlExecution}'s write-behind queue.
+     *
+     * @param sqlExecution the connection pool to commit every batch through
+     */
+    public SQLWriteBehind(@NotNull SQLExecution sqlExecution) {
+
+        final SQLOptions options = sqlExecution.getOptions();
+
+        this.sqlExecution = sqlExecution;
+        this.batchSize = options.getWriteBehindBatchSize();
+        this.capacity = options.getWriteBehindCapacity();
+        this.pending = new LinkedHashMap<>();
+        this.inFlight = new LinkedHashMap<>();
+        this.drainLock = new ReentrantLock();
+        this.signalled = new AtomicBoolean();
+
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            final Thread thread = new Thread(runnable, "database-driver-write-behind");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        final long interval = options.getWriteBehindInterval().toMillis();
+        this.scheduler.scheduleWithFixedDelay(this::drain, interval, interval, TimeUnit.MILLISECONDS);
+
+    }
+
+    /**
+     * Enqueues a write to row {@code id} of {@code table}, replacing any write to the same row
+     * still pending.
+     *
+     * @param table         the table written to
+     * @param id            the primary key of the row written to
+     * @param databaseEntry the row's new state, or {@code null} if the write deletes it
+     * @param query         the idempotent upsert or delete statement performing the write
+     * @param objects       the values to bind, in placeholder order
+     */
+    public void enqueue(@NotNull String table, @NotNull String id, @Nullable DatabaseEntry databaseEntry, @NotNull String query, @NonNls Object... objects) {
+
+        final int size;
+        synchronized (this.pending) {
+            this.pending.put(key(table, id), new PendingWrite(databaseEntry, query, objects));
+            size = this.pending.size();
+        }
+
+        if (size >= this.capacity) this.drain();
+        else if (size >= this.batchSize && this.signalled.compareAndSet(false, true)) this.scheduler.execute(() -> {
+            this.signalled.set(false);
+            this.drain();
+        });
+
+    }
+
+    /**
+     * Looks up the latest write to row {@code id} of {@code table} not yet committed, so reads
+     * going to the database directly can still see their own writes.
+     *
+     * @param table the table to look up
+     * @param id    the primary key of the row to look up
+     * @return empty if no write to the row is pending, otherwise an {@link Optional} holding the
+     * row's pending state, itself empty if the pending write deletes it
+     */
+    public Optional<Optional<DatabaseEntry>> lookup(@NotNull String table, @NotNull String id) {
+
+        final String key = key(table, id);
+
+        synchronized (this.pending) {
+            PendingWrite pendingWrite = this.pending.get(key);
+            if (pendingWrite == null) pendingWrite = this.inFlight.get(key);
+            return pendingWrite == null ? Optional.empty() : Optional.of(Optional.ofNullable(pendingWrite.databaseEntry()));
+        }
+    }
+
+    /**
+     * Commits every pending write on the calling thread, returning once the queue is empty or a
+     * write failed with a transient error (in which case it stays queued for the next attempt).
+     *
+     * @return {@code true} if every pending write was committed, {@code false} if any was
+     * dropped or is still queued
+     */
+    public boolean flush() {
+        return this.drain();
+    }
+
+    /**
+     * Drops every write to {@code table} still pending without committing it, e.g. because the
+     * table is being truncated or dropped anyway, after waiting for the drain in progress, if
+     * any, so none of its writes is committed afterwards either.
+     *
+     * @param table the table whose writes to drop
+     */
+    public void discard(@NotNull String table) {
+
+        final String prefix = key(table, "");
+
+        this.drainLock.lock();
+
+        try {
+            synchronized (this.pending) {
+                this.pending.keySet().removeIf(key -> key.startsWith(prefix));
+            }
+        } finally {
+            this.drainLock.unlock();
+        }
+
+    }
+
+    /**
+     * Stops the background flusher, then {@link #flush() flushes} every write still pending.
+     */
+    public void shutdown() {
+
+        this.scheduler.shutdown();
+
+        try {
+            this.scheduler.awaitTermination(30, TimeUnit.SECONDS);
+        } catch (final InterruptedException exception) {
+            Thread.currentThread().interrupt();
+        }
+
+        if (!this.drain()) System.err.println("Not every pending write could be committed before shutting down");
+
+    }
+
+    /**
+     * Commits pending writes one batch of at most {@link #batchSize} writes per transaction
+     * until none are left or a write failed with a transient error. A batch failing to commit is
+     * {@link #retry retried} write by write.
+     *
+     * @return {@code true} if every write taken was committed, {@code false} otherwise
+     */
+    private boolean drain() {
+
+        this.drainLock.lock();
+
+        try {
+
+            boolean committed = true;
+
+            while (true) {
+
+                final Map<String, PendingWrite> batch = this.take();
+                if (batch.isEmpty()) return committed;
+
+                try {
+                    this.commit(batch);
+                    this.publish(batch.keySet());
+                    synchronized (this.pending) {
+                        this.inFlight.clear();
+                    }
+                    continue;
+                } catch (final SQLException ignored) {
+                    committed = false;
+                }
+
+                final Map<String, PendingWrite> failed = this.retry(batch);
+
+                synchronized (this.pending) {
+                    failed.forEach(this.pending::putIfAbsent);
+                    this.inFlight.clear();
+                }
+
+                if (!failed.isEmpty()) return false;
+            }
+
+        } finally {
+            this.drainLock.unlock();
+        }
+
+    }
+
+    /**
+     * Commits every write of a failed batch in a transaction of its own, dropping those the
+     * database rejects.
+     *
+     * @param batch the writes of the failed batch
+     * @return the writes that failed with a transient or connection error, to be queued again
+     */
+    private Map<String, PendingWrite> retry(@NotNull Map<String, PendingWrite> batch) {
+
+        final Map<String, PendingWrite> failed = new LinkedHashMap<>();
+        final List<String> committed = new ArrayList<>();
+
+        for (final Map.Entry<String, PendingWrite> entry : batch.entrySet()) {
+
+            try {
+                this.commit(Map.of(entry.getKey(), entry.getValue()));
+                committed.add(entry.getKey());
+            } catch (final SQLException exception) {
+
+                if (isTransient(exception)) {
+                    failed.put(entry.getKey(), entry.getValue());
+                    continue;
+                }
+
+                System.err.println("Dropping write-behind write to " + entry.getKey().replace('\u0000', '/') + " rejected by the database:");
+                exception.printStackTrace();
+            }
+
+        }
+
+        this.publish(committed);
+        return failed;
+    }
+
+    /**
+     * Moves the oldest {@link #batchSize} pending writes to {@link #inFlight}.
+     *
+     * @return the moved writes, keyed like {@link #pending}
+     */
+    private Map<String, PendingWrite> take() {
+
+        synchronized (this.pending) {
+
+            final Iterator<Map.Entry<String, PendingWrite>> iterator = this.pending.entrySet().iterator();
+            while (iterator.hasNext() && this.inFlight.size() < this.batchSize) {
+                final Map.Entry<String, PendingWrite> entry = iterator.next();
+                this.inFlight.put(entry.getKey(), entry.getValue());
+                iterator.remove();
+            }
+
+            return new LinkedHashMap<>(this.inFlight);
+        }
+    }
+
+    /**
+     * Commits {@code batch} as one transaction over a single connection, sending every write
+     * sharing a statement as one JDBC batch. Every write in {@code batch} targets a distinct row,
+     * so their relative order does not matter.
+     *
+     * @param batch the writes to commit
+     * @throws SQLException if the transaction was rolled back
+     */
+    private void commit(@NotNull Map<String, PendingWrite> batch) throws SQLException {
+
+        final Map<String, List<Object[]>> statements = new LinkedHashMap<>();
+        batch.values().forEach(pendingWrite -> statements.computeIfAbsent(pendingWrite.query(), key -> new ArrayList<>()).add(pendingWrite.parameters()));
+
+        try (Connection connection = this.sqlExecution.getConnection()) {
+
+            final boolean autoCommit = connection.getAutoCommit();
+            connection.setAutoCommit(false);
+
+            try {
+
+                for (final Map.Entry<String, List<Object[]>> statement : statements.entrySet()) {
+
+                    try (final PreparedStatement preparedStatement = connection.prepareStatement(statement.getKey())) {
+
+                        for (final Object[] objects : statement.getValue()) {
+                            this.sqlExecution.bind(preparedStatement, objects);
+                            preparedStatement.addBatch();
+                        }
+
+                        preparedStatement.executeBatch();
+                    }
+
+                }
+
+                connection.commit();
+
+            } catch (final SQLException exception) {
+                connection.rollback();
+                throw exception;
+            } finally {
+                connection.setAutoCommit(autoCommit);
+            }
+
+        }
+
+    }
+
+    /**
+     * Checks whether {@code exception} may go away on its own - a lost connection, a timeout, a
+     * deadlock - rather than being caused by the write itself.
+     *
+     * @param exception the exception a write failed with
+     * @return {@code true} if retrying the write later may succeed
+     */
+    private static boolean isTransient(@NotNull SQLException exception) {
+        final String sqlState = exception.getSQLState();
+        return exception instanceof SQLTransientException || exception instanceof SQLRecoverableException
+                || exception instanceof SQLNonTransientConnectionException || (sqlState != null && sqlState.startsWith("08"));
+    }
+
+    /**
+     * Announces every row written by a committed batch through the
+     * {@link SQLExecution#getChangeFeed() change feed}, if any, one notification per table.
+     * Tombstones are not announced, as their deletes already are.
+     *
+     * @param keys the {@link #key coalescing keys} of the committed writes
+     */
+    private void publish(@NotNull Collection<String> keys) {
+
+        final ChangeFeed changeFeed = this.sqlExecution.getChangeFeed();
+        if (changeFeed == null) return;
+
+        final Map<String, List<String>> ids = new LinkedHashMap<>();
+        for (final String key : keys) {
+            final int separator = key.indexOf('\u0000');
+            final String table = key.substring(0, separator);
+            if (!table.equals(SQLDialect.TOMBSTONES)) ids.computeIfAbsent(table, ignored -> new ArrayList<>()).add(key.substring(separator + 1));
+        }
+
+        ids.forEach(changeFeed::publish);
+    }
+
+    /**
+     * Builds the key pending writes to row {@code id} of {@code table} are coalesced under.
+     *
+     * @param table the table written to
+     * @param id    the primary key of the row written to
+     * @return the coalescing key
+     */
+    private static @NotNull String key(@NotNull String table, @NotNull String id) {
+        return table + '\u0000' + id;
+    }
+
+    /**
+     * A single write waiting to be committed.
+     *
+     * @param databaseEntry the row's new state, or {@code null} if the write deletes it
+     * @param query         the idempotent upsert or delete statement performing the write
+     * @param parameters    the values to bind, in placeholder order
+     */
+    private record PendingWrite(@Nullable DatabaseEntry databaseEntry, @NotNull String query, @NotNull Object[] parameters) {
+    }
+
+}
@@ -0,0 +1,225 @@
+package de.lino.database.database.tiered;
+
+import com.google.common.collect.Maps;
+import de.lino.database.database.DatabaseProvider;
+import de.lino.database.database.DatabaseSection;
+import lombok.Getter;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.jetbrains.annotations.UnmodifiableView;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A {@link DatabaseProvider} layering two other, already registered providers - a fast tier, e.g.
+ * Redis or an in-memory H2 database, in front of a durable tier, e.g. PostgreSQL or MySQL - so
+ * repeated reads are served at the fast tier's latency. Every section exists on both tiers under
+ * the same name, combined by a {@link TieredDatabaseSection}.
+ * <p>
+ * The durable tier is the source of truth: sections are discovered on it, and whole-section reads
+ * are served by it. In {@link TieringOptions.WriteMode#WRITE_BEHIND} mode, a
+ * {@link TieredWriteBehind} owned by this provider flushes writes to it in the background. If the
+ * fast tier is {@link TieringOptions#isBounded() bounded}, a daemon thread sweeps expired and
+ * evicted entries from it every {@link TieringOptions#getSweepInterval()}.
+ * <p>
+ * Both tiers stay registered on their own and are owned by the repository, not by this provider:
+ * {@link #shutdown()} flushes queued writes but leaves them running.
+ */
+@Getter
+public class TieredDatabaseProvider implements DatabaseProvider {
+
+    /**
+     * The provider every read is tried on first.
+     */
+    private final DatabaseProvider fast;
+
+    /**
+     * The provider holding every entry durably.
+     */
+    private final DatabaseProvider durable;
+
+    /**
+     * The options this provider was registered with.
+     */
+    private final TieringOptions options;
+
+    /**
+     * Every tiered section, keyed by name.
+     */
+    private final Map<String, TieredDatabaseSection> databaseSections;
+
+    /**
+     * The queue flushing writes to {@link #durable}, or {@code null} in write-through mode.
+     */
+    private final @Nullable TieredWriteBehind writeBehind;
+
+    /**
+     * The daemon thread sweeping the fast tier, or {@code null} if it is unbounded.
+     */
+    private final @Nullable ScheduledExecutorService sweeper;
+
+    /**
+     * Builds a tiered section for every section existing on {@code durable}, creating it on
+     * {@code fast} if missing there.
+     *
+     * @param fast    the provider to read from first
+     * @param durable the provider holding every entry durably
+     * @param options the write mode and fast tier bounds
+     */
+    public TieredDatabaseProvider(@NotNull DatabaseProvider fast, @NotNull DatabaseProvider durable, @NotNull TieringOptions options) {
+
+        this.fast = fast;
+        this.durable = durable;
+        this.options = options;
+        this.databaseSections = Maps.newConcurrentMap();
+        this.writeBehind = options.getWriteMode() == TieringOptions.WriteMode.WRITE_BEHIND ? new TieredWriteBehind(durable, options.getWriteBehindInterval()) : null;
+
+        if (options.isBounded()) {
+
+            this.sweeper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                final Thread thread = new Thread(runnable, "database-driver-tiered-sweep");
+                thread.setDaemon(true);
+                return thread;
+            });
+
+            final long interval = options.getSweepInterval().toMillis();
+            this.sweeper.scheduleWithFixedDelay(this::sweep, interval, interval, TimeUnit.MILLISECONDS);
+
+        } else this.sweeper = null;
+
+        this.load();
+
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Stops sweeping, flushes every queued write and discards this provider's own sections; the
+     * tiers are owned by the repository and keep running until unregistered themselves.
+     */
+    @Override
+    public void shutdown() {
+
+        if (this.sweeper != null) this.sweeper.shutdownNow();
+        if (this.writeBehind != null) this.writeBehind.close();
+
+        this.databaseSections.clear();
+
+    }
+
+    @Override
+    public DatabaseSection createSection(@NotNull String name) {
+        return this.databaseSections.computeIfAbsent(name, key -> this.tieredSection(key, this.durable.createSection(key)));
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Discards the section's queued writes and deletes it from both tiers.
+     */
+    @Override
+    public void deleteSection(@NotNull String name) {
+
+        if (this.databaseSections.remove(name) == null) return;
+        if (this.writeBehind != null) this.writeBehind.discard(name);
+
+        this.durable.deleteSection(name);
+        this.fast.deleteSection(name);
+
+    }
+
+    @Override
+    public boolean existsSection(@NotNull String name) {
+        return this.databaseSections.containsKey(name);
+    }
+
+    @Override
+    public @UnmodifiableView List<DatabaseSection> getSections() {
+        return List.copyOf(this.databaseSections.values());
+    }
+
+    @Override
+    public Optional<DatabaseSection> getSection(@NotNull String name) {
+        return Optional.ofNullable(this.databaseSections.get(name));
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Clears both tiers, after discarding every queued write.
+     */
+    @Override
+    public void clear() {
+
+        if (this.writeBehind != null) this.databaseSections.keySet().forEach(this.writeBehind::discard);
+
+        this.durable.clear();
+        this.fast.clear();
+        this.databaseSections.clear();
+
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Flushes every queued write, reloads both tiers, then rebuilds every tiered section on top of
+     * the tiers' fresh section instances.
+     */
+    @Override
+    public void reload() {
+
+        if (this.writeBehind != null) this.writeBehind.flush();
+
+        this.durable.reload();
+        this.fast.reload();
+        this.load();
+
+    }
+
+    /**
+     * Rebuilds {@link #databaseSections} from the sections currently known to the durable tier,
+     * creating them on the fast tier where missing.
+     */
+    private void load() {
+
+        final Map<String, TieredDatabaseSection> sections = Maps.newConcurrentMap();
+        for (final DatabaseSection section : this.durable.getSections()) sections.put(section.getName(), this.tieredSection(section.getName(), section));
+
+        this.databaseSections.keySet().retainAll(sections.keySet());
+        this.databaseSections.putAll(sections);
+
+    }
+
+    /**
+     * Combines {@code durableSection} with the fast tier's section of the same name, created if
+     * missing.
+     *
+     * @param name           the section's name
+     * @param durableSection the section on the durable tier
+     * @return the tiered section
+     */
+    private @NotNull TieredDatabaseSection tieredSection(@NotNull String name, @NotNull DatabaseSection durableSection) {
+        return new TieredDatabaseSection(name, this.fast.createSection(name), durableSection, this.options, this.writeBehind);
+    }
+
+    /**
+     * Sweeps every section's expired and evicted entries from the fast tier.
+     */
+    private void sweep() {
+
+        for (final TieredDatabaseSection section : this.databaseSections.values()) {
+            try {
+                section.sweep();
+            } catch (final RuntimeException exception) {
+                exception.printStackTrace();
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,388 @@
+package de.lino.database.database.tiered;
+
+import de.lino.database.database.DatabaseSection;
+import de.lino.database.database.entity.DatabaseEntry;
+import de.lino.database.database.exception.DataAlreadyExist;
+import de.lino.database.database.exception.NoSuchEntryFound;
+import de.lino.database.utils.cache.Cache;
+import de.lino.database.utils.cache.provider.Caches;
+import lombok.AccessLevel;
+import lombok.Getter;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.jetbrains.annotations.UnmodifiableView;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * The {@link DatabaseSection} of a {@link TieredDatabaseProvider}: a section of the same name on
+ * the fast tier in front of one on the durable tier.
+ * <p>
+ * {@link #findEntryById} reads the fast tier first and falls back to the durable tier on a miss,
+ * copying what it found into the fast tier. Which entries the fast tier holds, and since when, is
+ * tracked by a {@link Cache} built from {@link TieringOptions#getTtl()} and
+ * {@link TieringOptions#getMaxSize()}: an entry the cache no longer knows - expired or evicted - is
+ * re-read from the durable tier, and {@link #sweep()} deletes it from the fast tier.
+ * <p>
+ * Writes reach both tiers - the durable one first - before returning in
+ * {@link TieringOptions.WriteMode#WRITE_THROUGH} mode; in
+ * {@link TieringOptions.WriteMode#WRITE_BEHIND} mode they reach the fast tier and are queued on the
+ * provider's {@link TieredWriteBehind}, whose queued state every read of this section sees first.
+ * Whole-section reads - {@link #count()}, {@link #getEntries()}, {@link #stream()},
+ * {@link #findByField} - are served by the durable tier, after flushing this section's queued
+ * writes.
+ */
+@Getter
+public class TieredDatabaseSection implements DatabaseSection {
+
+    /**
+     * The section's name, shared by both tiers' sections.
+     */
+    private final String name;
+
+    /**
+     * The section of the same name on the fast tier.
+     */
+    private final DatabaseSection fast;
+
+    /**
+     * The section of the same name on the durable tier.
+     */
+    private final DatabaseSection durable;
+
+    /**
+     * Tracks which ids the fast tier holds a current copy of, each {@code true} once copied or
+     * written there. Only ever {@link Cache#getIfPresent queried}, never loaded, so lookups of
+     * ids the fast tier does not hold take no slot and never evict a resident one.
+     */
+    @Getter(AccessLevel.NONE)
+    private final Cache<String, Boolean> residency;
+
+    /**
+     * The provider's write-behind queue, or {@code null} in write-through mode.
+     */
+    @Getter(AccessLevel.NONE)
+    private final @Nullable TieredWriteBehind writeBehind;
+
+    /**
+     * @param name        the section's name
+     * @param fast        the section of the same name on the fast tier
+     * @param durable     the section of the same name on the durable tier
+     * @param options     the tiering options, bounding the fast tier
+     * @param writeBehind the provider's write-behind queue, or {@code null} in write-through mode
+     */
+    public TieredDatabaseSection(@NotNull String name, @NotNull DatabaseSection fast, @NotNull DatabaseSection durable, @NotNull TieringOptions options, @Nullable TieredWriteBehind writeBehind) {
+        this.name = name;
+        this.fast = fast;
+        this.durable = durable;
+        this.residency = Caches.newCache(id -> CompletableFuture.completedFuture(Boolean.FALSE), options.getTtl(), options.getMaxSize());
+        this.writeBehind = writeBehind;
+    }
+
+    @Override
+    public void insert(@NotNull DatabaseEntry databaseEntry) {
+
+        if (this.writeBehind == null) this.durable.insert(databaseEntry);
+        else {
+            if (this.exists(databaseEntry.getId())) throw new DataAlreadyExist(databaseEntry.getId());
+            this.writeBehind.enqueue(this.name, databaseEntry.getId(), Optional.of(databaseEntry));
+        }
+
+        this.populate(List.of(databaseEntry));
+
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Always written through - after flushing this section's queued writes, so it is not
+     * reordered before them - to the durable tier with its time to live, then to the fast tier
+     * with the same time to live, replacing any copy held there, so both tiers expire it on their
+     * own.
+     */
+    @Override
+    public void insert(@NotNull DatabaseEntry databaseEntry, @NotNull Duration ttl) {
+
+        this.flush();
+        this.durable.insert(databaseEntry, ttl);
+
+        if (this.fast.exists(databaseEntry.getId())) this.fast.delete(databaseEntry.getId());
+        this.fast.insert(databaseEntry, ttl);
+
+        this.residency.put(databaseEntry.getId(), Boolean.TRUE);
+
+    }
+
+    @Override
+    public void update(@NotNull DatabaseEntry databaseEntry) {
+
+        if (this.writeBehind == null) this.durable.update(databaseEntry);
+        else {
+            if (!this.exists(databaseEntry.getId())) throw new NoSuchEntryFound(databaseEntry.getId());
+            this.writeBehind.enqueue(this.name, databaseEntry.getId(), Optional.of(databaseEntry));
+        }
+
+        this.populate(List.of(databaseEntry));
+
+    }
+
+    @Override
+    public void upsert(@NotNull DatabaseEntry databaseEntry) {
+
+        if (this.writeBehind == null) this.durable.upsert(databaseEntry);
+        else this.writeBehind.enqueue(this.name, databaseEntry.getId(), Optional.of(databaseEntry));
+
+        this.populate(List.of(databaseEntry));
+
+    }
+
+    @Override
+    public void delete(@NotNull String id) {
+
+        if (this.writeBehind == null) this.durable.delete(id);
+        else {
+            if (!this.exists(id)) throw new NoSuchEntryFound(id);
+            this.writeBehind.enqueue(this.name, id, Optional.empty());
+        }
+
+        this.evict(List.of(id));
+
+    }
+
+    @Override
+    public void insertAll(@NotNull Collection<DatabaseEntry> databaseEntries) {
+
+        if (this.writeBehind == null) this.durable.insertAll(databaseEntries);
+        else {
+            for (final DatabaseEntry databaseEntry : databaseEntries) if (this.exists(databaseEntry.getId())) throw new DataAlreadyExist(databaseEntry.getId());
+            databaseEntries.forEach(databaseEntry -> this.writeBehind.enqueue(this.name, databaseEntry.getId(), Optional.of(databaseEntry)));
+        }
+
+        this.populate(databaseEntries);
+
+    }
+
+    @Override
+    public void updateAll(@NotNull Collection<DatabaseEntry> databaseEntries) {
+
+        if (this.writeBehind == null) this.durable.updateAll(databaseEntries);
+        else {
+            for (final DatabaseEntry databaseEntry : databaseEntries) if (!this.exists(databaseEntry.getId())) throw new NoSuchEntryFound(databaseEntry.getId());
+            databaseEntries.forEach(databaseEntry -> this.writeBehind.enqueue(this.name, databaseEntry.getId(), Optional.of(databaseEntry)));
+        }
+
+        this.populate(databaseEntries);
+
+    }
+
+    @Override
+    public void deleteAll(@NotNull Collection<String> ids) {
+
+        if (this.writeBehind == null) this.durable.deleteAll(ids);
+        else {
+            for (final String id : ids) if (!this.exists(id)) throw new NoSuchEntryFound(id);
+            ids.forEach(id -> this.writeBehind.enqueue(this.name, id, Optional.empty()));
+        }
+
+        this.evict(ids);
+
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Counted by the durable tier, after flushing this section's queued writes.
+     */
+    @Override
+    public long count() {
+        this.flush();
+        return this.durable.count();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Discards this section's queued writes and clears both tiers.
+     */
+    @Override
+    public void clear() {
+
+        if (this.writeBehind != null) this.writeBehind.discard(this.name);
+
+        this.durable.clear();
+        this.fast.clear();
+        this.residency.invalidateAll();
+
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Flushes this section's queued writes, reloads the durable tier and forgets which entries
+     * the fast tier holds, so every entry is re-read from the durable tier on next access.
+     */
+    @Override
+    public void reload() {
+
+        this.flush();
+        this.durable.reload();
+        this.residency.invalidateAll();
+
+    }
+
+    @Override
+    public boolean exists(@NotNull String id) {
+        return this.findEntryById(id).isPresent();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Answers from the write-behind queue if {@code id} has a queued write, from the fast tier if
+     * it holds a current copy, and from the durable tier otherwise - copying the entry into the
+     * fast tier if found.
+     */
+    @Override
+    public Optional<DatabaseEntry> findEntryById(@NotNull String id) {
+
+        if (this.writeBehind != null) {
+            final Optional<DatabaseEntry> pending = this.writeBehind.pending(this.name, id);
+            if (pending != null) return pending;
+        }
+
+        if (this.residency.getIfPresent(id).isPresent()) {
+            final Optional<DatabaseEntry> cached = this.fast.findEntryById(id);
+            if (cached.isPresent()) return cached;
+        }
+
+        final Optional<DatabaseEntry> databaseEntry = this.durable.findEntryById(id);
+        databaseEntry.ifPresent(entry -> this.populate(List.of(entry)));
+
+        return databaseEntry;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Queried on the durable tier, after flushing this section's queued writes.
+     */
+    @Override
+    public List<DatabaseEntry> findByField(@NotNull String path, @NotNull Object value) {
+        this.flush();
+        return this.durable.findByField(path, value);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Read from the durable tier, after flushing this section's queued writes.
+     */
+    @Override
+    public @UnmodifiableView List<DatabaseEntry> getEntries() {
+        this.flush();
+        return this.durable.getEntries();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Streamed from the durable tier, after flushing this section's queued writes.
+     */
+    @Override
+    public Stream<DatabaseEntry> stream() {
+        this.flush();
+        return this.durable.stream();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Scanned on the durable tier, after flushing this section's queued writes.
+     */
+    @Override
+    public void forEachEntry(@NotNull Consumer<DatabaseEntry> consumer) {
+        this.flush();
+        this.durable.forEachEntry(consumer);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Returns the durable tier's executor, as every operation that can block for long waits on
+     * the durable tier.
+     */
+    @Override
+    public @NotNull Executor getExecutor() {
+        return this.durable.getExecutor();
+    }
+
+    /**
+     * Deletes every entry from the fast tier its {@link #residency} cache expired or evicted,
+     * unless it has a write queued. Run by the provider every
+     * {@link TieringOptions#getSweepInterval()}.
+     */
+    public void sweep() {
+
+        this.residency.evictExpired();
+
+        final Map<String, Boolean> resident = this.residency.snapshot();
+        final List<String> stale = new ArrayList<>();
+
+        try (Stream<DatabaseEntry> entries = this.fast.stream()) {
+            entries.map(DatabaseEntry::getId)
+                    .filter(id -> !Boolean.TRUE.equals(resident.get(id)))
+                    .filter(id -> this.writeBehind == null || !this.writeBehind.isPending(this.name, id))
+                    .forEach(stale::add);
+        }
+
+        if (!stale.isEmpty()) this.fast.deleteAll(stale);
+
+    }
+
+    /**
+     * Writes {@code databaseEntries} to the fast tier, {@link DatabaseSection#upsert upserting}
+     * each so concurrent reads and writes of the same id never race an existence check, and
+     * records them as held there.
+     *
+     * @param databaseEntries the entries just written or read from the durable tier
+     */
+    private void populate(@NotNull Collection<DatabaseEntry> databaseEntries) {
+
+        for (final DatabaseEntry databaseEntry : databaseEntries) {
+            this.fast.upsert(databaseEntry);
+            this.residency.put(databaseEntry.getId(), Boolean.TRUE);
+        }
+
+    }
+
+    /**
+     * Deletes {@code ids} from the fast tier, if held there, and forgets them.
+     *
+     * @param ids the ids just deleted
+     */
+    private void evict(@NotNull Collection<String> ids) {
+
+        final List<String> held = ids.stream().filter(this.fast::exists).toList();
+        if (!held.isEmpty()) this.fast.deleteAll(held);
+
+        ids.forEach(this.residency::invalidate);
+
+    }
+
+    /**
+     * Flushes this section's queued writes to the durable tier, if running write-behind.
+     */
+    private void flush() {
+        if (this.writeBehind != null) this.writeBehind.flush(this.name);
+    }
+
+}
@@ -0,0 +1,165 @@
+package de.lino.database.database.tiered;
+
+import com.google.common.collect.Maps;
+import de.lino.database.database.DatabaseProvider;
+import de.lino.database.database.DatabaseSection;
+import de.lino.database.database.entity.DatabaseEntry;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The queue behind {@link de.lino.database.database.tiered.TieringOptions.WriteMode#WRITE_BEHIND}:
+ * holds the latest pending state of every id written through a {@link TieredDatabaseProvider}'s
+ * sections - an entry, or {@link Optional#empty()} for a delete - and flushes it to the durable tier
+ * on a single daemon thread, one {@code insertAll}, {@code updateAll} and {@code deleteAll} per
+ * section and flush.
+ * <p>
+ * An id is only dequeued once the state flushed is still its latest one, so a write racing a flush
+ * is flushed by the next one rather than lost. A failed flush keeps its writes queued and retries
+ * them on the next flush.
+ */
+public class TieredWriteBehind {
+
+    /**
+     * The durable tier every queued write is flushed to.
+     */
+    private final DatabaseProvider durable;
+
+    /**
+     * The latest pending state of every queued id, keyed by section name, then by id.
+     */
+    private final Map<String, Map<String, Optional<DatabaseEntry>>> pending = Maps.newConcurrentMap();
+
+    /**
+     * The single background thread running every scheduled flush.
+     */
+    private final ScheduledExecutorService scheduler;
+
+    /**
+     * Starts flushing queued writes to {@code durable} every {@code interval}.
+     *
+     * @param durable  the durable tier to flush to
+     * @param interval the delay between the end of one flush and the start of the next
+     */
+    public TieredWriteBehind(@NotNull DatabaseProvider durable, @NotNull Duration interval) {
+
+        this.durable = durable;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            final Thread thread = new Thread(runnable, "database-driver-tiered-write-behind");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        this.scheduler.scheduleWithFixedDelay(this::flush, interval.toMillis(), interval.toMillis(), TimeUnit.MILLISECONDS);
+
+    }
+
+    /**
+     * Queues the latest state of {@code id}, replacing any state queued before.
+     *
+     * @param section the section's name
+     * @param id      the id written or deleted
+     * @param state   the written entry, or {@link Optional#empty()} for a delete
+     */
+    public void enqueue(@NotNull String section, @NotNull String id, @NotNull Optional<DatabaseEntry> state) {
+        this.pending.computeIfAbsent(section, key -> Maps.newConcurrentMap()).put(id, state);
+    }
+
+    /**
+     * Looks up the state of {@code id} not flushed yet, so reads see writes before they are durable.
+     *
+     * @param section the section's name
+     * @param id      the id to look up
+     * @return the queued entry, {@link Optional#empty()} for a queued delete, or {@code null} if
+     * nothing is queued for {@code id}
+     */
+    public @Nullable Optional<DatabaseEntry> pending(@NotNull String section, @NotNull String id) {
+        final Map<String, Optional<DatabaseEntry>> states = this.pending.get(section);
+        return states == null ? null : states.get(id);
+    }
+
+    /**
+     * Checks whether anything is queued for {@code id}.
+     *
+     * @param section the section's name
+     * @param id      the id to look up
+     * @return {@code true} if a write or delete of {@code id} is not flushed yet
+     */
+    public boolean isPending(@NotNull String section, @NotNull String id) {
+        return this.pending(section, id) != null;
+    }
+
+    /**
+     * Drops every write queued for {@code section} without flushing it, e.g. because the section
+     * is being cleared anyway.
+     *
+     * @param section the section's name
+     */
+    public void discard(@NotNull String section) {
+        this.pending.remove(section);
+    }
+
+    /**
+     * Flushes every queued write to the durable tier, blocking until done.
+     */
+    public synchronized void flush() {
+        for (final String section : List.copyOf(this.pending.keySet())) this.flush(section);
+    }
+
+    /**
+     * Flushes every write queued for {@code section} to the durable tier, blocking until done.
+     *
+     * @param section the section's name
+     */
+    public synchronized void flush(@NotNull String section) {
+
+        final Map<String, Optional<DatabaseEntry>> states = this.pending.get(section);
+        if (states == null || states.isEmpty()) return;
+
+        final Map<String, Optional<DatabaseEntry>> batch = Map.copyOf(states);
+        final DatabaseSection target = this.durable.createSection(section);
+
+        final List<DatabaseEntry> inserts = new ArrayList<>();
+        final List<DatabaseEntry> updates = new ArrayList<>();
+        final List<String> deletes = new ArrayList<>();
+
+        batch.forEach((id, state) -> {
+            if (state.isEmpty()) {
+                if (target.exists(id)) deletes.add(id);
+            } else if (target.exists(id)) updates.add(state.get());
+            else inserts.add(state.get());
+        });
+
+        try {
+
+            if (!deletes.isEmpty()) target.deleteAll(deletes);
+            if (!updates.isEmpty()) target.updateAll(updates);
+            if (!inserts.isEmpty()) target.insertAll(inserts);
+
+            batch.forEach(states::remove);
+
+        } catch (final RuntimeException exception) {
+            System.err.println("Flushing " + batch.size() + " queued writes to section " + section + " failed, retrying on the next flush:");
+            exception.printStackTrace();
+        }
+
+    }
+
+    /**
+     * Stops the scheduled flushes and flushes every write still queued.
+     */
+    public void close() {
+        this.scheduler.shutdown();
+        this.flush();
+    }
+
+}
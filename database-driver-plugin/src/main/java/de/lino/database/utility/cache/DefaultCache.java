@@ -6,6 +6,7 @@ import java.time.Duration;
 import java.time.Instant;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicLong;
@@ -134,6 +135,17 @@ public final class DefaultCache<ID, T> implements Cache<ID, T> {
         });
     }
 
+    @Override
+    public Optional<T> getIfPresent(ID id) {
+        CompletableFuture<Entry<T>> future = store.get(Objects.requireNonNull(id, "id must not be null"));
+        if (future == null || !future.isDone() || isFailedOrExpired(future)) {
+            return Optional.empty();
+        }
+        Entry<T> entry = future.join();
+        entry.touch(); // update access time for approximate LRU
+        return Optional.of(entry.value);
+    }
+
     private boolean isFailedOrExpired(CompletableFuture<Entry<T>> future) {
         if (!future.isDone()) {
             return false; // still loading — piggyback instead of restarting